@@ -76,6 +76,24 @@ public class Message {
      */
     private Set<User> messageRecipients;
 
+    /**
+     * The unique key of the stored message this message delivers, which is not sent over the
+     * network, or null if it delivers none.
+     */
+    private String msgUniqueKey;
+
+    /**
+     * The sequence number of this message among the messages of the group it was sent to, which is
+     * not sent over the network, or 0 if it was sent to no group.
+     */
+    private long groupSequence;
+
+    /**
+     * The message encoded as it is sent over the network, once it has been encoded, so that a
+     * message sent to many connections is encoded only once.
+     */
+    private volatile byte[] frame;
+
     /**
      * Create a new message that contains actual IM text. The type of distribution
      * is defined by the handle and we must also set the name of the message sender,
@@ -221,10 +239,32 @@ public class Message {
             return makeSimpleLoginMessage(srcName);
         } else if (handle.equals(MessageType.BROADCAST.toString())) {
             return makeBroadcastMessage(srcName, textOrPassword);
+        } else if (handle.equals(MessageType.SUBSCRIBE.toString())) {
+            return makeSubscribeMessage(srcName, textOrPassword);
+        } else if (handle.equals(MessageType.UNSUBSCRIBE.toString())) {
+            return makeUnsubscribeMessage(srcName, textOrPassword);
+        } else if (handle.equals(MessageType.PUBLISH.toString())) {
+            return makePublishMessage(srcName, textOrPassword, receiverOrPassword);
         } else if (handle.equals(MessageType.LOGIN.toString())) {
             return makeLoginMessage(srcName, textOrPassword);
         } else if (handle.equals(MessageType.REGISTER.toString())) {
             return makeRegisterMessage(srcName, textOrPassword, receiverOrPassword);
+        } else if (handle.equals(MessageType.PING.toString())) {
+            return makePingMessage(srcName);
+        } else if (handle.equals(MessageType.PONG.toString())) {
+            return makePongMessage(srcName);
+        } else if (handle.equals(MessageType.SLOW_DOWN.toString())) {
+            return makeSlowDownMessage(srcName, textOrPassword);
+        } else if (handle.equals(MessageType.SERVER_BUSY.toString())) {
+            return makeServerBusyMessage(srcName, textOrPassword, receiverOrPassword);
+        } else if (handle.equals(MessageType.RESUME.toString())) {
+            return makeResumeMessage(srcName, textOrPassword);
+        } else if (handle.equals(MessageType.ACKNOWLEDGE.toString())) {
+            return makeAcknowledgeMessage(srcName, textOrPassword);
+        } else if (handle.equals(MessageType.SYNC.toString())) {
+            return makeSyncMessage(srcName, textOrPassword, receiverOrPassword);
+        } else if (handle.equals(MessageType.MESSAGE_ID.toString())) {
+            return makeMessageIdMessage(srcName, textOrPassword);
         }
         return null;
     }
@@ -335,6 +375,10 @@ public class Message {
             return makeGetPastMessages(srcName);
         } else if (handle.equals(MessageType.GET_CONVERSATION_HISTORY.toString())) {
             return makeGetConversationHistory(srcName, textOrPassword);
+        } else if (handle.equals(MessageType.GET_INBOX.toString())) {
+            return makeGetInboxMessage(srcName);
+        } else if (handle.equals(MessageType.GET_GROUP_RANGE.toString())) {
+            return makeGetGroupRangeMessage(srcName, textOrPassword, receiverOrPassword);
         }
         return null;
     }
@@ -702,6 +746,21 @@ public class Message {
         return new Message(msg.msgType, msg.msgSender, text, msg.msgReceiverOrPassword);
     }
 
+    /**
+     * Add's the UniqueKey details to the existing message, and remembers the unique key of the
+     * stored message it delivers, so that the message is marked sent once it is delivered.
+     *
+     * @param msg       The message to be sent
+     * @param text      The text to be replaced in msg object
+     * @param uniqueKey The unique key of the stored message
+     * @return msg
+     */
+    public static Message addUniqueKeyToMsg(Message msg, String text, String uniqueKey) {
+        Message keyedMsg = addUniqueKeyToMsg(msg, text);
+        keyedMsg.msgUniqueKey = uniqueKey;
+        return keyedMsg;
+    }
+
     /**
      * This method creates a Group message to be sent on the specified group
      *
@@ -804,6 +863,174 @@ public class Message {
         return new Message(MessageType.TAP_USER, srcName, userOfInterest);
     }
 
+    /**
+     * Make a message of the type INB (Get Inbox), that will retrieve the summary of all the conversations of the
+     * user
+     *
+     * @param srcName the username of the user requesting their inbox
+     * @return a new Message object of type GET_INBOX
+     */
+    public static Message makeGetInboxMessage(String srcName) {
+        return new Message(MessageType.GET_INBOX, srcName);
+    }
+
+    /**
+     * Make a heartbeat message, asking the other end to answer with a PON message.
+     *
+     * @param srcName the name of the sender of the heartbeat
+     * @return a new Message object of type PING
+     */
+    public static Message makePingMessage(String srcName) {
+        return new Message(MessageType.PING, srcName);
+    }
+
+    /**
+     * Make the answer to a heartbeat message.
+     *
+     * @param srcName the name of the sender of the answer
+     * @return a new Message object of type PONG
+     */
+    public static Message makePongMessage(String srcName) {
+        return new Message(MessageType.PONG, srcName);
+    }
+
+    /**
+     * Make a message telling a client to slow down.
+     *
+     * @param srcName      the name of the sender, the server
+     * @param retryAfterMs the time in milliseconds the client should wait before sending more
+     * @return a new Message object of type SLOW_DOWN
+     */
+    public static Message makeSlowDownMessage(String srcName, String retryAfterMs) {
+        return new Message(MessageType.SLOW_DOWN, srcName, retryAfterMs);
+    }
+
+    /**
+     * Make a message telling a client that its connection was refused because the server is busy.
+     *
+     * @param srcName      the name of the sender, the server
+     * @param reason       why the connection was refused
+     * @param retryAfterMs the time in milliseconds the client should wait before connecting again
+     * @return a new Message object of type SERVER_BUSY
+     */
+    public static Message makeServerBusyMessage(String srcName, String reason, String retryAfterMs) {
+        return new Message(MessageType.SERVER_BUSY, srcName, reason, retryAfterMs);
+    }
+
+    /**
+     * Make a message carrying the token with which a session is resumed.
+     *
+     * @param srcName the name of the user whose session it is, or of the server issuing the token
+     * @param token   the token
+     * @return a new Message object of type RESUME
+     */
+    public static Message makeResumeMessage(String srcName, String token) {
+        return new Message(MessageType.RESUME, srcName, token);
+    }
+
+    /**
+     * Make a message acknowledging the stored messages a client received.
+     *
+     * @param srcName the name of the user acknowledging
+     * @param msgKey  the message key of the last message received, or null to only ask for the
+     *                messages to be acknowledged from then on
+     * @return a new Message object of type ACKNOWLEDGE
+     */
+    public static Message makeAcknowledgeMessage(String srcName, String msgKey) {
+        return new Message(MessageType.ACKNOWLEDGE, srcName, msgKey);
+    }
+
+    /**
+     * Make a message asking for the messages that came after the last sequence number a client
+     * received.
+     *
+     * @param srcName      the name of the user catching up
+     * @param lastSequence the last sequence number the client received, or 0 for all the messages
+     * @return a new Message object of type SYNC
+     */
+    public static Message makeSyncMessage(String srcName, String lastSequence) {
+        return makeSyncMessage(srcName, lastSequence, null);
+    }
+
+    /**
+     * Make a message ending a page of the messages a client asked for.
+     *
+     * @param srcName      the name of the sender, the server
+     * @param lastSequence the sequence number of the last message of the page
+     * @param hasMore      "true" if more messages come after the page, which the client asks for
+     *                     with this sequence number; "false" otherwise
+     * @return a new Message object of type SYNC
+     */
+    public static Message makeSyncMessage(String srcName, String lastSequence, String hasMore) {
+        return new Message(MessageType.SYNC, srcName, lastSequence, hasMore);
+    }
+
+    /**
+     * Make a message giving an ID to the next private, reply or group message a client sends.
+     *
+     * @param srcName         the name of the user sending the message
+     * @param clientMessageId the ID, unique among the messages the user sent lately
+     * @return a new Message object of type MESSAGE_ID
+     */
+    public static Message makeMessageIdMessage(String srcName, String clientMessageId) {
+        return new Message(MessageType.MESSAGE_ID, srcName, clientMessageId);
+    }
+
+    /**
+     * Make a message asking for the messages of a group with a group sequence number in a range.
+     *
+     * @param srcName   the name of the user asking for the messages
+     * @param range     the first and last group sequence numbers of the range, as "first-last"
+     * @param groupName the name of the group
+     * @return a new Message object of type GET_GROUP_RANGE
+     */
+    public static Message makeGetGroupRangeMessage(String srcName, String range, String groupName) {
+        return new Message(MessageType.GET_GROUP_RANGE, srcName, range, groupName);
+    }
+
+    /**
+     * Make a message subscribing a client to a channel.
+     *
+     * @param srcName     the name of the user subscribing
+     * @param channelName the name of the channel
+     * @return a new Message object of type SUBSCRIBE
+     */
+    public static Message makeSubscribeMessage(String srcName, String channelName) {
+        return new Message(MessageType.SUBSCRIBE, srcName, channelName);
+    }
+
+    /**
+     * Make a message unsubscribing a client from a channel.
+     *
+     * @param srcName     the name of the user unsubscribing
+     * @param channelName the name of the channel
+     * @return a new Message object of type UNSUBSCRIBE
+     */
+    public static Message makeUnsubscribeMessage(String srcName, String channelName) {
+        return new Message(MessageType.UNSUBSCRIBE, srcName, channelName);
+    }
+
+    /**
+     * Make a message publishing text on a channel.
+     *
+     * @param srcName     the name of the user publishing
+     * @param text        the text to publish
+     * @param channelName the name of the channel
+     * @return a new Message object of type PUBLISH
+     */
+    public static Message makePublishMessage(String srcName, String text, String channelName) {
+        return new Message(MessageType.PUBLISH, srcName, text, channelName);
+    }
+
+    /**
+     * Return the type of this message.
+     *
+     * @return MessageType the type of this message.
+     */
+    public MessageType getType() {
+        return msgType;
+    }
+
     /**
      * Return the name of the sender of this message.
      *
@@ -1249,6 +1476,165 @@ public class Message {
         return (msgType == MessageType.TAP_USER);
     }
 
+    /**
+     * Checks if the current message is of type Get Inbox
+     *
+     * @return - true if it is that message, false otherwise
+     */
+    public boolean isGetInboxMessage() {
+        return (msgType == MessageType.GET_INBOX);
+    }
+
+    /**
+     * Checks if the current message is a heartbeat
+     *
+     * @return - true if it is that message, false otherwise
+     */
+    public boolean isPingMessage() {
+        return (msgType == MessageType.PING);
+    }
+
+    /**
+     * Checks if the current message is the answer to a heartbeat
+     *
+     * @return - true if it is that message, false otherwise
+     */
+    public boolean isPongMessage() {
+        return (msgType == MessageType.PONG);
+    }
+
+    /**
+     * Checks if the current message tells the client to slow down
+     *
+     * @return - true if it is that message, false otherwise
+     */
+    public boolean isSlowDownMessage() {
+        return (msgType == MessageType.SLOW_DOWN);
+    }
+
+    /**
+     * Checks if the current message tells the client that the server is busy
+     *
+     * @return - true if it is that message, false otherwise
+     */
+    public boolean isServerBusyMessage() {
+        return (msgType == MessageType.SERVER_BUSY);
+    }
+
+    /**
+     * Get the unique key of the stored message this message delivers.
+     *
+     * @return String   the unique key, or null if the message delivers no stored message
+     */
+    public String getUniqueKey() {
+        return msgUniqueKey;
+    }
+
+    /**
+     * Get the sequence number of this message among the messages of the group it was sent to.
+     *
+     * @return long     the group sequence number, or 0 if the message was sent to no group
+     */
+    public long getGroupSequence() {
+        return groupSequence;
+    }
+
+    /**
+     * Sets the sequence number of this message among the messages of the group it was sent to.
+     *
+     * @param groupSequence the group sequence number
+     */
+    public void setGroupSequence(long groupSequence) {
+        this.groupSequence = groupSequence;
+    }
+
+    /**
+     * Checks if the current message acknowledges the messages a client received
+     *
+     * @return - true if it is that message, false otherwise
+     */
+    public boolean isAcknowledgeMessage() {
+        return (msgType == MessageType.ACKNOWLEDGE);
+    }
+
+    /**
+     * Checks if the current message asks for, or ends a page of, the messages after a sequence number
+     *
+     * @return - true if it is that message, false otherwise
+     */
+    public boolean isSyncMessage() {
+        return (msgType == MessageType.SYNC);
+    }
+
+    /**
+     * Checks if the current message gives an ID to the next message the client sends
+     *
+     * @return - true if it is that message, false otherwise
+     */
+    public boolean isMessageIdMessage() {
+        return (msgType == MessageType.MESSAGE_ID);
+    }
+
+    /**
+     * Checks if the current message asks for the messages of a group in a range of group sequence numbers
+     *
+     * @return - true if it is that message, false otherwise
+     */
+    public boolean isGetGroupRangeMessage() {
+        return (msgType == MessageType.GET_GROUP_RANGE);
+    }
+
+    /**
+     * Checks if the current message subscribes the client to a channel
+     *
+     * @return - true if it is that message, false otherwise
+     */
+    public boolean isSubscribeMessage() {
+        return (msgType == MessageType.SUBSCRIBE);
+    }
+
+    /**
+     * Checks if the current message unsubscribes the client from a channel
+     *
+     * @return - true if it is that message, false otherwise
+     */
+    public boolean isUnsubscribeMessage() {
+        return (msgType == MessageType.UNSUBSCRIBE);
+    }
+
+    /**
+     * Checks if the current message publishes text on a channel
+     *
+     * @return - true if it is that message, false otherwise
+     */
+    public boolean isPublishMessage() {
+        return (msgType == MessageType.PUBLISH);
+    }
+
+    /**
+     * Get the message encoded as it is sent over the network. The bytes are shared by every
+     * connection the message is sent on, and must not be modified.
+     *
+     * @return byte[]   the encoded message
+     */
+    public byte[] toFrame() {
+        byte[] encoded = frame;
+        if (encoded == null) {
+            encoded = toString().getBytes();
+            frame = encoded;
+        }
+        return encoded;
+    }
+
+    /**
+     * Checks if the current message carries the token of a session to resume
+     *
+     * @return - true if it is that message, false otherwise
+     */
+    public boolean isResumeMessage() {
+        return (msgType == MessageType.RESUME);
+    }
+
     /**
      * Representation of this message as a String. This begins with the message
      * handle and then contains the length (as an integer) and the value of the next
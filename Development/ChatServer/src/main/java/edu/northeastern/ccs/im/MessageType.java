@@ -186,7 +186,80 @@ public enum MessageType {
     /**
      * Message handle for the government to tap a certain user of interest
      */
-    TAP_USER("TPU");
+    TAP_USER("TPU"),
+
+    /**
+     * Message handle for a user to retrieve the summary of their conversations
+     */
+    GET_INBOX("INB"),
+
+    /**
+     * Message handle for a heartbeat asking the other end whether it is still there
+     */
+    PING("PNG"),
+
+    /**
+     * Message handle for the answer to a heartbeat
+     */
+    PONG("PON"),
+
+    /**
+     * Message handle telling a client that its last message was dropped because it sent too many,
+     * and how long to wait before sending more
+     */
+    SLOW_DOWN("SLW"),
+
+    /**
+     * Message handle telling a client that its connection was refused because the server is busy,
+     * why, and how long to wait before connecting again
+     */
+    SERVER_BUSY("BSY"),
+
+    /**
+     * Message handle carrying the token with which a session is resumed: sent by the server once a
+     * user logs in or resumes, and by a client reconnecting to take its session back
+     */
+    RESUME("RSM"),
+
+    /**
+     * Message handle with which a client acknowledges the stored messages it received, up to the
+     * one with the given message key
+     */
+    ACKNOWLEDGE("ACK"),
+
+    /**
+     * Message handle with which a client asks for the messages that came after the last sequence
+     * number it received, and with which the server ends every page of them
+     */
+    SYNC("SYN"),
+
+    /**
+     * Message handle with which a client gives an ID to the next message it sends, so that sending
+     * it again with the same ID does not send it twice
+     */
+    MESSAGE_ID("MID"),
+
+    /**
+     * Message handle with which a client asks for the messages of a group with a group sequence
+     * number in a range, to fill a gap in the messages of the group it received
+     */
+    GET_GROUP_RANGE("GRG"),
+
+    /**
+     * Message handle with which a client subscribes to a channel, and is sent the messages lately
+     * published on it
+     */
+    SUBSCRIBE("SUB"),
+
+    /**
+     * Message handle with which a client unsubscribes from a channel
+     */
+    UNSUBSCRIBE("UNS"),
+
+    /**
+     * Message handle with which a client publishes text on a channel, to all its subscribers
+     */
+    PUBLISH("PUB");
 
 
     /**
@@ -8,6 +8,7 @@
 package edu.northeastern.ccs.im;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.channels.SelectionKey;
@@ -72,7 +73,7 @@ public class NetworkConnection implements Iterable<Message> {
     private final SocketChannel channel;
 
     /**
-     * Selector for this client's connection.
+     * Selector for this client's connection, or null while the connection is hibernating.
      */
     private Selector selector;
 
@@ -82,7 +83,8 @@ public class NetworkConnection implements Iterable<Message> {
     private SelectionKey key;
 
     /**
-     * Byte buffer to use for incoming messages to this client.
+     * Byte buffer to use for incoming messages to this client, or null while the connection is
+     * hibernating.
      */
     private ByteBuffer buff;
 
@@ -91,6 +93,16 @@ public class NetworkConnection implements Iterable<Message> {
      */
     private Queue<Message> messages;
 
+    /**
+     * Whether reads wait for data on the channel instead of polling a selector.
+     */
+    private final boolean blocking;
+
+    /**
+     * Whether the other end has closed the connection, seen only by blocking reads.
+     */
+    private volatile boolean endOfStream;
+
     /**
      * Creates a new instance of this class. Since, by definition, this class sends
      * output over the network, we need to supply the non-blocking Socket instance
@@ -100,6 +112,19 @@ public class NetworkConnection implements Iterable<Message> {
      *                 communication.
      */
     public NetworkConnection(SocketChannel sockChan) {
+        this(sockChan, false);
+    }
+
+    /**
+     * Creates a new instance of this class. A blocking connection has no selector: its iterator
+     * waits on the channel until a message arrives, which is only sensible on a thread dedicated to
+     * the connection, such as a virtual thread.
+     *
+     * @param sockChan SocketChannel instance to which we will send all communication.
+     * @param blocking true, to wait for data on the channel; false, to poll it without blocking.
+     */
+    public NetworkConnection(SocketChannel sockChan, boolean blocking) {
+        this.blocking = blocking;
         // Create the queue that will hold the messages received from over the network
         messages = new ConcurrentLinkedQueue<>();
         // Allocate the buffer we will use to read data
@@ -108,7 +133,10 @@ public class NetworkConnection implements Iterable<Message> {
         // Set up the SocketChannel over which we will communicate.
         channel = sockChan;
         try {
-            channel.configureBlocking(false);
+            channel.configureBlocking(blocking);
+            if (blocking) {
+                return;
+            }
             // Open the selector to handle our non-blocking I/O
             selector = Selector.open();
             // Register our channel to receive alerts to complete the connection
@@ -130,9 +158,19 @@ public class NetworkConnection implements Iterable<Message> {
      * @return True if we successfully send this message; false otherwise.
      */
     public boolean sendMessage(Message msg) {
+        return sendFrame(msg.toFrame());
+    }
+
+    /**
+     * Send a message that is already encoded over the network, such as a heartbeat
+     * encoded once for all the clients.
+     *
+     * @param frame the bytes of the encoded message
+     * @return True if we successfully send this message; false otherwise.
+     */
+    public boolean sendFrame(byte[] frame) {
         boolean result = true;
-        String str = msg.toString();
-        ByteBuffer wrapper = ByteBuffer.wrap(str.getBytes());
+        ByteBuffer wrapper = ByteBuffer.wrap(frame);
         int bytesWritten = 0;
         int attemptsRemaining = MAXIMUM_TRIES_SENDING;
         while (result && wrapper.hasRemaining() && (attemptsRemaining > 0)) {
@@ -158,7 +196,9 @@ public class NetworkConnection implements Iterable<Message> {
      */
     public void close() {
         try {
-            selector.close();
+            if (selector != null) {
+                selector.close();
+            }
             channel.close();
         } catch (IOException e) {
             ChatLogger.error("Exception occurred - NetworkConnection.java - close() : " + ChatLogger.getTrace(e));
@@ -166,6 +206,83 @@ public class NetworkConnection implements Iterable<Message> {
         }
     }
 
+    /**
+     * Releases the buffer and the selector of an idle connection, which are allocated again by the
+     * next read. A connection holding part of a message, or messages not read yet, is not idle.
+     *
+     * @return boolean  true, if the connection is hibernating now; false otherwise.
+     */
+    public boolean hibernate() {
+        if (blocking || selector == null) {
+            return false;
+        }
+        if (buff.position() != 0 || !messages.isEmpty()) {
+            return false;
+        }
+        try {
+            // Closing the selector also deregisters the channel from it.
+            selector.close();
+        } catch (IOException e) {
+            ChatLogger.error("Exception occurred - NetworkConnection.java - hibernate() : " + ChatLogger.getTrace(e));
+            return false;
+        }
+        selector = null;
+        key = null;
+        buff = null;
+        return true;
+    }
+
+    /**
+     * Whether the buffer and the selector of the connection have been released.
+     *
+     * @return boolean  true, if the connection is hibernating; false otherwise.
+     */
+    public boolean isHibernating() {
+        return !blocking && selector == null;
+    }
+
+    /**
+     * Registers the channel of a hibernating connection with a selector shared by many connections,
+     * which tells when the connection has something to read again.
+     *
+     * @param sharedSelector the shared selector
+     * @param attachment     the object to attach to the selection key
+     * @return SelectionKey  the key of the channel in the shared selector
+     * @throws IOException if the channel cannot be registered
+     */
+    public SelectionKey register(Selector sharedSelector, Object attachment) throws IOException {
+        return channel.register(sharedSelector, SelectionKey.OP_READ, attachment);
+    }
+
+    /**
+     * Allocates the buffer and the selector of a hibernating connection again.
+     *
+     * @throws IOException if the selector cannot be opened
+     */
+    private void rehydrate() throws IOException {
+        buff = ByteBuffer.allocate(BUFFER_SIZE);
+        selector = Selector.open();
+        key = channel.register(selector, SelectionKey.OP_READ);
+    }
+
+    /**
+     * The address of the other end of the connection.
+     *
+     * @return InetAddress  the remote address, or null if the channel is not connected.
+     */
+    public InetAddress getRemoteAddress() {
+        return channel.socket().getInetAddress();
+    }
+
+    /**
+     * Whether the connection can still be read from.
+     *
+     * @return boolean  false, once the connection is closed or the other end has closed it; true otherwise.
+     */
+    public boolean isOpen() {
+        return !endOfStream && channel.isOpen();
+    }
+
     @Override
     public Iterator<Message> iterator() {
         return new MessageIterator();
@@ -188,10 +305,25 @@ public class NetworkConnection implements Iterable<Message> {
         public boolean hasNext() {
             boolean result = false;
             try {
+                // A hibernating connection gets its buffer and selector back on its next read.
+                if (isHibernating()) {
+                    rehydrate();
+                }
                 // If we have messages waiting for us, return true.
                 if (!messages.isEmpty()) {
                     result = true;
                 }
+                // Otherwise, wait until the channel has at least one new message
+                else if (blocking) {
+                    while (messages.isEmpty() && !endOfStream) {
+                        if (channel.read(buff) < 0) {
+                            endOfStream = true;
+                        } else {
+                            decodeMessages();
+                        }
+                    }
+                    result = !messages.isEmpty();
+                }
                 // Otherwise, check if we can read in at least one new message
                 else if (selector.selectNow() != 0) {
                     if (!key.isReadable())
@@ -199,45 +331,7 @@ public class NetworkConnection implements Iterable<Message> {
                     // Read in the next set of commands from the channel.
                     channel.read(buff);
                     selector.selectedKeys().remove(key);
-                    buff.flip();
-                    // Create a decoder which will convert our traffic to something useful
-                    Charset charset = Charset.forName(CHARSET_NAME);
-                    CharsetDecoder decoder = charset.newDecoder();
-                    // Convert the buffer to a format that we can actually use.
-                    CharBuffer charBuffer = decoder.decode(buff);
-                    // get rid of any extra whitespace at the beginning
-                    // Start scanning the buffer for any and all messages.
-                    int start = 0;
-                    // Scan through the entire buffer; check that we have the minimum message size
-                    while ((start + MIN_MESSAGE_LENGTH) <= charBuffer.limit()) {
-                        // If this is not the first message, skip extra space.
-                        if (start != 0) {
-                            charBuffer.position(start);
-                        }
-                        // First read in the handle
-                        String handle = charBuffer.subSequence(0, HANDLE_LENGTH).toString();
-                        // Skip past the handle
-                        charBuffer.position(start + HANDLE_LENGTH + 1);
-                        // Read the first argument containing the sender's name
-                        String sender = readArgument(charBuffer);
-                        // Skip past the leading space
-                        charBuffer.position(charBuffer.position() + 2);
-                        // Read in the second argument containing the message
-                        String message = readArgument(charBuffer);
-                        // Skip past the leading space
-                        charBuffer.position(charBuffer.position() + 2);
-                        // Read in the second argument containing the message
-                        String thirdArg = readArgument(charBuffer);
-                        // Add this message into our queue
-                        Message newMsg = Message.makeMessage(handle, sender, message, thirdArg);
-                        messages.add(newMsg);
-                        // And move the position to the start of the next character
-                        start = charBuffer.position() + 1;
-                    }
-                    // Move any read messages out of the buffer so that we can add to the end.
-                    buff.position(start);
-                    // Move all of the remaining data to the start of the buffer.
-                    buff.compact();
+                    decodeMessages();
                     result = true;
                 }
             } catch (IOException ioe) {
@@ -249,6 +343,54 @@ public class NetworkConnection implements Iterable<Message> {
             return result;
         }
 
+        /**
+         * Decodes the messages read into the buffer, adds them to the queue and keeps any partial
+         * message at the start of the buffer.
+         *
+         * @throws IOException if the buffer does not hold valid text
+         */
+        private void decodeMessages() throws IOException {
+            buff.flip();
+            // Create a decoder which will convert our traffic to something useful
+            Charset charset = Charset.forName(CHARSET_NAME);
+            CharsetDecoder decoder = charset.newDecoder();
+            // Convert the buffer to a format that we can actually use.
+            CharBuffer charBuffer = decoder.decode(buff);
+            // get rid of any extra whitespace at the beginning
+            // Start scanning the buffer for any and all messages.
+            int start = 0;
+            // Scan through the entire buffer; check that we have the minimum message size
+            while ((start + MIN_MESSAGE_LENGTH) <= charBuffer.limit()) {
+                // If this is not the first message, skip extra space.
+                if (start != 0) {
+                    charBuffer.position(start);
+                }
+                // First read in the handle
+                String handle = charBuffer.subSequence(0, HANDLE_LENGTH).toString();
+                // Skip past the handle
+                charBuffer.position(start + HANDLE_LENGTH + 1);
+                // Read the first argument containing the sender's name
+                String sender = readArgument(charBuffer);
+                // Skip past the leading space
+                charBuffer.position(charBuffer.position() + 2);
+                // Read in the second argument containing the message
+                String message = readArgument(charBuffer);
+                // Skip past the leading space
+                charBuffer.position(charBuffer.position() + 2);
+                // Read in the second argument containing the message
+                String thirdArg = readArgument(charBuffer);
+                // Add this message into our queue
+                Message newMsg = Message.makeMessage(handle, sender, message, thirdArg);
+                messages.add(newMsg);
+                // And move the position to the start of the next character
+                start = charBuffer.position() + 1;
+            }
+            // Move any read messages out of the buffer so that we can add to the end.
+            buff.position(start);
+            // Move all of the remaining data to the start of the buffer.
+            buff.compact();
+        }
+
         @Override
         public Message next() {
             if (messages.isEmpty()) {
@@ -67,6 +67,27 @@ public class DBConnection implements IDBConnection {
         return queryProperties;
     }
 
+    /**
+     * Prepares every configured query once, so that the statements are parsed and cached before
+     * the first client needs them. The templated queries, completed by the services before they are
+     * prepared, are left out.
+     *
+     * @return int          the number of statements prepared
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    @Override
+    public int warmUp() throws SQLException {
+        int prepared = 0;
+        for (String name : queryProperties.stringPropertyNames()) {
+            String query = queryProperties.getProperty(name);
+            if (!query.contains("{")) {
+                connection.prepareStatement(query).close();
+                prepared++;
+            }
+        }
+        return prepared;
+    }
+
     private Connection connection;
     private Properties queryProperties;
 
@@ -0,0 +1,257 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.db;
+
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of threads on which independent database calls can be run concurrently.
+ *
+ * The queue of the pool is bounded, and once it is full the call is run on the thread that
+ * submitted it, so that a burst of requests slows its callers down instead of piling up work.
+ * A call submitted from one of the threads of the pool is run on that thread, since waiting for
+ * the pool from within it can wait for ever once every thread of the pool does the same.
+ */
+public class DBExecutor {
+
+    /**
+     * Number of threads that run database calls.
+     */
+    private static final int POOL_SIZE = 8;
+
+    /**
+     * Number of database calls that can wait for a free thread.
+     */
+    private static final int QUEUE_CAPACITY = 256;
+
+    /**
+     * Time after which a database call is given up on.
+     */
+    private static final long TIMEOUT_IN_MS = 10000;
+
+    /**
+     * Weight of the latest call in the average latency, as a power of two: every call moves the
+     * average by 1/8 of its difference with it.
+     */
+    private static final int LATENCY_SMOOTHING_SHIFT = 3;
+
+    private static DBExecutor dbExecutor;
+
+    private ThreadPoolExecutor pool;
+
+    /**
+     * Threads of the pool.
+     */
+    private final ThreadGroup poolThreads = new ThreadGroup("db-executor");
+
+    /**
+     * Single thread that fails the asynchronous calls which exceed their timeout.
+     */
+    private ScheduledExecutorService timeouts;
+
+    /**
+     * Moving average of the time the calls run on the pool take, in microseconds.
+     */
+    private final AtomicLong averageLatencyInMicros = new AtomicLong();
+
+    /**
+     * Instantiates the pool of the executor.
+     */
+    private DBExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        pool = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                r -> {
+                    Thread thread = new Thread(poolThreads, r, "db-executor-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        // the calls that wait for room in the queue are put in it directly, and rely on the threads being there
+        pool.prestartAllCoreThreads();
+        timeouts = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "db-executor-timeouts");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Get the singleton instance of the DBExecutor
+     *
+     * @return DBExecutor   the singleton instance of this class
+     */
+    public static synchronized DBExecutor getInstance() {
+        if (dbExecutor == null) {
+            dbExecutor = new DBExecutor();
+        }
+        return dbExecutor;
+    }
+
+    /**
+     * Submits a database call to the pool.
+     *
+     * @param task the database call
+     * @param <T>  the type of the result of the call
+     * @return Future       the pending result of the call
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        if (isPoolThread()) {
+            FutureTask<T> future = new FutureTask<>(task);
+            future.run();
+            return future;
+        }
+        return pool.submit(() -> timed(task));
+    }
+
+    /**
+     * Runs a database call on the pool and waits for its result. Unlike {@link #submit(Callable)},
+     * a caller that finds the queue of the pool full waits for room in it, instead of running the
+     * call itself, so that callers that can wait cheaply, like virtual threads, never run more
+     * database calls at once than the pool does.
+     *
+     * @param task the database call
+     * @param <T>  the type of the result of the call
+     * @return T            the result of the call
+     * @throws SQLException the sql exception thrown by the call, or if it failed, timed out or found
+     *                      no room in the queue in time
+     */
+    public <T> T call(Callable<T> task) throws SQLException {
+        if (isPoolThread()) {
+            return await(submit(task));
+        }
+        FutureTask<T> future = new FutureTask<>(() -> timed(task));
+        try {
+            if (!pool.getQueue().offer(future, TIMEOUT_IN_MS, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("No room for the database call after " + TIMEOUT_IN_MS + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(e);
+        }
+        return await(future);
+    }
+
+    /**
+     * Runs a database call asynchronously, with the default timeout.
+     *
+     * @param call the database call
+     * @param <T>  the type of the result of the call
+     * @return CompletableFuture    the result of the call, completed exceptionally with the exception
+     * thrown by the call or with a TimeoutException
+     */
+    public <T> CompletableFuture<T> supplyAsync(Callable<T> call) {
+        return supplyAsync(call, TIMEOUT_IN_MS);
+    }
+
+    /**
+     * Runs a database call asynchronously. If the call does not complete within the timeout, the
+     * returned future is completed with a TimeoutException and the call is interrupted.
+     *
+     * @param call        the database call
+     * @param timeoutInMs the time after which the call is given up on
+     * @param <T>         the type of the result of the call
+     * @return CompletableFuture    the result of the call, completed exceptionally with the exception
+     * thrown by the call or with a TimeoutException
+     */
+    public <T> CompletableFuture<T> supplyAsync(Callable<T> call, long timeoutInMs) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task = pool.submit(() -> {
+            try {
+                result.complete(timed(call));
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        if (!result.isDone()) {
+            ScheduledFuture<?> timeout = timeouts.schedule(() -> {
+                if (result.completeExceptionally(new TimeoutException("Database call timed out after "
+                        + timeoutInMs + " ms"))) {
+                    task.cancel(true);
+                }
+            }, timeoutInMs, TimeUnit.MILLISECONDS);
+            result.whenComplete((value, e) -> timeout.cancel(false));
+        }
+        return result;
+    }
+
+    /**
+     * @return the moving average of the time the database calls take, in milliseconds
+     */
+    public long getAverageLatencyInMs() {
+        return averageLatencyInMicros.get() / 1000;
+    }
+
+    /**
+     * @return the number of database calls waiting for a free thread
+     */
+    public int getQueueDepth() {
+        return pool.getQueue().size();
+    }
+
+    /**
+     * @return true, if the calling thread is one of the threads of the pool
+     */
+    private boolean isPoolThread() {
+        return Thread.currentThread().getThreadGroup() == poolThreads;
+    }
+
+    /**
+     * Runs a database call, and adds the time it took to the average latency.
+     */
+    private <T> T timed(Callable<T> call) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return call.call();
+        } finally {
+            long latency = (System.nanoTime() - start) / 1000;
+            averageLatencyInMicros.accumulateAndGet(latency,
+                    (average, sample) -> average + ((sample - average) >> LATENCY_SMOOTHING_SHIFT));
+        }
+    }
+
+    /**
+     * Waits for the result of a database call submitted to the pool. A failure of the call is
+     * rethrown as an SQLException, so that callers can handle it like a direct call.
+     *
+     * @param future the pending result of the call
+     * @param <T>    the type of the result of the call
+     * @return T            the result of the call
+     * @throws SQLException the sql exception thrown by the call, or if it failed or timed out
+     */
+    public static <T> T await(Future<T> future) throws SQLException {
+        try {
+            return future.get(TIMEOUT_IN_MS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException(e.getCause());
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new SQLException("Database call timed out", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(e);
+        }
+    }
+}
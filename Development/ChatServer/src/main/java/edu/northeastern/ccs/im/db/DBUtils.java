@@ -34,6 +34,8 @@ public class DBUtils {
                 stmt.setString(i++, (String) arg);
             else if (arg instanceof Integer)
                 stmt.setInt(i++, (int) arg);
+            else if (arg instanceof Long)
+                stmt.setLong(i++, (long) arg);
             else if (arg instanceof Timestamp)
                 stmt.setTimestamp(i++, (Timestamp) arg);
             else if (arg instanceof Boolean)
@@ -34,4 +34,13 @@ public interface IDBConnection {
      */
     Properties getQueryProperties();
 
+    /**
+     * Prepares every configured query once, so that the statements are parsed and cached before
+     * the first client needs them.
+     *
+     * @return int          the number of statements prepared
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    int warmUp() throws SQLException;
+
 }
@@ -22,6 +22,8 @@ public class ConversationalMessage {
     private Timestamp messageTimeStamp;
     private String messageUniquekey;
     private String groupUniqueKey;
+    private long sequence;
+    private long groupSequence;
 
     /**
      * @param sourceName       to have the username of the sender
@@ -92,6 +94,38 @@ public class ConversationalMessage {
         return messageTimeStamp;
     }
 
+    /**
+     * @return the sequence number of the message among the messages of its receiver, or 0 if it has none
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Sets the sequence number of the message among the messages of its receiver.
+     *
+     * @param sequence the sequence number
+     */
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * @return the sequence number of the message among the messages of its group, or 0 if it has none
+     */
+    public long getGroupSequence() {
+        return groupSequence;
+    }
+
+    /**
+     * Sets the sequence number of the message among the messages of its group.
+     *
+     * @param groupSequence the group sequence number
+     */
+    public void setGroupSequence(long groupSequence) {
+        this.groupSequence = groupSequence;
+    }
+
     /**
      * @return the string representation of the msg
      */
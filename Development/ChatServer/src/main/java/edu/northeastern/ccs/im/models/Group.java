@@ -14,6 +14,7 @@ import java.util.Set;
 import edu.northeastern.ccs.im.ChatLogger;
 import edu.northeastern.ccs.im.Message;
 import edu.northeastern.ccs.im.services.ConversationalMessageService;
+import edu.northeastern.ccs.im.services.SequenceLock;
 
 /**
  * The Group class depicts the concept of a group.
@@ -139,12 +140,55 @@ public class Group {
     }
 
     /**
-     * Send message to members of this group
+     * Makes a copy of this group, with copies of its member users and, recursively, of its member groups,
+     * so that the caller may change it without changing the groups handed to other callers.
      *
-     * @param msg the message to be sent
+     * @return Group    the copy of this group
+     */
+    public Group copy() {
+        Group g = new Group();
+        g.setGroupName(this.groupName);
+        g.setModeratorName(this.moderatorName);
+        for (User u : this.memberUsers) {
+            User user = new User(u.getFirstName(), u.getLastName(), u.getUserName(), u.getUserPassword(),
+                    u.isLoggedIn());
+            user.setSearchable(u.isSearchable());
+            user.setTapped(u.isTapped());
+            g.getMemberUsers().add(user);
+        }
+        for (Group group : this.memberGroups) {
+            g.getMemberGroups().add(group.copy());
+        }
+        return g;
+    }
+
+    /**
+     * Send message to members of this group. The message takes the next sequence number of the
+     * messages of this group first, and carries it to the members of the member groups, so that
+     * all the members get the same number. The number is taken, and the message stored for all the
+     * members, under the lock of the group, so that the messages of the group are stored in the
+     * order of their numbers. The number is kept once a copy of the message carries it.
+     *
+     * @param msg            the message to be sent
+     * @param uniqueGroupKey the unique key of the group message
      * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
      */
     public void groupSendMessage(Message msg, String uniqueGroupKey) throws SQLException {
+        try (SequenceLock lock = SequenceLock.forGroup(cms, this.groupName)) {
+            msg.setGroupSequence(lock.next(this.groupName));
+            groupDeliverMessage(msg, uniqueGroupKey, lock);
+        }
+    }
+
+    /**
+     * Deliver the numbered message to members of this group and of its member groups.
+     *
+     * @param msg            the message to be sent
+     * @param uniqueGroupKey the unique key of the group message
+     * @param lock           the lock of the group the message was sent to
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    private void groupDeliverMessage(Message msg, String uniqueGroupKey, SequenceLock lock) throws SQLException {
         // send message to member users
         for (User u : this.memberUsers) {
             // a user can also be a part of a group at a higher level in the hierarchy. Do not send the message again
@@ -152,12 +196,14 @@ public class Group {
                 msg.addUserToRecipients(u);
                 String uniqueMessageKey = u.userSendMessage(msg);
                 // add the uniqueMsgKey and the UniqueGroupKey to the new table
-                cms.insertGroupConversationalMessage(uniqueGroupKey, uniqueMessageKey);
+                cms.insertGroupConversationalMessage(uniqueGroupKey, uniqueMessageKey, msg.getReceiverOrPassword(),
+                        msg.getGroupSequence());
+                lock.commit();
             }
         }
         // send message to member groups
         for (Group g : this.memberGroups) {
-            g.groupSendMessage(msg, uniqueGroupKey);
+            g.groupDeliverMessage(msg, uniqueGroupKey, lock);
         }
     }
 
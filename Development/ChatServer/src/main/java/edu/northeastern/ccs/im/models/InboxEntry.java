@@ -0,0 +1,250 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.models;
+
+import java.sql.Timestamp;
+import java.util.Objects;
+
+/**
+ * Class to store the summary of a single conversation in a user's inbox: the last message exchanged
+ * and the number of messages that have not yet been delivered to the user.
+ *
+ * All the mutators are synchronized as the same entry is updated from the threads of the sender,
+ * the receiver and the periodic flush.
+ */
+public class InboxEntry {
+
+    private String owner;
+    private String conversation;
+    private boolean groupConversation;
+    private String lastSender;
+    private String lastMessageText;
+    private String lastMessageKey;
+    private Timestamp lastMessageTimestamp;
+    private int unreadCount;
+    private boolean dirty;
+
+    /**
+     * @param owner             to have the username of the user whose inbox this entry belongs to
+     * @param conversation      to have the username or the group name on the other side of the conversation
+     * @param groupConversation to mark if the conversation is a group conversation
+     */
+    public InboxEntry(String owner, String conversation, boolean groupConversation) {
+        this.owner = owner;
+        this.conversation = conversation;
+        this.groupConversation = groupConversation;
+        this.unreadCount = 0;
+        this.dirty = false;
+    }
+
+    /**
+     * Records a new message in this conversation.
+     *
+     * @param sender    the username of the sender of the message
+     * @param text      the text of the message
+     * @param key       the unique key of the message
+     * @param timestamp the time at which the message was stored
+     * @param unread    true, if the message was not delivered to the owner right away
+     */
+    public synchronized void recordMessage(String sender, String text, String key, Timestamp timestamp,
+                                           boolean unread) {
+        if (lastMessageTimestamp == null || !timestamp.before(lastMessageTimestamp)) {
+            lastSender = sender;
+            lastMessageText = text;
+            lastMessageKey = key;
+            lastMessageTimestamp = timestamp;
+        }
+        if (unread) {
+            unreadCount++;
+        }
+        dirty = true;
+    }
+
+    /**
+     * Records that all the pending messages of this conversation were delivered to the owner.
+     */
+    public synchronized void clearUnread() {
+        if (unreadCount != 0) {
+            unreadCount = 0;
+            dirty = true;
+        }
+    }
+
+    /**
+     * Records that a message of this conversation was deleted by its sender. The count may go below
+     * zero while the persisted summary has not been merged in yet.
+     *
+     * @param key    the unique key of the deleted message
+     * @param unread true, if the deleted message was still counted as unread
+     */
+    public synchronized void recordDeletion(String key, boolean unread) {
+        if (unread) {
+            unreadCount--;
+        }
+        if (key.equals(lastMessageKey)) {
+            lastMessageText = "(message deleted)";
+        }
+        dirty = true;
+    }
+
+    /**
+     * Merges the summary loaded from the database into this entry. The counters of this entry are
+     * treated as deltas over the persisted ones, and the newer of the two last messages is kept.
+     *
+     * @param persisted the entry that was loaded from the database
+     */
+    public synchronized void mergePersisted(InboxEntry persisted) {
+        unreadCount = Math.max(0, unreadCount + persisted.getUnreadCount());
+        if (lastMessageTimestamp == null || (persisted.getLastMessageTimestamp() != null
+                && persisted.getLastMessageTimestamp().after(lastMessageTimestamp))) {
+            lastSender = persisted.getLastSender();
+            lastMessageText = persisted.getLastMessageText();
+            lastMessageKey = persisted.getLastMessageKey();
+            lastMessageTimestamp = persisted.getLastMessageTimestamp();
+        }
+        dirty = true;
+    }
+
+    /**
+     * Marks the entry as persisted, if it was not changed since the given snapshot was taken.
+     *
+     * @param snapshot the copy of this entry that was written to the database
+     */
+    public synchronized void markPersisted(InboxEntry snapshot) {
+        if (snapshot.getUnreadCount() == Math.max(0, unreadCount)
+                && Objects.equals(snapshot.getLastMessageKey(), lastMessageKey)
+                && Objects.equals(snapshot.getLastMessageText(), lastMessageText)) {
+            dirty = false;
+        }
+    }
+
+    /**
+     * Takes a consistent copy of this entry, so that it can be formatted or persisted without
+     * holding the lock of the entry.
+     *
+     * @return InboxEntry    a copy of this entry
+     */
+    public synchronized InboxEntry snapshot() {
+        InboxEntry copy = new InboxEntry(owner, conversation, groupConversation);
+        copy.setLastMessage(lastSender, lastMessageText, lastMessageKey, lastMessageTimestamp);
+        copy.setUnreadCount(Math.max(0, unreadCount));
+        return copy;
+    }
+
+    /**
+     * Creates a copy of this entry holding the counters as they are, without clamping the unread count,
+     * so that the copy can be added to the persisted summary.
+     *
+     * @return InboxEntry    a copy of this entry
+     */
+    public synchronized InboxEntry deltaSnapshot() {
+        InboxEntry copy = new InboxEntry(owner, conversation, groupConversation);
+        copy.setLastMessage(lastSender, lastMessageText, lastMessageKey, lastMessageTimestamp);
+        copy.setUnreadCount(unreadCount);
+        return copy;
+    }
+
+    /**
+     * Takes the given delta, which was added to the persisted summary, out of the counters of this entry.
+     * The entry stays dirty if it changed after the delta was taken.
+     *
+     * @param delta the delta copy that was written
+     */
+    public synchronized void markDeltaPersisted(InboxEntry delta) {
+        unreadCount -= delta.getUnreadCount();
+        if (unreadCount == 0 && Objects.equals(delta.getLastMessageKey(), lastMessageKey)
+                && Objects.equals(delta.getLastMessageText(), lastMessageText)) {
+            dirty = false;
+        }
+    }
+
+    /**
+     * Sets the last message of this conversation.
+     *
+     * @param sender    the username of the sender of the message
+     * @param text      the text of the message
+     * @param key       the unique key of the message
+     * @param timestamp the time at which the message was stored
+     */
+    public synchronized void setLastMessage(String sender, String text, String key, Timestamp timestamp) {
+        this.lastSender = sender;
+        this.lastMessageText = text;
+        this.lastMessageKey = key;
+        this.lastMessageTimestamp = timestamp;
+    }
+
+    /**
+     * @param unreadCount the number of unread messages in this conversation
+     */
+    public synchronized void setUnreadCount(int unreadCount) {
+        this.unreadCount = unreadCount;
+    }
+
+    /**
+     * @return username of the user whose inbox this entry belongs to
+     */
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * @return username or group name on the other side of the conversation
+     */
+    public String getConversation() {
+        return conversation;
+    }
+
+    /**
+     * @return boolean      true, if the conversation is a group conversation
+     */
+    public boolean isGroupConversation() {
+        return groupConversation;
+    }
+
+    /**
+     * @return username of the sender of the last message
+     */
+    public synchronized String getLastSender() {
+        return lastSender;
+    }
+
+    /**
+     * @return text of the last message
+     */
+    public synchronized String getLastMessageText() {
+        return lastMessageText;
+    }
+
+    /**
+     * @return unique key of the last message
+     */
+    public synchronized String getLastMessageKey() {
+        return lastMessageKey;
+    }
+
+    /**
+     * @return timestamp of the last message
+     */
+    public synchronized Timestamp getLastMessageTimestamp() {
+        return lastMessageTimestamp;
+    }
+
+    /**
+     * @return number of messages of this conversation not yet delivered to the owner
+     */
+    public synchronized int getUnreadCount() {
+        return unreadCount;
+    }
+
+    /**
+     * @return boolean      true, if the entry changed since it was last persisted
+     */
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+}
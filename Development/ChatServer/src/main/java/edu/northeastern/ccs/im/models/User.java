@@ -11,9 +11,12 @@ import edu.northeastern.ccs.im.ChatLogger;
 import edu.northeastern.ccs.im.Message;
 import edu.northeastern.ccs.im.server.ClientRunnable;
 import edu.northeastern.ccs.im.services.ConversationalMessageService;
+import edu.northeastern.ccs.im.services.InboxService;
+import edu.northeastern.ccs.im.services.SequenceLock;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.Collections;
 
 /**
  * Class for User object with its data members
@@ -28,6 +31,7 @@ public class User {
     private String userPassword;
     private boolean loggedIn;
     private static ConversationalMessageService cms;
+    private static InboxService inboxService = InboxService.getInstance();
     private boolean searchable;
     private boolean isTapped;
 
@@ -175,7 +179,9 @@ public class User {
     /**
      * Send the received message to the user who is supposed to receive it. This method will
      * first check if the user is online by checking if there is a ClientRunnable present for
-     * this instance and then enqueue the message if present accordingly.
+     * this instance and then enqueue the message if present accordingly. The message is stored as
+     * not sent either way, and marked sent once it is delivered to a device of the user. It gets the
+     * next sequence number of the messages of the user, with which the devices of the user catch up.
      *
      * @param msg The message to be sent to this user
      * @return String       the unique key of the message sent
@@ -185,30 +191,96 @@ public class User {
         String src = msg.getName();
         String msgText = msg.getTextOrPassword();
         clientRunnable = ClientRunnable.getClientByUsername(this.getUserName());
+        long sequence;
+        String uniqueKey;
+        try (SequenceLock lock = SequenceLock.forUsers(cms, Collections.singleton(this.getUserName()))) {
+            sequence = lock.next(this.getUserName());
+            uniqueKey = cms.insertConversationalMessage(src, this.getUserName(), msgText, false, sequence);
+            lock.commit();
+        }
         if (clientRunnable != null && clientRunnable.isInitialized()) {
-            String uniqueKey = cms.insertConversationalMessage(src, this.getUserName(), msgText, true);
-            enqueueMessageToUser(msg, uniqueKey);
+            updateInboxes(msg, uniqueKey, true);
+            enqueueMessageToUser(msg, uniqueKey, sequence);
             return uniqueKey;
         }
 
-        return cms.insertConversationalMessage(src, this.getUserName(), msgText, false);
+        updateInboxes(msg, uniqueKey, false);
+        return uniqueKey;
+    }
+
+    /**
+     * Update the inbox summary of this user, and of the sender in case of a private conversation,
+     * after the given message was stored.
+     *
+     * @param msg       the message that was stored for this user
+     * @param uniqueKey the unique key of the stored message
+     * @param delivered true, if the message was handed to this user right away
+     */
+    private void updateInboxes(Message msg, String uniqueKey, boolean delivered) {
+        if (msg.isGroupMessage()) {
+            inboxService.messageStored(this.getUserName(), msg.getReceiverOrPassword(), true,
+                    msg.getName(), msg.getTextOrPassword(), uniqueKey, delivered);
+        } else {
+            inboxService.messageStored(this.getUserName(), msg.getName(), false,
+                    msg.getName(), msg.getTextOrPassword(), uniqueKey, delivered);
+            if (msg.isPrivateUserMessage() || msg.isPrivateReplyMessage()) {
+                inboxService.messageStored(msg.getName(), this.getUserName(), false,
+                        msg.getName(), msg.getTextOrPassword(), uniqueKey, true);
+            }
+        }
     }
 
     /**
-     * Enqueue message to user depending on the type of the message when the user is logged in.
+     * Enqueue message to every connected device of the user depending on the type of the message
+     * when the user is logged in. The same message goes to all the devices, so that it is encoded
+     * only once.
      *
      * @param msg       the message object
      * @param uniqueKey the unique key of the message
      */
     public void enqueueMessageToUser(Message msg, String uniqueKey) {
-        clientRunnable = ClientRunnable.getClientByUsername(this.getUserName());
+        enqueueMessageToUser(msg, uniqueKey, 0);
+    }
+
+    /**
+     * Enqueue message to every connected device of the user, with its sequence number among the
+     * messages of the user.
+     *
+     * @param msg       the message object
+     * @param uniqueKey the unique key of the message
+     * @param sequence  the sequence number of the message, or 0 if it has none
+     */
+    public void enqueueMessageToUser(Message msg, String uniqueKey, long sequence) {
+        Message keyedMsg = makeKeyedMessage(msg, uniqueKey, sequence);
+        for (ClientRunnable device : ClientRunnable.getDevicesByUsername(this.getUserName())) {
+            device.enqueueMessage(keyedMsg);
+        }
+    }
+
+    /**
+     * Makes the message delivering a stored message, telling its message key and, if it has one, its
+     * sequence number. A group message also tells its sequence number among the messages of its
+     * group, with which the members see the messages of the group in the same order and notice the
+     * ones they missed.
+     *
+     * @param msg       the message object
+     * @param uniqueKey the unique key of the message
+     * @param sequence  the sequence number of the message, or 0 if it has none
+     * @return Message      the message to be sent
+     */
+    public static Message makeKeyedMessage(Message msg, String uniqueKey, long sequence) {
+        String keyLine = "MessageKey of above message is : " + uniqueKey;
+        if (sequence > 0) {
+            keyLine += System.lineSeparator() + "Sequence of above message is : " + sequence;
+        }
+        if (msg.getGroupSequence() > 0) {
+            keyLine += System.lineSeparator() + "Group sequence of above message is : " + msg.getGroupSequence();
+        }
         if (msg.isGroupMessage()) {
-            clientRunnable.enqueueMessage(Message.addUniqueKeyToMsg(msg, "Sent on group: " + msg.getReceiverOrPassword() + ": \n" + msg.getTextOrPassword() +
-                    System.lineSeparator() + "MessageKey of above message is : " + uniqueKey + System.lineSeparator()));
-        } else {
-            clientRunnable.enqueueMessage(Message.addUniqueKeyToMsg(msg, msg.getTextOrPassword() +
-                    System.lineSeparator() + "MessageKey of above message is : " + uniqueKey));
+            return Message.addUniqueKeyToMsg(msg, "Sent on group: " + msg.getReceiverOrPassword() + ": \n" + msg.getTextOrPassword() +
+                    System.lineSeparator() + keyLine + System.lineSeparator(), uniqueKey);
         }
+        return Message.addUniqueKeyToMsg(msg, msg.getTextOrPassword() + System.lineSeparator() + keyLine, uniqueKey);
     }
 
 
@@ -0,0 +1,207 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.northeastern.ccs.im.ChatLogger;
+
+/**
+ * Actor-style executor: every key (a user, a group) has its own mailbox of tasks, and a mailbox is
+ * drained by at most one worker at a time. The tasks of a key therefore run one after the other in
+ * the order they were submitted, while the mailboxes of different keys run in parallel on the
+ * shared pool of workers.
+ *
+ * A worker handles a limited batch of tasks from a mailbox before putting the mailbox back at the
+ * end of the pool's queue, so that a busy key cannot starve the others. A mailbox is dropped once a
+ * worker has emptied it, so that the keys that are gone, like the clients that disconnected, are
+ * not kept, and is made again by the next task of its key.
+ */
+public class ActorExecutor {
+
+    /**
+     * A task run from a mailbox.
+     */
+    @FunctionalInterface
+    public interface Task {
+        /**
+         * Runs the task.
+         *
+         * @throws Exception any exception, which is logged by the executor
+         */
+        void run() throws Exception;
+    }
+
+    /**
+     * Maximum number of tasks run from a mailbox before the worker moves on to another mailbox.
+     */
+    private static final int BATCH_SIZE = 32;
+
+    private final String name;
+    private final ExecutorService workers;
+    private final Map<Object, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile int maxMailboxDepth;
+
+    /**
+     * Creates an executor.
+     *
+     * @param name    the name of the executor, used for the threads and the metrics
+     * @param threads the number of worker threads shared by all the mailboxes
+     */
+    public ActorExecutor(String name, int threads) {
+        this.name = name;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, name + "-actor-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Submits a task to the mailbox of a key.
+     *
+     * @param key  the key whose tasks must run in order, one at a time
+     * @param task the task
+     */
+    public void submit(Object key, Task task) {
+        // the task is added while the mailbox is locked in the map, so that it cannot be dropped meanwhile
+        Mailbox mailbox = mailboxes.compute(key, (k, existing) -> {
+            Mailbox m = existing == null ? new Mailbox(k) : existing;
+            m.tasks.add(task);
+            m.depth.incrementAndGet();
+            return m;
+        });
+        int depth = mailbox.depth.get();
+        if (depth > maxMailboxDepth) {
+            maxMailboxDepth = depth;
+        }
+        mailbox.schedule();
+    }
+
+    /**
+     * Stops the workers once the tasks already submitted have run.
+     */
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    /**
+     * @return the name of the executor
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of keys that have a mailbox, with tasks waiting or running
+     */
+    public int getMailboxCount() {
+        return mailboxes.size();
+    }
+
+    /**
+     * @return the number of tasks waiting in all the mailboxes
+     */
+    public int getPendingCount() {
+        int pending = 0;
+        for (Mailbox mailbox : mailboxes.values()) {
+            pending += mailbox.depth.get();
+        }
+        return pending;
+    }
+
+    /**
+     * @return the largest number of tasks seen waiting in one mailbox
+     */
+    public int getMaxMailboxDepth() {
+        return maxMailboxDepth;
+    }
+
+    /**
+     * @return the number of tasks that ran
+     */
+    public long getProcessedCount() {
+        return processed.get();
+    }
+
+    /**
+     * @return the number of tasks that threw an exception
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * @return the metrics of the executor, in a form that can be logged
+     */
+    @Override
+    public String toString() {
+        return name + "[mailboxes=" + getMailboxCount() + ", pending=" + getPendingCount() + ", maxDepth="
+                + maxMailboxDepth + ", processed=" + processed.get() + ", failed=" + failed.get() + "]";
+    }
+
+    /**
+     * The tasks of one key, and whether a worker is draining them.
+     */
+    private class Mailbox implements Runnable {
+        private final Object key;
+        private final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger depth = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Mailbox(Object key) {
+            this.key = key;
+        }
+
+        /**
+         * Hands the mailbox to a worker, unless one already has it.
+         */
+        private void schedule() {
+            if (!tasks.isEmpty() && scheduled.compareAndSet(false, true)) {
+                workers.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                Task task = tasks.poll();
+                if (task == null) {
+                    break;
+                }
+                depth.decrementAndGet();
+                try {
+                    task.run();
+                    processed.incrementAndGet();
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    ChatLogger.error("Exception occurred - ActorExecutor.java - " + name + " : "
+                            + ChatLogger.getTrace(e));
+                }
+            }
+            // Release the mailbox, drop it if it is empty, and take it again if tasks arrived in the meantime.
+            scheduled.set(false);
+            mailboxes.computeIfPresent(key, (k, m) -> m == this && tasks.isEmpty() ? null : m);
+            schedule();
+        }
+    }
+}
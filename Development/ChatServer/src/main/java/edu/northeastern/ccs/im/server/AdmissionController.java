@@ -0,0 +1,267 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+import edu.northeastern.ccs.im.Message;
+import edu.northeastern.ccs.im.NetworkConnection;
+
+/**
+ * Decides which of the accepted connections the server takes on. The server keeps no more than a
+ * maximum number of connections, and takes new ones on no faster than a maximum rate: a connection
+ * arriving faster waits in a bounded queue, from which it is taken on as the rate allows, and is
+ * refused if it waits too long. While one of the load signals the server watches, such as the
+ * latency of the database or the depth of its queues, is over its threshold, new connections are
+ * refused right away, so that a reconnect storm cannot pile more work on a server already behind.
+ *
+ * A refused connection is sent a BSY message, with the reason and the time to wait before
+ * connecting again, and closed.
+ */
+class AdmissionController {
+
+    /**
+     * A load signal, and the value over which the server is overloaded.
+     */
+    private static class Signal {
+        private final String name;
+        private final LongSupplier value;
+        private final long threshold;
+
+        Signal(String name, LongSupplier value, long threshold) {
+            this.name = name;
+            this.value = value;
+            this.threshold = threshold;
+        }
+    }
+
+    /**
+     * A connection waiting to be taken on, and when it arrived.
+     */
+    private static class Waiting {
+        private final NetworkConnection connection;
+        private final long arrivedAt;
+
+        Waiting(NetworkConnection connection, long arrivedAt) {
+            this.connection = connection;
+            this.arrivedAt = arrivedAt;
+        }
+    }
+
+    private static final long MILLI = 1000;
+
+    private final int maxConnections;
+    private final long acceptsPerSecond;
+    private final int maxWaiting;
+    private final long maxWaitInMs;
+    private final IntSupplier connections;
+    private final LongSupplier clock;
+    private final List<Signal> signals = new CopyOnWriteArrayList<>();
+    private final Deque<Waiting> waiting = new ArrayDeque<>();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+
+    /**
+     * The tokens left for taking on connections, in thousandths, and when they were last refilled.
+     */
+    private long milliTokens;
+    private long refilledAt;
+
+    /**
+     * Why the server is overloaded, as of the last check of the signals, or null if it is not.
+     */
+    private volatile String overload;
+
+    /**
+     * Creates a controller with the limits of the server.
+     *
+     * @param connections the number of connections the server has
+     */
+    AdmissionController(IntSupplier connections) {
+        this(ServerConstants.MAX_CONNECTIONS, ServerConstants.ADMISSION_ACCEPTS_PER_SECOND,
+                ServerConstants.ADMISSION_MAX_WAITING, ServerConstants.ADMISSION_MAX_WAIT_IN_MS, connections,
+                System::currentTimeMillis);
+    }
+
+    /**
+     * Creates a controller.
+     *
+     * @param maxConnections   the number of connections over which new ones are refused
+     * @param acceptsPerSecond the number of connections taken on per second, and in a burst
+     * @param maxWaiting       the number of connections that may wait to be taken on
+     * @param maxWaitInMs      the time after which a waiting connection is refused
+     * @param connections      the number of connections the server has
+     * @param clock            the current time in milliseconds
+     */
+    AdmissionController(int maxConnections, int acceptsPerSecond, int maxWaiting, long maxWaitInMs,
+                        IntSupplier connections, LongSupplier clock) {
+        this.maxConnections = maxConnections;
+        this.acceptsPerSecond = acceptsPerSecond;
+        this.maxWaiting = maxWaiting;
+        this.maxWaitInMs = maxWaitInMs;
+        this.connections = connections;
+        this.clock = clock;
+        this.milliTokens = acceptsPerSecond * MILLI;
+        this.refilledAt = clock.getAsLong();
+    }
+
+    /**
+     * Adds a load signal, over which new connections are refused.
+     *
+     * @param name      the name of the signal, given as the reason of the refusals
+     * @param value     the current value of the signal
+     * @param threshold the value over which the server is overloaded
+     */
+    void watch(String name, LongSupplier value, long threshold) {
+        signals.add(new Signal(name, value, threshold));
+    }
+
+    /**
+     * Decides what to do with a connection that was just accepted. It is either taken on right
+     * away, queued until the rate allows it, or refused.
+     *
+     * @param connection the accepted connection
+     * @return true if the connection is taken on and should be started by the caller, false if it
+     * was queued or refused
+     */
+    boolean offer(NetworkConnection connection) {
+        String reason = overload;
+        synchronized (this) {
+            if (reason == null) {
+                if (connections.getAsInt() + waiting.size() >= maxConnections) {
+                    reason = "Too many connections";
+                } else if (waiting.isEmpty() && takeToken()) {
+                    accepted.incrementAndGet();
+                    return true;
+                } else if (waiting.size() < maxWaiting) {
+                    waiting.add(new Waiting(connection, clock.getAsLong()));
+                    queued.incrementAndGet();
+                    return false;
+                } else {
+                    reason = "Too many connections waiting";
+                }
+            }
+        }
+        reject(connection, reason);
+        return false;
+    }
+
+    /**
+     * Checks the load signals, refuses the connections that waited too long, and takes on as many
+     * of the others as the rate allows while the server is not overloaded.
+     *
+     * @param start starts a connection that is taken on
+     */
+    void drain(Consumer<NetworkConnection> start) {
+        overload = checkSignals();
+        List<NetworkConnection> expired = new ArrayList<>();
+        List<NetworkConnection> admitted = new ArrayList<>();
+        synchronized (this) {
+            long now = clock.getAsLong();
+            while (!waiting.isEmpty() && now - waiting.peek().arrivedAt >= maxWaitInMs) {
+                expired.add(waiting.poll().connection);
+            }
+            while (overload == null && !waiting.isEmpty() && connections.getAsInt() < maxConnections
+                    && takeToken()) {
+                admitted.add(waiting.poll().connection);
+                accepted.incrementAndGet();
+            }
+        }
+        for (NetworkConnection connection : expired) {
+            reject(connection, "Timed out waiting");
+        }
+        for (NetworkConnection connection : admitted) {
+            start.accept(connection);
+        }
+    }
+
+    /**
+     * @return the number of connections taken on
+     */
+    long getAcceptedCount() {
+        return accepted.get();
+    }
+
+    /**
+     * @return the number of connections refused
+     */
+    long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @return the number of connections that had to wait to be taken on
+     */
+    long getQueuedCount() {
+        return queued.get();
+    }
+
+    /**
+     * @return the number of connections waiting to be taken on
+     */
+    synchronized int getWaitingCount() {
+        return waiting.size();
+    }
+
+    /**
+     * @return the metrics of the controller, in a form that can be logged
+     */
+    @Override
+    public String toString() {
+        String reason = overload;
+        return "AdmissionController[accepted=" + accepted.get() + ", rejected=" + rejected.get() + ", queued="
+                + queued.get() + ", waiting=" + getWaitingCount() + (reason == null ? "" : ", overload=" + reason)
+                + "]";
+    }
+
+    /**
+     * @return why the server is overloaded, or null if none of the signals is over its threshold
+     */
+    private String checkSignals() {
+        for (Signal signal : signals) {
+            long value = signal.value.getAsLong();
+            if (value > signal.threshold) {
+                return signal.name + " " + value + " over " + signal.threshold;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Refills the tokens for the time gone by, and takes one if there is one.
+     */
+    private boolean takeToken() {
+        long now = clock.getAsLong();
+        milliTokens = Math.min(acceptsPerSecond * MILLI, milliTokens + (now - refilledAt) * acceptsPerSecond);
+        refilledAt = now;
+        if (milliTokens < MILLI) {
+            return false;
+        }
+        milliTokens -= MILLI;
+        return true;
+    }
+
+    /**
+     * Tells a connection why it is refused, and closes it.
+     */
+    private void reject(NetworkConnection connection, String reason) {
+        rejected.incrementAndGet();
+        connection.sendMessage(Message.makeServerBusyMessage(ServerConstants.SERVER_NAME, reason,
+                Integer.toString(ServerConstants.ADMISSION_RETRY_AFTER_IN_MS)));
+        connection.close();
+    }
+}
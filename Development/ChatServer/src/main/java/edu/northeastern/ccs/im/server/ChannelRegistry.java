@@ -0,0 +1,253 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.northeastern.ccs.im.Message;
+
+/**
+ * Keeps the subscribers of the channels messages are published on. The subscribers of a channel
+ * are held in an array that is copied whenever a client subscribes or unsubscribes, so that a
+ * message is published by encoding it once and walking the array it finds, without a lock, to
+ * the subscribers only.
+ *
+ * The broadcast messages are published on the global channel, to which every client is subscribed
+ * when it connects. The other channels exist while they have subscribers, and keep the last
+ * messages published on them, which a client subscribing late is sent to catch up.
+ */
+class ChannelRegistry {
+
+    private static final ClientRunnable[] NO_SUBSCRIBERS = new ClientRunnable[0];
+
+    private static ChannelRegistry channelRegistry;
+
+    private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+    private final int replaySize;
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+
+    /**
+     * Creates a registry with only the global channel.
+     *
+     * @param replaySize the number of the last messages of a channel that a new subscriber is sent
+     */
+    ChannelRegistry(int replaySize) {
+        this.replaySize = replaySize;
+        channels.put(ServerConstants.GLOBAL_CHANNEL, new Channel(0));
+    }
+
+    /**
+     * Get the singleton instance of the ChannelRegistry
+     *
+     * @return ChannelRegistry  the singleton instance of this class
+     */
+    static synchronized ChannelRegistry getInstance() {
+        if (channelRegistry == null) {
+            channelRegistry = new ChannelRegistry(ServerConstants.CHANNEL_REPLAY_SIZE);
+        }
+        return channelRegistry;
+    }
+
+    /**
+     * Subscribes a client to a channel, creating the channel if it has no subscribers.
+     *
+     * @param channelName the name of the channel
+     * @param client      the client
+     * @return List         the last messages published on the channel, oldest first, to be sent to the client
+     */
+    List<Message> subscribe(String channelName, ClientRunnable client) {
+        List<Message> replay = new ArrayList<>();
+        channels.compute(channelName, (name, channel) -> {
+            Channel subscribed = channel == null ? new Channel(replaySize) : channel;
+            if (indexOf(subscribed.subscribers, client) < 0) {
+                ClientRunnable[] added = Arrays.copyOf(subscribed.subscribers, subscribed.subscribers.length + 1);
+                added[subscribed.subscribers.length] = client;
+                subscribed.subscribers = added;
+            }
+            // read after the client is added, so that a message published meanwhile is not missed
+            replay.addAll(subscribed.replay());
+            return subscribed;
+        });
+        return replay;
+    }
+
+    /**
+     * Unsubscribes a client from a channel. A channel left without subscribers is dropped, except
+     * for the global channel.
+     *
+     * @param channelName the name of the channel
+     * @param client      the client
+     * @return boolean      true, if the client was subscribed to the channel; false otherwise
+     */
+    boolean unsubscribe(String channelName, ClientRunnable client) {
+        if (channelName == null) {
+            return false;
+        }
+        boolean[] unsubscribed = new boolean[1];
+        channels.computeIfPresent(channelName, (name, channel) -> {
+            int index = indexOf(channel.subscribers, client);
+            if (index < 0) {
+                return channel;
+            }
+            unsubscribed[0] = true;
+            channel.subscribers = remove(channel.subscribers, index);
+            boolean drop = channel.subscribers.length == 0 && !ServerConstants.GLOBAL_CHANNEL.equals(name);
+            return drop ? null : channel;
+        });
+        return unsubscribed[0];
+    }
+
+    /**
+     * Unsubscribes a client from all its channels, typically once it has quit.
+     *
+     * @param client the client
+     */
+    void unsubscribeAll(ClientRunnable client) {
+        for (String channelName : channels.keySet()) {
+            unsubscribe(channelName, client);
+        }
+    }
+
+    /**
+     * Hands the subscriptions of a client over to another, typically when a session is resumed on
+     * a new connection.
+     *
+     * @param from the client holding the subscriptions
+     * @param to   the client taking them over
+     */
+    void transfer(ClientRunnable from, ClientRunnable to) {
+        for (String channelName : channels.keySet()) {
+            channels.computeIfPresent(channelName, (name, channel) -> {
+                int index = indexOf(channel.subscribers, from);
+                if (index < 0) {
+                    return channel;
+                }
+                channel.subscribers = indexOf(channel.subscribers, to) < 0
+                        ? replace(channel.subscribers, index, to) : remove(channel.subscribers, index);
+                return channel;
+            });
+        }
+    }
+
+    /**
+     * Publishes a message on a channel, to its subscribers that are logged in. The message is
+     * encoded once, and the same bytes are sent to every subscriber.
+     *
+     * @param channelName the name of the channel
+     * @param message     the message
+     * @return int          the number of subscribers the message was handed to; 0 if the channel has none
+     */
+    int publish(String channelName, Message message) {
+        Channel channel = channelName == null ? null : channels.get(channelName);
+        if (channel == null) {
+            return 0;
+        }
+        message.toFrame();
+        channel.record(message);
+        int count = 0;
+        for (ClientRunnable subscriber : channel.subscribers) {
+            // Do not send the message to any clients that are not ready to receive it.
+            if (subscriber.isInitialized()) {
+                subscriber.enqueueMessage(message);
+                count++;
+            }
+        }
+        published.incrementAndGet();
+        delivered.addAndGet(count);
+        return count;
+    }
+
+    /**
+     * @param channelName the name of the channel
+     * @return the number of clients subscribed to the channel
+     */
+    int getSubscriberCount(String channelName) {
+        Channel channel = channelName == null ? null : channels.get(channelName);
+        return channel == null ? 0 : channel.subscribers.length;
+    }
+
+    /**
+     * @return the metrics of the registry, in a form that can be logged
+     */
+    @Override
+    public String toString() {
+        return "ChannelRegistry[channels=" + channels.size() + ", published=" + published.get() + ", delivered="
+                + delivered.get() + "]";
+    }
+
+    private static int indexOf(ClientRunnable[] subscribers, ClientRunnable client) {
+        for (int i = 0; i < subscribers.length; i++) {
+            if (subscribers[i] == client) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static ClientRunnable[] remove(ClientRunnable[] subscribers, int index) {
+        if (subscribers.length == 1) {
+            return NO_SUBSCRIBERS;
+        }
+        ClientRunnable[] removed = new ClientRunnable[subscribers.length - 1];
+        System.arraycopy(subscribers, 0, removed, 0, index);
+        System.arraycopy(subscribers, index + 1, removed, index, subscribers.length - index - 1);
+        return removed;
+    }
+
+    private static ClientRunnable[] replace(ClientRunnable[] subscribers, int index, ClientRunnable client) {
+        ClientRunnable[] replaced = subscribers.clone();
+        replaced[index] = client;
+        return replaced;
+    }
+
+    /**
+     * A channel: the array of its subscribers, only replaced while the channel is locked in the map,
+     * and the last messages published on it.
+     */
+    private static final class Channel {
+
+        private volatile ClientRunnable[] subscribers = NO_SUBSCRIBERS;
+        private final int replaySize;
+        private final Deque<Message> lastMessages;
+
+        Channel(int replaySize) {
+            this.replaySize = replaySize;
+            this.lastMessages = new ArrayDeque<>(replaySize);
+        }
+
+        void record(Message message) {
+            if (replaySize == 0) {
+                return;
+            }
+            synchronized (lastMessages) {
+                if (lastMessages.size() == replaySize) {
+                    lastMessages.poll();
+                }
+                lastMessages.add(message);
+            }
+        }
+
+        List<Message> replay() {
+            if (replaySize == 0) {
+                return Collections.emptyList();
+            }
+            synchronized (lastMessages) {
+                return new ArrayList<>(lastMessages);
+            }
+        }
+    }
+}
@@ -8,20 +8,30 @@
 package edu.northeastern.ccs.im.server;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 import edu.northeastern.ccs.im.ChatLogger;
 import edu.northeastern.ccs.im.Message;
 import edu.northeastern.ccs.im.NetworkConnection;
+import edu.northeastern.ccs.im.db.DBExecutor;
 import edu.northeastern.ccs.im.models.ConversationalMessage;
 import edu.northeastern.ccs.im.models.Group;
+import edu.northeastern.ccs.im.models.InboxEntry;
 import edu.northeastern.ccs.im.models.User;
 import edu.northeastern.ccs.im.services.ConversationalMessageService;
 import edu.northeastern.ccs.im.services.GroupService;
+import edu.northeastern.ccs.im.services.InboxService;
 import edu.northeastern.ccs.im.services.InvitationService;
 import edu.northeastern.ccs.im.services.UserService;
 
@@ -55,7 +65,13 @@ public class ClientRunnable implements Runnable {
     /**
      * Name that the client used when connecting to the server.
      */
-    private String name;
+    private volatile String name;
+
+    /**
+     * The user name this client asked for while another device of the user held it, which it takes
+     * once it logs in, or null if it asked for none.
+     */
+    private String requestedName;
 
     /**
      * private final string for a government user
@@ -66,13 +82,82 @@ public class ClientRunnable implements Runnable {
      * Whether this client has been initialized, set its user name, and is ready to
      * receive messages.
      */
-    private boolean initialized;
+    private volatile boolean initialized;
 
     /**
      * Whether this client has been terminated, either because he quit or due to
      * prolonged inactivity.
      */
-    private boolean terminate;
+    private volatile boolean terminate;
+
+    /**
+     * Whether this client is being terminated because the server is draining, which logs all of
+     * its users out at once.
+     */
+    private volatile boolean draining;
+
+    /**
+     * Whether the connection of this client was lost, rather than closed by the client or the server.
+     */
+    private volatile boolean connectionLost;
+
+    /**
+     * Whether this client lost its connection and keeps its session, queuing its messages, until it
+     * is resumed from a new connection or its grace period is over.
+     */
+    private volatile boolean suspended;
+
+    /**
+     * Time at which this client was suspended.
+     */
+    private volatile long suspendedAt;
+
+    /**
+     * The token with which the session of this client is resumed, or null if it has none.
+     */
+    private volatile String resumeToken;
+
+    /**
+     * The resume message of this client, kept while the client whose session it resumes is let go.
+     */
+    private Message pendingResume;
+
+    /**
+     * The tokens with which the clients resume their sessions.
+     */
+    private SessionResumption sessionResumption;
+
+    /**
+     * Whether this client acknowledges the stored messages it is sent, which it tells by sending an
+     * ACK message. The messages sent to a client that does not are delivered once written.
+     */
+    private volatile boolean acknowledges;
+
+    /**
+     * The unique keys of the stored messages sent to this client and not acknowledged yet, oldest
+     * first.
+     */
+    private Deque<String> unacknowledged = new ArrayDeque<>();
+
+    /**
+     * The tracker marking the delivered messages sent.
+     */
+    private DeliveryTracker deliveryTracker;
+
+    /**
+     * The ID the client gave to the message it is sending, or null if it gave none.
+     */
+    private String clientMessageId;
+
+    /**
+     * The IDs of the messages the clients sent lately.
+     */
+    private SendDeduplicator sendDeduplicator;
+
+    /**
+     * The channels messages are published on, which the client subscribes to.
+     */
+    private ChannelRegistry channelRegistry;
 
     /**
      * The timer that keeps track of the clients activity.
@@ -88,7 +173,7 @@ public class ClientRunnable implements Runnable {
     /**
      * Collection of messages queued up to be sent to this client.
      */
-    private Queue<Message> waitingList;
+    private OutboundQueue waitingList;
 
     /**
      * Stores the userService instance to be used across multiple conditions.
@@ -111,17 +196,73 @@ public class ClientRunnable implements Runnable {
     private InvitationService invitationService;
 
     /**
-     * This static data structure stores the client runnable instances
-     * associated with their usernames for easy lookup during messaging.
+     * Stores the inboxService instance.
+     */
+    private InboxService inboxService;
+
+    /**
+     * The pipeline to which the requests of this client are handed over, or null if they are
+     * handled inline by the thread running this client.
+     */
+    private RequestPipeline pipeline;
+
+    /**
+     * The thread writing to this client in the virtual-thread mode, woken up when a message is queued.
+     */
+    private volatile Thread writer;
+
+    /**
+     * The address of this client, by which its messages are rate limited along with its name.
+     */
+    private InetAddress remoteAddress;
+
+    /**
+     * The limiter of the rate at which this client may send messages.
+     */
+    private RateLimiter rateLimiter;
+
+    /**
+     * Time at which a message was last received from this client.
+     */
+    private volatile long lastHeardAt = System.currentTimeMillis();
+
+    /**
+     * Whether a heartbeat has to be sent to this client.
+     */
+    private final AtomicBoolean pingDue = new AtomicBoolean();
+
+    /**
+     * Whether the answer to a heartbeat sent by this client has to be sent.
+     */
+    private final AtomicBoolean pongDue = new AtomicBoolean();
+
+    /**
+     * Time at which a message other than a heartbeat was last received from or sent to this client.
      */
-    private static Map<String, ClientRunnable> userClients = new HashMap<>();
+    private volatile long lastActiveAt = System.currentTimeMillis();
 
     /**
-     * This static counter is going to be used for making every "invalid"
-     * connection unique, so we can add all invalid connections of a user to
-     * the hashmap and send out error messages together
+     * The hibernator taking this client off the thread pool while it is idle, or null if it never
+     * hibernates.
      */
-    private static int invalidCounter = 0;
+    private Hibernator hibernator;
+
+    /**
+     * Whether this client is hibernating, that is released its connection and is not scheduled.
+     */
+    private final AtomicBoolean hibernating = new AtomicBoolean();
+
+    /**
+     * The key of the connection in the selector of the hibernator while this client hibernates.
+     */
+    private volatile SelectionKey hibernationKey;
+
+    /**
+     * The lane of the messages queued by the current thread for any client, which is the bulk lane
+     * while the thread replays the messages a user received while offline.
+     */
+    private static final ThreadLocal<OutboundQueue.Lane> enqueueLane =
+            ThreadLocal.withInitial(() -> OutboundQueue.Lane.INTERACTIVE);
 
     /**
      * Constant to store invalid id
@@ -134,23 +275,31 @@ public class ClientRunnable implements Runnable {
     private static final String CHECK_SYNTAX_ERROR_MESSAGE = "Something went wrong while retrieving data. " +
             "Please check your syntax";
 
+    /**
+     * Constant to store the answer to a message sent again while its first send is still being stored
+     */
+    private static final String SEND_PENDING_MESSAGE = "The message you just sent again is still being sent. " +
+            "Please check your messages before sending it again";
 
     /**
-     * Used for incrementing the invalidCounter, defined a separate method here
-     * on account of invalidCounter being a static field
+     * Create a new thread with which we will communicate with this single client.
+     * The requests of the client are handled inline by that thread.
      *
-     * @param invalidCounter the static counter
+     * @param network NetworkConnection used by this new client
      */
-    private static void incrementInvalidCounter(int invalidCounter) {
-        ClientRunnable.invalidCounter = invalidCounter + 1;
+    ClientRunnable(NetworkConnection network) {
+        this(network, null);
     }
 
     /**
      * Create a new thread with which we will communicate with this single client.
      *
-     * @param network NetworkConnection used by this new client
+     * @param network  NetworkConnection used by this new client
+     * @param pipeline the pipeline to which the requests of the client are handed over, or null to
+     *                 handle them inline
      */
-    ClientRunnable(NetworkConnection network) {
+    ClientRunnable(NetworkConnection network, RequestPipeline pipeline) {
+        this.pipeline = pipeline;
         // Create the class we will use to send and receive communication
         connection = network;
         // Mark that we are not initialized
@@ -158,10 +307,17 @@ public class ClientRunnable implements Runnable {
         // Mark that we are not terminated
         terminate = false;
         // Create the queue of messages to be sent
-        waitingList = new ConcurrentLinkedQueue<>();
+        waitingList = new OutboundQueue();
         // Mark that the client is active now and start the timer until we
         // terminate for inactivity.
         timer = new ClientTimer();
+        inboxService = InboxService.getInstance();
+        remoteAddress = network.getRemoteAddress();
+        rateLimiter = RateLimiter.getInstance();
+        sessionResumption = SessionResumption.getInstance();
+        deliveryTracker = DeliveryTracker.getInstance();
+        sendDeduplicator = SendDeduplicator.getInstance();
+        channelRegistry = ChannelRegistry.getInstance();
 
         // create user Service instance
         try {
@@ -178,22 +334,96 @@ public class ClientRunnable implements Runnable {
      * Check to see for an initialization attempt and process the message sent.
      */
     private void checkForInitialization() {
+        // A resume waiting for the previous connection to be let go is tried again first.
+        if (pendingResume != null) {
+            resume(pendingResume);
+            return;
+        }
         // Check if there are any input messages to read
         Iterator<Message> messageIter = connection.iterator();
         if (messageIter.hasNext()) {
             // If a message exists, try to use it to initialize the connection
-            Message msg = messageIter.next();
-            if (setUserName(msg.getName())) {
-                // Update the time until we terminate this client due to inactivity.
-                timer.updateAfterInitialization();
-                // Set that the client is initialized.
-                initialized = true;
-            } else {
-                initialized = false;
-            }
+            initialize(messageIter.next());
+        }
+    }
+
+    /**
+     * Uses the first message of the client to initialize the connection.
+     *
+     * @param msg the first message read from the client
+     */
+    private void initialize(Message msg) {
+        lastHeardAt = System.currentTimeMillis();
+        lastActiveAt = lastHeardAt;
+        if (msg.isResumeMessage()) {
+            resume(msg);
+        } else if (setUserName(msg.getName())) {
+            // Update the time until we terminate this client due to inactivity.
+            timer.updateAfterInitialization();
+            // Set that the client is initialized.
+            initialized = true;
+        } else {
+            initialized = false;
         }
     }
 
+    /**
+     * Takes over the session of a client whose connection was lost, identified by the token it was
+     * given: the user name, and the messages queued since the connection was lost, go to this client,
+     * without going through the login again. If the previous connection is not known to be lost yet,
+     * it is let go, and the resume is tried again the next time this client runs.
+     *
+     * @param msg the resume message, with the user name and the token
+     */
+    private void resume(Message msg) {
+        long start = System.nanoTime();
+        String token = msg.getTextOrPassword();
+        ClientRunnable previous = sessionResumption.find(token);
+        pendingResume = null;
+        if (previous == null || !previous.getName().equals(msg.getName())) {
+            this.enqueuePrattleResponseMessage("The session could not be resumed. Please log in again.");
+            return;
+        }
+        if (!previous.isSuspended()) {
+            pendingResume = msg;
+            previous.evict();
+            return;
+        }
+        if (!sessionResumption.revoke(token, previous)
+                || !SessionRegistry.getInstance().transfer(previous.getName(), previous, this)) {
+            this.enqueuePrattleResponseMessage("The session could not be resumed. Please log in again.");
+            return;
+        }
+        setName(previous.getName());
+        userId = previous.userId;
+        // The messages queued for the previous connection are sent on this one.
+        OutboundQueue unused = waitingList;
+        waitingList = previous.waitingList;
+        unused.close();
+        // So are the acknowledgements of the messages sent on the previous connection.
+        acknowledges = previous.acknowledges;
+        synchronized (previous.unacknowledged) {
+            unacknowledged = new ArrayDeque<>(previous.unacknowledged);
+        }
+        // And so are its subscriptions to the channels.
+        channelRegistry.transfer(previous, this);
+        previous.handOver();
+        timer.updateAfterInitialization();
+        initialized = true;
+        issueResumeToken();
+        sessionResumption.resumed(System.nanoTime() - start);
+    }
+
+    /**
+     * Gives this client a new token for its session, in place of the one it had, and sends it.
+     */
+    private void issueResumeToken() {
+        sessionResumption.revoke(resumeToken, this);
+        resumeToken = sessionResumption.issue(this);
+        enqueueMessage(Message.makeResumeMessage(ServerConstants.SERVER_NAME, resumeToken),
+                OutboundQueue.Lane.CONTROL);
+    }
+
     /**
      * Check if the message is properly formed. At the moment, this means checking
      * that the identifier is set properly.
@@ -207,10 +437,10 @@ public class ClientRunnable implements Runnable {
     }
 
     /**
-     * Sending response message from prattle to client
+     * Sending response message from prattle to client, ahead of the chat messages
      */
     private void enqueuePrattleResponseMessage(String responseMessage) {
-        this.enqueueMessage(Message.makePrattleMessage(responseMessage));
+        this.enqueueMessage(Message.makePrattleMessage(responseMessage), OutboundQueue.Lane.CONTROL);
     }
 
     /**
@@ -235,19 +465,19 @@ public class ClientRunnable implements Runnable {
         boolean result = false;
         // Now make sure this name is legal.
         if (isValidUserName(userName)) {
-            if (userClients.getOrDefault(userName, null) == null) {
+            // Claiming the name fails if another client already holds it.
+            if (SessionRegistry.getInstance().claim(userName, this)) {
                 // Optimistically set this users ID number.
                 setName(userName);
                 userId = hashCode();
                 result = true;
-                userClients.put(userName, this);
             } else {
-                incrementInvalidCounter(invalidCounter);
-                setName("invalid-" + userName + "-" + invalidCounter);
+                setName(SessionRegistry.getInstance().invalidName(userName));
                 userId = INVALID_USER_ID;
+                requestedName = userName;
                 result = true;
                 this.enqueuePrattleResponseMessage("There is already a user connected with this username. Please " +
-                        "type BYE and try logging in with another username.");
+                        "log in to add this device, or type BYE and try logging in with another username.");
             }
         } else {
             // Clear this name; we cannot use it. *sigh*
@@ -258,12 +488,28 @@ public class ClientRunnable implements Runnable {
 
     /**
      * Add the given message to this client to the queue of message to be sent to
-     * the client.
+     * the client. It is sent with the chat messages, unless the current thread is
+     * replaying the messages the user received while offline.
      *
      * @param message Complete message to be sent.
      */
     public void enqueueMessage(Message message) {
-        waitingList.add(message);
+        enqueueMessage(message, enqueueLane.get());
+    }
+
+    /**
+     * Add the given message to this client to the queue of message to be sent to
+     * the client, in the given lane.
+     *
+     * @param message Complete message to be sent.
+     * @param lane    The lane of the outbound queue in which the message waits.
+     */
+    void enqueueMessage(Message message, OutboundQueue.Lane lane) {
+        if (!waitingList.offer(message, lane)) {
+            // The client is not reading its messages fast enough.
+            terminate = true;
+        }
+        wake();
     }
 
     /**
@@ -325,13 +571,98 @@ public class ClientRunnable implements Runnable {
                 terminate = true;
             }
             if (terminate) {
-                terminateClient();
+                if (!suspend()) {
+                    terminateClient();
+                }
+            } else {
+                hibernateIfIdle();
             }
         } catch (SQLException e) {
             ChatLogger.error("SQL Exception occurred - ClientRunnable.java - run() : " + ChatLogger.getTrace(e));
         }
     }
 
+    /**
+     * Reads the messages of this client on the calling thread, which blocks on the connection between
+     * messages, until the client is terminated or the connection is closed. Used by the virtual-thread
+     * mode, together with {@link #writeBlocking()} on a second thread.
+     *
+     * Every message read is handled on the {@link DBExecutor} pool, while this thread waits for it,
+     * and for room in the queue of the pool when it is full, so that the database sees no more
+     * concurrent calls than the pool has threads, however many clients are connected.
+     */
+    void readBlocking() {
+        DBExecutor dbExecutor = DBExecutor.getInstance();
+        try {
+            while (!terminate && connection.isOpen()) {
+                Message msg = null;
+                if (initialized || pendingResume == null) {
+                    Iterator<Message> messageIter = connection.iterator();
+                    if (!messageIter.hasNext()) {
+                        continue;
+                    }
+                    msg = messageIter.next();
+                }
+                Message read = msg;
+                dbExecutor.call(() -> {
+                    if (!initialized) {
+                        if (read == null) {
+                            checkForInitialization();
+                        } else {
+                            initialize(read);
+                        }
+                    } else {
+                        handleIncomingMessage(read);
+                    }
+                    return null;
+                });
+                if (pendingResume != null) {
+                    // the previous connection is being let go, so wait a little before trying again
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(ServerConstants.CLIENT_CHECK_DELAY));
+                }
+            }
+        } catch (SQLException e) {
+            ChatLogger.error("SQL Exception occurred - ClientRunnable.java - readBlocking() : " + ChatLogger.getTrace(e));
+        } catch (AssertionError ae) {
+            // The connection was closed while this thread was waiting on it.
+            ChatLogger.info("Connection of " + name + " closed while reading.");
+        }
+        if (!terminate) {
+            connectionLost = true;
+        }
+        terminate = true;
+        wake();
+    }
+
+    /**
+     * Writes the messages queued for this client on the calling thread, which sleeps while the queue
+     * is empty, and times the client out when it has been inactive for too long. Terminates the
+     * client once it is done. Used by the virtual-thread mode, together with {@link #readBlocking()}.
+     */
+    void writeBlocking() {
+        writer = Thread.currentThread();
+        try {
+            while (!terminate) {
+                handleOutgoingMessages();
+                if (timer.isBehind()) {
+                    ChatLogger.error("Timing out or forcing off a user " + name);
+                    this.enqueuePrattleResponseMessage("Timeout occurred. Logging you out. Apologies.\n");
+                    terminate = true;
+                } else if (waitingList.isEmpty()) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(ServerConstants.CLIENT_CHECK_DELAY));
+                }
+            }
+            handleOutgoingMessages();
+            if (!suspend()) {
+                terminateClient();
+            }
+        } catch (SQLException e) {
+            ChatLogger.error("SQL Exception occurred - ClientRunnable.java - writeBlocking() : " + ChatLogger.getTrace(e));
+        } finally {
+            writer = null;
+        }
+    }
+
     /**
      * Checks incoming messages and performs appropriate actions based on the type
      * of message.
@@ -343,25 +674,309 @@ public class ClientRunnable implements Runnable {
         Iterator<Message> messageIter = connection.iterator();
         if (messageIter.hasNext()) {
             // Get the next message
-            Message msg = messageIter.next();
-            User user = userService.getUserByUserName(msg.getName());
-            // If the user does not exist, then maybe they are trying to register
-            if (user == null && !(msg.isRegisterMessage() || msg.isLoginMessage()))
-                ChatLogger.error("User does not exist");
-            else {
-                if (msg.terminate()) {
-                    // Stop sending the poor client message.
-                    terminate = true;
-                    // Reply with a quit message.
-                    enqueueMessage(Message.makeQuitMessage(name));
-                } else if (msg.isLoginMessage() || msg.isRegisterMessage() || (user != null && user.isLoggedIn())) {
-                    processMessage(msg);
-                } else {
-                    this.enqueuePrattleResponseMessage("Sorry, you are not logged in to use Prattle. Please log in " +
-                            "and try again.");
-                }
+            handleIncomingMessage(messageIter.next());
+        }
+    }
+
+    /**
+     * Performs the appropriate actions for one message read from the initialized client.
+     *
+     * @param msg the message read from the client
+     */
+    private void handleIncomingMessage(Message msg) throws SQLException {
+        lastHeardAt = System.currentTimeMillis();
+        if (handleHeartbeat(msg) || handleAcknowledgement(msg)) {
+            return;
+        }
+        lastActiveAt = lastHeardAt;
+        // Drop the message if the client sends too many, telling it how long to wait.
+        long retryAfter = rateLimiter.tryAcquire(name, remoteAddress, msg.getType());
+        if (retryAfter != 0) {
+            enqueueMessage(Message.makeSlowDownMessage(ServerConstants.SERVER_NAME, Long.toString(retryAfter)),
+                    OutboundQueue.Lane.CONTROL);
+            return;
+        }
+        if (pipeline != null) {
+            pipeline.submit(this, msg);
+        } else if (checkSession(msg)) {
+            processMessage(msg);
+        }
+    }
+
+    /**
+     * Handles the heartbeat messages, which only tell that the client is still there and never go
+     * through the database.
+     *
+     * @param msg the incoming message
+     * @return boolean      true, if the message was a heartbeat; false otherwise
+     */
+    private boolean handleHeartbeat(Message msg) {
+        if (msg.isPongMessage()) {
+            return true;
+        }
+        if (msg.isPingMessage()) {
+            pongDue.set(true);
+            wake();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Handles the acknowledgements of the stored messages, which never go through the database
+     * either: the acknowledged message, and the ones sent before it, are handed over to the tracker
+     * that marks them sent in batches.
+     *
+     * @param msg the incoming message
+     * @return boolean      true, if the message was an acknowledgement; false otherwise
+     */
+    private boolean handleAcknowledgement(Message msg) {
+        if (!msg.isAcknowledgeMessage()) {
+            return false;
+        }
+        acknowledges = true;
+        String key = msg.getTextOrPassword();
+        List<String> acknowledged = new ArrayList<>();
+        synchronized (unacknowledged) {
+            if (key != null && unacknowledged.contains(key)) {
+                String sent;
+                do {
+                    sent = unacknowledged.poll();
+                    acknowledged.add(sent);
+                } while (!key.equals(sent));
+            }
+        }
+        if (!acknowledged.isEmpty()) {
+            deliveryTracker.delivered(acknowledged);
+        }
+        return true;
+    }
+
+    /**
+     * Records that a stored message was written to the connection of this client. It is delivered
+     * once acknowledged, or right away if this client does not send acknowledgements.
+     *
+     * @param uniqueKey the unique key of the message
+     */
+    private void sent(String uniqueKey) {
+        if (acknowledges) {
+            synchronized (unacknowledged) {
+                unacknowledged.add(uniqueKey);
+            }
+        } else {
+            deliveryTracker.delivered(uniqueKey);
+        }
+    }
+
+    /**
+     * @return the time at which a message was last received from this client
+     */
+    long getLastHeardAt() {
+        return lastHeardAt;
+    }
+
+    /**
+     * Asks for a heartbeat to be sent to this client with its next outgoing messages.
+     */
+    void requestPing() {
+        pingDue.set(true);
+        wake();
+    }
+
+    /**
+     * Terminates this client, which stopped answering the heartbeats, the next time it runs.
+     *
+     * @return boolean      true, if the client was not already being terminated; false otherwise
+     */
+    boolean evict() {
+        boolean evicted = !terminate;
+        connectionLost = true;
+        terminate = true;
+        wake();
+        return evicted;
+    }
+
+    /**
+     * Tells this client that the server is going down and when to connect again, and terminates it
+     * once the messages queued for it are sent. Its user is left for the server to log out, together
+     * with all the others.
+     *
+     * @param retryAfterMs the time in milliseconds the client should wait before connecting again
+     */
+    void drain(long retryAfterMs) {
+        draining = true;
+        if (suspended) {
+            // Nobody is there to tell; the session is closed, unless it was just resumed or expired.
+            if (sessionResumption.revoke(resumeToken, this)) {
+                expire();
+            }
+            return;
+        }
+        enqueueMessage(Message.makeServerBusyMessage(ServerConstants.SERVER_NAME, "Server restarting",
+                Long.toString(retryAfterMs)), OutboundQueue.Lane.CONTROL);
+        terminate = true;
+        wake();
+    }
+
+    /**
+     * Keeps the session of a logged in client whose connection was lost, instead of terminating it,
+     * so that it can be resumed with its token. The connection is closed and the client is no longer
+     * run, but it keeps its user name and its messages keep being queued until it is resumed or its
+     * grace period is over.
+     *
+     * @return boolean      true, if the client is suspended; false if it has to be terminated
+     */
+    private boolean suspend() {
+        if (suspended) {
+            return true;
+        }
+        if (!connectionLost || draining || resumeToken == null) {
+            return false;
+        }
+        connection.close();
+        suspendedAt = System.currentTimeMillis();
+        suspended = true;
+        if (runnableMe != null) {
+            runnableMe.cancel(false);
+        }
+        return true;
+    }
+
+    /**
+     * @return true if this client lost its connection and keeps its session, false otherwise
+     */
+    boolean isSuspended() {
+        return suspended;
+    }
+
+    /**
+     * @return the time at which this client was suspended
+     */
+    long getSuspendedAt() {
+        return suspendedAt;
+    }
+
+    /**
+     * Closes the session of this suspended client, which was not resumed in time, and logs its user
+     * out. Called by whoever took its token out of the table.
+     */
+    void expire() {
+        try {
+            terminateClient();
+        } catch (SQLException e) {
+            ChatLogger.error("SQL Exception occurred - ClientRunnable.java - expire() : " + ChatLogger.getTrace(e));
+        }
+    }
+
+    /**
+     * Removes this suspended client, whose session was taken over by a new connection, without
+     * logging its user out. Its queue now belongs to the new client.
+     */
+    private void handOver() {
+        resumeToken = null;
+        timer.cancel();
+        Prattle.removeClient(this);
+    }
+
+    /**
+     * Wakes up the thread writing to this client in the virtual-thread mode, if it is waiting, and
+     * schedules this client again if it is hibernating.
+     */
+    void wake() {
+        Thread waitingWriter = writer;
+        if (waitingWriter != null) {
+            LockSupport.unpark(waitingWriter);
+        }
+        if (hibernating.compareAndSet(true, false)) {
+            SelectionKey key = hibernationKey;
+            if (key != null) {
+                key.cancel();
+                hibernationKey = null;
+            }
+            hibernator.resume(this);
+        }
+    }
+
+    /**
+     * Takes this client off the thread pool if it has been idle for long enough, releasing the buffer
+     * and the selector of its connection until it has something to read or to send again.
+     */
+    private void hibernateIfIdle() {
+        if (hibernator == null || runnableMe == null || !initialized || hibernating.get()
+                || !waitingList.isEmpty() || System.currentTimeMillis() - lastActiveAt < hibernator.getIdleInMs()
+                || !connection.hibernate()) {
+            return;
+        }
+        runnableMe.cancel(false);
+        hibernating.set(true);
+        hibernator.park(this);
+        // Anything that came up while hibernating was not set yet wakes the client up right away.
+        if (!waitingList.isEmpty() || pingDue.get() || terminate) {
+            wake();
+        }
+    }
+
+    /**
+     * Registers the connection of this client with the selector of the hibernator, unless the
+     * client has woken up since it started hibernating.
+     *
+     * @param selector the selector of the hibernator
+     * @throws IOException if the connection cannot be registered
+     */
+    void hibernateOn(Selector selector) throws IOException {
+        if (!hibernating.get()) {
+            return;
+        }
+        SelectionKey key = connection.register(selector, this);
+        hibernationKey = key;
+        // A wake up that missed the key must not leave it registered.
+        if (!hibernating.get()) {
+            key.cancel();
+        }
+    }
+
+    /**
+     * @return true if this client is hibernating, false otherwise
+     */
+    boolean isHibernating() {
+        return hibernating.get();
+    }
+
+    /**
+     * Store the hibernator taking this client off the thread pool while it is idle.
+     *
+     * @param hibernator the hibernator, or null for the client never to hibernate
+     */
+    void setHibernator(Hibernator hibernator) {
+        this.hibernator = hibernator;
+    }
+
+    /**
+     * Checks that the sender of the message exists and is logged in, and handles the quit message.
+     *
+     * @param msg the incoming message
+     * @return boolean      true, if the message has to be handled further; false otherwise
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    boolean checkSession(Message msg) throws SQLException {
+        User user = userService.getUserByUserName(msg.getName());
+        // If the user does not exist, then maybe they are trying to register
+        if (user == null && !(msg.isRegisterMessage() || msg.isLoginMessage()))
+            ChatLogger.error("User does not exist");
+        else {
+            if (msg.terminate()) {
+                // Stop sending the poor client message.
+                terminate = true;
+                // Reply with a quit message.
+                enqueueMessage(Message.makeQuitMessage(name), OutboundQueue.Lane.CONTROL);
+            } else if (msg.isLoginMessage() || msg.isRegisterMessage() || (user != null && user.isLoggedIn())) {
+                return true;
+            } else {
+                this.enqueuePrattleResponseMessage("Sorry, you are not logged in to use Prattle. Please log in " +
+                        "and try again.");
             }
         }
+        return false;
     }
 
     /**
@@ -423,12 +1038,25 @@ public class ClientRunnable implements Runnable {
      * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
      */
     private void handlePrivateMessage(Message msg) throws SQLException {
-        User destUser = userService.getUserByUserName(msg.getReceiverOrPassword());
-        if (destUser == null) {
-            this.enqueuePrattleResponseMessage("Destination username does not exist.");
-        } else {
-            this.enqueuePrattleResponseMessage("the unique key for the message that you just sent is: " +
-                    destUser.userSendMessage(msg));
+        String sentKey = sendDeduplicator.reserve(msg.getName(), clientMessageId);
+        if (SendDeduplicator.PENDING.equals(sentKey)) {
+            this.enqueuePrattleResponseMessage(SEND_PENDING_MESSAGE);
+            return;
+        } else if (sentKey != null) {
+            this.enqueuePrattleResponseMessage("the unique key for the message that you just sent is: " + sentKey);
+            return;
+        }
+        try {
+            User destUser = userService.getUserByUserName(msg.getReceiverOrPassword());
+            if (destUser == null) {
+                this.enqueuePrattleResponseMessage("Destination username does not exist.");
+            } else {
+                String uniqueKey = destUser.userSendMessage(msg);
+                sendDeduplicator.record(msg.getName(), clientMessageId, uniqueKey);
+                this.enqueuePrattleResponseMessage("the unique key for the message that you just sent is: " + uniqueKey);
+            }
+        } finally {
+            sendDeduplicator.release(msg.getName(), clientMessageId);
         }
     }
 
@@ -439,37 +1067,81 @@ public class ClientRunnable implements Runnable {
      * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
      */
     private void handleLoginMessage(Message msg) throws SQLException {
+        LoginPipeline loginPipeline = new LoginPipeline(userService, conversationalMessagesService, invitationService);
         // Login the user after checking in the user with this username-password combo exists
-        User currentUser = userService.getUserByUserNameAndPassword(msg.getName(), msg.getTextOrPassword());
+        User currentUser = loginPipeline.authenticate(msg.getName(), msg.getTextOrPassword());
         if (currentUser == null) {
             this.enqueuePrattleResponseMessage("Incorrect username and password");
-        } else if (!userService.updateUserAttributes(
-                currentUser.getUserName(),
-                "logged_in",
-                "1")
-                ) {
+        } else if (!loginPipeline.markLoggedIn(currentUser)) {
             this.enqueuePrattleResponseMessage("The profile details for " + currentUser.getUserName()
                     + " was not updated.");
         } else {
-            handleSuccessfulLogin(msg, currentUser);
+            handleSuccessfulLogin(msg, currentUser, loginPipeline.fetch(currentUser));
+        }
+    }
+
+    /**
+     * Handles the login of another device of a user who is already connected: once the password
+     * checks out, this client takes the user name and joins the devices of the user, which all get
+     * the messages sent to the user from then on.
+     *
+     * @param msg the incoming login message
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    private void handleDeviceLogin(Message msg) throws SQLException {
+        LoginPipeline loginPipeline = new LoginPipeline(userService, conversationalMessagesService, invitationService);
+        User currentUser = loginPipeline.authenticate(msg.getName(), msg.getTextOrPassword());
+        if (currentUser == null) {
+            this.enqueuePrattleResponseMessage("Incorrect username and password");
+        } else if (!SessionRegistry.getInstance().join(requestedName, this)) {
+            this.enqueuePrattleResponseMessage("Too many devices are connected as " + requestedName
+                    + ". Please type BYE and try again later.");
+        } else {
+            setName(requestedName);
+            userId = hashCode();
+            requestedName = null;
+            // The user is already marked as logged in, unless the other devices left meanwhile.
+            if (!currentUser.isLoggedIn() && !loginPipeline.markLoggedIn(currentUser)) {
+                this.enqueuePrattleResponseMessage("The profile details for " + currentUser.getUserName()
+                        + " was not updated.");
+            }
+            handleSuccessfulLogin(msg, currentUser, loginPipeline.fetch(currentUser));
         }
     }
 
     /**
-     * Handles successful login and does all activity happening after a successful login.
+     * Handles successful login and delivers everything that was fetched for the user in one go.
      *
      * @param msg         the message object that was sent
      * @param currentUser the object representing the user under consideration
+     * @param bundle      everything that has to be delivered to the user
      * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
      */
-    private void handleSuccessfulLogin(Message msg, User currentUser) throws SQLException {
-        this.enqueuePrattleResponseMessage("Welcome " + msg.getName() + "!! Here's what you missed::\n");
-        if (currentUser.isTapped()) {
-            notifyGovernment(currentUser);
+    private void handleSuccessfulLogin(Message msg, User currentUser, LoginPipeline.LoginBundle bundle)
+            throws SQLException {
+        StringBuilder welcome = new StringBuilder("Welcome " + msg.getName() + "!! Here's what you missed::\n");
+        for (Message invitation : bundle.getInviteeInvitations()) {
+            welcome.append("\nYou have been invited to join the group ").append(invitation.getReceiverOrPassword())
+                    .append(" by user ").append(invitation.getName());
+        }
+        for (Message invitation : bundle.getModeratorInvitations()) {
+            welcome.append("\n").append(invitation.getName()).append(" has invited ")
+                    .append(invitation.getTextOrPassword()).append(" to join the group ")
+                    .append(invitation.getReceiverOrPassword());
+        }
+        this.enqueuePrattleResponseMessage(welcome.toString());
+        if (bundle.getGovernment() != null) {
+            notifyGovernment(currentUser, bundle.getGovernment());
         }
-        sendMessagesToUser(currentUser);
-        sendInvitationsToUser(msg);
-        sendInvitationsToModerator(msg);
+        sendMessagesToUser(currentUser, bundle.getUnsentMessages());
+        try {
+            inboxService.messagesDelivered(currentUser.getUserName());
+        } catch (SQLException | IOException e) {
+            ChatLogger.error("Exception occurred - ClientRunnable.java - handleSuccessfulLogin() : " + ChatLogger.getTrace(e));
+        }
+        invitationService.setInvitationsAreSentToInvitee(bundle.getInviteeInvitations());
+        invitationService.setInvitationsAreSentToModerator(bundle.getModeratorInvitations());
+        issueResumeToken();
     }
 
 
@@ -477,70 +1149,34 @@ public class ClientRunnable implements Runnable {
      * Notify government that this user logged in.
      *
      * @param currentUser the user under consideration
+     * @param govtUser    the government user
      * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
      */
-    private void notifyGovernment(User currentUser) throws SQLException {
+    private void notifyGovernment(User currentUser, User govtUser) throws SQLException {
         Timestamp notificationTimestamp = new Timestamp(System.currentTimeMillis());
         String notification = "\nUser with user name: " + currentUser.getUserName() + " logged in at: " +
                 notificationTimestamp + "\n";
-        User govtUser = userService.getUserByUserName(GOVERNMENT);
         govtUser.userSendMessage(Message.makePrattleMessage(notification));
     }
 
     /**
      * sends unsent messages to user on successful login
      *
-     * @param currentUser the user who has logged on
+     * @param currentUser    the user who has logged on
+     * @param unsentMessages the messages that were stored while the user was offline
      * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
      */
-    private void sendMessagesToUser(User currentUser) throws SQLException {
-        List<ConversationalMessage> unsentMessages
-                = conversationalMessagesService.getMessagesForUser(currentUser.getUserName(), true);
-        for (ConversationalMessage m : unsentMessages) {
-            Message resultMessage = createMessageFromConversationalMessage(m);
-            currentUser.enqueueMessageToUser(resultMessage, m.getMessageUniquekey());
-            conversationalMessagesService.markMessageAsSent(m.getMessageUniquekey());
-        }
-    }
-
-    /**
-     * sends unsent invitations to user on successful login
-     *
-     * @param msg the login message received which triggers this action
-     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
-     */
-    private void sendInvitationsToModerator(Message msg) throws SQLException {
-        //send unsent invitations to the moderator for each group
-        Set<String> groups = groupService.getGroupsByModerator(msg.getName());
-        for (String groupName : groups) {
-            Set<Message> invitationsGroup = invitationService.getInvitationsForGroup(groupName);
-            for (Message invitation : invitationsGroup) {
-                this.enqueuePrattleResponseMessage(invitation.getName() + " has invited " +
-                        invitation.getTextOrPassword() + " to join the group " + groupName);
-                invitationService.setInvitationIsSentToModerator(
-                        invitation.getTextOrPassword(),
-                        invitation.getReceiverOrPassword()
-                );
+    private void sendMessagesToUser(User currentUser, List<ConversationalMessage> unsentMessages) throws SQLException {
+        // The replay goes through the user, so the lane is passed along with the thread.
+        enqueueLane.set(OutboundQueue.Lane.BULK);
+        try {
+            for (ConversationalMessage m : unsentMessages) {
+                Message resultMessage = createMessageFromConversationalMessage(m);
+                // Marked sent once delivered, see DeliveryTracker.
+                currentUser.enqueueMessageToUser(resultMessage, m.getMessageUniquekey(), m.getSequence());
             }
-        }
-    }
-
-    /**
-     * sends unsent invitations to moderator on successful login
-     *
-     * @param msg the login message received which triggers this action
-     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
-     */
-    private void sendInvitationsToUser(Message msg) throws SQLException {
-        // send unsent invitations to the user
-        Set<Message> invitations = invitationService.getInvitationsForInvitee(msg.getName());
-        for (Message invitation : invitations) {
-            this.enqueuePrattleResponseMessage("You have been invited to join the group " +
-                    invitation.getReceiverOrPassword() + " by user " + invitation.getName());
-            invitationService.setInvitationIsSentToInvitee(
-                    invitation.getTextOrPassword(),
-                    invitation.getReceiverOrPassword()
-            );
+        } finally {
+            enqueueLane.remove();
         }
     }
 
@@ -562,6 +1198,7 @@ public class ClientRunnable implements Runnable {
                     m.getMessageText(),
                     m.getGroupUniqueKey().split("::")[1]
             );
+            resultMessage.setGroupSequence(m.getGroupSequence());
         }
         return resultMessage;
     }
@@ -581,6 +1218,7 @@ public class ClientRunnable implements Runnable {
         } else {
             groupService.createGroup(msg.getTextOrPassword(), msg.getName());
             groupService.addUserToGroup(msg.getTextOrPassword(), msg.getName());
+            invitationService.updateGroupModerator(msg.getTextOrPassword(), msg.getName());
             this.enqueuePrattleResponseMessage("Successfully created group: " + msg.getTextOrPassword());
         }
     }
@@ -620,6 +1258,7 @@ public class ClientRunnable implements Runnable {
             // if the user is in fact the moderator of the group only then delete the group
             if (groupService.isModerator(currentGroup.getGroupName(), currentUser.getUserName())) {
                 groupService.deleteGroup(currentGroup.getGroupName());
+                invitationService.removeGroup(currentGroup.getGroupName());
                 this.enqueuePrattleResponseMessage("Group deleted successfully.");
             } else {
                 this.enqueuePrattleResponseMessage("CurrentUser is not the moderator of the group.");
@@ -693,18 +1332,31 @@ public class ClientRunnable implements Runnable {
      * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
      */
     private void handlePrivateReplyMessage(Message msg) throws SQLException {
-        String destName = conversationalMessagesService.getSender(msg.getReceiverOrPassword());
-        if (destName != null) {
-            User destUser = userService.getUserByUserName(destName);
-            if (destUser == null) {
-                this.enqueuePrattleResponseMessage("msg_UniqueKey provided is wrong");
-            } else {
-                this.enqueuePrattleResponseMessage("the unique key for the message that you just sent is: " +
-                        destUser.userSendMessage(msg));
-            }
-        } else
-            this.enqueuePrattleResponseMessage("The msg_uniqueKey provided was wrong."
-                    + " Please try again with the right msg_uniqueKey");
+        String sentKey = sendDeduplicator.reserve(msg.getName(), clientMessageId);
+        if (SendDeduplicator.PENDING.equals(sentKey)) {
+            this.enqueuePrattleResponseMessage(SEND_PENDING_MESSAGE);
+            return;
+        } else if (sentKey != null) {
+            this.enqueuePrattleResponseMessage("the unique key for the message that you just sent is: " + sentKey);
+            return;
+        }
+        try {
+            String destName = conversationalMessagesService.getSender(msg.getReceiverOrPassword());
+            if (destName != null) {
+                User destUser = userService.getUserByUserName(destName);
+                if (destUser == null) {
+                    this.enqueuePrattleResponseMessage("msg_UniqueKey provided is wrong");
+                } else {
+                    String uniqueKey = destUser.userSendMessage(msg);
+                    sendDeduplicator.record(msg.getName(), clientMessageId, uniqueKey);
+                    this.enqueuePrattleResponseMessage("the unique key for the message that you just sent is: " + uniqueKey);
+                }
+            } else
+                this.enqueuePrattleResponseMessage("The msg_uniqueKey provided was wrong."
+                        + " Please try again with the right msg_uniqueKey");
+        } finally {
+            sendDeduplicator.release(msg.getName(), clientMessageId);
+        }
     }
 
     /**
@@ -832,78 +1484,104 @@ public class ClientRunnable implements Runnable {
     }
 
     /**
-     * Handles the messages get followers.
+     * Handles the messages get followers. The user and their followers are fetched asynchronously
+     * and the response is enqueued once both are available.
      *
      * @param msg the msg
-     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
      */
-    private void handleGetFollowersMessage(Message msg) throws SQLException {
-        User currUser = userService.getUserByUserName(msg.getName());
-        Map<String, String> resultantSet;
-        try {
-            resultantSet = userService.getFollowers(currUser);
-            if (resultantSet.isEmpty())
-                this.enqueuePrattleResponseMessage("Sorry, did not find any followers");
-            else
-                helperForBuildingAndSendingSearchMessage(resultantSet, "User");
-        } catch (Exception e) {
-            ChatLogger.error("Exception occurred - ClientRunnable.java - handleGetFollowersMessage() : " + ChatLogger.getTrace(e));
-            this.enqueuePrattleResponseMessage(CHECK_SYNTAX_ERROR_MESSAGE +
-                    " using HELP GFR.");
-        }
+    private void handleGetFollowersMessage(Message msg) {
+        enqueueListWhenComplete(userService.getUserByUserNameAsync(msg.getName())
+                        .thenCompose(userService::getFollowersAsync),
+                "User", "Sorry, did not find any followers", "GFR", "handleGetFollowersMessage");
     }
 
     /**
-     * Handles the messages get online users.
+     * Handles the messages get online users. The user and the online users they follow are fetched
+     * asynchronously and the response is enqueued once both are available.
      *
      * @param msg the msg
-     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
      */
-    private void handleGetOnlineUserMessage(Message msg) throws SQLException {
-        User currUser = userService.getUserByUserName(msg.getName());
-        Map<String, String> resultantSet;
-        try {
-            resultantSet = userService.getOnlineUsers(currUser);
-            if (resultantSet.isEmpty())
-                this.enqueuePrattleResponseMessage("Sorry, did not find any online users");
-            else
-                helperForBuildingAndSendingSearchMessage(resultantSet, "User");
-        } catch (Exception e) {
-            ChatLogger.error("Exception occurred - ClientRunnable.java - handleGetOnlineUserMessage() : " + ChatLogger.getTrace(e));
-            this.enqueuePrattleResponseMessage(CHECK_SYNTAX_ERROR_MESSAGE +
-                    " using HELP GOU.");
-        }
+    private void handleGetOnlineUserMessage(Message msg) {
+        enqueueListWhenComplete(userService.getUserByUserNameAsync(msg.getName())
+                        .thenCompose(userService::getOnlineUsersAsync),
+                "User", "Sorry, did not find any online users", "GOU", "handleGetOnlineUserMessage");
+    }
+
+
+    /**
+     * Handles the messages get followees. The user and their followees are fetched asynchronously
+     * and the response is enqueued once both are available.
+     *
+     * @param msg the msg
+     */
+    private void handleGetFolloweesMessage(Message msg) {
+        enqueueListWhenComplete(userService.getUserByUserNameAsync(msg.getName())
+                        .thenCompose(userService::getFolloweesAsync),
+                "User", "Sorry, did not find any followees", "GFE", "handleGetFolloweesMessage");
     }
 
+    /**
+     * Enqueues the list of users or groups fetched asynchronously, once the fetch completes.
+     *
+     * @param fetch        the pending list, mapping the user names or group names to the full names
+     *                     or moderator names
+     * @param userOrGroup  "User" or "Group", depending on what was fetched
+     * @param emptyMessage the response to enqueue if the list is empty
+     * @param helpCommand  the command whose help is suggested if the fetch failed
+     * @param method       the name of the handler, for the logs
+     */
+    private void enqueueListWhenComplete(CompletableFuture<Map<String, String>> fetch, String userOrGroup,
+                                         String emptyMessage, String helpCommand, String method) {
+        fetch.whenComplete((resultantSet, e) -> {
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                ChatLogger.error("Exception occurred - ClientRunnable.java - " + method + "() : " +
+                        ChatLogger.getTrace(cause instanceof Exception ? (Exception) cause : new Exception(cause)));
+                this.enqueuePrattleResponseMessage(CHECK_SYNTAX_ERROR_MESSAGE + " using HELP " + helpCommand + ".");
+            } else if (resultantSet.isEmpty()) {
+                this.enqueuePrattleResponseMessage(emptyMessage);
+            } else {
+                helperForBuildingAndSendingSearchMessage(resultantSet, userOrGroup);
+            }
+        });
+    }
 
     /**
-     * Handles the messages get followees.
+     * Handles the messages sent on Groups.
      *
      * @param msg the msg
      * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
      */
-    private void handleGetFolloweesMessage(Message msg) throws SQLException {
-        User currUser = userService.getUserByUserName(msg.getName());
-        Map<String, String> resultantSet;
+    private void handleGroupMessage(Message msg) throws SQLException {
+        String sentKey = sendDeduplicator.reserve(msg.getName(), clientMessageId);
+        if (SendDeduplicator.PENDING.equals(sentKey)) {
+            this.enqueuePrattleResponseMessage(SEND_PENDING_MESSAGE);
+            return;
+        } else if (sentKey != null) {
+            this.enqueuePrattleResponseMessage("message sent successfully");
+            this.enqueuePrattleResponseMessage("The group message key for the message you just sent is: " + sentKey);
+            return;
+        }
+        boolean handedOver = false;
         try {
-            resultantSet = userService.getFollowees(currUser);
-            if (resultantSet.isEmpty())
-                this.enqueuePrattleResponseMessage("Sorry, did not find any followees");
-            else
-                helperForBuildingAndSendingSearchMessage(resultantSet, "User");
-        } catch (Exception e) {
-            ChatLogger.error("Exception occurred - ClientRunnable.java - handleGetFolloweesMessage() : " + ChatLogger.getTrace(e));
-            this.enqueuePrattleResponseMessage(CHECK_SYNTAX_ERROR_MESSAGE + " using HELP GFE.");
+            handedOver = sendGroupMessage(msg);
+        } finally {
+            if (!handedOver) {
+                sendDeduplicator.release(msg.getName(), clientMessageId);
+            }
         }
     }
 
     /**
-     * Handles the messages sent on Groups.
+     * Sends a group message whose ID, if it has one, was reserved. The ID is recorded once the
+     * message is stored for the members of the group.
      *
      * @param msg the msg
+     * @return boolean      true, if the message was handed over to the fan-out stage, which records
+     * or releases the ID once it is done; false otherwise
      * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
      */
-    private void handleGroupMessage(Message msg) throws SQLException {
+    private boolean sendGroupMessage(Message msg) throws SQLException {
         User currUser = userService.getUserByUserName(msg.getName());
         Group currGroup = groupService.getGroup(msg.getReceiverOrPassword());
         if (currGroup == null) {
@@ -912,15 +1590,22 @@ public class ClientRunnable implements Runnable {
             this.enqueuePrattleResponseMessage("Please join group " + currGroup.getGroupName() +
                     " to send a message on it");
         } else {
-            this.enqueuePrattleResponseMessage("message sent successfully");
             // generate the group key to mark all individual messages sent as a result of this group message
             long time = System.currentTimeMillis();
             Timestamp sqlTimestamp = new Timestamp(time);
             String uniqueGroupKey = currUser.getUserName() + "::" + currGroup.getGroupName() + "::" + sqlTimestamp;
-            currGroup.groupSendMessage(msg, uniqueGroupKey);
+            if (pipeline != null) {
+                pipeline.fanOut(this, currGroup, msg, uniqueGroupKey, clientMessageId);
+            } else {
+                currGroup.groupSendMessage(msg, uniqueGroupKey);
+                sendDeduplicator.record(msg.getName(), clientMessageId, uniqueGroupKey);
+            }
+            this.enqueuePrattleResponseMessage("message sent successfully");
             this.enqueuePrattleResponseMessage("The group message key for the message you just sent is: " +
                     uniqueGroupKey);
+            return pipeline != null;
         }
+        return false;
     }
 
     /**
@@ -973,14 +1658,14 @@ public class ClientRunnable implements Runnable {
                 this.enqueuePrattleResponseMessage("An invitation has already been sent to user " + invitee +
                         " for the group " + groupName);
             else if (invitationService.createInvitation(inviter, invitee, groupName)) {
-                ClientRunnable inviteeClient = userClients.getOrDefault(invitee, null);
+                ClientRunnable inviteeClient = getClientByUsername(invitee);
                 if (inviteeClient != null) {
                     inviteeClient.enqueuePrattleResponseMessage("You have been invited to join group " +
                             groupName + " by user " + inviter);
                     invitationService.setInvitationIsSentToInvitee(invitee, groupName);
                 }
                 String moderator = groupService.getGroup(groupName).getModeratorName();
-                ClientRunnable moderatorClient = userClients.getOrDefault(moderator, null);
+                ClientRunnable moderatorClient = getClientByUsername(moderator);
                 if (moderatorClient != null) {
                     moderatorClient.enqueuePrattleResponseMessage(inviter + " has invited user " + invitee +
                             " to join the group " + groupName);
@@ -1231,8 +1916,12 @@ public class ClientRunnable implements Runnable {
         } else if (!groupService.checkMembershipInGroup(groupName, nextModerator.getUserName())) {
             this.enqueuePrattleResponseMessage("The user you are trying to make a moderator is not " +
                     "a member of the group");
-        } else
+        } else {
             result = groupService.updateGroupSettings(groupName, attributeName, nextModerator.getUserName());
+            if (result) {
+                invitationService.updateGroupModerator(groupName, nextModerator.getUserName());
+            }
+        }
         return result;
     }
 
@@ -1302,19 +1991,8 @@ public class ClientRunnable implements Runnable {
      * @param searchString The string that is used for the regex to retrieve all similar users
      */
     private void handleUserSearchMessage(String searchString) {
-        Map<String, String> resultantSet;
-        try {
-            resultantSet = userService.searchUser(searchString);
-            if (resultantSet.isEmpty()) {
-                this.enqueuePrattleResponseMessage("Sorry, did not find any matching records.");
-                return;
-            }
-            helperForBuildingAndSendingSearchMessage(resultantSet, "User");
-        } catch (Exception e) {
-            ChatLogger.error("Exception occurred - ClientRunnable.java - handleUserSearchMessage() : " + ChatLogger.getTrace(e));
-            this.enqueuePrattleResponseMessage(CHECK_SYNTAX_ERROR_MESSAGE +
-                    " using HELP SRH.");
-        }
+        enqueueListWhenComplete(userService.searchUserAsync(searchString), "User",
+                "Sorry, did not find any matching records.", "SRH", "handleUserSearchMessage");
     }
 
     /**
@@ -1323,19 +2001,8 @@ public class ClientRunnable implements Runnable {
      * @param searchString the string that is used by the regex to retrieve all the similar groups
      */
     private void handleGroupSearchMessage(String searchString) {
-        Map<String, String> resultantSet;
-        try {
-            resultantSet = groupService.searchGroup(searchString);
-            if (resultantSet.isEmpty()) {
-                this.enqueuePrattleResponseMessage("Sorry, did not find any matching records.");
-                return;
-            }
-            helperForBuildingAndSendingSearchMessage(resultantSet, "Group");
-        } catch (Exception e) {
-            ChatLogger.error("Error occurred - ClientRunnable.java - handleGroupSearchMessage() : " + ChatLogger.getTrace(e));
-            this.enqueuePrattleResponseMessage(CHECK_SYNTAX_ERROR_MESSAGE +
-                    " using HELP SRH.");
-        }
+        enqueueListWhenComplete(groupService.searchGroupAsync(searchString), "Group",
+                "Sorry, did not find any matching records.", "SRH", "handleGroupSearchMessage");
     }
 
     /**
@@ -1514,14 +2181,15 @@ public class ClientRunnable implements Runnable {
     }
 
     /**
-     * Helper method for formatting the message history and sending it to the appropriate user (user or government)
+     * Helper method for formatting the message history and sending it to the appropriate user (user or government),
+     * behind the chat messages
      *
      * @param msgs the list of conversational messages
      */
     private void helperFormatAndEnqueueMessages(List<ConversationalMessage> msgs) {
         List<String> conversations = helperFormatMessagesString(msgs);
         for (String s : conversations)
-            enqueuePrattleResponseMessage(s);
+            enqueueMessage(Message.makePrattleMessage(s), OutboundQueue.Lane.BULK);
     }
 
     /**
@@ -1566,6 +2234,152 @@ public class ClientRunnable implements Runnable {
     }
 
 
+    /**
+     * This function sends the user the summary of all their conversations: the last message of every
+     * conversation and the number of messages that were not yet delivered to them, most recent first.
+     *
+     * @param msg the message object sent by the user
+     */
+    private void handleGetInboxMessage(Message msg) {
+        try {
+            List<InboxEntry> inbox = inboxService.getInbox(msg.getName());
+            StringBuilder workSpace = new StringBuilder();
+            workSpace.append("\nYour inbox::\n");
+            workSpace.append(String.format("%n%-15s | %-15s | %-30s | %-25s | %-6s%n", "Conversation",
+                    "Last Sender", "Last Message", "Timestamp", "Unread"));
+            for (InboxEntry entry : inbox) {
+                workSpace.append(String.format(
+                        "%n%-15s | %-15s | %-30s | %-25s | %-6d",
+                        entry.isGroupConversation() ? entry.getConversation() + " (group)" : entry.getConversation(),
+                        entry.getLastSender(),
+                        entry.getLastMessageText(),
+                        entry.getLastMessageTimestamp(),
+                        entry.getUnreadCount()
+                ));
+            }
+            enqueueMessage(Message.makePrattleMessage(workSpace.toString()), OutboundQueue.Lane.BULK);
+        } catch (SQLException | IOException e) {
+            ChatLogger.error("Exception occurred - ClientRunnable.java - handleGetInboxMessage() : " + ChatLogger.getTrace(e));
+            enqueuePrattleResponseMessage("Something went wrong while retrieving your inbox, please try again");
+        }
+    }
+
+    /**
+     * Sends this device the next page of the messages of the user that came after the last sequence
+     * number the device received, read in order from the index on the destination and sequence
+     * number of the messages, behind the chat messages. The page is ended with a SYN message telling
+     * the sequence number of its last message, and whether more messages come after it.
+     *
+     * @param msg the message object sent by the user, with the last sequence number it received
+     */
+    private void handleSyncMessage(Message msg) {
+        long lastSequence;
+        try {
+            lastSequence = Long.parseLong(msg.getTextOrPassword());
+        } catch (NumberFormatException e) {
+            enqueuePrattleResponseMessage("Please send the last sequence number you received, or 0 for all your messages");
+            return;
+        }
+        try {
+            List<ConversationalMessage> page = conversationalMessagesService.getMessagesAfterSequence(msg.getName(),
+                    lastSequence, ServerConstants.SYNC_PAGE_SIZE + 1);
+            boolean hasMore = page.size() > ServerConstants.SYNC_PAGE_SIZE;
+            for (ConversationalMessage m : page.subList(0, Math.min(page.size(), ServerConstants.SYNC_PAGE_SIZE))) {
+                enqueueMessage(User.makeKeyedMessage(createMessageFromConversationalMessage(m), m.getMessageUniquekey(),
+                        m.getSequence()), OutboundQueue.Lane.BULK);
+                lastSequence = m.getSequence();
+            }
+            enqueueMessage(Message.makeSyncMessage(ServerConstants.SERVER_NAME, Long.toString(lastSequence),
+                    Boolean.toString(hasMore)), OutboundQueue.Lane.BULK);
+        } catch (SQLException e) {
+            ChatLogger.error("Exception occurred - ClientRunnable.java - handleSyncMessage() : " + ChatLogger.getTrace(e));
+            enqueuePrattleResponseMessage("Something went wrong while retrieving your messages, please try again");
+        }
+    }
+
+    /**
+     * Sends this device the messages of a group it missed, those with a group sequence number in the
+     * range it asked for, in order, behind the chat messages. Only the messages delivered to the user
+     * are read, and at most a page of them; the range is ended with a GRG message telling the range
+     * that was sent, after which the device asks for the rest if it needs more.
+     *
+     * @param msg the message object sent by the user, with the range as "first-last" and the group name
+     */
+    private void handleGetGroupRangeMessage(Message msg) {
+        long first;
+        long last;
+        try {
+            String[] range = msg.getTextOrPassword().split("-");
+            first = Long.parseLong(range[0]);
+            last = Long.parseLong(range[1]);
+        } catch (NullPointerException | ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            enqueuePrattleResponseMessage("Please send the range of group sequence numbers you missed as first-last");
+            return;
+        }
+        if (first < 1 || last < first) {
+            enqueuePrattleResponseMessage("Please send the range of group sequence numbers you missed as first-last");
+            return;
+        }
+        last = Math.min(last, first + ServerConstants.SYNC_PAGE_SIZE - 1);
+        String groupName = msg.getReceiverOrPassword();
+        try {
+            List<ConversationalMessage> missed = conversationalMessagesService.getGroupMessagesInRange(msg.getName(),
+                    groupName, first, last);
+            for (ConversationalMessage m : missed) {
+                enqueueMessage(User.makeKeyedMessage(createMessageFromConversationalMessage(m), m.getMessageUniquekey(),
+                        m.getSequence()), OutboundQueue.Lane.BULK);
+            }
+            enqueueMessage(Message.makeGetGroupRangeMessage(ServerConstants.SERVER_NAME, first + "-" + last,
+                    groupName), OutboundQueue.Lane.BULK);
+        } catch (SQLException e) {
+            ChatLogger.error("Exception occurred - ClientRunnable.java - handleGetGroupRangeMessage() : " + ChatLogger.getTrace(e));
+            enqueuePrattleResponseMessage("Something went wrong while retrieving your messages, please try again");
+        }
+    }
+
+    /**
+     * Subscribes this device to a channel, and sends it the messages lately published on the
+     * channel, behind the chat messages.
+     *
+     * @param msg the message object sent by the user, with the name of the channel
+     */
+    private void handleSubscribeMessage(Message msg) {
+        String channelName = msg.getTextOrPassword();
+        if (channelName == null || channelName.isEmpty()) {
+            enqueuePrattleResponseMessage("Please send the name of the channel to subscribe to");
+            return;
+        }
+        List<Message> replay = channelRegistry.subscribe(channelName, this);
+        enqueuePrattleResponseMessage("You are subscribed to channel " + channelName);
+        for (Message published : replay) {
+            enqueueMessage(published, OutboundQueue.Lane.BULK);
+        }
+    }
+
+    /**
+     * Unsubscribes this device from a channel.
+     *
+     * @param msg the message object sent by the user, with the name of the channel
+     */
+    private void handleUnsubscribeMessage(Message msg) {
+        if (channelRegistry.unsubscribe(msg.getTextOrPassword(), this)) {
+            enqueuePrattleResponseMessage("You are unsubscribed from channel " + msg.getTextOrPassword());
+        } else {
+            enqueuePrattleResponseMessage("You are not subscribed to channel " + msg.getTextOrPassword());
+        }
+    }
+
+    /**
+     * Publishes text on a channel, to all its subscribers.
+     *
+     * @param msg the message object sent by the user, with the text and the name of the channel
+     */
+    private void handlePublishMessage(Message msg) {
+        if (channelRegistry.publish(msg.getReceiverOrPassword(), msg) == 0) {
+            enqueuePrattleResponseMessage("Channel " + msg.getReceiverOrPassword() + " has no subscribers");
+        }
+    }
+
     /**
      * Method to tap a user of interest, provided the operation is requested by the government and
      * the user of interest is present in the system.
@@ -1600,6 +2414,15 @@ public class ClientRunnable implements Runnable {
         if (msg.isBroadcastMessage()) {
             Prattle.broadcastMessage(msg);
             result = true;
+        } else if (msg.isSubscribeMessage()) {
+            handleSubscribeMessage(msg);
+            result = true;
+        } else if (msg.isUnsubscribeMessage()) {
+            handleUnsubscribeMessage(msg);
+            result = true;
+        } else if (msg.isPublishMessage()) {
+            handlePublishMessage(msg);
+            result = true;
         } else if (msg.isLoginMessage()) {
             handleLoginMessage(msg);
             result = true;
@@ -1639,6 +2462,15 @@ public class ClientRunnable implements Runnable {
         } else if (msg.isGetConversationHistory()) {
             handleGetConversationHistory(msg);
             result = true;
+        } else if (msg.isGetInboxMessage()) {
+            handleGetInboxMessage(msg);
+            result = true;
+        } else if (msg.isSyncMessage()) {
+            handleSyncMessage(msg);
+            result = true;
+        } else if (msg.isGetGroupRangeMessage()) {
+            handleGetGroupRangeMessage(msg);
+            result = true;
         }
         return result;
     }
@@ -1777,10 +2609,21 @@ public class ClientRunnable implements Runnable {
      * @param msg the incoming message
      * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
      */
-    private void processMessage(Message msg) throws SQLException {
+    void processMessage(Message msg) throws SQLException {
         // Check if the message is legal formatted
-        if (messageChecks(msg)) {
-            handleMessageByType(msg);
+        if (requestedName != null && msg.isLoginMessage() && requestedName.equals(msg.getName())) {
+            handleDeviceLogin(msg);
+        } else if (messageChecks(msg)) {
+            if (msg.isMessageIdMessage()) {
+                // The ID goes with the next message of the client, handled right after this one.
+                clientMessageId = msg.getTextOrPassword();
+                return;
+            }
+            try {
+                handleMessageByType(msg);
+            } finally {
+                clientMessageId = null;
+            }
         } else {
             Message sendMsg = Message.makeBroadcastMessage(ServerConstants.BOUNCER_ID,
                     "Last message was rejected because it specified an incorrect user name.");
@@ -1794,19 +2637,43 @@ public class ClientRunnable implements Runnable {
     private void handleOutgoingMessages() {
         // Check to make sure we have a client to send to.
         boolean keepAlive = true;
+        // The heartbeats are sent as they were encoded once for all the clients.
+        if (pingDue.compareAndSet(true, false)) {
+            keepAlive = connection.sendFrame(Heartbeat.PING_FRAME);
+        }
+        if (pongDue.compareAndSet(true, false)) {
+            keepAlive &= connection.sendFrame(Heartbeat.PONG_FRAME);
+        }
         if (!waitingList.isEmpty()) {
             keepAlive = false;
             // Send out all of the message that have been added to the queue.
-            do {
-                Message msg = waitingList.remove();
-                boolean sentGood = sendMessage(msg);
+            lastActiveAt = System.currentTimeMillis();
+            while (true) {
+                Message msg = waitingList.poll();
+                boolean sentGood;
+                String uniqueKey;
+                if (msg != null) {
+                    sentGood = sendMessage(msg);
+                    uniqueKey = msg.getUniqueKey();
+                } else {
+                    // The next message overflowed to disk, and is already encoded.
+                    OutboundQueue.SpilledFrame spilled = waitingList.pollSpilled();
+                    if (spilled == null) {
+                        break;
+                    }
+                    sentGood = connection.sendFrame(spilled.getFrame());
+                    uniqueKey = spilled.getUniqueKey();
+                }
                 keepAlive |= sentGood;
+                if (sentGood && uniqueKey != null) {
+                    sent(uniqueKey);
+                }
                 // Update the time until we terminate the client for inactivity.
                 timer.updateAfterActivity();
-
-            } while (!waitingList.isEmpty());
+            }
         }
         terminate |= !keepAlive;
+        connectionLost |= !keepAlive;
     }
 
     /**
@@ -1825,13 +2692,20 @@ public class ClientRunnable implements Runnable {
      * the client's request or due to system need.
      */
     private void terminateClient() throws SQLException {
+        if (draining) {
+            // Send what is left, such as the time to reconnect, before closing.
+            handleOutgoingMessages();
+        }
         // Once the communication is done, close this connection.
         connection.close();
-
-        // logout user if already logged in
-        User currentUser = userService.getUserByUserName(this.getName());
-        userClients.remove(this.getName());
-        if (currentUser.isLoggedIn()) {
+        sessionResumption.revoke(resumeToken, this);
+
+        // logout user if already logged in, unless another device of the user is still connected or
+        // the draining server does it for everyone
+        SessionRegistry.getInstance().release(this.getName(), this);
+        User currentUser = draining || getClientByUsername(this.getName()) != null
+                ? null : userService.getUserByUserName(this.getName());
+        if (currentUser != null && currentUser.isLoggedIn()) {
             boolean updated = userService.updateUserAttributes(
                     currentUser.getUserName(),
                     "logged_in",
@@ -1842,10 +2716,16 @@ public class ClientRunnable implements Runnable {
                         currentUser.getUserName() + " was not updated.");
             }
         }
+        // Stop tracking the inactivity of the client.
+        timer.cancel();
+        // Drop the messages the client will not get, and their overflow file.
+        waitingList.close();
         // Remove the client from our client listing.
         Prattle.removeClient(this);
         // And remove the client from our client pool.
-        runnableMe.cancel(false);
+        if (runnableMe != null) {
+            runnableMe.cancel(false);
+        }
     }
 
     /**
@@ -1855,6 +2735,17 @@ public class ClientRunnable implements Runnable {
      * @return ClientRunnable   null (if there no entry for the key) or the corresponding ClientRunnable instance
      */
     public static ClientRunnable getClientByUsername(String username) {
-        return userClients.getOrDefault(username, null);
+        return SessionRegistry.getInstance().getClient(username);
+    }
+
+    /**
+     * This method gets the client runnable instances of all the devices of the user with the
+     * username provided
+     *
+     * @param username key on which the corresponding instances are to be found
+     * @return ClientRunnable[] the instances, one per connected device; empty if the user is not connected
+     */
+    public static ClientRunnable[] getDevicesByUsername(String username) {
+        return SessionRegistry.getInstance().getDevices(username);
     }
 }
@@ -7,10 +7,10 @@
 
 package edu.northeastern.ccs.im.server;
 
-import java.util.GregorianCalendar;
-
 /**
- * Class that represents the calendar used by the ClientRunnable.
+ * Class that represents the idle deadline of a ClientRunnable. The deadlines of all the clients are
+ * kept in one shared timer wheel, so that activity only moves a deadline and a single sweep per
+ * tick finds the clients that have been inactive for too long.
  *
  * @author Riya Nadkarni
  * @version 12-27-2018
@@ -23,22 +23,30 @@ class ClientTimer {
     private static final long TERMINATE_AFTER_INACTIVE_BUT_LOGGEDIN_IN_MS = 18000000;
 
     /**
-     * Number of milliseconds after which we terminate a client due to inactivity.
-     * This is currently equal to 5 hours.
+     * Number of milliseconds after which we terminate a client due to inactivity
+     * before it has logged in. This is currently equal to 10 minutes.
      */
     private static final long TERMINATE_AFTER_INACTIVE_INITIAL_IN_MS = 600000;
 
     /**
      * Time at which the client should be terminated due to lack of activity.
      */
-    private GregorianCalendar calendar;
+    private final TimerWheel.Timeout timeout;
 
     /**
-     * Constructor for the timer.
+     * Constructor for the timer, on the shared timer wheel.
      */
     ClientTimer() {
-        calendar = new GregorianCalendar();
-        calendar.setTimeInMillis(calendar.getTimeInMillis() + TERMINATE_AFTER_INACTIVE_INITIAL_IN_MS);
+        this(TimerWheel.getInstance());
+    }
+
+    /**
+     * Constructor for the timer.
+     *
+     * @param wheel the wheel keeping the deadline
+     */
+    ClientTimer(TimerWheel wheel) {
+        timeout = wheel.schedule(TERMINATE_AFTER_INACTIVE_INITIAL_IN_MS);
     }
 
     /**
@@ -46,8 +54,7 @@ class ClientTimer {
      * terminated for inactivity.
      */
     void updateAfterInitialization() {
-        calendar.setTimeInMillis(
-                new GregorianCalendar().getTimeInMillis() + TERMINATE_AFTER_INACTIVE_INITIAL_IN_MS);
+        timeout.reschedule(TERMINATE_AFTER_INACTIVE_INITIAL_IN_MS);
     }
 
     /**
@@ -55,16 +62,29 @@ class ClientTimer {
      * terminated for inactivity.
      */
     void updateAfterActivity() {
-        calendar.setTimeInMillis(
-                new GregorianCalendar().getTimeInMillis() + TERMINATE_AFTER_INACTIVE_BUT_LOGGEDIN_IN_MS);
+        timeout.reschedule(TERMINATE_AFTER_INACTIVE_BUT_LOGGEDIN_IN_MS);
     }
 
     /**
-     * Checks whether the calendar represents a time before the current time.
+     * Checks whether the deadline of the client has passed.
      *
-     * @return true if the time passed in is later than the current value of calendar, false otherwise.
+     * @return true if the timer wheel found the deadline behind the current time, false otherwise.
      */
     boolean isBehind() {
-        return calendar.before(new GregorianCalendar());
+        return timeout.isExpired();
+    }
+
+    /**
+     * Removes the deadline of a client that is gone from the timer wheel.
+     */
+    void cancel() {
+        timeout.cancel();
+    }
+
+    /**
+     * @return the time at which the client is terminated for inactivity, in milliseconds since the epoch
+     */
+    long getDeadline() {
+        return timeout.getDeadline();
     }
 }
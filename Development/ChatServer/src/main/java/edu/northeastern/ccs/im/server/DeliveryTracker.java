@@ -0,0 +1,130 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.northeastern.ccs.im.ChatLogger;
+import edu.northeastern.ccs.im.services.ConversationalMessageDAO;
+import edu.northeastern.ccs.im.services.ConversationalMessageService;
+
+/**
+ * Keeps track of the stored messages that were delivered, and marks them sent in the database in
+ * batches. A message is delivered once a device of its user acknowledges it with an ACK message
+ * or, for a device that does not send acknowledgements, once it is written to the connection of
+ * the device. Rather than an update per message, the keys of the delivered messages are collected,
+ * the same message delivered to several devices only once, and marked sent together in one batch
+ * every few hundred milliseconds.
+ *
+ * A message that was never delivered keeps msg_sent = 0, and is sent again when its user logs in.
+ */
+class DeliveryTracker {
+
+    private static DeliveryTracker deliveryTracker;
+
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong persisted = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    /**
+     * Get the singleton instance of the DeliveryTracker
+     *
+     * @return DeliveryTracker  the singleton instance of this class
+     */
+    static synchronized DeliveryTracker getInstance() {
+        if (deliveryTracker == null) {
+            deliveryTracker = new DeliveryTracker();
+        }
+        return deliveryTracker;
+    }
+
+    /**
+     * Records that a stored message was delivered.
+     *
+     * @param uniqueKey the unique key of the message
+     */
+    void delivered(String uniqueKey) {
+        delivered.incrementAndGet();
+        pending.add(uniqueKey);
+    }
+
+    /**
+     * Records that stored messages were delivered.
+     *
+     * @param uniqueKeys the unique keys of the messages
+     */
+    void delivered(Collection<String> uniqueKeys) {
+        delivered.addAndGet(uniqueKeys.size());
+        pending.addAll(uniqueKeys);
+    }
+
+    /**
+     * Marks the messages delivered since the last flush as sent, in one batch.
+     */
+    void flush() {
+        try {
+            flush(ConversationalMessageService.getInstance());
+        } catch (SQLException | IOException e) {
+            ChatLogger.error("Exception occurred - DeliveryTracker.java - flush() : " + ChatLogger.getTrace(e));
+        }
+    }
+
+    /**
+     * Marks the messages delivered since the last flush as sent, in one batch. The messages are
+     * kept for the next flush if the batch fails.
+     *
+     * @param conversationalMessageService the service through which the messages are marked sent
+     * @return int          the number of messages marked sent
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    int flush(ConversationalMessageDAO conversationalMessageService) throws SQLException {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        List<String> batch = new ArrayList<>();
+        Iterator<String> keys = pending.iterator();
+        while (keys.hasNext()) {
+            batch.add(keys.next());
+            keys.remove();
+        }
+        try {
+            int marked = conversationalMessageService.markMessagesAsSent(batch);
+            persisted.addAndGet(marked);
+            batches.incrementAndGet();
+            return marked;
+        } catch (SQLException e) {
+            pending.addAll(batch);
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of delivered messages waiting to be marked sent
+     */
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * @return the metrics of the tracker, in a form that can be logged
+     */
+    @Override
+    public String toString() {
+        return "DeliveryTracker[delivered=" + delivered.get() + ", persisted=" + persisted.get() + ", batches="
+                + batches.get() + ", pending=" + pending.size() + "]";
+    }
+}
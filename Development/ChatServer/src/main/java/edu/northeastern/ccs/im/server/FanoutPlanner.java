@@ -0,0 +1,314 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.northeastern.ccs.im.Message;
+import edu.northeastern.ccs.im.models.Group;
+import edu.northeastern.ccs.im.models.User;
+import edu.northeastern.ccs.im.services.ConversationalMessageDAO;
+import edu.northeastern.ccs.im.services.ConversationalMessageService;
+import edu.northeastern.ccs.im.services.InboxService;
+import edu.northeastern.ccs.im.services.SequenceLock;
+
+/**
+ * Plans and runs the delivery of a group message to the members of the group and of its member
+ * groups. Instead of walking the members one at a time, storing and delivering the copy of each
+ * before moving to the next, the planner:
+ * <ul>
+ * <li>walks the loaded membership of the group once, every member group once, and collects every
+ * member once, whatever the number of groups it is reached through</li>
+ * <li>splits the members into those connected with a device and the others</li>
+ * <li>stores the copies of the members in batches, each numbered while holding the
+ * {@link SequenceLock} of a few of the locks of the users, taken in ascending order, and their
+ * mappings to the group message along, so that a large group does not hold up the messages sent
+ * to all the users meanwhile</li>
+ * <li>delivers the copies to the connected members in parallel chunks, on a fork-join pool</li>
+ * </ul>
+ * The fan-out of a group runs in the mailbox of the group, which waits for the chunks, so that the
+ * messages of a group are still delivered in the order of their group sequence numbers.
+ */
+class FanoutPlanner {
+
+    private static FanoutPlanner fanoutPlanner;
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final int lockStripes;
+    private final ConversationalMessageDAO conversationalMessageService;
+    private final InboxService inboxService;
+    private final AtomicLong fanOuts = new AtomicLong();
+    private final AtomicLong recipients = new AtomicLong();
+    private final AtomicLong online = new AtomicLong();
+    private volatile long maxFanOutInMs;
+
+    /**
+     * Creates a planner.
+     *
+     * @param parallelism                  the number of threads delivering to the online members
+     * @param chunkSize                    the number of online members a thread delivers to in one go
+     * @param lockStripes                  the number of sequence locks of the users held at once
+     * @param conversationalMessageService the service through which the copies are stored
+     * @param inboxService                 the service keeping the inbox summaries of the members
+     */
+    FanoutPlanner(int parallelism, int chunkSize, int lockStripes,
+                  ConversationalMessageDAO conversationalMessageService, InboxService inboxService) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.chunkSize = chunkSize;
+        this.lockStripes = lockStripes;
+        this.conversationalMessageService = conversationalMessageService;
+        this.inboxService = inboxService;
+    }
+
+    /**
+     * Get the singleton instance of the FanoutPlanner
+     *
+     * @return FanoutPlanner    the singleton instance of this class
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     * @throws IOException  the IO exception thrown if the database configuration cannot be read
+     */
+    static synchronized FanoutPlanner getInstance() throws SQLException, IOException {
+        if (fanoutPlanner == null) {
+            fanoutPlanner = new FanoutPlanner(ServerConstants.FAN_OUT_PARALLELISM, ServerConstants.FAN_OUT_CHUNK_SIZE,
+                    ServerConstants.FAN_OUT_LOCK_STRIPES, ConversationalMessageService.getInstance(),
+                    InboxService.getInstance());
+        }
+        return fanoutPlanner;
+    }
+
+    /**
+     * Collects the members of a group and of its member groups, each once.
+     *
+     * @param group the group the message is sent to
+     * @return Set      the members, in the order they were found
+     */
+    static Set<User> collectRecipients(Group group) {
+        Set<User> members = new LinkedHashSet<>();
+        Set<Group> visited = new HashSet<>();
+        Deque<Group> toVisit = new ArrayDeque<>();
+        toVisit.push(group);
+        while (!toVisit.isEmpty()) {
+            Group current = toVisit.pop();
+            // a group can be a member of several groups of the hierarchy. Do not walk it again
+            if (visited.add(current)) {
+                members.addAll(current.getMemberUsers());
+                toVisit.addAll(current.getMemberGroups());
+            }
+        }
+        return members;
+    }
+
+    /**
+     * Stores and delivers a group message to the members of a group and of its member groups. The
+     * message takes the next sequence number of the messages of the group first, and is stored for
+     * all the members under the lock of the group, so that the messages of the group are stored in
+     * the order of their numbers, whichever path sent them. The number is kept once a copy of the
+     * message carries it, as when the group sends the message itself.
+     *
+     * @param group          the group the message is sent to
+     * @param msg            the message
+     * @param uniqueGroupKey the unique key of the group message
+     * @return Result       the number of members the message was delivered to, and the time it took
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    Result fanOut(Group group, Message msg, String uniqueGroupKey) throws SQLException {
+        long start = System.nanoTime();
+        List<User> onlineMembers = new ArrayList<>();
+        List<User> offlineMembers = new ArrayList<>();
+        Map<String, Long> sequences = new HashMap<>();
+        Set<User> members = collectRecipients(group);
+        SortedMap<Integer, List<String>> namesByStripe = new TreeMap<>();
+        for (User u : members) {
+            ClientRunnable client = ClientRunnable.getClientByUsername(u.getUserName());
+            if (client != null && client.isInitialized()) {
+                onlineMembers.add(u);
+            } else {
+                offlineMembers.add(u);
+            }
+            namesByStripe.computeIfAbsent(SequenceLock.stripeOf(u.getUserName()), stripe -> new ArrayList<>())
+                    .add(u.getUserName());
+        }
+        Map<String, String> uniqueKeys = new HashMap<>();
+        try (SequenceLock groupLock = SequenceLock.forGroup(conversationalMessageService, group.getGroupName())) {
+            msg.setGroupSequence(groupLock.next(group.getGroupName()));
+            List<String> batch = new ArrayList<>();
+            int batchStripes = 0;
+            for (List<String> names : namesByStripe.values()) {
+                batch.addAll(names);
+                if (++batchStripes == lockStripes) {
+                    storeBatch(msg, uniqueGroupKey, batch, sequences, uniqueKeys, groupLock);
+                    batch.clear();
+                    batchStripes = 0;
+                }
+            }
+            if (!batch.isEmpty()) {
+                storeBatch(msg, uniqueGroupKey, batch, sequences, uniqueKeys, groupLock);
+            }
+        }
+        for (User u : offlineMembers) {
+            messageStored(msg, u, uniqueKeys.get(u.getUserName()), false);
+        }
+        pool.invoke(new Delivery(msg, onlineMembers, 0, onlineMembers.size(), uniqueKeys, sequences));
+
+        long elapsedInMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        fanOuts.incrementAndGet();
+        recipients.addAndGet(sequences.size());
+        online.addAndGet(onlineMembers.size());
+        if (elapsedInMs > maxFanOutInMs) {
+            maxFanOutInMs = elapsedInMs;
+        }
+        return new Result(sequences.size(), onlineMembers.size(), elapsedInMs);
+    }
+
+    /**
+     * Numbers and stores the copies of a batch of members, and their mappings to the group message,
+     * holding the sequence locks of those members only.
+     *
+     * @param msg            the group message, numbered with the sequence of the group
+     * @param uniqueGroupKey the unique key of the group message
+     * @param memberNames    the user names of the members of the batch
+     * @param sequences      the sequence numbers of the copies, to which those of the batch are added
+     * @param uniqueKeys     the unique keys of the copies, to which those of the batch are added
+     * @param groupLock      the lock of the group, committed once a copy carries its number
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    private void storeBatch(Message msg, String uniqueGroupKey, List<String> memberNames, Map<String, Long> sequences,
+                            Map<String, String> uniqueKeys, SequenceLock groupLock) throws SQLException {
+        Map<String, Long> batchSequences = new HashMap<>();
+        Map<String, String> batchKeys;
+        try (SequenceLock lock = SequenceLock.forUsers(conversationalMessageService, memberNames)) {
+            for (String memberName : memberNames) {
+                batchSequences.put(memberName, lock.next(memberName));
+            }
+            batchKeys = conversationalMessageService.insertConversationalMessages(msg.getName(),
+                    msg.getTextOrPassword(), batchSequences);
+            lock.commit();
+        }
+        sequences.putAll(batchSequences);
+        uniqueKeys.putAll(batchKeys);
+        conversationalMessageService.insertGroupConversationalMessages(uniqueGroupKey, batchKeys.values(),
+                msg.getReceiverOrPassword(), msg.getGroupSequence());
+        groupLock.commit();
+    }
+
+    /**
+     * Updates the inbox summary of a member after the copy of a group message was stored for it.
+     *
+     * @param msg       the group message
+     * @param member    the member
+     * @param uniqueKey the unique key of the copy of the member
+     * @param delivered true, if the copy is handed to a device of the member right away
+     */
+    private void messageStored(Message msg, User member, String uniqueKey, boolean delivered) {
+        inboxService.messageStored(member.getUserName(), msg.getReceiverOrPassword(), true, msg.getName(),
+                msg.getTextOrPassword(), uniqueKey, delivered);
+    }
+
+    /**
+     * @return the metrics of the planner, in a form that can be logged
+     */
+    @Override
+    public String toString() {
+        return "FanoutPlanner[fanOuts=" + fanOuts.get() + ", recipients=" + recipients.get() + ", online="
+                + online.get() + ", maxFanOutInMs=" + maxFanOutInMs + "]";
+    }
+
+    /**
+     * The outcome of the fan-out of a group message.
+     */
+    static final class Result {
+        private final int recipientCount;
+        private final int onlineCount;
+        private final long elapsedInMs;
+
+        Result(int recipientCount, int onlineCount, long elapsedInMs) {
+            this.recipientCount = recipientCount;
+            this.onlineCount = onlineCount;
+            this.elapsedInMs = elapsedInMs;
+        }
+
+        /**
+         * @return the number of members the message was stored for
+         */
+        int getRecipientCount() {
+            return recipientCount;
+        }
+
+        /**
+         * @return the number of members the message was delivered to right away
+         */
+        int getOnlineCount() {
+            return onlineCount;
+        }
+
+        /**
+         * @return the time the fan-out took, storing included
+         */
+        long getElapsedInMs() {
+            return elapsedInMs;
+        }
+    }
+
+    /**
+     * Delivers a group message to a slice of the online members, splitting the slice in two until
+     * it is no larger than a chunk.
+     */
+    private final class Delivery extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Message msg;
+        private final transient List<User> members;
+        private final int from;
+        private final int to;
+        private final transient Map<String, String> uniqueKeys;
+        private final transient Map<String, Long> sequences;
+
+        Delivery(Message msg, List<User> members, int from, int to, Map<String, String> uniqueKeys,
+                 Map<String, Long> sequences) {
+            this.msg = msg;
+            this.members = members;
+            this.from = from;
+            this.to = to;
+            this.uniqueKeys = uniqueKeys;
+            this.sequences = sequences;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > chunkSize) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Delivery(msg, members, from, middle, uniqueKeys, sequences),
+                        new Delivery(msg, members, middle, to, uniqueKeys, sequences));
+                return;
+            }
+            for (User u : members.subList(from, to)) {
+                String uniqueKey = uniqueKeys.get(u.getUserName());
+                messageStored(msg, u, uniqueKey, true);
+                u.enqueueMessageToUser(msg, uniqueKey, sequences.get(u.getUserName()));
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.northeastern.ccs.im.ChatLogger;
+import edu.northeastern.ccs.im.Message;
+
+/**
+ * Server-driven heartbeat detecting the clients whose network has gone away. Every sweep looks at
+ * the time each logged in client was last heard from: a client silent for one interval is sent a
+ * PNG message, which it answers with a PON message, and a client silent for several intervals in a
+ * row is evicted, so that its messages are no longer taken as delivered; its session is suspended
+ * for it to resume if it logged in, and closed otherwise.
+ *
+ * The heartbeat messages are encoded once for all the clients, and neither sending nor answering
+ * them touches the database.
+ */
+class Heartbeat {
+
+    /**
+     * The heartbeat sent by the server, encoded once.
+     */
+    static final byte[] PING_FRAME = encode(Message.makePingMessage(ServerConstants.SERVER_NAME));
+
+    /**
+     * The answer of the server to a heartbeat sent by a client, encoded once.
+     */
+    static final byte[] PONG_FRAME = encode(Message.makePongMessage(ServerConstants.SERVER_NAME));
+
+    private final long intervalInMs;
+    private final int missedLimit;
+    private final AtomicLong pingsSent = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a heartbeat with the intervals of the server.
+     */
+    Heartbeat() {
+        this(ServerConstants.HEARTBEAT_INTERVAL_IN_MS, ServerConstants.HEARTBEAT_MISSED_LIMIT);
+    }
+
+    /**
+     * Creates a heartbeat.
+     *
+     * @param intervalInMs the time a client may stay silent before it is sent a heartbeat
+     * @param missedLimit  the number of intervals a client may stay silent before it is evicted
+     */
+    Heartbeat(long intervalInMs, int missedLimit) {
+        this.intervalInMs = intervalInMs;
+        this.missedLimit = missedLimit;
+    }
+
+    /**
+     * Sweeps the clients at the current time.
+     */
+    void sweep() {
+        sweep(System.currentTimeMillis());
+    }
+
+    /**
+     * Sends a heartbeat to every logged in client that has been silent for an interval, and evicts
+     * the ones that have been silent for too many.
+     *
+     * @param now the current time in milliseconds
+     */
+    void sweep(long now) {
+        for (ClientRunnable client : SessionRegistry.getInstance().getClients()) {
+            if (!client.isInitialized() || client.isSuspended()) {
+                continue;
+            }
+            long silentFor = now - client.getLastHeardAt();
+            if (silentFor >= intervalInMs * missedLimit) {
+                if (client.evict()) {
+                    evictions.incrementAndGet();
+                    ChatLogger.info("Evicting " + client.getName() + ", silent for " + silentFor + " ms.");
+                }
+            } else if (silentFor >= intervalInMs) {
+                client.requestPing();
+                pingsSent.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return the number of heartbeats sent
+     */
+    long getPingsSent() {
+        return pingsSent.get();
+    }
+
+    /**
+     * @return the number of clients evicted for not answering
+     */
+    long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the metrics of the heartbeat, in a form that can be logged
+     */
+    @Override
+    public String toString() {
+        return "Heartbeat[pings=" + pingsSent.get() + ", evictions=" + evictions.get() + "]";
+    }
+
+    private static byte[] encode(Message message) {
+        return message.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
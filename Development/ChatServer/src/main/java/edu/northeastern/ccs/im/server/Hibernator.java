@@ -0,0 +1,183 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.northeastern.ccs.im.ChatLogger;
+
+/**
+ * Keeps the idle clients of the server off the thread pool. A client idle for long enough releases
+ * the buffer and the selector of its connection and stops being scheduled; all that is left of its
+ * connection is a selection key in the selector shared by all the hibernating clients. The client
+ * is scheduled again as soon as that selector sees something to read, or as soon as something has
+ * to be sent to it.
+ *
+ * Channels are registered with the shared selector by its own thread, since a registration made by
+ * another thread would wait for the selection in progress to end.
+ */
+class Hibernator {
+
+    private final Selector selector;
+    private final ScheduledExecutorService threadPool;
+    private final long idleInMs;
+    private final Queue<ClientRunnable> arrivals = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger hibernating = new AtomicInteger();
+    private final AtomicLong hibernations = new AtomicLong();
+    private final AtomicLong wakeUps = new AtomicLong();
+    private volatile boolean running;
+
+    /**
+     * Creates a hibernator.
+     *
+     * @param threadPool the pool on which the clients are scheduled
+     * @param idleInMs   the time a client must be idle before it hibernates
+     * @throws IOException if the shared selector cannot be opened
+     */
+    Hibernator(ScheduledExecutorService threadPool, long idleInMs) throws IOException {
+        this.selector = Selector.open();
+        this.threadPool = threadPool;
+        this.idleInMs = idleInMs;
+    }
+
+    /**
+     * Starts the thread watching the shared selector.
+     */
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        Thread watcher = new Thread(this::watch, "hibernator");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Stops the thread watching the shared selector.
+     */
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * @return the time a client must be idle before it hibernates
+     */
+    long getIdleInMs() {
+        return idleInMs;
+    }
+
+    /**
+     * Hands a client that has released its connection over to the shared selector.
+     *
+     * @param client the hibernating client
+     */
+    void park(ClientRunnable client) {
+        hibernating.incrementAndGet();
+        hibernations.incrementAndGet();
+        arrivals.add(client);
+        selector.wakeup();
+    }
+
+    /**
+     * Takes a client back from the shared selector and schedules it again right away.
+     *
+     * @param client the client waking up
+     */
+    void resume(ClientRunnable client) {
+        hibernating.decrementAndGet();
+        wakeUps.incrementAndGet();
+        ScheduledFuture<?> clientFuture = threadPool.scheduleAtFixedRate(client, 0,
+                ServerConstants.CLIENT_CHECK_DELAY, TimeUnit.MILLISECONDS);
+        client.setFuture(clientFuture);
+    }
+
+    /**
+     * Registers the arriving clients with the shared selector, and wakes up the clients whose
+     * connection has something to read, until the hibernator is stopped.
+     */
+    private void watch() {
+        try {
+            while (running) {
+                selector.select();
+                register();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    // The key is only needed until the first read.
+                    key.cancel();
+                    ((ClientRunnable) key.attachment()).wake();
+                }
+            }
+            selector.close();
+        } catch (IOException e) {
+            ChatLogger.error("Exception occurred - Hibernator.java - watch() : " + ChatLogger.getTrace(e));
+        }
+    }
+
+    /**
+     * Registers the clients that arrived since the last selection, unless they have woken up since.
+     */
+    private void register() {
+        ClientRunnable client;
+        while ((client = arrivals.poll()) != null) {
+            try {
+                client.hibernateOn(selector);
+            } catch (ClosedChannelException e) {
+                // The client was terminated while arriving.
+                client.wake();
+            } catch (IOException e) {
+                ChatLogger.error("Exception occurred - Hibernator.java - register() : " + ChatLogger.getTrace(e));
+                client.wake();
+            }
+        }
+    }
+
+    /**
+     * @return the number of clients hibernating
+     */
+    int getHibernatingCount() {
+        return hibernating.get();
+    }
+
+    /**
+     * @return the number of times a client went into hibernation
+     */
+    long getHibernations() {
+        return hibernations.get();
+    }
+
+    /**
+     * @return the number of times a client woke up from hibernation
+     */
+    long getWakeUps() {
+        return wakeUps.get();
+    }
+
+    /**
+     * @return the metrics of the hibernator, in a form that can be logged
+     */
+    @Override
+    public String toString() {
+        return "Hibernator[hibernating=" + hibernating.get() + ", hibernations=" + hibernations.get()
+                + ", wakeUps=" + wakeUps.get() + "]";
+    }
+}
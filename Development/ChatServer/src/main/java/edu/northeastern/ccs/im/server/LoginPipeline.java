@@ -0,0 +1,207 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+import edu.northeastern.ccs.im.ChatLogger;
+import edu.northeastern.ccs.im.Message;
+import edu.northeastern.ccs.im.db.DBExecutor;
+import edu.northeastern.ccs.im.models.ConversationalMessage;
+import edu.northeastern.ccs.im.models.User;
+import edu.northeastern.ccs.im.services.ConversationalMessageService;
+import edu.northeastern.ccs.im.services.InvitationService;
+import edu.northeastern.ccs.im.services.UserService;
+
+/**
+ * Class that fetches everything a successful login needs to deliver. The database fetches do not
+ * depend on each other, so they are run concurrently on the DBExecutor and the login waits only as
+ * long as the slowest of them. The pending invitations are read from the in-memory index while they
+ * run. When the login itself runs on the DBExecutor, as in the virtual-thread mode, the fetches run
+ * one after the other on its thread. The time taken by every phase is logged.
+ */
+class LoginPipeline {
+
+    /**
+     * Name of the government user, who is notified when a tapped user logs in.
+     */
+    private static final String GOVERNMENT = "government";
+
+    private UserService userService;
+    private ConversationalMessageService conversationalMessageService;
+    private InvitationService invitationService;
+    private DBExecutor executor;
+
+    /**
+     * Time taken by each phase of the login, in milliseconds.
+     */
+    private Map<String, Long> phaseTimes = new ConcurrentHashMap<>();
+
+    /**
+     * Instantiates a pipeline over the services that hold the data of the user.
+     *
+     * @param userService                  the user service
+     * @param conversationalMessageService the conversational message service
+     * @param invitationService            the invitation service
+     */
+    LoginPipeline(UserService userService, ConversationalMessageService conversationalMessageService,
+                  InvitationService invitationService) {
+        this.userService = userService;
+        this.conversationalMessageService = conversationalMessageService;
+        this.invitationService = invitationService;
+        this.executor = DBExecutor.getInstance();
+    }
+
+    /**
+     * Authenticates the user. This call and the one marking the user as logged in depend on each
+     * other, so they are run in sequence on the calling thread.
+     *
+     * @param username the username of the user
+     * @param password the password of the user
+     * @return User         the authenticated user, or null if the credentials are invalid
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    User authenticate(String username, String password) throws SQLException {
+        long start = System.currentTimeMillis();
+        User currentUser = userService.getUserByUserNameAndPassword(username, password);
+        phaseTimes.put("credentials", System.currentTimeMillis() - start);
+        return currentUser;
+    }
+
+    /**
+     * Marks the user as logged in.
+     *
+     * @param currentUser the user who is logging in
+     * @return boolean      true, if the user was marked as logged in
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    boolean markLoggedIn(User currentUser) throws SQLException {
+        long start = System.currentTimeMillis();
+        boolean updated = userService.updateUserAttributes(currentUser.getUserName(), "logged_in", "1");
+        phaseTimes.put("loggedIn", System.currentTimeMillis() - start);
+        return updated;
+    }
+
+    /**
+     * Fetches the unsent messages and, if the user is tapped, the government user, all at once, and
+     * reads the pending invitations of the user as an invitee and as a moderator meanwhile.
+     *
+     * @param currentUser the user who logged in
+     * @return LoginBundle  everything that has to be delivered to the user
+     * @throws SQLException the sql exception thrown by any of the fetches
+     */
+    LoginBundle fetch(User currentUser) throws SQLException {
+        long start = System.currentTimeMillis();
+        String username = currentUser.getUserName();
+        Future<List<ConversationalMessage>> messages = submit("messages",
+                () -> conversationalMessageService.getMessagesForUser(username, true));
+        Future<User> government = currentUser.isTapped()
+                ? submit("government", () -> userService.getUserByUserName(GOVERNMENT))
+                : null;
+        // the invitations are served by the in-memory index, so a hand-off to the pool would only add latency
+        long invitationsStart = System.currentTimeMillis();
+        Set<Message> inviteeInvitations = invitationService.getPendingInvitationsForInvitee(username);
+        Set<Message> moderatorInvitations = invitationService.getPendingInvitationsForModerator(username);
+        phaseTimes.put("invitations", System.currentTimeMillis() - invitationsStart);
+
+        LoginBundle bundle = new LoginBundle(
+                DBExecutor.await(messages),
+                inviteeInvitations,
+                moderatorInvitations,
+                government == null ? null : DBExecutor.await(government));
+        phaseTimes.put("fetch", System.currentTimeMillis() - start);
+        ChatLogger.info("Login of " + username + " - phase times in ms: " + phaseTimes);
+        return bundle;
+    }
+
+    /**
+     * Submits a fetch to the executor, recording the time it takes.
+     *
+     * @param phase the name of the phase
+     * @param task  the fetch
+     * @param <T>   the type of the result of the fetch
+     * @return Future       the pending result of the fetch
+     */
+    private <T> Future<T> submit(String phase, Callable<T> task) {
+        return executor.submit(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                return task.call();
+            } finally {
+                phaseTimes.put(phase, System.currentTimeMillis() - start);
+            }
+        });
+    }
+
+    /**
+     * @return the time taken by each phase of the login so far, in milliseconds
+     */
+    Map<String, Long> getPhaseTimes() {
+        return phaseTimes;
+    }
+
+    /**
+     * Everything that has to be delivered to a user who just logged in.
+     */
+    static class LoginBundle {
+
+        private List<ConversationalMessage> unsentMessages;
+        private Set<Message> inviteeInvitations;
+        private Set<Message> moderatorInvitations;
+        private User government;
+
+        /**
+         * @param unsentMessages       the messages that were stored while the user was offline
+         * @param inviteeInvitations   the invitations to groups that the user has not seen yet
+         * @param moderatorInvitations the invitations to the groups moderated by the user that the
+         *                             user has not seen yet
+         * @param government           the government user, if it has to be notified of the login
+         */
+        LoginBundle(List<ConversationalMessage> unsentMessages, Set<Message> inviteeInvitations,
+                    Set<Message> moderatorInvitations, User government) {
+            this.unsentMessages = unsentMessages;
+            this.inviteeInvitations = inviteeInvitations;
+            this.moderatorInvitations = moderatorInvitations;
+            this.government = government;
+        }
+
+        /**
+         * @return the messages that were stored while the user was offline
+         */
+        List<ConversationalMessage> getUnsentMessages() {
+            return unsentMessages;
+        }
+
+        /**
+         * @return the invitations to groups that the user has not seen yet
+         */
+        Set<Message> getInviteeInvitations() {
+            return inviteeInvitations;
+        }
+
+        /**
+         * @return the invitations to the groups moderated by the user that the user has not seen yet
+         */
+        Set<Message> getModeratorInvitations() {
+            return moderatorInvitations;
+        }
+
+        /**
+         * @return the government user, or null if it does not have to be notified
+         */
+        User getGovernment() {
+            return government;
+        }
+    }
+}
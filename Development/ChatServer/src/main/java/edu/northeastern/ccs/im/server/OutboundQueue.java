@@ -0,0 +1,524 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import edu.northeastern.ccs.im.ChatLogger;
+import edu.northeastern.ccs.im.Message;
+
+/**
+ * Queue of the messages waiting to be sent to one client, bounded both in messages and in bytes,
+ * so that a client that stops reading cannot make the server run out of memory. What happens to a
+ * message that does not fit is decided by the overflow policy of the queue.
+ *
+ * Messages wait in one of three lanes. Control messages are always taken first; interactive and
+ * bulk messages are then taken in turn, several interactive messages for every bulk one, so that a
+ * history dump neither delays the chats behind it for long nor stalls while chats go on. Messages
+ * keep their order within a lane, whether they wait in memory or in the overflow file.
+ *
+ * Messages are added by any thread and taken by the thread running the client, so every method is
+ * synchronized on the queue. The depths seen when messages are added, the time messages wait in
+ * every lane, and the number of times each policy had to be applied, are counted over all the
+ * queues of the server.
+ */
+class OutboundQueue {
+
+    /**
+     * What to do with a message that does not fit in a full queue.
+     */
+    enum OverflowPolicy {
+        /**
+         * Terminate the client.
+         */
+        DISCONNECT,
+        /**
+         * Drop the oldest broadcast and group messages until the message fits; if there are not
+         * enough of them, drop the message if it is a broadcast or group message itself, and
+         * terminate the client otherwise.
+         */
+        DROP_OLDEST,
+        /**
+         * Append the message, encoded with its unique key, to an overflow file mapped in memory,
+         * and send it once the messages before it in its lane have been sent; terminate the client
+         * once the file is full. The file is unmapped once all the messages in it have been sent.
+         */
+        SPILL
+    }
+
+    /**
+     * The lanes of the queue, in order of priority.
+     */
+    enum Lane {
+        /**
+         * Responses of the server to the commands of the client.
+         */
+        CONTROL,
+        /**
+         * Chat messages.
+         */
+        INTERACTIVE,
+        /**
+         * History dumps and the replay of the messages received while offline.
+         */
+        BULK
+    }
+
+    /**
+     * A message waiting in a lane.
+     */
+    private static final class Entry {
+        private final Message message;
+        private final int size;
+        private final long enqueuedAt;
+
+        private Entry(Message message, int size) {
+            this.message = message;
+            this.size = size;
+            this.enqueuedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * A message taken from the overflow file: its encoded form, and the unique key of the stored
+     * message it carries, so that the message can be marked sent once it is written.
+     */
+    static final class SpilledFrame {
+        private final byte[] frame;
+        private final String uniqueKey;
+
+        private SpilledFrame(byte[] frame, String uniqueKey) {
+            this.frame = frame;
+            this.uniqueKey = uniqueKey;
+        }
+
+        /**
+         * @return the encoded message
+         */
+        byte[] getFrame() {
+            return frame;
+        }
+
+        /**
+         * @return the unique key of the stored message, or null if the message was not stored
+         */
+        String getUniqueKey() {
+            return uniqueKey;
+        }
+    }
+
+    /**
+     * Length written in place of the unique key of a spilled message that has none.
+     */
+    private static final int NO_KEY = -1;
+
+    /**
+     * Number of interactive messages taken for every bulk message when both lanes have messages.
+     */
+    private static final int INTERACTIVE_WEIGHT = 4;
+
+    /**
+     * Number of buckets of the depth histogram; bucket i counts depths below 2^i, the last one the
+     * rest.
+     */
+    private static final int DEPTH_BUCKETS = 12;
+
+    private static final AtomicLongArray depthHistogram = new AtomicLongArray(DEPTH_BUCKETS);
+    private static final AtomicLong disconnects = new AtomicLong();
+    private static final AtomicLong drops = new AtomicLong();
+    private static final AtomicLong spills = new AtomicLong();
+    private static final AtomicLongArray laneLatencySum = new AtomicLongArray(Lane.values().length);
+    private static final AtomicLongArray laneLatencyMax = new AtomicLongArray(Lane.values().length);
+    private static final AtomicLongArray laneTaken = new AtomicLongArray(Lane.values().length);
+
+    private final int maxMessages;
+    private final long maxBytes;
+    private final OverflowPolicy policy;
+    private final int spillFileSize;
+    private final Deque<Entry>[] lanes;
+    private int count;
+    private long bytes;
+
+    /**
+     * Number of interactive messages taken since the last bulk one.
+     */
+    private int interactiveStreak;
+
+    /**
+     * The overflow file mapped in memory, created on the first spill and released once emptied.
+     */
+    private MappedByteBuffer spill;
+    private int spillWritePosition;
+    private int spilledFrames;
+
+    /**
+     * Positions in the overflow file of the messages spilled in every lane, in order.
+     */
+    private final Deque<Integer>[] spilledRecords;
+
+    /**
+     * Creates a queue with the bounds and policy of the server.
+     */
+    OutboundQueue() {
+        this(ServerConstants.OUTBOUND_QUEUE_MAX_MESSAGES, ServerConstants.OUTBOUND_QUEUE_MAX_BYTES,
+                ServerConstants.OUTBOUND_OVERFLOW_POLICY, ServerConstants.OUTBOUND_SPILL_FILE_SIZE);
+    }
+
+    /**
+     * Creates a queue.
+     *
+     * @param maxMessages   the number of messages the queue holds in memory
+     * @param maxBytes      the number of encoded bytes the queue holds in memory
+     * @param policy        what to do with a message that does not fit
+     * @param spillFileSize the size of the overflow file, used by the spill policy
+     */
+    @SuppressWarnings("unchecked")
+    OutboundQueue(int maxMessages, long maxBytes, OverflowPolicy policy, int spillFileSize) {
+        this.lanes = new Deque[Lane.values().length];
+        this.spilledRecords = new Deque[Lane.values().length];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new ArrayDeque<>();
+            spilledRecords[i] = new ArrayDeque<>();
+        }
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+        this.spillFileSize = spillFileSize;
+    }
+
+    /**
+     * Adds a message at the end of a lane, applying the overflow policy if it does not fit.
+     *
+     * @param message the message
+     * @param lane    the lane
+     * @return boolean      true, if the message was queued or dropped by the policy; false if the
+     * client has to be terminated
+     */
+    synchronized boolean offer(Message message, Lane lane) {
+        int size = message.toFrame().length;
+        recordDepth(count + spilledFrames);
+        // Once messages of a lane are spilled, the following ones of the lane are too, so that they are sent in order.
+        if (spilledRecords[lane.ordinal()].isEmpty() && fits(size)) {
+            add(message, size, lane);
+            return true;
+        }
+        switch (policy) {
+            case DROP_OLDEST:
+                if (dropOldest(size)) {
+                    add(message, size, lane);
+                    return true;
+                } else if (isDroppable(message)) {
+                    drops.incrementAndGet();
+                    return true;
+                }
+                break;
+            case SPILL:
+                if (spill(message, lane)) {
+                    return true;
+                }
+                break;
+            default:
+                break;
+        }
+        disconnects.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Takes the next message, if it is held in memory: the next message is the oldest control
+     * message if there is one, and otherwise the oldest interactive or bulk message, in turn with
+     * their weights, whether it is held in memory or spilled.
+     *
+     * @return Message      the message, or null if there is no message or the next one is spilled
+     */
+    synchronized Message poll() {
+        Lane lane = nextLane();
+        if (lane == null) {
+            return null;
+        }
+        Entry entry = lanes[lane.ordinal()].poll();
+        if (entry == null) {
+            // The messages of the lane held in memory are all sent; the next one is spilled.
+            return null;
+        }
+        taken(lane);
+        count--;
+        bytes -= entry.size;
+        recordLatency(lane, System.nanoTime() - entry.enqueuedAt);
+        return entry.message;
+    }
+
+    /**
+     * Takes the next message, if it is spilled. The file is released once its last message is taken.
+     *
+     * @return SpilledFrame the encoded message and its unique key, or null if there is no message
+     * or the next one is held in memory
+     */
+    synchronized SpilledFrame pollSpilled() {
+        Lane lane = nextLane();
+        if (lane == null || !lanes[lane.ordinal()].isEmpty()) {
+            return null;
+        }
+        taken(lane);
+        spill.position(spilledRecords[lane.ordinal()].poll());
+        byte[] frame = new byte[spill.getInt()];
+        int keyLength = spill.getInt();
+        String uniqueKey = null;
+        if (keyLength != NO_KEY) {
+            byte[] key = new byte[keyLength];
+            spill.get(key);
+            uniqueKey = new String(key, StandardCharsets.UTF_8);
+        }
+        spill.get(frame);
+        if (--spilledFrames == 0) {
+            // The file is empty again: give its memory back, a new file is made by the next spill.
+            releaseSpill();
+        }
+        return new SpilledFrame(frame, uniqueKey);
+    }
+
+    /**
+     * Chooses the lane of the next message: control first, then interactive and bulk in turn with
+     * their weights.
+     *
+     * @return Lane         the lane, or null if no message is waiting
+     */
+    private Lane nextLane() {
+        if (hasWaiting(Lane.CONTROL)) {
+            return Lane.CONTROL;
+        } else if (!hasWaiting(Lane.BULK)) {
+            return hasWaiting(Lane.INTERACTIVE) ? Lane.INTERACTIVE : null;
+        } else if (!hasWaiting(Lane.INTERACTIVE) || interactiveStreak >= INTERACTIVE_WEIGHT) {
+            return Lane.BULK;
+        }
+        return Lane.INTERACTIVE;
+    }
+
+    private boolean hasWaiting(Lane lane) {
+        return !lanes[lane.ordinal()].isEmpty() || !spilledRecords[lane.ordinal()].isEmpty();
+    }
+
+    private void taken(Lane lane) {
+        if (lane == Lane.BULK) {
+            interactiveStreak = 0;
+        } else if (lane == Lane.INTERACTIVE) {
+            interactiveStreak++;
+        }
+    }
+
+    /**
+     * @return true if no message is waiting, in memory or spilled, false otherwise
+     */
+    synchronized boolean isEmpty() {
+        return count == 0 && spilledFrames == 0;
+    }
+
+    /**
+     * @return the number of messages waiting, in memory or spilled
+     */
+    synchronized int size() {
+        return count + spilledFrames;
+    }
+
+    /**
+     * @return the number of encoded bytes held in memory
+     */
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Drops the waiting messages and releases the overflow file.
+     */
+    synchronized void close() {
+        for (Deque<Entry> lane : lanes) {
+            lane.clear();
+        }
+        for (Deque<Integer> records : spilledRecords) {
+            records.clear();
+        }
+        count = 0;
+        bytes = 0;
+        spilledFrames = 0;
+        releaseSpill();
+    }
+
+    private boolean fits(int size) {
+        return count < maxMessages && bytes + size <= maxBytes;
+    }
+
+    private void add(Message message, int size, Lane lane) {
+        lanes[lane.ordinal()].add(new Entry(message, size));
+        count++;
+        bytes += size;
+    }
+
+    /**
+     * Drops the oldest broadcast and group messages until a message of the given size fits.
+     *
+     * @param size the size of the message
+     * @return true if the message fits now, false otherwise
+     */
+    private boolean dropOldest(int size) {
+        for (Deque<Entry> lane : lanes) {
+            Iterator<Entry> it = lane.iterator();
+            while (!fits(size) && it.hasNext()) {
+                Entry queued = it.next();
+                if (isDroppable(queued.message)) {
+                    it.remove();
+                    count--;
+                    bytes -= queued.size;
+                    drops.incrementAndGet();
+                }
+            }
+        }
+        return fits(size);
+    }
+
+    /**
+     * Appends a message to the overflow file, creating the file first if needed, and remembers its
+     * position in its lane. Every record holds the length of the encoded message, the length and
+     * bytes of its unique key, and the encoded message.
+     *
+     * @param message the message
+     * @param lane    the lane of the message
+     * @return true if the message was spilled, false if the file is full or cannot be created
+     */
+    private boolean spill(Message message, Lane lane) {
+        byte[] frame = message.toFrame();
+        byte[] key = message.getUniqueKey() == null ? new byte[0]
+                : message.getUniqueKey().getBytes(StandardCharsets.UTF_8);
+        try {
+            if (spill == null) {
+                File file = File.createTempFile("prattle-outbound-", ".spill");
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    spill = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, spillFileSize);
+                } finally {
+                    // The mapping keeps the content; the name is not needed.
+                    if (!file.delete()) {
+                        file.deleteOnExit();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            ChatLogger.error("Exception occurred - OutboundQueue.java - spill() : " + ChatLogger.getTrace(e));
+            return false;
+        }
+        if (spillFileSize - spillWritePosition < 2 * Integer.BYTES + key.length + frame.length) {
+            return false;
+        }
+        spilledRecords[lane.ordinal()].add(spillWritePosition);
+        spill.position(spillWritePosition);
+        spill.putInt(frame.length);
+        spill.putInt(message.getUniqueKey() == null ? NO_KEY : key.length);
+        spill.put(key);
+        spill.put(frame);
+        spillWritePosition = spill.position();
+        spilledFrames++;
+        spills.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Unmaps the overflow file, whose name is already deleted, so that its memory and disk space are
+     * given back now rather than whenever the mapping is collected.
+     */
+    private void releaseSpill() {
+        if (spill != null) {
+            unmap(spill);
+            spill = null;
+        }
+        spillWritePosition = 0;
+    }
+
+    /**
+     * Unmaps a mapped file. Java has no public way to do it, so the cleaner of the buffer is run
+     * through the API of the running version; if that fails, the mapping is left to be collected.
+     *
+     * @param buffer the mapping, which must not be used afterwards
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException e) {
+                // Java 8: the buffer hands out its cleaner itself.
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+                return;
+            }
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            ChatLogger.warning("OutboundQueue.java - the overflow file could not be unmapped: " + e);
+        }
+    }
+
+    private static boolean isDroppable(Message message) {
+        return message.isBroadcastMessage() || message.isPublishMessage() || message.isGroupMessage();
+    }
+
+    private static void recordLatency(Lane lane, long latencyInNanos) {
+        int i = lane.ordinal();
+        laneTaken.incrementAndGet(i);
+        laneLatencySum.addAndGet(i, latencyInNanos);
+        laneLatencyMax.accumulateAndGet(i, latencyInNanos, Math::max);
+    }
+
+    private static void recordDepth(int depth) {
+        int bucket = 32 - Integer.numberOfLeadingZeros(depth);
+        depthHistogram.incrementAndGet(Math.min(bucket, DEPTH_BUCKETS - 1));
+    }
+
+    /**
+     * @return the metrics of all the queues, in a form that can be logged: the depth histogram, in
+     * buckets of powers of two, the time messages waited in every lane, and the number of times
+     * each policy was applied
+     */
+    static String metrics() {
+        StringBuilder histogram = new StringBuilder();
+        for (int i = 0; i < DEPTH_BUCKETS; i++) {
+            if (i > 0) {
+                histogram.append(' ');
+            }
+            histogram.append(i == DEPTH_BUCKETS - 1 ? ">=" + (1 << (i - 1)) : "<" + (1 << i))
+                    .append(':').append(depthHistogram.get(i));
+        }
+        StringBuilder latencies = new StringBuilder();
+        for (Lane lane : Lane.values()) {
+            int i = lane.ordinal();
+            long taken = laneTaken.get(i);
+            if (i > 0) {
+                latencies.append(' ');
+            }
+            latencies.append(lane).append(":n=").append(taken)
+                    .append(",avg=").append(taken == 0 ? 0 : laneLatencySum.get(i) / taken / 1000)
+                    .append("us,max=").append(laneLatencyMax.get(i) / 1000).append("us");
+        }
+        return "OutboundQueue[depths={" + histogram + "}, latencies={" + latencies + "}, disconnects="
+                + disconnects.get() + ", drops=" + drops.get() + ", spills=" + spills.get() + "]";
+    }
+}
@@ -14,17 +14,26 @@ import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.spi.SelectorProvider;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 import edu.northeastern.ccs.im.ChatLogger;
 import edu.northeastern.ccs.im.Message;
 import edu.northeastern.ccs.im.NetworkConnection;
+import edu.northeastern.ccs.im.db.DBExecutor;
+import edu.northeastern.ccs.im.services.ConversationalMessageService;
+import edu.northeastern.ccs.im.services.GroupService;
+import edu.northeastern.ccs.im.services.InboxService;
+import edu.northeastern.ccs.im.services.InvitationService;
+import edu.northeastern.ccs.im.services.UserService;
 
 /**
  * A network server that communicates with IM clients that connect to it. This
@@ -45,35 +54,43 @@ public abstract class Prattle {
     /**
      * Don't do anything unless the server is ready.
      */
-    private static boolean isReady = false;
+    private static volatile boolean isReady = false;
 
     /**
-     * Collection of threads that are currently being used.
+     * The pipeline through which the requests of all the clients are handled.
      */
-    private static ConcurrentLinkedQueue<ClientRunnable> active;
+    private static RequestPipeline pipeline;
 
     /**
-     *  All of the static initialization occurs in this "method"
+     * The hibernator taking the idle clients off the thread pool.
      */
-    static {
-        // Create the new queue of active threads.
-        active = new ConcurrentLinkedQueue<>();
-    }
+    private static Hibernator hibernator;
+
+    /**
+     * The controller deciding which of the accepted connections the server takes on.
+     */
+    private static AdmissionController admission;
 
     /**
      * Broadcast a given message to all the other IM clients currently on the
-     * system. This message _will_ be sent to the client who originally sent it.
+     * system, by publishing it on the global channel every client is subscribed to.
+     * This message _will_ be sent to the client who originally sent it.
      *
      * @param message Message that the client sent.
      */
     static void broadcastMessage(Message message) {
-        // Loop through all of our active threads
-        for (ClientRunnable tt : active) {
-            // Do not send the message to any clients that are not ready to receive it.
-            if (tt.isInitialized()) {
-                tt.enqueueMessage(message);
-            }
-        }
+        ChannelRegistry.getInstance().publish(ServerConstants.GLOBAL_CHANNEL, message);
+    }
+
+    /**
+     * Add the given IM client to the list of active threads, and subscribe it to the
+     * global channel.
+     *
+     * @param client Thread which handles all the I/O for a client who has just connected.
+     */
+    static void addClient(ClientRunnable client) {
+        SessionRegistry.getInstance().open(client);
+        ChannelRegistry.getInstance().subscribe(ServerConstants.GLOBAL_CHANNEL, client);
     }
 
     /**
@@ -83,12 +100,37 @@ public abstract class Prattle {
      *             since quit.
      */
     static void removeClient(ClientRunnable dead) {
+        ChannelRegistry.getInstance().unsubscribeAll(dead);
         // Test and see if the thread was in our list of active clients so that we can remove it.
-        if (!active.remove(dead)) {
+        if (!SessionRegistry.getInstance().close(dead)) {
             ChatLogger.info("Could not find a thread that I tried to remove!\n");
         }
     }
 
+    /**
+     * Writes the inbox summaries that changed since the last flush to the database, and drops those
+     * of the users who are not connected from memory.
+     */
+    static void flushInboxes() {
+        try {
+            int flushed = InboxService.getInstance().flush(owner -> ClientRunnable.getClientByUsername(owner) != null);
+            ChatLogger.info("Flushed " + flushed + " inbox entries.");
+        } catch (SQLException | IOException e) {
+            ChatLogger.error("Exception occurred - Prattle.java - flushInboxes() : " + ChatLogger.getTrace(e));
+        }
+    }
+
+    /**
+     * Logs the metrics of the fan-out planner.
+     */
+    static void logFanOutMetrics() {
+        try {
+            ChatLogger.info(FanoutPlanner.getInstance().toString());
+        } catch (SQLException | IOException e) {
+            ChatLogger.error("Exception occurred - Prattle.java - logFanOutMetrics() : " + ChatLogger.getTrace(e));
+        }
+    }
+
     /**
      * Terminates the server.
      */
@@ -96,28 +138,187 @@ public abstract class Prattle {
         isReady = false;
     }
 
+    /**
+     * Terminates the server gracefully, for a restart. The server stops accepting connections, and
+     * every client is told to connect again after a random time, so that they do not all come back
+     * at once, and is terminated once the messages queued for it are sent. The users are then logged
+     * out in a single batch, the messages delivered to them are marked sent and the inbox summaries
+     * are written back.
+     *
+     * @param timeoutInMs the time to wait for the clients to be terminated
+     */
+    static void drainServer(long timeoutInMs) {
+        isReady = false;
+        Set<String> userNames = new HashSet<>();
+        for (ClientRunnable client : SessionRegistry.getInstance().getClients()) {
+            if (client.isInitialized()) {
+                userNames.add(client.getName());
+            }
+            client.drain(ServerConstants.DRAIN_RECONNECT_MIN_IN_MS
+                    + ThreadLocalRandom.current().nextInt(ServerConstants.DRAIN_RECONNECT_JITTER_IN_MS));
+        }
+        long deadline = System.currentTimeMillis() + timeoutInMs;
+        while (SessionRegistry.getInstance().getSessionCount() > 0 && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(ServerConstants.DELAY_IN_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        try {
+            int loggedOut = UserService.getInstance().logOutUsers(userNames);
+            ChatLogger.info("Drained " + userNames.size() + " clients, logged out " + loggedOut + " users.");
+        } catch (SQLException | IOException e) {
+            ChatLogger.error("Exception occurred - Prattle.java - drainServer() : " + ChatLogger.getTrace(e));
+        }
+        DeliveryTracker.getInstance().flush();
+        flushInboxes();
+    }
+
+    /**
+     * Opens the connections of the services, prepares their statements and loads their caches, so
+     * that the first clients of a restarted server do not pay for it.
+     */
+    static void warmUp() {
+        long start = System.currentTimeMillis();
+        try {
+            int prepared = UserService.getInstance().warmUp() + GroupService.getGroupServiceInstance().warmUp()
+                    + ConversationalMessageService.getInstance().warmUp() + InvitationService.getInstance().warmUp();
+            DBExecutor.getInstance();
+            InboxService.getInstance();
+            ChatLogger.info("Warmed up in " + (System.currentTimeMillis() - start) + " ms, "
+                    + prepared + " statements prepared.");
+        } catch (SQLException | IOException e) {
+            ChatLogger.error("Exception occurred - Prattle.java - warmUp() : " + ChatLogger.getTrace(e));
+        }
+    }
+
     /**
      * Start up the threaded talk server. This class accepts incoming connections on
      * a specific port specified on the command-line. Whenever it receives a new
      * connection, it will spawn a thread to perform all of the I/O with that
-     * client. This class relies on the server not receiving too many requests -- it
-     * does not include any code to limit the number of extant threads.
+     * client. The connections are taken on no faster than a maximum rate and up to a
+     * maximum number, and refused while the database or the queues of the server are
+     * overloaded.
+     *
+     * By default the connections are polled by a pool of threads and their requests go through the
+     * request pipeline. With the argument --mode=virtual, every connection instead gets its own
+     * virtual threads, which block on the socket and handle the requests inline; this needs Java 21
+     * or later.
+     *
+     * With the argument --warm-start, the services are warmed up before the port is opened. On
+     * shutdown, the server drains its clients.
      *
      * @param args String arguments to the server from the command line. At present
-     *             the only legal (and required) argument is the port on which this
-     *             server should list.
+     *             the only legal arguments are --mode=virtual and --warm-start.
      */
     public static void main(String[] args) {
+        boolean virtualThreads = Arrays.asList(args).contains(ServerConstants.VIRTUAL_THREAD_MODE);
+        if (Arrays.asList(args).contains(ServerConstants.WARM_START_MODE)) {
+            warmUp();
+        }
+        // Let the clients go gracefully when the server is asked to stop.
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> drainServer(ServerConstants.DRAIN_TIMEOUT_IN_MS),
+                "drain"));
         // Connect to the socket on the appropriate port to which this server connects.
         try (ServerSocketChannel serverSocket = ServerSocketChannel.open()) {
-            serverSocket.configureBlocking(false);
             serverSocket.socket().bind(new InetSocketAddress(ServerConstants.PORT));
+            // Create our pool of threads on which we will execute.
+            ScheduledExecutorService threadPool = Executors.newScheduledThreadPool(ServerConstants.THREAD_POOL_SIZE);
+            // Periodically log how many clients are waiting on their idle deadline.
+            threadPool.scheduleWithFixedDelay(() -> ChatLogger.info(TimerWheel.getInstance().toString()),
+                    ServerConstants.PIPELINE_METRICS_DELAY, ServerConstants.PIPELINE_METRICS_DELAY,
+                    TimeUnit.MILLISECONDS);
+            // Periodically send heartbeats to the silent clients and evict the ones that stopped answering.
+            Heartbeat heartbeat = new Heartbeat();
+            threadPool.scheduleWithFixedDelay(heartbeat::sweep, ServerConstants.HEARTBEAT_INTERVAL_IN_MS,
+                    ServerConstants.HEARTBEAT_INTERVAL_IN_MS, TimeUnit.MILLISECONDS);
+            threadPool.scheduleWithFixedDelay(() -> ChatLogger.info(heartbeat.toString()),
+                    ServerConstants.PIPELINE_METRICS_DELAY, ServerConstants.PIPELINE_METRICS_DELAY,
+                    TimeUnit.MILLISECONDS);
+            // Periodically forget the users and addresses that stayed within their message budgets.
+            RateLimiter rateLimiter = RateLimiter.getInstance();
+            threadPool.scheduleWithFixedDelay(rateLimiter::evictIdle, ServerConstants.RATE_LIMIT_EVICTION_DELAY,
+                    ServerConstants.RATE_LIMIT_EVICTION_DELAY, TimeUnit.MILLISECONDS);
+            threadPool.scheduleWithFixedDelay(() -> ChatLogger.info(rateLimiter.toString()),
+                    ServerConstants.PIPELINE_METRICS_DELAY, ServerConstants.PIPELINE_METRICS_DELAY,
+                    TimeUnit.MILLISECONDS);
+            // Periodically log out the suspended sessions that were not resumed in time.
+            SessionResumption sessionResumption = SessionResumption.getInstance();
+            threadPool.scheduleWithFixedDelay(sessionResumption::sweep, ServerConstants.RESUME_SWEEP_DELAY,
+                    ServerConstants.RESUME_SWEEP_DELAY, TimeUnit.MILLISECONDS);
+            threadPool.scheduleWithFixedDelay(() -> ChatLogger.info(sessionResumption.toString()),
+                    ServerConstants.PIPELINE_METRICS_DELAY, ServerConstants.PIPELINE_METRICS_DELAY,
+                    TimeUnit.MILLISECONDS);
+            // Periodically log how deep the outbound queues get and how often they overflow.
+            threadPool.scheduleWithFixedDelay(() -> ChatLogger.info(OutboundQueue.metrics()),
+                    ServerConstants.PIPELINE_METRICS_DELAY, ServerConstants.PIPELINE_METRICS_DELAY,
+                    TimeUnit.MILLISECONDS);
+            // Periodically mark the delivered messages sent, in batches.
+            DeliveryTracker deliveryTracker = DeliveryTracker.getInstance();
+            threadPool.scheduleWithFixedDelay(deliveryTracker::flush, ServerConstants.DELIVERY_FLUSH_DELAY_IN_MS,
+                    ServerConstants.DELIVERY_FLUSH_DELAY_IN_MS, TimeUnit.MILLISECONDS);
+            threadPool.scheduleWithFixedDelay(() -> ChatLogger.info(deliveryTracker.toString()),
+                    ServerConstants.PIPELINE_METRICS_DELAY, ServerConstants.PIPELINE_METRICS_DELAY,
+                    TimeUnit.MILLISECONDS);
+            // Periodically forget the users who sent no message with an ID lately.
+            SendDeduplicator sendDeduplicator = SendDeduplicator.getInstance();
+            threadPool.scheduleWithFixedDelay(sendDeduplicator::evictIdle, ServerConstants.DEDUP_WINDOW_IN_MS,
+                    ServerConstants.DEDUP_WINDOW_IN_MS, TimeUnit.MILLISECONDS);
+            threadPool.scheduleWithFixedDelay(() -> ChatLogger.info(sendDeduplicator.toString()),
+                    ServerConstants.PIPELINE_METRICS_DELAY, ServerConstants.PIPELINE_METRICS_DELAY,
+                    TimeUnit.MILLISECONDS);
+            // Periodically log how large the group messages fanned out are, and how long they take.
+            threadPool.scheduleWithFixedDelay(Prattle::logFanOutMetrics,
+                    ServerConstants.PIPELINE_METRICS_DELAY, ServerConstants.PIPELINE_METRICS_DELAY,
+                    TimeUnit.MILLISECONDS);
+            // Periodically log how many messages are published on the channels.
+            ChannelRegistry channelRegistry = ChannelRegistry.getInstance();
+            threadPool.scheduleWithFixedDelay(() -> ChatLogger.info(channelRegistry.toString()),
+                    ServerConstants.PIPELINE_METRICS_DELAY, ServerConstants.PIPELINE_METRICS_DELAY,
+                    TimeUnit.MILLISECONDS);
+            // Periodically write the inbox summaries back to the database.
+            threadPool.scheduleWithFixedDelay(Prattle::flushInboxes, ServerConstants.INBOX_FLUSH_DELAY,
+                    ServerConstants.INBOX_FLUSH_DELAY, TimeUnit.MILLISECONDS);
+            // Take new connections on only as fast as the server can bear them.
+            admission = new AdmissionController(() -> SessionRegistry.getInstance().getSessionCount());
+            admission.watch("Database latency in ms", () -> DBExecutor.getInstance().getAverageLatencyInMs(),
+                    ServerConstants.ADMISSION_MAX_DB_LATENCY_IN_MS);
+            admission.watch("Database queue depth", () -> DBExecutor.getInstance().getQueueDepth(),
+                    ServerConstants.ADMISSION_MAX_DB_QUEUE_DEPTH);
+            threadPool.scheduleWithFixedDelay(() -> ChatLogger.info(admission.toString()),
+                    ServerConstants.PIPELINE_METRICS_DELAY, ServerConstants.PIPELINE_METRICS_DELAY,
+                    TimeUnit.MILLISECONDS);
+            if (virtualThreads) {
+                VirtualThreadServer server = new VirtualThreadServer(serverSocket, admission);
+                threadPool.scheduleWithFixedDelay(() -> admission.drain(server::start), ServerConstants.DELAY_IN_MS,
+                        ServerConstants.DELAY_IN_MS, TimeUnit.MILLISECONDS);
+                isReady = true;
+                server.serve(() -> isReady);
+                return;
+            }
+            serverSocket.configureBlocking(false);
             // Create the Selector with which our channel is registered.
             Selector selector = SelectorProvider.provider().openSelector();
             // Register to receive any incoming connection messages.
             serverSocket.register(selector, SelectionKey.OP_ACCEPT);
-            // Create our pool of threads on which we will execute.
-            ScheduledExecutorService threadPool = Executors.newScheduledThreadPool(ServerConstants.THREAD_POOL_SIZE);
+            // Start the stages that handle the requests, and periodically log their metrics.
+            pipeline = new RequestPipeline();
+            pipeline.start();
+            admission.watch("Pipeline queue depth", pipeline::getQueueDepth,
+                    ServerConstants.ADMISSION_MAX_PIPELINE_DEPTH);
+            threadPool.scheduleWithFixedDelay(() -> admission.drain(connection -> startClient(connection, threadPool)),
+                    ServerConstants.DELAY_IN_MS, ServerConstants.DELAY_IN_MS, TimeUnit.MILLISECONDS);
+            threadPool.scheduleWithFixedDelay(() -> ChatLogger.info(pipeline.toString()),
+                    ServerConstants.PIPELINE_METRICS_DELAY, ServerConstants.PIPELINE_METRICS_DELAY,
+                    TimeUnit.MILLISECONDS);
+            // Let the idle clients release their connection until they have something to do.
+            hibernator = new Hibernator(threadPool, ServerConstants.HIBERNATE_AFTER_IN_MS);
+            hibernator.start();
+            threadPool.scheduleWithFixedDelay(() -> ChatLogger.info(hibernator.toString()),
+                    ServerConstants.PIPELINE_METRICS_DELAY, ServerConstants.PIPELINE_METRICS_DELAY,
+                    TimeUnit.MILLISECONDS);
             // If we get this far than the server is initialized correctly
             isReady = true;
             // Now listen on this port as long as the server is ready
@@ -158,13 +359,10 @@ public abstract class Prattle {
             // Make sure we have a connection to work with.
             if (socket != null) {
                 NetworkConnection connection = new NetworkConnection(socket);
-                ClientRunnable tt = new ClientRunnable(connection);
-                // Add the thread to the queue of active threads
-                active.add(tt);
-                // Have the client executed by our pool of threads.
-                ScheduledFuture<?> clientFuture = threadPool.scheduleAtFixedRate(tt, ServerConstants.CLIENT_CHECK_DELAY,
-                        ServerConstants.CLIENT_CHECK_DELAY, TimeUnit.MILLISECONDS);
-                tt.setFuture(clientFuture);
+                // Start the client unless it has to wait or is refused.
+                if (admission == null || admission.offer(connection)) {
+                    startClient(connection, threadPool);
+                }
             }
         } catch (AssertionError ae) {
             ChatLogger.error("Caught AssertionError - Prattle.java - createClientThread() : " + ChatLogger.getTrace(ae));
@@ -172,4 +370,25 @@ public abstract class Prattle {
             ChatLogger.error("IOException occurred - Prattle.java - createClientThread(): " + ChatLogger.getTrace(e));
         }
     }
+
+    /**
+     * Create a new thread to handle a client the server takes on.
+     *
+     * @param connection The connection of the client.
+     * @param threadPool The thread pool to add client to.
+     */
+    private static void startClient(NetworkConnection connection, ScheduledExecutorService threadPool) {
+        try {
+            ClientRunnable tt = new ClientRunnable(connection, pipeline);
+            tt.setHibernator(hibernator);
+            // Open the session of the client
+            addClient(tt);
+            // Have the client executed by our pool of threads.
+            ScheduledFuture<?> clientFuture = threadPool.scheduleAtFixedRate(tt, ServerConstants.CLIENT_CHECK_DELAY,
+                    ServerConstants.CLIENT_CHECK_DELAY, TimeUnit.MILLISECONDS);
+            tt.setFuture(clientFuture);
+        } catch (AssertionError ae) {
+            ChatLogger.error("Caught AssertionError - Prattle.java - startClient() : " + ChatLogger.getTrace(ae));
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,275 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+import edu.northeastern.ccs.im.MessageType;
+
+/**
+ * Token buckets limiting the rate at which every user, and every address the clients connect
+ * from, may send messages. Messages are sorted into classes by what they cost the server, and
+ * every class has a budget of its own: a bucket holds up to a burst of tokens, gets tokens back at
+ * a steady rate, and every message takes one. An address gets several times the budget of a user,
+ * since many users may share it.
+ *
+ * The state of a bucket is one long, updated by compare-and-set, so that the limiter is shared by
+ * all the threads reading from clients without locks, and taking a token allocates nothing once
+ * the buckets of a user or address exist.
+ */
+class RateLimiter {
+
+    /**
+     * The classes of messages, each with its budget for one user.
+     */
+    enum RateClass {
+        /**
+         * Private and group messages, and replies.
+         */
+        CHAT(20, 5),
+        /**
+         * Broadcasts, which go to every connected client.
+         */
+        BROADCAST(3, 0.2),
+        /**
+         * Searches, which scan the user and group tables.
+         */
+        SEARCH(5, 0.5),
+        /**
+         * Changes to groups and invitations, which load the group tree.
+         */
+        GROUP_ADMIN(10, 1),
+        /**
+         * Everything else.
+         */
+        GENERAL(30, 10);
+
+        private final long burstInMilliTokens;
+        private final long milliTokensPerSecond;
+
+        RateClass(int burst, double tokensPerSecond) {
+            this.burstInMilliTokens = burst * MILLI;
+            this.milliTokensPerSecond = (long) (tokensPerSecond * MILLI);
+        }
+
+        /**
+         * @param type the type of a message, or null if it is not known
+         * @return RateClass    the class of the messages of that type
+         */
+        static RateClass of(MessageType type) {
+            if (type == null) {
+                return GENERAL;
+            }
+            switch (type) {
+                case MESSAGE_USER:
+                case MESSAGE_GROUP:
+                case PRIVATE_REPLY_MESSAGE:
+                    return CHAT;
+                case BROADCAST:
+                case PUBLISH:
+                    return BROADCAST;
+                case SEARCH_MESSAGE:
+                    return SEARCH;
+                case CREATE_GROUP:
+                case DELETE_GROUP:
+                case UPDATE_GROUP:
+                case ADD_USER_GROUP:
+                case REMOVE_USER_GROUP:
+                case ADD_GROUP_TO_GROUP:
+                case REMOVE_GROUP_FROM_GROUP:
+                case INVITE_USER_GROUP:
+                case DELETE_USER_INVITATION:
+                case ACCEPT_INVITE_USER:
+                case DENY_INVITE_USER:
+                case APPROVE_INVITE_MODERATOR:
+                case REJECT_INVITE_MODERATOR:
+                case LEAVE_GROUP:
+                    return GROUP_ADMIN;
+                default:
+                    return GENERAL;
+            }
+        }
+    }
+
+    /**
+     * Tokens are counted in thousandths, so that slow rates refill smoothly.
+     */
+    private static final long MILLI = 1000;
+
+    /**
+     * The low bits of the state of a bucket hold its tokens, the high bits the time it was last
+     * refilled, in milliseconds since the limiter was created.
+     */
+    private static final int TOKEN_BITS = 24;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+
+    private static final RateClass[] CLASSES = RateClass.values();
+
+    private static RateLimiter rateLimiter;
+
+    private final Map<String, AtomicLongArray> userBuckets = new ConcurrentHashMap<>();
+    private final Map<InetAddress, AtomicLongArray> addressBuckets = new ConcurrentHashMap<>();
+    private final int addressMultiplier;
+    private final LongSupplier clock;
+    private final long epoch;
+    private final AtomicLong limited = new AtomicLong();
+
+    /**
+     * Creates a limiter.
+     *
+     * @param addressMultiplier the number of times the budget of a user an address gets
+     * @param clock             the current time in milliseconds
+     */
+    RateLimiter(int addressMultiplier, LongSupplier clock) {
+        this.addressMultiplier = addressMultiplier;
+        this.clock = clock;
+        this.epoch = clock.getAsLong();
+    }
+
+    /**
+     * Get the singleton instance of the RateLimiter
+     *
+     * @return RateLimiter  the singleton instance of this class
+     */
+    static synchronized RateLimiter getInstance() {
+        if (rateLimiter == null) {
+            rateLimiter = new RateLimiter(ServerConstants.RATE_LIMIT_ADDRESS_MULTIPLIER, System::currentTimeMillis);
+        }
+        return rateLimiter;
+    }
+
+    /**
+     * Takes a token for a message from the buckets of its sender and of the address it came from.
+     *
+     * @param userName the name of the sender, or null if it is not known yet
+     * @param address  the address of the sender, or null if it is not known
+     * @param type     the type of the message
+     * @return long         0 if the message may be handled, otherwise the time in milliseconds
+     * until the sender may send a message of this class again
+     */
+    long tryAcquire(String userName, InetAddress address, MessageType type) {
+        int rateClass = RateClass.of(type).ordinal();
+        long now = clock.getAsLong() - epoch;
+        AtomicLongArray user = userName == null ? null : buckets(userBuckets, userName, now);
+        long wait = user == null ? 0 : take(user, rateClass, 1, now);
+        if (wait == 0 && address != null) {
+            wait = take(buckets(addressBuckets, address, now), rateClass, addressMultiplier, now);
+            if (wait != 0 && user != null) {
+                // The user did not get to send, so the token goes back.
+                give(user, rateClass, 1);
+            }
+        }
+        if (wait != 0) {
+            limited.incrementAndGet();
+        }
+        return wait;
+    }
+
+    /**
+     * Forgets the users and addresses whose buckets have all been refilled, which are the same as
+     * new ones.
+     */
+    void evictIdle() {
+        long now = clock.getAsLong() - epoch;
+        userBuckets.values().removeIf(buckets -> isFull(buckets, 1, now));
+        addressBuckets.values().removeIf(buckets -> isFull(buckets, addressMultiplier, now));
+    }
+
+    /**
+     * @return the number of messages that were refused
+     */
+    long getLimitedCount() {
+        return limited.get();
+    }
+
+    /**
+     * @return the metrics of the limiter, in a form that can be logged
+     */
+    @Override
+    public String toString() {
+        return "RateLimiter[users=" + userBuckets.size() + ", addresses=" + addressBuckets.size()
+                + ", limited=" + limited.get() + "]";
+    }
+
+    private <K> AtomicLongArray buckets(Map<K, AtomicLongArray> table, K key, long now) {
+        AtomicLongArray buckets = table.get(key);
+        if (buckets == null) {
+            buckets = table.computeIfAbsent(key, k -> newBuckets(now));
+        }
+        return buckets;
+    }
+
+    /**
+     * Creates full buckets; their tokens are capped by the burst of every class when taken.
+     */
+    private static AtomicLongArray newBuckets(long now) {
+        AtomicLongArray buckets = new AtomicLongArray(CLASSES.length);
+        for (int i = 0; i < CLASSES.length; i++) {
+            buckets.set(i, (now << TOKEN_BITS) | TOKEN_MASK);
+        }
+        return buckets;
+    }
+
+    /**
+     * Refills a bucket for the time gone by, and takes a token from it if it has one.
+     *
+     * @return 0 if a token was taken, otherwise the time in milliseconds until one is available
+     */
+    private static long take(AtomicLongArray buckets, int rateClass, int multiplier, long now) {
+        RateClass budget = CLASSES[rateClass];
+        long burst = budget.burstInMilliTokens * multiplier;
+        long rate = budget.milliTokensPerSecond * multiplier;
+        while (true) {
+            long state = buckets.get(rateClass);
+            long tokens = refill(state, burst, rate, now);
+            if (tokens < MILLI) {
+                return rate == 0 ? Long.MAX_VALUE : Math.max(1, (MILLI - tokens) * 1000 / rate);
+            }
+            if (buckets.compareAndSet(rateClass, state, (now << TOKEN_BITS) | (tokens - MILLI))) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Puts back a token taken from a bucket.
+     */
+    private static void give(AtomicLongArray buckets, int rateClass, int multiplier) {
+        long burst = CLASSES[rateClass].burstInMilliTokens * multiplier;
+        long state;
+        long tokens;
+        do {
+            state = buckets.get(rateClass);
+            tokens = Math.min(burst, (state & TOKEN_MASK) + MILLI);
+        } while (!buckets.compareAndSet(rateClass, state, (state & ~TOKEN_MASK) | tokens));
+    }
+
+    private static boolean isFull(AtomicLongArray buckets, int multiplier, long now) {
+        for (int i = 0; i < CLASSES.length; i++) {
+            long burst = CLASSES[i].burstInMilliTokens * multiplier;
+            if (refill(buckets.get(i), burst, CLASSES[i].milliTokensPerSecond * multiplier, now) < burst) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the tokens of a bucket after the refill for the time gone by, capped by its burst
+     */
+    private static long refill(long state, long burst, long rate, long now) {
+        long tokens = Math.min(burst, state & TOKEN_MASK);
+        long elapsed = Math.max(0, now - (state >>> TOKEN_BITS));
+        return Math.min(burst, tokens + elapsed * rate / 1000);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import edu.northeastern.ccs.im.Message;
+import edu.northeastern.ccs.im.models.Group;
+
+/**
+ * Staged pipeline through which the requests of the clients are handled. The thread running a
+ * ClientRunnable only reads and decodes the messages from the socket and writes the responses back;
+ * everything else is handed over to the following stages, each with its own threads:
+ * <ul>
+ * <li>session - takes the requests of the clients into bounded buffers, in the order they were read</li>
+ * <li>dispatch - checks that the sender exists and is logged in, handles the quit message, and runs
+ * the handler of the message, including the database writes it makes</li>
+ * <li>fan-out - stores and delivers a group message to every member of the group, see FanoutPlanner</li>
+ * </ul>
+ * The session stage drains bounded buffers, and a full buffer makes the client's thread wait, so a
+ * slow server slows the reads down instead of letting work pile up. The dispatch and fan-out
+ * stages give every client and every group its own mailbox: the requests of a client, and the
+ * messages of a group, are handled one at a time and in order, while different clients and groups
+ * are handled in parallel and a busy one cannot hold the others up. The session of a client is
+ * checked in its mailbox, right before the request is handled, so that a request sees the login,
+ * and a quit message sees the replies, of the requests sent before it.
+ */
+class RequestPipeline {
+
+    /**
+     * A message read from a client.
+     */
+    private static class Request {
+        private final ClientRunnable client;
+        private final Message msg;
+
+        Request(ClientRunnable client, Message msg) {
+            this.client = client;
+            this.msg = msg;
+        }
+    }
+
+    private final Stage<Request> sessionStage;
+    private final ActorExecutor dispatchActors;
+    private final ActorExecutor fanOutActors;
+
+    /**
+     * Creates a pipeline with the thread budgets of the server.
+     */
+    RequestPipeline() {
+        this(ServerConstants.SESSION_STAGE_THREADS, ServerConstants.DISPATCH_STAGE_THREADS,
+                ServerConstants.FAN_OUT_STAGE_THREADS, ServerConstants.STAGE_LANE_CAPACITY);
+    }
+
+    /**
+     * Creates a pipeline.
+     *
+     * @param sessionThreads  the number of threads of the session stage
+     * @param dispatchThreads the number of threads of the dispatch stage
+     * @param fanOutThreads   the number of threads of the fan-out stage
+     * @param laneCapacity    the capacity of the buffer of every thread of the session stage
+     */
+    RequestPipeline(int sessionThreads, int dispatchThreads, int fanOutThreads, int laneCapacity) {
+        dispatchActors = new ActorExecutor("dispatch", dispatchThreads);
+        fanOutActors = new ActorExecutor("fan-out", fanOutThreads);
+        sessionStage = new Stage<>("session", sessionThreads, laneCapacity,
+                request -> request.client, request -> dispatchActors.submit(request.client, () -> {
+            if (request.client.checkSession(request.msg)) {
+                request.client.processMessage(request.msg);
+            }
+        }));
+    }
+
+    /**
+     * Starts the threads of all the stages.
+     */
+    void start() {
+        sessionStage.start();
+    }
+
+    /**
+     * Stops the threads of all the stages, once they have handled the requests already submitted.
+     */
+    void stop() {
+        sessionStage.stop();
+        dispatchActors.shutdown();
+        fanOutActors.shutdown();
+    }
+
+    /**
+     * Submits a message read from a client.
+     *
+     * @param client the client that sent the message
+     * @param msg    the message
+     */
+    void submit(ClientRunnable client, Message msg) {
+        sessionStage.submit(new Request(client, msg));
+    }
+
+    /**
+     * Submits a group message to be delivered to the members of the group by the fan-out planner.
+     * The sender is told how many members the message reached, and how long it took, once it is done.
+     * The ID the client gave to the message is recorded once the message is stored. If storing it
+     * failed, the ID is released and the sender is told, so that the client can send it again.
+     *
+     * @param sender          the client that sent the message
+     * @param group           the group on which the message was sent
+     * @param msg             the message
+     * @param uniqueGroupKey  the key marking all the messages stored for this group message
+     * @param clientMessageId the ID the client gave to the message, reserved by the sender, or null
+     */
+    void fanOut(ClientRunnable sender, Group group, Message msg, String uniqueGroupKey, String clientMessageId) {
+        fanOutActors.submit(group.getGroupName(), () -> {
+            SendDeduplicator sendDeduplicator = SendDeduplicator.getInstance();
+            FanoutPlanner.Result result;
+            try {
+                result = FanoutPlanner.getInstance().fanOut(group, msg, uniqueGroupKey);
+            } catch (Exception e) {
+                sendDeduplicator.release(msg.getName(), clientMessageId);
+                sender.enqueueMessage(Message.makePrattleMessage("The group message " + uniqueGroupKey
+                        + " could not be delivered to all the members of " + group.getGroupName()
+                        + ". Please send it again."), OutboundQueue.Lane.CONTROL);
+                throw e;
+            }
+            sendDeduplicator.record(msg.getName(), clientMessageId, uniqueGroupKey);
+            sender.enqueueMessage(Message.makePrattleMessage("The group message " + uniqueGroupKey
+                    + " was delivered to " + result.getRecipientCount() + " members, "
+                    + result.getOnlineCount() + " of them online, in " + result.getElapsedInMs() + " ms"),
+                    OutboundQueue.Lane.CONTROL);
+        });
+    }
+
+    /**
+     * @return the session stage, which every request goes through first
+     */
+    Stage<?> getSessionStage() {
+        return sessionStage;
+    }
+
+    /**
+     * @return the mailboxes of the clients, in which their requests are handled
+     */
+    ActorExecutor getDispatchActors() {
+        return dispatchActors;
+    }
+
+    /**
+     * @return the mailboxes of the groups, in which their messages are delivered
+     */
+    ActorExecutor getFanOutActors() {
+        return fanOutActors;
+    }
+
+    /**
+     * @return the number of requests and group messages waiting in all the stages
+     */
+    int getQueueDepth() {
+        return sessionStage.getQueueDepth() + dispatchActors.getPendingCount() + fanOutActors.getPendingCount();
+    }
+
+    /**
+     * @return the metrics of all the stages, in a form that can be logged
+     */
+    @Override
+    public String toString() {
+        return "RequestPipeline[" + sessionStage + ", " + dispatchActors + ", " + fanOutActors + "]";
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers, for a while, the message IDs clients gave to the messages they sent, and the unique
+ * keys the messages were stored with. A client that did not get the answer to a send sends it again
+ * with the same ID, and is answered with the unique key of the message it sent the first time,
+ * instead of the message being stored, and a group message fanned out, a second time.
+ *
+ * A send takes the ID first with {@link #reserve(String, String)}, which marks it pending, so that
+ * the same message sent again from another device while the first send is being stored is told so,
+ * instead of both sends finding the ID unknown and storing the message. The send then records the
+ * unique key of the message once it is stored, or releases the ID if it failed. Nothing waits for a
+ * pending ID, so that a send being stored cannot hold up the thread handling the message sent again.
+ *
+ * The IDs of every user are kept in a ring of buckets, each holding the IDs of a slice of the
+ * window, so that forgetting the oldest IDs is dropping a whole bucket when the ring comes round to
+ * it again, and the memory a user can take is bounded by the size of a bucket.
+ */
+class SendDeduplicator {
+
+    /**
+     * Answer of {@link #reserve(String, String)} when the message is still being sent with the ID.
+     * No message is stored with an empty unique key.
+     */
+    static final String PENDING = "";
+
+    private static SendDeduplicator sendDeduplicator;
+
+    private final Map<String, Window> windowsByUser = new ConcurrentHashMap<>();
+    private final long bucketInMs;
+    private final int bucketCount;
+    private final int maxIdsPerBucket;
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * Creates a deduplicator remembering the IDs for the given window.
+     *
+     * @param windowInMs      the time an ID is remembered
+     * @param bucketCount     the number of buckets the window is cut into
+     * @param maxIdsPerBucket the most IDs of a user a bucket holds; more are not remembered
+     */
+    SendDeduplicator(long windowInMs, int bucketCount, int maxIdsPerBucket) {
+        this.bucketInMs = windowInMs / bucketCount;
+        this.bucketCount = bucketCount;
+        this.maxIdsPerBucket = maxIdsPerBucket;
+    }
+
+    /**
+     * Get the singleton instance of the SendDeduplicator
+     *
+     * @return SendDeduplicator the singleton instance of this class
+     */
+    static synchronized SendDeduplicator getInstance() {
+        if (sendDeduplicator == null) {
+            sendDeduplicator = new SendDeduplicator(ServerConstants.DEDUP_WINDOW_IN_MS,
+                    ServerConstants.DEDUP_BUCKETS, ServerConstants.DEDUP_MAX_IDS_PER_BUCKET);
+        }
+        return sendDeduplicator;
+    }
+
+    /**
+     * Looks up the message a user already sent with an ID, at the current time.
+     *
+     * @param userName        the user name of the sender
+     * @param clientMessageId the ID the client gave to the message, or null if it gave none
+     * @return String       the unique key of the message sent with that ID, or null if there is none
+     */
+    String find(String userName, String clientMessageId) {
+        return find(userName, clientMessageId, System.currentTimeMillis());
+    }
+
+    /**
+     * Looks up the message a user already sent with an ID.
+     *
+     * @param userName        the user name of the sender
+     * @param clientMessageId the ID the client gave to the message, or null if it gave none
+     * @param now             the current time in milliseconds
+     * @return String       the unique key of the message sent with that ID, or null if there is none
+     */
+    String find(String userName, String clientMessageId, long now) {
+        if (clientMessageId == null) {
+            return null;
+        }
+        Window window = windowsByUser.get(userName);
+        String uniqueKey = window == null ? null : window.find(clientMessageId, now / bucketInMs);
+        if (uniqueKey != null) {
+            hits.incrementAndGet();
+        }
+        return uniqueKey;
+    }
+
+    /**
+     * Takes an ID for a message a user is sending, at the current time.
+     *
+     * @param userName        the user name of the sender
+     * @param clientMessageId the ID the client gave to the message, or null if it gave none
+     * @return String       the unique key of the message already sent with that ID, {@link #PENDING}
+     * if it is still being sent, or null if the caller is to send the message, and then to record or
+     * release the ID
+     */
+    String reserve(String userName, String clientMessageId) {
+        return reserve(userName, clientMessageId, System.currentTimeMillis());
+    }
+
+    /**
+     * Takes an ID for a message a user is sending: either the message was already sent with that ID,
+     * and its unique key is returned, or it is still being sent, or the ID is marked pending until the
+     * caller records or releases it. An ID pending for longer than a send can take is taken over, its
+     * first send being stuck.
+     *
+     * @param userName        the user name of the sender
+     * @param clientMessageId the ID the client gave to the message, or null if it gave none
+     * @param now             the current time in milliseconds
+     * @return String       the unique key of the message already sent with that ID, {@link #PENDING}
+     * if it is still being sent, or null if the caller is to send the message, and then to record or
+     * release the ID
+     */
+    String reserve(String userName, String clientMessageId, long now) {
+        if (clientMessageId == null) {
+            return null;
+        }
+        Window window = windowsByUser.computeIfAbsent(userName, name -> new Window(bucketCount));
+        String uniqueKey = window.reserve(clientMessageId, now, now / bucketInMs,
+                ServerConstants.DEDUP_PENDING_TIMEOUT_IN_MS);
+        if (uniqueKey != null && !PENDING.equals(uniqueKey)) {
+            hits.incrementAndGet();
+        }
+        return uniqueKey;
+    }
+
+    /**
+     * Releases an ID taken by a send that did not record it, so that the message can be sent again
+     * with it. Does nothing once the ID is recorded.
+     *
+     * @param userName        the user name of the sender
+     * @param clientMessageId the ID the client gave to the message, or null if it gave none
+     */
+    void release(String userName, String clientMessageId) {
+        if (clientMessageId == null) {
+            return;
+        }
+        Window window = windowsByUser.get(userName);
+        if (window != null) {
+            window.release(clientMessageId);
+        }
+    }
+
+    /**
+     * Remembers the unique key of a message a user sent with an ID, at the current time.
+     *
+     * @param userName        the user name of the sender
+     * @param clientMessageId the ID the client gave to the message, or null if it gave none
+     * @param uniqueKey       the unique key the message was stored with
+     */
+    void record(String userName, String clientMessageId, String uniqueKey) {
+        record(userName, clientMessageId, uniqueKey, System.currentTimeMillis());
+    }
+
+    /**
+     * Remembers the unique key of a message a user sent with an ID.
+     *
+     * @param userName        the user name of the sender
+     * @param clientMessageId the ID the client gave to the message, or null if it gave none
+     * @param uniqueKey       the unique key the message was stored with
+     * @param now             the current time in milliseconds
+     */
+    void record(String userName, String clientMessageId, String uniqueKey, long now) {
+        if (clientMessageId == null || uniqueKey == null) {
+            return;
+        }
+        Window window = windowsByUser.computeIfAbsent(userName, name -> new Window(bucketCount));
+        if (window.record(clientMessageId, uniqueKey, now / bucketInMs, maxIdsPerBucket)) {
+            recorded.incrementAndGet();
+        }
+    }
+
+    /**
+     * Forgets the users who sent no message with an ID for the whole window, at the current time.
+     */
+    void evictIdle() {
+        evictIdle(System.currentTimeMillis());
+    }
+
+    /**
+     * Forgets the users who sent no message with an ID for the whole window.
+     *
+     * @param now the current time in milliseconds
+     */
+    void evictIdle(long now) {
+        long epoch = now / bucketInMs;
+        windowsByUser.values().removeIf(window -> window.isIdle(epoch));
+    }
+
+    /**
+     * @return the number of messages sent again and answered without being stored again
+     */
+    long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the metrics of the deduplicator, in a form that can be logged
+     */
+    @Override
+    public String toString() {
+        return "SendDeduplicator[users=" + windowsByUser.size() + ", recorded=" + recorded.get() + ", hits="
+                + hits.get() + "]";
+    }
+
+    /**
+     * The IDs of the messages of one user, in a ring of buckets, each with the number of the slice
+     * of time it holds the IDs of, and the IDs of the messages being sent. The devices of a user
+     * may send at the same time, so the window is locked while it is used.
+     */
+    private static final class Window {
+
+        private final long[] epochs;
+        private final Map<String, String>[] buckets;
+        private final Map<String, Long> pendingSince = new HashMap<>();
+
+        @SuppressWarnings("unchecked")
+        Window(int bucketCount) {
+            epochs = new long[bucketCount];
+            buckets = new Map[bucketCount];
+        }
+
+        synchronized String find(String clientMessageId, long epoch) {
+            for (int i = 0; i < buckets.length; i++) {
+                if (buckets[i] != null && epoch - epochs[i] < buckets.length) {
+                    String uniqueKey = buckets[i].get(clientMessageId);
+                    if (uniqueKey != null) {
+                        return uniqueKey;
+                    }
+                }
+            }
+            return null;
+        }
+
+        synchronized String reserve(String clientMessageId, long now, long epoch, long pendingTimeoutInMs) {
+            String uniqueKey = find(clientMessageId, epoch);
+            if (uniqueKey != null) {
+                return uniqueKey;
+            }
+            Long since = pendingSince.get(clientMessageId);
+            if (since != null && now - since < pendingTimeoutInMs) {
+                return PENDING;
+            }
+            // The ID is unknown, or its first send is stuck and this one takes it over.
+            pendingSince.put(clientMessageId, now);
+            return null;
+        }
+
+        synchronized void release(String clientMessageId) {
+            pendingSince.remove(clientMessageId);
+        }
+
+        synchronized boolean record(String clientMessageId, String uniqueKey, long epoch, int maxIds) {
+            release(clientMessageId);
+            int index = (int) (epoch % buckets.length);
+            if (buckets[index] == null || epochs[index] != epoch) {
+                // The ring came round: the bucket held IDs older than the window.
+                buckets[index] = new HashMap<>();
+                epochs[index] = epoch;
+            }
+            if (buckets[index].size() >= maxIds) {
+                return false;
+            }
+            buckets[index].put(clientMessageId, uniqueKey);
+            return true;
+        }
+
+        synchronized boolean isIdle(long epoch) {
+            if (!pendingSince.isEmpty()) {
+                return false;
+            }
+            for (int i = 0; i < buckets.length; i++) {
+                if (buckets[i] != null && epoch - epochs[i] < buckets.length) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
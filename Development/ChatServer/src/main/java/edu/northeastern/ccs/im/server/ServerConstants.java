@@ -43,6 +43,232 @@ class ServerConstants {
      */
     static final int CLIENT_CHECK_DELAY = 200;
 
+    /**
+     * Delay between times the inbox summaries are written back to the database.
+     */
+    static final int INBOX_FLUSH_DELAY = 30000;
+
+    /**
+     * Number of threads of the stage that checks the session of every request.
+     */
+    static final int SESSION_STAGE_THREADS = 2;
+
+    /**
+     * Number of threads of the stage that runs the handlers of the requests.
+     */
+    static final int DISPATCH_STAGE_THREADS = 8;
+
+    /**
+     * Number of threads of the stage that delivers the group messages.
+     */
+    static final int FAN_OUT_STAGE_THREADS = 4;
+
+    /**
+     * Number of threads the fan-out stage delivers a group message to the online members with.
+     */
+    static final int FAN_OUT_PARALLELISM = 4;
+
+    /**
+     * Number of online members a thread delivers a group message to in one go.
+     */
+    static final int FAN_OUT_CHUNK_SIZE = 256;
+
+    /**
+     * Number of the sequence locks of the users the fan-out of a group message holds at once, while it
+     * numbers and stores the copies of the members they cover.
+     */
+    static final int FAN_OUT_LOCK_STRIPES = 4;
+
+    /**
+     * Number of requests that can wait for each thread of a stage.
+     */
+    static final int STAGE_LANE_CAPACITY = 256;
+
+    /**
+     * Delay between times the metrics of the request pipeline are logged.
+     */
+    static final int PIPELINE_METRICS_DELAY = 60000;
+
+    /**
+     * Length of a tick of the timer wheel that tracks the idle deadlines of the clients.
+     */
+    static final int IDLE_TIMER_TICK_IN_MS = 1000;
+
+    /**
+     * Number of buckets of the timer wheel that tracks the idle deadlines of the clients.
+     */
+    static final int IDLE_TIMER_WHEEL_SIZE = 512;
+
+    /**
+     * Time a logged in client may stay silent before the server sends it a heartbeat.
+     */
+    static final int HEARTBEAT_INTERVAL_IN_MS = 30000;
+
+    /**
+     * Number of heartbeat intervals a client may stay silent before it is evicted.
+     */
+    static final int HEARTBEAT_MISSED_LIMIT = 3;
+
+    /**
+     * Time a client must be idle, heartbeats aside, before it releases its connection and stops
+     * being scheduled until it has something to read or to send.
+     */
+    static final int HIBERNATE_AFTER_IN_MS = 60000;
+
+    /**
+     * Number of messages waiting to be sent to a client that are held in memory.
+     */
+    static final int OUTBOUND_QUEUE_MAX_MESSAGES = 1024;
+
+    /**
+     * Number of encoded bytes waiting to be sent to a client that are held in memory.
+     */
+    static final long OUTBOUND_QUEUE_MAX_BYTES = 1024L * 1024;
+
+    /**
+     * What to do with a message for a client whose outbound queue is full.
+     */
+    static final OutboundQueue.OverflowPolicy OUTBOUND_OVERFLOW_POLICY = OutboundQueue.OverflowPolicy.SPILL;
+
+    /**
+     * Size of the overflow file of a client whose outbound queue spills to disk.
+     */
+    static final int OUTBOUND_SPILL_FILE_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Number of times the message budget of a user that the address of a client gets, since many
+     * users may connect from the same address.
+     */
+    static final int RATE_LIMIT_ADDRESS_MULTIPLIER = 4;
+
+    /**
+     * Time between two sweeps forgetting the users and addresses that stayed within their budgets.
+     */
+    static final int RATE_LIMIT_EVICTION_DELAY = 60000;
+
+    /**
+     * Number of connections over which the server refuses new ones.
+     */
+    static final int MAX_CONNECTIONS = 10000;
+
+    /**
+     * Number of connections the server takes on per second, and in a burst.
+     */
+    static final int ADMISSION_ACCEPTS_PER_SECOND = 200;
+
+    /**
+     * Number of accepted connections that may wait to be taken on.
+     */
+    static final int ADMISSION_MAX_WAITING = 1000;
+
+    /**
+     * Time after which a connection waiting to be taken on is refused.
+     */
+    static final int ADMISSION_MAX_WAIT_IN_MS = 5000;
+
+    /**
+     * Average latency of the database calls over which the server refuses new connections.
+     */
+    static final int ADMISSION_MAX_DB_LATENCY_IN_MS = 500;
+
+    /**
+     * Number of database calls waiting for a thread over which the server refuses new connections.
+     */
+    static final int ADMISSION_MAX_DB_QUEUE_DEPTH = 128;
+
+    /**
+     * Number of requests waiting in the pipeline over which the server refuses new connections.
+     */
+    static final int ADMISSION_MAX_PIPELINE_DEPTH = 4096;
+
+    /**
+     * Time a refused client is told to wait before connecting again.
+     */
+    static final int ADMISSION_RETRY_AFTER_IN_MS = 5000;
+
+    /**
+     * Time a draining server waits for its clients to be sent their last messages before exiting.
+     */
+    static final int DRAIN_TIMEOUT_IN_MS = 10000;
+
+    /**
+     * Shortest time the clients of a draining server are told to wait before connecting again.
+     */
+    static final int DRAIN_RECONNECT_MIN_IN_MS = 2000;
+
+    /**
+     * Spread of the times the clients of a draining server are told to wait before connecting
+     * again, so that they do not all come back at once.
+     */
+    static final int DRAIN_RECONNECT_JITTER_IN_MS = 28000;
+
+    /**
+     * Number of devices a user may be connected with at once.
+     */
+    static final int MAX_DEVICES_PER_USER = 5;
+
+    /**
+     * Time the session of a client whose connection was lost is kept for it to resume.
+     */
+    static final int RESUME_GRACE_IN_MS = 120000;
+
+    /**
+     * Time between two sweeps logging out the sessions that were not resumed in time.
+     */
+    static final int RESUME_SWEEP_DELAY = 5000;
+
+    /**
+     * Delay between times the delivered messages are marked sent in the database.
+     */
+    static final int DELIVERY_FLUSH_DELAY_IN_MS = 500;
+
+    /**
+     * Number of messages sent in one page to a client catching up with a SYN message.
+     */
+    static final int SYNC_PAGE_SIZE = 100;
+
+    /**
+     * Time for which the IDs clients give to the messages they send are remembered, so that a
+     * message sent again with the same ID is not sent twice.
+     */
+    static final int DEDUP_WINDOW_IN_MS = 300000;
+
+    /**
+     * Number of buckets the IDs of the messages of a user are kept in, each holding a slice of the window.
+     */
+    static final int DEDUP_BUCKETS = 5;
+
+    /**
+     * Number of message IDs of a user a bucket holds.
+     */
+    static final int DEDUP_MAX_IDS_PER_BUCKET = 1024;
+
+    /**
+     * Time after which a message sent again with an ID still pending is sent on its own, the first
+     * send of that ID being taken as stuck.
+     */
+    static final long DEDUP_PENDING_TIMEOUT_IN_MS = 60000;
+
+    /**
+     * Name of the channel every client is subscribed to, on which the broadcast messages are published.
+     */
+    static final String GLOBAL_CHANNEL = "global";
+
+    /**
+     * Number of the last messages published on a channel that a client subscribing to it is sent.
+     */
+    static final int CHANNEL_REPLAY_SIZE = 50;
+
+    /**
+     * Command-line argument that starts the server with a virtual thread per connection.
+     */
+    static final String VIRTUAL_THREAD_MODE = "--mode=virtual";
+
+    /**
+     * Command-line argument that warms the services up before the server starts accepting clients.
+     */
+    static final String WARM_START_MODE = "--warm-start";
+
     /**
      * Name of the private user who broadcasts interesting responses.
      */
@@ -0,0 +1,251 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Table of the sessions of the server, shared by all the threads that run clients.
+ *
+ * Every connected client gets a session ID when it is opened. Once it has sent its user name, the
+ * client claims that name; a claim succeeds for only one client at a time, and the name is only
+ * released by the client that holds it. Other devices of the same user join the clients holding
+ * the name once they have logged in, so that the messages sent to the user go to all of them. Both
+ * tables are concurrent hash maps, so that lookups never block, updates only lock one bin of the
+ * map, and a broadcast can iterate over the clients while others connect and disconnect.
+ *
+ * The devices of a user are kept in an array that is copied on every change, which is rare, so
+ * that looking up and iterating over the devices of a user is a single read of the map.
+ */
+public class SessionRegistry {
+
+    private static final ClientRunnable[] NO_DEVICES = new ClientRunnable[0];
+
+    private static SessionRegistry sessionRegistry;
+
+    /**
+     * The connected clients and their session IDs.
+     */
+    private final Map<ClientRunnable, Long> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * The clients holding a user name, one per device of the user, by user name. The first one is
+     * the device that claimed the name.
+     */
+    private final Map<String, ClientRunnable[]> clientsByUserName = new ConcurrentHashMap<>();
+
+    private final AtomicLong sessionIds = new AtomicLong();
+
+    /**
+     * Counter making the name given to every client whose user name is already taken unique.
+     */
+    private final AtomicInteger invalidCounter = new AtomicInteger();
+
+    /**
+     * Instantiates an empty registry.
+     */
+    private SessionRegistry() {
+    }
+
+    /**
+     * Get the singleton instance of the SessionRegistry
+     *
+     * @return SessionRegistry  the singleton instance of this class
+     */
+    public static synchronized SessionRegistry getInstance() {
+        if (sessionRegistry == null) {
+            sessionRegistry = new SessionRegistry();
+        }
+        return sessionRegistry;
+    }
+
+    /**
+     * Opens the session of a client that has just connected.
+     *
+     * @param client the client
+     * @return long         the ID of the session of the client
+     */
+    public long open(ClientRunnable client) {
+        return sessions.computeIfAbsent(client, c -> sessionIds.incrementAndGet());
+    }
+
+    /**
+     * Closes the session of a client, releasing the user name it holds.
+     *
+     * @param client the client
+     * @return boolean      true, if the client had a session; false otherwise
+     */
+    public boolean close(ClientRunnable client) {
+        release(client.getName(), client);
+        return sessions.remove(client) != null;
+    }
+
+    /**
+     * Claims a user name for a client, unless another client already holds it.
+     *
+     * @param userName the user name
+     * @param client   the client
+     * @return boolean      true, if the client holds the user name now; false if another client does
+     */
+    public boolean claim(String userName, ClientRunnable client) {
+        ClientRunnable[] holders = clientsByUserName.putIfAbsent(userName, new ClientRunnable[]{client});
+        return holders == null || indexOf(holders, client) >= 0;
+    }
+
+    /**
+     * Adds a client to the devices of a user, up to the most devices a user may connect.
+     *
+     * @param userName the user name
+     * @param client   the client of another device of the user
+     * @return boolean      true, if the client is one of the devices of the user now; false if the user
+     * has too many devices
+     */
+    public boolean join(String userName, ClientRunnable client) {
+        ClientRunnable[] devices = clientsByUserName.compute(userName, (name, holders) -> {
+            if (holders == null) {
+                return new ClientRunnable[]{client};
+            }
+            if (indexOf(holders, client) >= 0 || holders.length >= ServerConstants.MAX_DEVICES_PER_USER) {
+                return holders;
+            }
+            ClientRunnable[] added = Arrays.copyOf(holders, holders.length + 1);
+            added[holders.length] = client;
+            return added;
+        });
+        return indexOf(devices, client) >= 0;
+    }
+
+    /**
+     * Releases a user name, if the client holds it.
+     *
+     * @param userName the user name
+     * @param client   the client
+     * @return boolean      true, if the client held the user name; false otherwise
+     */
+    public boolean release(String userName, ClientRunnable client) {
+        if (userName == null) {
+            return false;
+        }
+        boolean[] released = new boolean[1];
+        clientsByUserName.computeIfPresent(userName, (name, holders) -> {
+            int index = indexOf(holders, client);
+            if (index < 0) {
+                return holders;
+            }
+            released[0] = true;
+            return holders.length == 1 ? null : remove(holders, index);
+        });
+        return released[0];
+    }
+
+    /**
+     * Hands a user name over from one client to another, if the first one still holds it.
+     *
+     * @param userName the user name
+     * @param from     the client holding the user name
+     * @param to       the client taking it over
+     * @return boolean      true, if the user name was handed over; false otherwise
+     */
+    public boolean transfer(String userName, ClientRunnable from, ClientRunnable to) {
+        if (userName == null) {
+            return false;
+        }
+        boolean[] transferred = new boolean[1];
+        clientsByUserName.computeIfPresent(userName, (name, holders) -> {
+            int index = indexOf(holders, from);
+            if (index < 0) {
+                return holders;
+            }
+            transferred[0] = true;
+            ClientRunnable[] replaced = holders.clone();
+            replaced[index] = to;
+            return replaced;
+        });
+        return transferred[0];
+    }
+
+    /**
+     * Makes up a unique name for a client whose user name is already taken.
+     *
+     * @param userName the user name that is taken
+     * @return String       the name of the client
+     */
+    public String invalidName(String userName) {
+        return "invalid-" + userName + "-" + invalidCounter.incrementAndGet();
+    }
+
+    /**
+     * @param userName the user name
+     * @return ClientRunnable   the first of the clients holding the user name, or null if there is none
+     */
+    public ClientRunnable getClient(String userName) {
+        ClientRunnable[] holders = getDevices(userName);
+        return holders.length == 0 ? null : holders[0];
+    }
+
+    /**
+     * @param userName the user name
+     * @return ClientRunnable[] the clients holding the user name, one per device of the user; the
+     * array is shared and must not be modified
+     */
+    public ClientRunnable[] getDevices(String userName) {
+        ClientRunnable[] holders = userName == null ? null : clientsByUserName.get(userName);
+        return holders == null ? NO_DEVICES : holders;
+    }
+
+    /**
+     * @param client the client
+     * @return Long         the ID of the session of the client, or null if it has none
+     */
+    public Long getSessionId(ClientRunnable client) {
+        return sessions.get(client);
+    }
+
+    /**
+     * @return the connected clients; a live view that can be iterated while clients come and go
+     */
+    public Collection<ClientRunnable> getClients() {
+        return Collections.unmodifiableSet(sessions.keySet());
+    }
+
+    /**
+     * @return the number of connected clients
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * @return the number of user names held by clients
+     */
+    public int getClaimedCount() {
+        return clientsByUserName.size();
+    }
+
+    private static int indexOf(ClientRunnable[] holders, ClientRunnable client) {
+        for (int i = 0; i < holders.length; i++) {
+            if (holders[i] == client) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static ClientRunnable[] remove(ClientRunnable[] holders, int index) {
+        ClientRunnable[] removed = new ClientRunnable[holders.length - 1];
+        System.arraycopy(holders, 0, removed, 0, index);
+        System.arraycopy(holders, index + 1, removed, index, holders.length - index - 1);
+        return removed;
+    }
+}
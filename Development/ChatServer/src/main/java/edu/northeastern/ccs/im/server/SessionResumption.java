@@ -0,0 +1,150 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The tokens with which the clients resume their sessions. Every client that logs in is given a
+ * token; when its connection is lost, the client is suspended instead of logged out, and keeps
+ * getting its messages queued for a grace period. A new connection presenting the token in a RSM
+ * message takes the suspended session over, with the messages queued since, and is given a new
+ * token, without going through the credentials, the login update and the replay of the messages
+ * stored while offline. A session not resumed within the grace period is logged out.
+ *
+ * Whoever takes a token out of the table first, a resuming client or the sweep expiring the
+ * session, is the only one to act on the session.
+ */
+class SessionResumption {
+
+    private static final int TOKEN_BYTES = 16;
+
+    private static SessionResumption sessionResumption;
+
+    private final Map<String, ClientRunnable> clientsByToken = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final long graceInMs;
+    private final AtomicLong resumed = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong resumeNanos = new AtomicLong();
+
+    /**
+     * Creates the tokens of sessions kept for the given grace period once suspended.
+     *
+     * @param graceInMs the time a suspended session can be resumed
+     */
+    SessionResumption(long graceInMs) {
+        this.graceInMs = graceInMs;
+    }
+
+    /**
+     * Get the singleton instance of the SessionResumption
+     *
+     * @return SessionResumption    the singleton instance of this class
+     */
+    static synchronized SessionResumption getInstance() {
+        if (sessionResumption == null) {
+            sessionResumption = new SessionResumption(ServerConstants.RESUME_GRACE_IN_MS);
+        }
+        return sessionResumption;
+    }
+
+    /**
+     * Issues a new token for the session of a client.
+     *
+     * @param client the client that logged in or resumed its session
+     * @return String       the token
+     */
+    String issue(ClientRunnable client) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        clientsByToken.put(token, client);
+        return token;
+    }
+
+    /**
+     * @param token a token
+     * @return ClientRunnable   the client whose session the token resumes, or null if there is none
+     */
+    ClientRunnable find(String token) {
+        return token == null ? null : clientsByToken.get(token);
+    }
+
+    /**
+     * Takes a token out of the table, so that nobody else acts on its session.
+     *
+     * @param token  the token
+     * @param client the client whose session the token resumes
+     * @return boolean      true, if the token was still in the table; false if someone took it first
+     */
+    boolean revoke(String token, ClientRunnable client) {
+        return token != null && clientsByToken.remove(token, client);
+    }
+
+    /**
+     * Records the time a session took to be resumed.
+     *
+     * @param nanos the time taken, in nanoseconds
+     */
+    void resumed(long nanos) {
+        resumed.incrementAndGet();
+        resumeNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Logs out the suspended sessions whose grace period is over, at the current time.
+     */
+    void sweep() {
+        sweep(System.currentTimeMillis());
+    }
+
+    /**
+     * Logs out the suspended sessions whose grace period is over.
+     *
+     * @param now the current time in milliseconds
+     */
+    void sweep(long now) {
+        for (Map.Entry<String, ClientRunnable> entry : clientsByToken.entrySet()) {
+            ClientRunnable client = entry.getValue();
+            if (client.isSuspended() && now - client.getSuspendedAt() >= graceInMs
+                    && revoke(entry.getKey(), client)) {
+                expired.incrementAndGet();
+                client.expire();
+            }
+        }
+    }
+
+    /**
+     * @return the number of sessions resumed
+     */
+    long getResumedCount() {
+        return resumed.get();
+    }
+
+    /**
+     * @return the number of suspended sessions logged out at the end of their grace period
+     */
+    long getExpiredCount() {
+        return expired.get();
+    }
+
+    /**
+     * @return the metrics of the resumptions, in a form that can be logged
+     */
+    @Override
+    public String toString() {
+        long count = resumed.get();
+        return "SessionResumption[tokens=" + clientsByToken.size() + ", resumed=" + count + ", expired="
+                + expired.get() + ", avgResumeUs=" + (count == 0 ? 0 : resumeNanos.get() / count / 1000) + "]";
+    }
+}
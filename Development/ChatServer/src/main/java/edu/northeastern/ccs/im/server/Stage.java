@@ -0,0 +1,239 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import edu.northeastern.ccs.im.ChatLogger;
+
+/**
+ * One stage of the request pipeline: a fixed number of worker threads, each draining its own
+ * bounded ring buffer. Elements are routed to a worker by their key, so the elements of one key are
+ * handled in the order they were submitted while different keys are handled in parallel.
+ *
+ * A full buffer pushes back on the submitter, which waits until the worker catches up.
+ *
+ * Idle workers and waiting submitters park until they are woken: a submit wakes the worker of its
+ * buffer, and a worker wakes the submitters waiting for its buffer once it takes an element. Both
+ * check the buffer again after waking, as a wake-up may come before the park it is meant to end.
+ *
+ * @param <E> the type of the elements handled by the stage
+ */
+class Stage<E> {
+
+    /**
+     * The work done by a stage on every element.
+     *
+     * @param <E> the type of the elements handled by the stage
+     */
+    @FunctionalInterface
+    interface Handler<E> {
+        /**
+         * Handles one element.
+         *
+         * @param element the element to handle
+         * @throws Exception any exception, which is logged by the stage
+         */
+        void handle(E element) throws Exception;
+    }
+
+    private final String name;
+    private final Handler<E> handler;
+    private final Function<E, Object> keyOf;
+    private final List<RingBuffer<E>> lanes = new ArrayList<>();
+    private final List<Queue<Thread>> waitingSubmitters = new ArrayList<>();
+    private volatile Thread[] workers;
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong blockedSubmits = new AtomicLong();
+    private volatile int maxQueueDepth;
+    private volatile boolean running;
+
+    /**
+     * Creates a stage; its workers are started by {@link #start()}.
+     *
+     * @param name          the name of the stage, used for the threads and the metrics
+     * @param threads       the number of worker threads of the stage
+     * @param laneCapacity  the capacity of the buffer of every worker
+     * @param keyOf         the function giving the key whose order must be preserved
+     * @param handler       the work done on every element
+     */
+    Stage(String name, int threads, int laneCapacity, Function<E, Object> keyOf, Handler<E> handler) {
+        this.name = name;
+        this.keyOf = keyOf;
+        this.handler = handler;
+        for (int i = 0; i < threads; i++) {
+            lanes.add(new RingBuffer<>(laneCapacity));
+            waitingSubmitters.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    /**
+     * Starts the worker threads of the stage.
+     */
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        Thread[] started = new Thread[lanes.size()];
+        for (int i = 0; i < started.length; i++) {
+            int index = i;
+            started[i] = new Thread(() -> drain(index), name + "-stage-" + i);
+            started[i].setDaemon(true);
+        }
+        // published before the workers run, so that no submit made once a worker is idle misses it
+        workers = started;
+        for (Thread worker : started) {
+            worker.start();
+        }
+    }
+
+    /**
+     * Stops the worker threads once they have handled the elements already submitted.
+     */
+    synchronized void stop() {
+        running = false;
+        if (workers != null) {
+            for (Thread worker : workers) {
+                LockSupport.unpark(worker);
+            }
+        }
+    }
+
+    /**
+     * Submits an element to the stage, waiting while the buffer of its worker is full.
+     *
+     * @param element the element to handle
+     */
+    void submit(E element) {
+        int index = Math.floorMod(Objects.hashCode(keyOf.apply(element)), lanes.size());
+        RingBuffer<E> lane = lanes.get(index);
+        if (!lane.offer(element)) {
+            blockedSubmits.incrementAndGet();
+            Queue<Thread> waiting = waitingSubmitters.get(index);
+            Thread submitter = Thread.currentThread();
+            waiting.add(submitter);
+            try {
+                while (!lane.offer(element)) {
+                    LockSupport.park(this);
+                }
+            } finally {
+                waiting.remove(submitter);
+            }
+        }
+        int depth = lane.size();
+        if (depth > maxQueueDepth) {
+            maxQueueDepth = depth;
+        }
+        Thread[] started = workers;
+        if (started != null) {
+            LockSupport.unpark(started[index]);
+        }
+    }
+
+    /**
+     * Worker loop: handles the elements of one lane until the stage is stopped and the lane is empty.
+     *
+     * @param index the index of the buffer drained by the worker
+     */
+    private void drain(int index) {
+        RingBuffer<E> lane = lanes.get(index);
+        Queue<Thread> waiting = waitingSubmitters.get(index);
+        while (true) {
+            E element = lane.poll();
+            if (element == null) {
+                if (!running) {
+                    return;
+                }
+                LockSupport.park(this);
+                continue;
+            }
+            for (Thread submitter : waiting) {
+                LockSupport.unpark(submitter);
+            }
+            try {
+                handler.handle(element);
+                processed.incrementAndGet();
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                ChatLogger.error("Exception occurred - Stage.java - " + name + " : " + ChatLogger.getTrace(e));
+            }
+        }
+    }
+
+    /**
+     * @return the name of the stage
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of worker threads of the stage
+     */
+    int getThreadCount() {
+        return lanes.size();
+    }
+
+    /**
+     * @return the number of elements waiting in the stage
+     */
+    int getQueueDepth() {
+        int depth = 0;
+        for (RingBuffer<E> lane : lanes) {
+            depth += lane.size();
+        }
+        return depth;
+    }
+
+    /**
+     * @return the largest number of elements seen waiting for one worker of the stage
+     */
+    int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * @return the number of elements handled by the stage
+     */
+    long getProcessedCount() {
+        return processed.get();
+    }
+
+    /**
+     * @return the number of elements whose handling failed
+     */
+    long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * @return the number of submits that had to wait for space in the stage
+     */
+    long getBlockedSubmitCount() {
+        return blockedSubmits.get();
+    }
+
+    /**
+     * @return the metrics of the stage, in a form that can be logged
+     */
+    @Override
+    public String toString() {
+        return name + "[threads=" + getThreadCount() + ", depth=" + getQueueDepth() + ", maxDepth="
+                + maxQueueDepth + ", processed=" + processed.get() + ", failed=" + failed.get()
+                + ", blocked=" + blockedSubmits.get() + "]";
+    }
+}
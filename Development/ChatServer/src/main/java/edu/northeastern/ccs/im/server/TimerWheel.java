@@ -0,0 +1,216 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Hashed timer wheel tracking the idle deadlines of all the clients. The wheel is a ring of buckets,
+ * one per tick; a timeout sits in the bucket of the tick in which its deadline falls, and every tick
+ * sweeps one bucket.
+ *
+ * Rescheduling a timeout only writes its new deadline, so activity on a connection costs neither a
+ * lock nor an allocation. The sweep finds out about the move lazily: a timeout whose deadline has
+ * not passed yet is put back in the bucket of its new deadline, and one whose deadline lies more
+ * than a turn of the wheel ahead goes around once more.
+ */
+class TimerWheel {
+
+    /**
+     * The idle deadline of one client.
+     */
+    static final class Timeout {
+        private final TimerWheel wheel;
+        private volatile long deadline;
+        private volatile boolean expired;
+        private volatile boolean cancelled;
+
+        private Timeout(TimerWheel wheel, long deadline) {
+            this.wheel = wheel;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Moves the deadline to the given delay from now. A deadline pushed back is picked up by the
+         * sweep of the old one; a deadline brought forward is only noticed then too, so it can expire
+         * late, but never after the old deadline.
+         *
+         * @param delayInMs the time from now after which the timeout expires
+         */
+        void reschedule(long delayInMs) {
+            deadline = wheel.clock.getAsLong() + delayInMs;
+        }
+
+        /**
+         * Removes the timeout from the wheel, at its next sweep.
+         */
+        void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * @return true if the deadline has passed and a sweep has seen it, false otherwise
+         */
+        boolean isExpired() {
+            return expired;
+        }
+
+        /**
+         * @return the time at which the timeout expires, in milliseconds since the epoch
+         */
+        long getDeadline() {
+            return deadline;
+        }
+    }
+
+    private static TimerWheel timerWheel;
+
+    private final long tickInMs;
+    private final int mask;
+    private final Queue<Timeout>[] buckets;
+    private final LongSupplier clock;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong expiredCount = new AtomicLong();
+    private volatile long currentTick;
+
+    /**
+     * Creates a wheel.
+     *
+     * @param tickInMs  the length of a tick, which is also the precision of the timeouts
+     * @param wheelSize the number of buckets; rounded up to a power of two
+     * @param clock     the current time in milliseconds
+     */
+    @SuppressWarnings("unchecked")
+    TimerWheel(long tickInMs, int wheelSize, LongSupplier clock) {
+        int size = Integer.highestOneBit(Math.max(1, wheelSize));
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        this.tickInMs = tickInMs;
+        this.mask = size - 1;
+        this.clock = clock;
+        this.buckets = new Queue[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.currentTick = clock.getAsLong() / tickInMs;
+    }
+
+    /**
+     * Get the singleton instance of the TimerWheel, swept by its own thread once per tick.
+     *
+     * @return TimerWheel   the singleton instance of this class
+     */
+    static synchronized TimerWheel getInstance() {
+        if (timerWheel == null) {
+            TimerWheel wheel = new TimerWheel(ServerConstants.IDLE_TIMER_TICK_IN_MS,
+                    ServerConstants.IDLE_TIMER_WHEEL_SIZE, System::currentTimeMillis);
+            ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "idle-timer-wheel");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ticker.scheduleAtFixedRate(wheel::advance, wheel.tickInMs, wheel.tickInMs, TimeUnit.MILLISECONDS);
+            timerWheel = wheel;
+        }
+        return timerWheel;
+    }
+
+    /**
+     * Adds a timeout to the wheel.
+     *
+     * @param delayInMs the time from now after which the timeout expires
+     * @return Timeout      the timeout, to reschedule or cancel later
+     */
+    Timeout schedule(long delayInMs) {
+        Timeout timeout = new Timeout(this, clock.getAsLong() + delayInMs);
+        pending.incrementAndGet();
+        place(timeout);
+        return timeout;
+    }
+
+    /**
+     * Sweeps the buckets of all the ticks up to the current time.
+     */
+    void advance() {
+        advance(clock.getAsLong());
+    }
+
+    /**
+     * Sweeps the buckets of all the ticks up to the given time, expiring the timeouts whose deadline
+     * has passed and moving the others to the bucket of their deadline.
+     *
+     * @param now the current time in milliseconds
+     */
+    synchronized void advance(long now) {
+        long lastTick = now / tickInMs;
+        while (currentTick <= lastTick) {
+            Queue<Timeout> bucket = buckets[(int) currentTick & mask];
+            // Take the bucket's content first, so that timeouts put back in it wait a whole turn.
+            List<Timeout> due = new ArrayList<>();
+            Timeout timeout;
+            while ((timeout = bucket.poll()) != null) {
+                due.add(timeout);
+            }
+            currentTick++;
+            for (Timeout t : due) {
+                if (t.cancelled) {
+                    pending.decrementAndGet();
+                } else if (t.deadline <= now) {
+                    t.expired = true;
+                    pending.decrementAndGet();
+                    expiredCount.incrementAndGet();
+                } else {
+                    place(t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Puts a timeout in the bucket of its deadline, or in the next bucket to be swept if that tick
+     * has already gone by.
+     *
+     * @param timeout the timeout
+     */
+    private void place(Timeout timeout) {
+        long tick = Math.max(timeout.deadline / tickInMs, currentTick);
+        buckets[(int) tick & mask].add(timeout);
+    }
+
+    /**
+     * @return the number of timeouts in the wheel, including cancelled ones not swept yet
+     */
+    int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * @return the number of timeouts that have expired
+     */
+    long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    /**
+     * @return the metrics of the wheel, in a form that can be logged
+     */
+    @Override
+    public String toString() {
+        return "TimerWheel[pending=" + pending.get() + ", expired=" + expiredCount.get() + "]";
+    }
+}
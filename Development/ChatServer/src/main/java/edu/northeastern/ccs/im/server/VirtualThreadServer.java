@@ -0,0 +1,108 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+
+import edu.northeastern.ccs.im.ChatLogger;
+import edu.northeastern.ccs.im.NetworkConnection;
+
+/**
+ * Alternative way of serving the clients, in which every connection gets its own virtual threads:
+ * one blocks on reading and waits for every request to be handled on the bounded database pool,
+ * and the other writes the responses as they are queued. No selector or request pipeline is
+ * involved, as a blocked virtual thread only holds on to a small stack and not to an operating
+ * system thread.
+ *
+ * Virtual threads need Java 21 or later. The server is still built for Java 8, so the executor is
+ * looked up at runtime and this mode fails to start on an older runtime.
+ */
+final class VirtualThreadServer {
+
+    private final ServerSocketChannel serverSocket;
+    private final ExecutorService threads;
+    private final AdmissionController admission;
+
+    /**
+     * Creates a server accepting the connections of a channel.
+     *
+     * @param serverSocket the bound channel on which the clients connect
+     * @param admission    decides which of the accepted connections are taken on, may be null
+     */
+    VirtualThreadServer(ServerSocketChannel serverSocket, AdmissionController admission) {
+        this.serverSocket = serverSocket;
+        this.admission = admission;
+        this.threads = newVirtualThreadExecutor();
+    }
+
+    /**
+     * Creates an executor running every task on a new virtual thread.
+     *
+     * @return ExecutorService  the executor
+     * @throws IllegalStateException if the runtime does not support virtual threads
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Virtual threads need Java 21 or later, running on "
+                    + System.getProperty("java.version"), e);
+        }
+    }
+
+    /**
+     * Accepts connections on the calling thread while the server is ready.
+     *
+     * @param isReady tells whether the server should keep accepting connections
+     * @throws IOException if the channel can no longer accept connections
+     */
+    void serve(BooleanSupplier isReady) throws IOException {
+        serverSocket.configureBlocking(true);
+        try {
+            while (isReady.getAsBoolean()) {
+                accept(serverSocket.accept());
+            }
+        } finally {
+            threads.shutdown();
+        }
+    }
+
+    /**
+     * Starts an accepted connection, if the server takes it on.
+     *
+     * @param socket the accepted connection
+     */
+    void accept(SocketChannel socket) {
+        NetworkConnection connection = new NetworkConnection(socket, true);
+        if (admission == null || admission.offer(connection)) {
+            start(connection);
+        }
+    }
+
+    /**
+     * Starts the reading and writing threads of a connection taken on.
+     *
+     * @param connection the connection
+     */
+    void start(NetworkConnection connection) {
+        try {
+            ClientRunnable tt = new ClientRunnable(connection);
+            Prattle.addClient(tt);
+            threads.execute(tt::writeBlocking);
+            threads.execute(tt::readBlocking);
+        } catch (AssertionError ae) {
+            ChatLogger.error("Caught AssertionError - VirtualThreadServer.java - start() : " + ChatLogger.getTrace(ae));
+        }
+    }
+}
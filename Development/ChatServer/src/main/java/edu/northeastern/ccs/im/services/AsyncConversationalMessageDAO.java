@@ -0,0 +1,118 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.services;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import edu.northeastern.ccs.im.db.DBExecutor;
+import edu.northeastern.ccs.im.models.ConversationalMessage;
+
+/**
+ * Asynchronous variants of the methods of the {@link ConversationalMessageDAO}. Every call is run on the bounded
+ * DBExecutor with its default timeout, so that the thread handling a client is not blocked on JDBC
+ * and the results can be composed before the response is enqueued.
+ */
+public interface AsyncConversationalMessageDAO extends ConversationalMessageDAO {
+
+    /**
+     * Asynchronous variant of {@link ConversationalMessageDAO#insertConversationalMessage(String, String, String, boolean)}, run on the DBExecutor.
+     *
+     * @param msgSource      Username of the source of the message
+     * @param msgDestination Username of the Destination of the message
+     * @param msgText        Text in the message
+     * @param setFlag        marks if this message has been sent to the user or queued
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<String> insertConversationalMessageAsync(String msgSource, String msgDestination, String msgText, boolean setFlag) {
+        return DBExecutor.getInstance().supplyAsync(() -> insertConversationalMessage(msgSource, msgDestination, msgText, setFlag));
+    }
+
+    /**
+     * Asynchronous variant of {@link ConversationalMessageDAO#getMessagebySourceAndDestination(String, String)}, run on the DBExecutor.
+     *
+     * @param msgSource      Username of the source of the message
+     * @param msgDestination Username of the Destination of the message
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<List<ConversationalMessage>> getMessagebySourceAndDestinationAsync(String msgSource, String msgDestination) {
+        return DBExecutor.getInstance().supplyAsync(() -> getMessagebySourceAndDestination(msgSource, msgDestination));
+    }
+
+    /**
+     * Asynchronous variant of {@link ConversationalMessageDAO#getMessagebySource(String)}, run on the DBExecutor.
+     *
+     * @param msgSrc Username of the source of the message
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<List<ConversationalMessage>> getMessagebySourceAsync(String msgSrc) {
+        return DBExecutor.getInstance().supplyAsync(() -> getMessagebySource(msgSrc));
+    }
+
+    /**
+     * Asynchronous variant of {@link ConversationalMessageDAO#getMessagebyDestination(String)}, run on the DBExecutor.
+     *
+     * @param msgDest Username of the destination of the message
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<List<ConversationalMessage>> getMessagebyDestinationAsync(String msgDest) {
+        return DBExecutor.getInstance().supplyAsync(() -> getMessagebyDestination(msgDest));
+    }
+
+    /**
+     * Asynchronous variant of {@link ConversationalMessageDAO#deleteMessage(String)}, run on the DBExecutor.
+     *
+     * @param msgUniqueKey UniqueKey for the message to be deleted
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> deleteMessageAsync(String msgUniqueKey) {
+        return DBExecutor.getInstance().supplyAsync(() -> deleteMessage(msgUniqueKey));
+    }
+
+    /**
+     * Asynchronous variant of {@link ConversationalMessageDAO#insertGroupConversationalMessage(String, String)}, run on the DBExecutor.
+     *
+     * @param uniqueGroupKey   the unique group key
+     * @param uniqueMessageKey the unique message key
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> insertGroupConversationalMessageAsync(String uniqueGroupKey, String uniqueMessageKey) {
+        return DBExecutor.getInstance().supplyAsync(() -> insertGroupConversationalMessage(uniqueGroupKey, uniqueMessageKey));
+    }
+
+    /**
+     * Asynchronous variant of {@link ConversationalMessageDAO#deleteGroupMessage(String)}, run on the DBExecutor.
+     *
+     * @param grpMsgUniqueKey the group message unique key
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> deleteGroupMessageAsync(String grpMsgUniqueKey) {
+        return DBExecutor.getInstance().supplyAsync(() -> deleteGroupMessage(grpMsgUniqueKey));
+    }
+
+    /**
+     * Asynchronous variant of {@link ConversationalMessageDAO#getMessagesForUser(String, boolean)}, run on the DBExecutor.
+     *
+     * @param userName the user name for whom the messages are to be fetched
+     * @param flag     for deciding whether this function should retrieve all unsent messages or all past messages
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<List<ConversationalMessage>> getMessagesForUserAsync(String userName, boolean flag) {
+        return DBExecutor.getInstance().supplyAsync(() -> getMessagesForUser(userName, flag));
+    }
+
+    /**
+     * Asynchronous variant of {@link ConversationalMessageDAO#markMessageAsSent(String)}, run on the DBExecutor.
+     *
+     * @param msgUniqueKey the unique key of the message to be marked sent
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> markMessageAsSentAsync(String msgUniqueKey) {
+        return DBExecutor.getInstance().supplyAsync(() -> markMessageAsSent(msgUniqueKey));
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.services;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import edu.northeastern.ccs.im.db.DBExecutor;
+import edu.northeastern.ccs.im.models.Group;
+import edu.northeastern.ccs.im.models.User;
+
+/**
+ * Asynchronous variants of the methods of the {@link GroupDao}. Every call is run on the bounded
+ * DBExecutor with its default timeout, so that the thread handling a client is not blocked on JDBC
+ * and the results can be composed before the response is enqueued.
+ */
+public interface AsyncGroupDao extends GroupDao {
+
+    /**
+     * Asynchronous variant of {@link GroupDao#getGroup(String)}, run on the DBExecutor.
+     *
+     * @param groupName the group name
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Group> getGroupAsync(String groupName) {
+        return DBExecutor.getInstance().supplyAsync(() -> getGroup(groupName));
+    }
+
+    /**
+     * Asynchronous variant of {@link GroupDao#createGroup(String, String)}, run on the DBExecutor.
+     *
+     * @param groupName the group name
+     * @param modName   the moderator name of the group
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> createGroupAsync(String groupName, String modName) {
+        return DBExecutor.getInstance().supplyAsync(() -> createGroup(groupName, modName));
+    }
+
+    /**
+     * Asynchronous variant of {@link GroupDao#deleteGroup(String)}, run on the DBExecutor.
+     *
+     * @param groupName the group name
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> deleteGroupAsync(String groupName) {
+        return DBExecutor.getInstance().supplyAsync(() -> deleteGroup(groupName));
+    }
+
+    /**
+     * Asynchronous variant of {@link GroupDao#getMemberUsers(String)}, run on the DBExecutor.
+     *
+     * @param groupName the group name
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Set<User>> getMemberUsersAsync(String groupName) {
+        return DBExecutor.getInstance().supplyAsync(() -> getMemberUsers(groupName));
+    }
+
+    /**
+     * Asynchronous variant of {@link GroupDao#getMemberGroups(String)}, run on the DBExecutor.
+     *
+     * @param groupName the group name
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Set<String>> getMemberGroupsAsync(String groupName) {
+        return DBExecutor.getInstance().supplyAsync(() -> getMemberGroups(groupName));
+    }
+
+    /**
+     * Asynchronous variant of {@link GroupDao#getAllGroups()}, run on the DBExecutor.
+     *
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Set<Group>> getAllGroupsAsync() {
+        return DBExecutor.getInstance().supplyAsync(() -> getAllGroups());
+    }
+
+    /**
+     * Asynchronous variant of {@link GroupDao#isModerator(String, String)}, run on the DBExecutor.
+     *
+     * @param groupName the group name
+     * @param userName  the user name
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> isModeratorAsync(String groupName, String userName) {
+        return DBExecutor.getInstance().supplyAsync(() -> isModerator(groupName, userName));
+    }
+
+    /**
+     * Asynchronous variant of {@link GroupDao#addUserToGroup(String, String)}, run on the DBExecutor.
+     *
+     * @param hostGroupName the host group name
+     * @param guestUserName the guest user name
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> addUserToGroupAsync(String hostGroupName, String guestUserName) {
+        return DBExecutor.getInstance().supplyAsync(() -> addUserToGroup(hostGroupName, guestUserName));
+    }
+
+    /**
+     * Asynchronous variant of {@link GroupDao#removeUserFromGroup(String, String)}, run on the DBExecutor.
+     *
+     * @param hostGroupName the name of the host group
+     * @param guestUserName the username of the guest user
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> removeUserFromGroupAsync(String hostGroupName, String guestUserName) {
+        return DBExecutor.getInstance().supplyAsync(() -> removeUserFromGroup(hostGroupName, guestUserName));
+    }
+
+    /**
+     * Asynchronous variant of {@link GroupDao#addGroupToGroup(String, String)}, run on the DBExecutor.
+     *
+     * @param hostGroupName  the host group name
+     * @param guestGroupName the guest group name
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> addGroupToGroupAsync(String hostGroupName, String guestGroupName) {
+        return DBExecutor.getInstance().supplyAsync(() -> addGroupToGroup(hostGroupName, guestGroupName));
+    }
+
+    /**
+     * Asynchronous variant of {@link GroupDao#isUserMemberOfTheGroup(String, String)}, run on the DBExecutor.
+     *
+     * @param grpName  the name of the group in which the user name is to be checked
+     * @param userName the user name to be checked
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> isUserMemberOfTheGroupAsync(String grpName, String userName) {
+        return DBExecutor.getInstance().supplyAsync(() -> isUserMemberOfTheGroup(grpName, userName));
+    }
+
+    /**
+     * Asynchronous variant of {@link GroupDao#updateGroupSettings(String, String, String)}, run on the DBExecutor.
+     *
+     * @param groupName      the group name
+     * @param attributeName  the attribute name
+     * @param attributeValue the attribute value
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> updateGroupSettingsAsync(String groupName, String attributeName, String attributeValue) {
+        return DBExecutor.getInstance().supplyAsync(() -> updateGroupSettings(groupName, attributeName, attributeValue));
+    }
+
+    /**
+     * Asynchronous variant of {@link GroupDao#searchGroup(String)}, run on the DBExecutor.
+     *
+     * @param searchString the string to be used in the regex to find all similar groups
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Map<String, String>> searchGroupAsync(String searchString) {
+        return DBExecutor.getInstance().supplyAsync(() -> searchGroup(searchString));
+    }
+
+    /**
+     * Asynchronous variant of {@link GroupDao#removeGroupFromGroup(String, String)}, run on the DBExecutor.
+     *
+     * @param hostGroupName  the host group name
+     * @param guestGroupName the guest group name that needs to be removed
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> removeGroupFromGroupAsync(String hostGroupName, String guestGroupName) {
+        return DBExecutor.getInstance().supplyAsync(() -> removeGroupFromGroup(hostGroupName, guestGroupName));
+    }
+
+    /**
+     * Asynchronous variant of {@link GroupDao#getGroupsByModerator(String)}, run on the DBExecutor.
+     *
+     * @param moderatorName the moderator whose groups need to be found
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Set<String>> getGroupsByModeratorAsync(String moderatorName) {
+        return DBExecutor.getInstance().supplyAsync(() -> getGroupsByModerator(moderatorName));
+    }
+
+    /**
+     * Asynchronous variant of {@link GroupDao#checkMembershipInGroup(String, String)}, run on the DBExecutor.
+     *
+     * @param hostGroupName the host group name
+     * @param guestUserName the username of the user to be checked for group membership
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> checkMembershipInGroupAsync(String hostGroupName, String guestUserName) {
+        return DBExecutor.getInstance().supplyAsync(() -> checkMembershipInGroup(hostGroupName, guestUserName));
+    }
+}
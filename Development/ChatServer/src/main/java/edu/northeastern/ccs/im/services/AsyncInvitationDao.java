@@ -0,0 +1,176 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.services;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import edu.northeastern.ccs.im.Message;
+import edu.northeastern.ccs.im.db.DBExecutor;
+
+/**
+ * Asynchronous variants of the methods of the {@link InvitationDao}. Every call is run on the bounded
+ * DBExecutor with its default timeout, so that the thread handling a client is not blocked on JDBC
+ * and the results can be composed before the response is enqueued.
+ */
+public interface AsyncInvitationDao extends InvitationDao {
+
+    /**
+     * Asynchronous variant of {@link InvitationDao#getInvitation(String, String, String)}, run on the DBExecutor.
+     *
+     * @param inviter   the person who is the sender of the invitation
+     * @param invitee   the person who is receiving the invitation
+     * @param groupName the group for which the invite is being send
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Message> getInvitationAsync(String inviter, String invitee, String groupName) {
+        return DBExecutor.getInstance().supplyAsync(() -> getInvitation(inviter, invitee, groupName));
+    }
+
+    /**
+     * Asynchronous variant of {@link InvitationDao#getInvitation(String, String)}, run on the DBExecutor.
+     *
+     * @param invitee   the person who is receiving the invitation
+     * @param groupName the group for which the invite is being send
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Message> getInvitationAsync(String invitee, String groupName) {
+        return DBExecutor.getInstance().supplyAsync(() -> getInvitation(invitee, groupName));
+    }
+
+    /**
+     * Asynchronous variant of {@link InvitationDao#acceptDenyInvitation(String, String, boolean)}, run on the DBExecutor.
+     *
+     * @param invitee   The person who is invited
+     * @param groupName The group for which the invite is sent
+     * @param accepted  The flag denoting true for acceptance and false for denial
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> acceptDenyInvitationAsync(String invitee, String groupName, boolean accepted) {
+        return DBExecutor.getInstance().supplyAsync(() -> acceptDenyInvitation(invitee, groupName, accepted));
+    }
+
+    /**
+     * Asynchronous variant of {@link InvitationDao#approveRejectInvitation(String, String, boolean)}, run on the DBExecutor.
+     *
+     * @param invitee   The person who is invited
+     * @param groupName The group for which the invite is sent
+     * @param approved  The flag denoting true for approval and false for rejection
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> approveRejectInvitationAsync(String invitee, String groupName, boolean approved) {
+        return DBExecutor.getInstance().supplyAsync(() -> approveRejectInvitation(invitee, groupName, approved));
+    }
+
+    /**
+     * Asynchronous variant of {@link InvitationDao#createInvitation(String, String, String)}, run on the DBExecutor.
+     *
+     * @param inviter   the person who is the sender of the invitation
+     * @param invitee   the person who is receiving the invitation
+     * @param groupName the group for which the invite is being sent
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> createInvitationAsync(String inviter, String invitee, String groupName) {
+        return DBExecutor.getInstance().supplyAsync(() -> createInvitation(inviter, invitee, groupName));
+    }
+
+    /**
+     * Asynchronous variant of {@link InvitationDao#deleteInvitation(String, String, String)}, run on the DBExecutor.
+     *
+     * @param inviter   the person who is the sender of the invitation
+     * @param invitee   the person who is receiving the invitation
+     * @param groupName the group for which the invite is being sent
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> deleteInvitationAsync(String inviter, String invitee, String groupName) {
+        return DBExecutor.getInstance().supplyAsync(() -> deleteInvitation(inviter, invitee, groupName));
+    }
+
+    /**
+     * Asynchronous variant of {@link InvitationDao#getInvitationsForInvitee(String)}, run on the DBExecutor.
+     *
+     * @param invitee the person who is receiving the invitation
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Set<Message>> getInvitationsForInviteeAsync(String invitee) {
+        return DBExecutor.getInstance().supplyAsync(() -> getInvitationsForInvitee(invitee));
+    }
+
+    /**
+     * Asynchronous variant of {@link InvitationDao#getInvitationsForGroup(String)}, run on the DBExecutor.
+     *
+     * @param groupName the group for which the invitations need to be fetched
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Set<Message>> getInvitationsForGroupAsync(String groupName) {
+        return DBExecutor.getInstance().supplyAsync(() -> getInvitationsForGroup(groupName));
+    }
+
+    /**
+     * Asynchronous variant of {@link InvitationDao#setInvitationIsSentToInvitee(String, String)}, run on the DBExecutor.
+     *
+     * @param invitee   the person who is receiving the invitation
+     * @param groupName the group for which the invite is being sent
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> setInvitationIsSentToInviteeAsync(String invitee, String groupName) {
+        return DBExecutor.getInstance().supplyAsync(() -> setInvitationIsSentToInvitee(invitee, groupName));
+    }
+
+    /**
+     * Asynchronous variant of {@link InvitationDao#setInvitationIsSentToModerator(String, String)}, run on the DBExecutor.
+     *
+     * @param invitee   the person who is receiving the invitation
+     * @param groupName the group for which the invite is being sent
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> setInvitationIsSentToModeratorAsync(String invitee, String groupName) {
+        return DBExecutor.getInstance().supplyAsync(() -> setInvitationIsSentToModerator(invitee, groupName));
+    }
+
+    /**
+     * Asynchronous variant of {@link InvitationDao#getPendingInvitationsForInvitee(String)}, run on the DBExecutor.
+     *
+     * @param invitee the person who is receiving the invitation
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Set<Message>> getPendingInvitationsForInviteeAsync(String invitee) {
+        return DBExecutor.getInstance().supplyAsync(() -> getPendingInvitationsForInvitee(invitee));
+    }
+
+    /**
+     * Asynchronous variant of {@link InvitationDao#getPendingInvitationsForModerator(String)}, run on the DBExecutor.
+     *
+     * @param moderator the moderator of the groups
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Set<Message>> getPendingInvitationsForModeratorAsync(String moderator) {
+        return DBExecutor.getInstance().supplyAsync(() -> getPendingInvitationsForModerator(moderator));
+    }
+
+    /**
+     * Asynchronous variant of {@link InvitationDao#setInvitationsAreSentToInvitee(Collection<Message>)}, run on the DBExecutor.
+     *
+     * @param invitations the invitations that were delivered
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> setInvitationsAreSentToInviteeAsync(Collection<Message> invitations) {
+        return DBExecutor.getInstance().supplyAsync(() -> setInvitationsAreSentToInvitee(invitations));
+    }
+
+    /**
+     * Asynchronous variant of {@link InvitationDao#setInvitationsAreSentToModerator(Collection<Message>)}, run on the DBExecutor.
+     *
+     * @param invitations the invitations that were delivered
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> setInvitationsAreSentToModeratorAsync(Collection<Message> invitations) {
+        return DBExecutor.getInstance().supplyAsync(() -> setInvitationsAreSentToModerator(invitations));
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.services;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import edu.northeastern.ccs.im.db.DBExecutor;
+import edu.northeastern.ccs.im.models.User;
+
+/**
+ * Asynchronous variants of the methods of the {@link UserDao}. Every call is run on the bounded
+ * DBExecutor with its default timeout, so that the thread handling a client is not blocked on JDBC
+ * and the results can be composed before the response is enqueued.
+ */
+public interface AsyncUserDao extends UserDao {
+
+    /**
+     * Asynchronous variant of {@link UserDao#getAllUsers()}, run on the DBExecutor.
+     *
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Set<User>> getAllUsersAsync() {
+        return DBExecutor.getInstance().supplyAsync(() -> getAllUsers());
+    }
+
+    /**
+     * Asynchronous variant of {@link UserDao#getUserByUserNameAndPassword(String, String)}, run on the DBExecutor.
+     *
+     * @param username username of the User
+     * @param password password of the User
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<User> getUserByUserNameAndPasswordAsync(String username, String password) {
+        return DBExecutor.getInstance().supplyAsync(() -> getUserByUserNameAndPassword(username, password));
+    }
+
+    /**
+     * Asynchronous variant of {@link UserDao#getUserByUserName(String)}, run on the DBExecutor.
+     *
+     * @param username the username of the user used for logging in
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<User> getUserByUserNameAsync(String username) {
+        return DBExecutor.getInstance().supplyAsync(() -> getUserByUserName(username));
+    }
+
+    /**
+     * Asynchronous variant of {@link UserDao#createUser(User)}, run on the DBExecutor.
+     *
+     * @param u is the User object with all the required fields initialized
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> createUserAsync(User u) {
+        return DBExecutor.getInstance().supplyAsync(() -> createUser(u));
+    }
+
+    /**
+     * Asynchronous variant of {@link UserDao#updateUserAttributes(String, String, String)}, run on the DBExecutor.
+     *
+     * @param username       the username of the user
+     * @param attributeName  the attribute to be updated
+     * @param attributeValue the value of the attribute that is to be set
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> updateUserAttributesAsync(String username, String attributeName, String attributeValue) {
+        return DBExecutor.getInstance().supplyAsync(() -> updateUserAttributes(username, attributeName, attributeValue));
+    }
+
+    /**
+     * Asynchronous variant of {@link UserDao#deleteUser(User)}, run on the DBExecutor.
+     *
+     * @param u The user object, that needs to be deleted
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> deleteUserAsync(User u) {
+        return DBExecutor.getInstance().supplyAsync(() -> deleteUser(u));
+    }
+
+    /**
+     * Asynchronous variant of {@link UserDao#followUser(User, User)}, run on the DBExecutor.
+     *
+     * @param followee user who is the followee
+     * @param follower user who is the follower
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> followUserAsync(User followee, User follower) {
+        return DBExecutor.getInstance().supplyAsync(() -> followUser(followee, follower));
+    }
+
+    /**
+     * Asynchronous variant of {@link UserDao#unfollowUser(User, User)}, run on the DBExecutor.
+     *
+     * @param followee user who is the followee
+     * @param follower user who is the follower
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> unfollowUserAsync(User followee, User follower) {
+        return DBExecutor.getInstance().supplyAsync(() -> unfollowUser(followee, follower));
+    }
+
+    /**
+     * Asynchronous variant of {@link UserDao#getFollowers(User)}, run on the DBExecutor.
+     *
+     * @param followee user who is the followee
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Map<String, String>> getFollowersAsync(User followee) {
+        return DBExecutor.getInstance().supplyAsync(() -> getFollowers(followee));
+    }
+
+    /**
+     * Asynchronous variant of {@link UserDao#searchUser(String)}, run on the DBExecutor.
+     *
+     * @param searchString the search string
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Map<String, String>> searchUserAsync(String searchString) {
+        return DBExecutor.getInstance().supplyAsync(() -> searchUser(searchString));
+    }
+
+    /**
+     * Asynchronous variant of {@link UserDao#getFollowees(User)}, run on the DBExecutor.
+     *
+     * @param follower user who is the follower
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Map<String, String>> getFolloweesAsync(User follower) {
+        return DBExecutor.getInstance().supplyAsync(() -> getFollowees(follower));
+    }
+
+    /**
+     * Asynchronous variant of {@link UserDao#getOnlineUsers(User)}, run on the DBExecutor.
+     *
+     * @param follower user who is the follower
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Map<String, String>> getOnlineUsersAsync(User follower) {
+        return DBExecutor.getInstance().supplyAsync(() -> getOnlineUsers(follower));
+    }
+
+    /**
+     * Asynchronous variant of {@link UserDao#tapUser(String)}, run on the DBExecutor.
+     *
+     * @param userOfInterest the user of interest that needs to be tapped
+     * @return CompletableFuture    the result of the call, completed exceptionally on an SQLException
+     */
+    default CompletableFuture<Boolean> tapUserAsync(String userOfInterest) {
+        return DBExecutor.getInstance().supplyAsync(() -> tapUser(userOfInterest));
+    }
+}
@@ -8,7 +8,9 @@
 package edu.northeastern.ccs.im.services;
 
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import edu.northeastern.ccs.im.models.ConversationalMessage;
 
 public interface ConversationalMessageDAO {
@@ -26,6 +28,64 @@ public interface ConversationalMessageDAO {
     String insertConversationalMessage(String msgSource, String msgDestination, String msgText, boolean setFlag)
             throws SQLException;
 
+    /**
+     * Adding a record for a conversationalMessage to Database message table, with the given sequence number
+     *
+     * @param msgSource      Username of the source of the message
+     * @param msgDestination Username of the Destination of the message
+     * @param msgText        Text in the message
+     * @param setFlag        marks if this message has been sent to the user or queued
+     * @param sequence       the sequence number of the message among the messages of its destination,
+     *                       taken from {@link #nextSequence(String)}
+     * @return String        Unique Key for the particular message (msgSource + msgDestination + sqlTimestamp)
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    String insertConversationalMessage(String msgSource, String msgDestination, String msgText, boolean setFlag,
+                                       long sequence) throws SQLException;
+
+    /**
+     * Adding the records of the copies of a message sent to several destinations to Database message
+     * table, in one batch, none of them marked sent
+     *
+     * @param msgSource              Username of the source of the message
+     * @param msgText                Text in the message
+     * @param sequencesByDestination the sequence number of the copy of every destination, taken from
+     *                               {@link #nextSequence(String)}
+     * @return Map           the unique key of the copy of every destination
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    Map<String, String> insertConversationalMessages(String msgSource, String msgText,
+                                                     Map<String, Long> sequencesByDestination) throws SQLException;
+
+    /**
+     * Takes the next sequence number of the messages of a user.
+     *
+     * @param userName the user name of the destination of the messages
+     * @return long         the sequence number, greater than the one of every message stored for the user
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    long nextSequence(String userName) throws SQLException;
+
+    /**
+     * Hands out again the last sequence number taken for a user, whose message could not be stored.
+     *
+     * @param userName the user name of the destination of the messages
+     * @param sequence the sequence number taken for the message
+     */
+    void releaseSequence(String userName, long sequence);
+
+    /**
+     * Retrieving the messages of a user that come after the given sequence number, in order.
+     *
+     * @param userName      the user name for whom the messages are to be fetched
+     * @param afterSequence the sequence number of the last message the user has
+     * @param limit         the most messages to fetch
+     * @return List         the messages, ordered by their sequence number
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    List<ConversationalMessage> getMessagesAfterSequence(String userName, long afterSequence, int limit)
+            throws SQLException;
+
     /**
      * Retrieving a list of messages between a source and destination
      *
@@ -74,6 +134,64 @@ public interface ConversationalMessageDAO {
      */
     boolean insertGroupConversationalMessage(String uniqueGroupKey, String uniqueMessageKey) throws SQLException;
 
+    /**
+     * Insert an entry to the group_messages table, with the sequence number of the message in its group.
+     *
+     * @param uniqueGroupKey   the unique group key
+     * @param uniqueMessageKey the unique message key
+     * @param groupName        the name of the group the message was sent to
+     * @param groupSequence    the sequence number of the message among the messages of the group,
+     *                         taken from {@link #nextGroupSequence(String)}
+     * @return boolean          true if the message was inserted successfully else return false
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    boolean insertGroupConversationalMessage(String uniqueGroupKey, String uniqueMessageKey, String groupName,
+                                             long groupSequence) throws SQLException;
+
+    /**
+     * Insert the entries of the copies of a group message to the group_messages table, in one batch.
+     *
+     * @param uniqueGroupKey    the unique group key
+     * @param uniqueMessageKeys the unique keys of the copies of the message
+     * @param groupName         the name of the group the message was sent to
+     * @param groupSequence     the sequence number of the message among the messages of the group
+     * @return int          the number of entries inserted
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    int insertGroupConversationalMessages(String uniqueGroupKey, Collection<String> uniqueMessageKeys,
+                                          String groupName, long groupSequence) throws SQLException;
+
+    /**
+     * Takes the next sequence number of the messages of a group.
+     *
+     * @param groupName the name of the group the messages are sent to
+     * @return long         the sequence number, greater than the one of every message stored for the group
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    long nextGroupSequence(String groupName) throws SQLException;
+
+    /**
+     * Hands out again the last sequence number taken for a group, whose message could not be stored.
+     *
+     * @param groupName the name of the group the messages are sent to
+     * @param sequence  the sequence number taken for the message
+     */
+    void releaseGroupSequence(String groupName, long sequence);
+
+    /**
+     * Retrieving the messages of a group that were delivered to a user, with a group sequence number
+     * in the given range, in order.
+     *
+     * @param userName     the user name for whom the messages are to be fetched
+     * @param groupName    the name of the group the messages were sent to
+     * @param fromSequence the first group sequence number of the range
+     * @param toSequence   the last group sequence number of the range
+     * @return List         the messages, ordered by their group sequence number
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    List<ConversationalMessage> getGroupMessagesInRange(String userName, String groupName, long fromSequence,
+                                                        long toSequence) throws SQLException;
+
 
     /**
      * Delete group message and the mappings from the group message table and all the messages from the .
@@ -106,4 +224,13 @@ public interface ConversationalMessageDAO {
      * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
      */
     boolean markMessageAsSent(String msgUniqueKey) throws SQLException;
+
+    /**
+     * Marks the messages with the provided uniqueKeys as sent, in a single batch.
+     *
+     * @param msgUniqueKeys the unique keys of the messages to be marked sent
+     * @return int             the number of messages that were marked sent
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    int markMessagesAsSent(Collection<String> msgUniqueKeys) throws SQLException;
 }
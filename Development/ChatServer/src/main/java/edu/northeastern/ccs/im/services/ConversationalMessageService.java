@@ -11,10 +11,17 @@ import java.io.IOException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import edu.northeastern.ccs.im.ChatLogger;
 import edu.northeastern.ccs.im.db.DBConnection;
@@ -23,25 +30,38 @@ import edu.northeastern.ccs.im.db.IDBConnection;
 import edu.northeastern.ccs.im.models.ConversationalMessage;
 
 /**
- * Class for services related to CoversationalMessages
+ * Class for services related to CoversationalMessages. Every call opens and closes its own
+ * statement, as the service is called from the login, fan-out and delivery threads at once.
  *
  * @author rahul
  */
-public class ConversationalMessageService implements ConversationalMessageDAO {
+public class ConversationalMessageService implements AsyncConversationalMessageDAO {
 
 
     private IDBConnection conn;
-    private PreparedStatement pstmt = null;
     private DBUtils utils;
-    private ResultSet result;
     private Properties conversationalMessageProperties;
 
+    /**
+     * The last sequence number taken for every user that was sent a message, loaded from the index
+     * the first time, so that numbering a message does not cost a query.
+     */
+    private final Map<String, AtomicLong> lastSequences = new ConcurrentHashMap<>();
+
+    /**
+     * The last sequence number taken for every group that was sent a message, loaded the same way.
+     */
+    private final Map<String, AtomicLong> lastGroupSequences = new ConcurrentHashMap<>();
+
     private static ConversationalMessageService conversationalMessageService;
     private static final String DB_COL_MSG_SRC = "msg_src";
     private static final String DB_COL_MSG_DEST = "msg_dest";
     private static final String DB_COL_MSG_TEXT = "msg_text";
     private static final String DB_COL_MSG_TIMESTAMP = "msg_timestamp";
     private static final String DB_COL_MSG_UNIQUEKEY = "msg_uniquekey";
+    private static final String DB_COL_MSG_SEQ = "msg_seq";
+    private static final String DB_COL_LAST_SEQ = "last_seq";
+    private static final String GRP_COL_GRP_SEQ = "group_seq";
     private static final String GRP_COL_MSG_KEY = "message_unique_key";
     private static final String GRP_COL_GRP_KEY = "group_unique_key";
 
@@ -54,7 +74,6 @@ public class ConversationalMessageService implements ConversationalMessageDAO {
     private ConversationalMessageService() throws SQLException, IOException {
         conn = new DBConnection();
         utils = new DBUtils();
-        result = null;
         conversationalMessageProperties = conn.getQueryProperties();
     }
 
@@ -70,6 +89,16 @@ public class ConversationalMessageService implements ConversationalMessageDAO {
         return conversationalMessageService;
     }
 
+    /**
+     * Prepares the statements of this service, before the first client needs them.
+     *
+     * @return int          the number of statements prepared
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    public int warmUp() throws SQLException {
+        return conn.warmUp();
+    }
+
     /**
      * Adding a record for a conversationalMessage to Database message table
      *
@@ -83,25 +112,81 @@ public class ConversationalMessageService implements ConversationalMessageDAO {
     @Override
     public String insertConversationalMessage(String msgSource, String msgDestination, String msgText, boolean setFlag)
             throws SQLException {
+        try (SequenceLock lock = SequenceLock.forUsers(this, Collections.singleton(msgDestination))) {
+            String uniqueKey = insertConversationalMessage(msgSource, msgDestination, msgText, setFlag,
+                    lock.next(msgDestination));
+            lock.commit();
+            return uniqueKey;
+        }
+    }
+
+    /**
+     * Adding a record for a conversationalMessage to Database message table, with the given sequence number
+     *
+     * @param msgSource      Username of the source of the message
+     * @param msgDestination Username of the Destination of the message
+     * @param msgText        Text in the message
+     * @param setFlag        Marks if this message has been sent to the user or queued
+     * @param sequence       the sequence number of the message among the messages of its destination
+     * @return String        UniqueKey for the particular message (msgSource + msgDestination + sqlTimestamp)
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    @Override
+    public String insertConversationalMessage(String msgSource, String msgDestination, String msgText, boolean setFlag,
+                                              long sequence) throws SQLException {
         final String CREATE_MESSAGE = conversationalMessageProperties.getProperty("CREATE_MESSAGE");
-        pstmt = conn.getPreparedStatement(CREATE_MESSAGE);
         long time = System.currentTimeMillis();
         Timestamp sqlTimestamp = new Timestamp(time);
         String uniqueKey = msgSource + msgDestination + sqlTimestamp;
-        pstmt = utils.setPreparedStatementArgs(
-                pstmt,
-                msgSource,
-                msgDestination,
-                msgText,
-                sqlTimestamp,
-                uniqueKey,
-                setFlag
-        );
-        pstmt.executeUpdate();
-        pstmt.close();
+        try (PreparedStatement pstmt = conn.getPreparedStatement(CREATE_MESSAGE)) {
+            utils.setPreparedStatementArgs(
+                    pstmt,
+                    msgSource,
+                    msgDestination,
+                    msgText,
+                    sqlTimestamp,
+                    uniqueKey,
+                    setFlag,
+                    sequence
+            );
+            pstmt.executeUpdate();
+        }
         return uniqueKey;
     }
 
+    /**
+     * Adding the records of the copies of a message sent to several destinations to Database message
+     * table, in one batch, none of them marked sent. The copies are stored with the same timestamp.
+     *
+     * @param msgSource              Username of the source of the message
+     * @param msgText                Text in the message
+     * @param sequencesByDestination the sequence number of the copy of every destination
+     * @return Map           the unique key of the copy of every destination
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    @Override
+    public Map<String, String> insertConversationalMessages(String msgSource, String msgText,
+                                                            Map<String, Long> sequencesByDestination)
+            throws SQLException {
+        Map<String, String> uniqueKeys = new HashMap<>();
+        if (sequencesByDestination.isEmpty()) {
+            return uniqueKeys;
+        }
+        final String CREATE_MESSAGE = conversationalMessageProperties.getProperty("CREATE_MESSAGE");
+        Timestamp sqlTimestamp = new Timestamp(System.currentTimeMillis());
+        try (PreparedStatement pstmt = conn.getPreparedStatement(CREATE_MESSAGE)) {
+            for (Map.Entry<String, Long> destination : sequencesByDestination.entrySet()) {
+                String uniqueKey = msgSource + destination.getKey() + sqlTimestamp;
+                utils.setPreparedStatementArgs(pstmt, msgSource, destination.getKey(), msgText,
+                        sqlTimestamp, uniqueKey, false, destination.getValue());
+                pstmt.addBatch();
+                uniqueKeys.put(destination.getKey(), uniqueKey);
+            }
+            pstmt.executeBatch();
+            return uniqueKeys;
+        }
+    }
+
     /**
      * Retrieving a list of messages between a source and destination
      *
@@ -114,9 +199,10 @@ public class ConversationalMessageService implements ConversationalMessageDAO {
             throws SQLException {
         final String GET_MESSAGES_BETWEEN_SOURCE_DESTINATION
                 = conversationalMessageProperties.getProperty("GET_MESSAGES_BETWEEN_SOURCE_DESTINATION");
-        pstmt = conn.getPreparedStatement(GET_MESSAGES_BETWEEN_SOURCE_DESTINATION);
-        pstmt = utils.setPreparedStatementArgs(pstmt, msgSource, msgDestination);
-        return getMessages(pstmt);
+        try (PreparedStatement pstmt = conn.getPreparedStatement(GET_MESSAGES_BETWEEN_SOURCE_DESTINATION)) {
+            utils.setPreparedStatementArgs(pstmt, msgSource, msgDestination);
+            return getMessages(pstmt);
+        }
     }
 
 
@@ -130,9 +216,10 @@ public class ConversationalMessageService implements ConversationalMessageDAO {
     @Override
     public List<ConversationalMessage> getMessagebySource(String msgSrc) throws SQLException {
         final String GET_MESSAGES_BY_SOURCE = conversationalMessageProperties.getProperty("GET_MESSAGES_BY_SOURCE");
-        pstmt = conn.getPreparedStatement(GET_MESSAGES_BY_SOURCE);
-        pstmt = utils.setPreparedStatementArgs(pstmt, msgSrc);
-        return getMessages(pstmt);
+        try (PreparedStatement pstmt = conn.getPreparedStatement(GET_MESSAGES_BY_SOURCE)) {
+            utils.setPreparedStatementArgs(pstmt, msgSrc);
+            return getMessages(pstmt);
+        }
     }
 
     /**
@@ -146,9 +233,10 @@ public class ConversationalMessageService implements ConversationalMessageDAO {
     public List<ConversationalMessage> getMessagebyDestination(String msgDest) throws SQLException {
         final String GET_MESSAGES_BY_DESTINATION
                 = conversationalMessageProperties.getProperty("GET_MESSAGES_BY_DESTINATION");
-        pstmt = conn.getPreparedStatement(GET_MESSAGES_BY_DESTINATION);
-        pstmt = utils.setPreparedStatementArgs(pstmt, msgDest);
-        return getMessages(pstmt);
+        try (PreparedStatement pstmt = conn.getPreparedStatement(GET_MESSAGES_BY_DESTINATION)) {
+            utils.setPreparedStatementArgs(pstmt, msgDest);
+            return getMessages(pstmt);
+        }
     }
 
     /**
@@ -161,16 +249,17 @@ public class ConversationalMessageService implements ConversationalMessageDAO {
     @Override
     public boolean deleteMessage(String msgUniqueKey) throws SQLException {
         final String UPDATE_DELETE_FLAG = conversationalMessageProperties.getProperty("UPDATE_DELETE_FLAG");
-        pstmt = conn.getPreparedStatement(UPDATE_DELETE_FLAG);
-        pstmt = utils.setPreparedStatementArgs(pstmt, msgUniqueKey);
         int res;
-        try {
+        try (PreparedStatement pstmt = conn.getPreparedStatement(UPDATE_DELETE_FLAG)) {
+            utils.setPreparedStatementArgs(pstmt, msgUniqueKey);
             res = pstmt.executeUpdate();
         } catch (Exception e) {
             ChatLogger.error("Exception occurred - ConversationalMessageService.java - deleteMessage() : " + ChatLogger.getTrace(e));
             throw new SQLException(e);
         }
-        pstmt.close();
+        if (res > 0) {
+            InboxService.getInstance().messageDeleted(msgUniqueKey);
+        }
         return (res > 0);
     }
 
@@ -178,22 +267,22 @@ public class ConversationalMessageService implements ConversationalMessageDAO {
     /**
      * This is a helper methods to getMessages based on the preparedStatement provided
      *
-     * @param pstmt - the prepared statement to be executed
+     * @param pstmt - the prepared statement to be executed, closed by the caller
      * @return the list of messages which satisfy the given condition in the preparedstatement
      * @throws SQLException - thrown by database query and calls.
      */
     private List<ConversationalMessage> getMessages(PreparedStatement pstmt) throws SQLException {
         List<ConversationalMessage> cm = new ArrayList<>();
-        result = pstmt.executeQuery();
-        while (result.next()) {
-            String msgsrc = result.getString(DB_COL_MSG_SRC);
-            String msgdest = result.getString(DB_COL_MSG_DEST);
-            String msgtext = result.getString(DB_COL_MSG_TEXT);
-            Timestamp msgtimestamp = result.getTimestamp(DB_COL_MSG_TIMESTAMP);
-            String msguniquekey = result.getString(DB_COL_MSG_UNIQUEKEY);
-            cm.add(new ConversationalMessage(msgsrc, msgdest, msgtext, msgtimestamp, msguniquekey));
+        try (ResultSet result = pstmt.executeQuery()) {
+            while (result.next()) {
+                String msgsrc = result.getString(DB_COL_MSG_SRC);
+                String msgdest = result.getString(DB_COL_MSG_DEST);
+                String msgtext = result.getString(DB_COL_MSG_TEXT);
+                Timestamp msgtimestamp = result.getTimestamp(DB_COL_MSG_TIMESTAMP);
+                String msguniquekey = result.getString(DB_COL_MSG_UNIQUEKEY);
+                cm.add(new ConversationalMessage(msgsrc, msgdest, msgtext, msgtimestamp, msguniquekey));
+            }
         }
-        pstmt.close();
         return cm;
     }
 
@@ -205,14 +294,15 @@ public class ConversationalMessageService implements ConversationalMessageDAO {
      */
     public String getSender(String msgUniqueKey) throws SQLException {
         final String GET_SENDER = conversationalMessageProperties.getProperty("GET_SENDER");
-        pstmt = conn.getPreparedStatement(GET_SENDER);
-        pstmt = utils.setPreparedStatementArgs(pstmt, msgUniqueKey);
         String msgSrc = null;
-        result = pstmt.executeQuery();
-        if (result.first()) {
-            msgSrc = result.getString(DB_COL_MSG_SRC);
+        try (PreparedStatement pstmt = conn.getPreparedStatement(GET_SENDER)) {
+            utils.setPreparedStatementArgs(pstmt, msgUniqueKey);
+            try (ResultSet result = pstmt.executeQuery()) {
+                if (result.first()) {
+                    msgSrc = result.getString(DB_COL_MSG_SRC);
+                }
+            }
         }
-        pstmt.close();
         return msgSrc;
     }
 
@@ -227,15 +317,63 @@ public class ConversationalMessageService implements ConversationalMessageDAO {
     @Override
     public boolean insertGroupConversationalMessage(String uniqueGroupKey, String uniqueMessageKey)
             throws SQLException {
+        return insertGroupConversationalMessage(uniqueGroupKey, uniqueMessageKey, null, 0);
+    }
+
+    /**
+     * Insert an entry to the group_messages table, with the sequence number of the message in its group.
+     *
+     * @param uniqueGroupKey   the unique group key
+     * @param uniqueMessageKey the unique message key
+     * @param groupName        the name of the group the message was sent to
+     * @param groupSequence    the sequence number of the message among the messages of the group
+     * @return boolean         true, if the message was inserted successfully else return false
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    @Override
+    public boolean insertGroupConversationalMessage(String uniqueGroupKey, String uniqueMessageKey, String groupName,
+                                                    long groupSequence) throws SQLException {
         final String ADD_MAPPING = conversationalMessageProperties.getProperty("ADD_MAPPING");
-        pstmt = conn.getPreparedStatement(ADD_MAPPING);
-        pstmt = utils.setPreparedStatementArgs(pstmt, uniqueGroupKey, uniqueMessageKey);
-        int res = pstmt.executeUpdate();
-        pstmt.close();
-        return (res > 0);
+        try (PreparedStatement pstmt = conn.getPreparedStatement(ADD_MAPPING)) {
+            utils.setPreparedStatementArgs(pstmt, uniqueGroupKey, uniqueMessageKey, groupName, groupSequence);
+            return (pstmt.executeUpdate() > 0);
+        }
     }
 
 
+    /**
+     * Insert the entries of the copies of a group message to the group_messages table, in one batch.
+     *
+     * @param uniqueGroupKey    the unique group key
+     * @param uniqueMessageKeys the unique keys of the copies of the message
+     * @param groupName         the name of the group the message was sent to
+     * @param groupSequence     the sequence number of the message among the messages of the group
+     * @return int          the number of entries inserted
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    @Override
+    public int insertGroupConversationalMessages(String uniqueGroupKey, Collection<String> uniqueMessageKeys,
+                                                 String groupName, long groupSequence) throws SQLException {
+        if (uniqueMessageKeys.isEmpty()) {
+            return 0;
+        }
+        final String ADD_MAPPING = conversationalMessageProperties.getProperty("ADD_MAPPING");
+        try (PreparedStatement pstmt = conn.getPreparedStatement(ADD_MAPPING)) {
+            for (String uniqueMessageKey : uniqueMessageKeys) {
+                utils.setPreparedStatementArgs(pstmt, uniqueGroupKey, uniqueMessageKey, groupName, groupSequence);
+                pstmt.addBatch();
+            }
+            int inserted = 0;
+            // a batch of inserts rewritten into one statement does not tell the count of every row
+            for (int updated : pstmt.executeBatch()) {
+                if (updated > 0 || updated == Statement.SUCCESS_NO_INFO) {
+                    inserted++;
+                }
+            }
+            return inserted;
+        }
+    }
+
     /**
      * Delete group message and the mappings from the group message table and all the messages from the .
      *
@@ -247,15 +385,16 @@ public class ConversationalMessageService implements ConversationalMessageDAO {
     public boolean deleteGroupMessage(String grpMsgUniqueKey) throws SQLException {
         // fetch all the message keys for this group key
         final String FETCH_MESSAGE_KEYS = conversationalMessageProperties.getProperty("FETCH_MESSAGE_KEYS");
-        pstmt = conn.getPreparedStatement(FETCH_MESSAGE_KEYS);
-        pstmt = utils.setPreparedStatementArgs(pstmt, grpMsgUniqueKey);
         List<String> cm = new ArrayList<>();
-        result = pstmt.executeQuery();
-        while (result.next()) {
-            String msguniquekey = result.getString(GRP_COL_MSG_KEY);
-            cm.add(msguniquekey);
+        try (PreparedStatement pstmt = conn.getPreparedStatement(FETCH_MESSAGE_KEYS)) {
+            utils.setPreparedStatementArgs(pstmt, grpMsgUniqueKey);
+            try (ResultSet result = pstmt.executeQuery()) {
+                while (result.next()) {
+                    String msguniquekey = result.getString(GRP_COL_MSG_KEY);
+                    cm.add(msguniquekey);
+                }
+            }
         }
-        pstmt.close();
         // for all keys fetched above delete the message in messages table
         for (String key : cm) {
             if (!deleteMessage(key)) return false;
@@ -264,7 +403,9 @@ public class ConversationalMessageService implements ConversationalMessageDAO {
     }
 
     /**
-     * Gets all the messages for the user.
+     * Gets all the messages for the user. Unsent messages come in the order of the user's sequence
+     * numbers. Past messages come with the private messages first, in the order they were sent, and
+     * then the messages of every group, in the order of the group's sequence numbers.
      *
      * @param userName the user name for whom the messages are to be fetched
      * @param flag     for deciding whether this function should retrieve all unsent messages or all past messages
@@ -281,26 +422,201 @@ public class ConversationalMessageService implements ConversationalMessageDAO {
             GET_MESSAGES = conversationalMessageProperties.getProperty("GET_DELETED_MESSAGES");
         else
             GET_MESSAGES = conversationalMessageProperties.getProperty("GET_ALL_MESSAGES");
-        pstmt = conn.getPreparedStatement(GET_MESSAGES);
-        if (flag)
-            pstmt = utils.setPreparedStatementArgs(pstmt, userName);
-        else
-            pstmt = utils.setPreparedStatementArgs(pstmt, userName, userName);
         List<ConversationalMessage> msgs = new ArrayList<>();
-        result = pstmt.executeQuery();
-        while (result.next()) {
-            String msgSrc = result.getString(DB_COL_MSG_SRC);
-            String msgDest = result.getString(DB_COL_MSG_DEST);
-            String msgText = result.getString(DB_COL_MSG_TEXT);
-            String msgKey = result.getString(DB_COL_MSG_UNIQUEKEY);
-            String grpMsgKey = result.getString(GRP_COL_GRP_KEY);
-            ConversationalMessage msg = new ConversationalMessage(msgSrc, msgDest, msgText, null, msgKey);
-            if (grpMsgKey != null) {
-                msg.setGroupUniqueKey(grpMsgKey);
+        try (PreparedStatement pstmt = conn.getPreparedStatement(GET_MESSAGES)) {
+            if (flag)
+                utils.setPreparedStatementArgs(pstmt, userName);
+            else
+                utils.setPreparedStatementArgs(pstmt, userName, userName);
+            try (ResultSet result = pstmt.executeQuery()) {
+                while (result.next()) {
+                    String msgSrc = result.getString(DB_COL_MSG_SRC);
+                    String msgDest = result.getString(DB_COL_MSG_DEST);
+                    String msgText = result.getString(DB_COL_MSG_TEXT);
+                    String msgKey = result.getString(DB_COL_MSG_UNIQUEKEY);
+                    String grpMsgKey = result.getString(GRP_COL_GRP_KEY);
+                    ConversationalMessage msg = new ConversationalMessage(msgSrc, msgDest, msgText, null, msgKey);
+                    if (grpMsgKey != null) {
+                        msg.setGroupUniqueKey(grpMsgKey);
+                    }
+                    msg.setSequence(result.getLong(DB_COL_MSG_SEQ));
+                    msg.setGroupSequence(result.getLong(GRP_COL_GRP_SEQ));
+                    msgs.add(msg);
+                }
+            }
+        }
+        return msgs;
+    }
+
+    /**
+     * Takes the next sequence number of the messages of a user. The numbers are handed out in
+     * memory, the server being the only one to store messages, starting after the last number
+     * stored for the user. Senders take it under the {@link SequenceLock} of the user, so that the
+     * messages of the user are stored in the order of their numbers.
+     *
+     * @param userName the user name of the destination of the messages
+     * @return long         the sequence number, greater than the one of every message stored for the user
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    @Override
+    public long nextSequence(String userName) throws SQLException {
+        return nextSequence(lastSequences, "GET_LAST_SEQ", userName);
+    }
+
+    /**
+     * Hands out again the last sequence number taken for a user, whose message could not be stored.
+     * The sender still holds the {@link SequenceLock} of the user, so no other number was taken since.
+     *
+     * @param userName the user name of the destination of the messages
+     * @param sequence the sequence number taken for the message
+     */
+    @Override
+    public void releaseSequence(String userName, long sequence) {
+        releaseSequence(lastSequences, userName, sequence);
+    }
+
+    /**
+     * Takes the next sequence number of the messages of a group, handed out in memory the same way
+     * as the ones of the users, and taken under the {@link SequenceLock} of the group.
+     *
+     * @param groupName the name of the group the messages are sent to
+     * @return long         the sequence number, greater than the one of every message stored for the group
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    @Override
+    public long nextGroupSequence(String groupName) throws SQLException {
+        return nextSequence(lastGroupSequences, "GET_LAST_GROUP_SEQ", groupName);
+    }
+
+    /**
+     * Hands out again the last sequence number taken for a group, whose message could not be stored.
+     * The sender still holds the {@link SequenceLock} of the group, so no other number was taken since.
+     *
+     * @param groupName the name of the group the messages are sent to
+     * @param sequence  the sequence number taken for the message
+     */
+    @Override
+    public void releaseGroupSequence(String groupName, long sequence) {
+        releaseSequence(lastGroupSequences, groupName, sequence);
+    }
+
+    /**
+     * @param lastSequencesByName the last sequence numbers taken, by user or group name
+     * @param name                the user or group name
+     * @param sequence            the sequence number to hand out again, if it is still the last one taken
+     */
+    private static void releaseSequence(Map<String, AtomicLong> lastSequencesByName, String name, long sequence) {
+        AtomicLong lastSequence = lastSequencesByName.get(name);
+        if (lastSequence != null) {
+            lastSequence.compareAndSet(sequence, sequence - 1);
+        }
+    }
+
+    /**
+     * @param lastSequencesByName the last sequence numbers taken, by user or group name
+     * @param lastSequenceQuery   the name of the query reading the last sequence number stored for a name
+     * @param name                the user or group name
+     * @return long         the next sequence number of the name
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    private long nextSequence(Map<String, AtomicLong> lastSequencesByName, String lastSequenceQuery, String name)
+            throws SQLException {
+        AtomicLong lastSequence = lastSequencesByName.get(name);
+        if (lastSequence == null) {
+            AtomicLong loaded = new AtomicLong(getLastSequence(lastSequenceQuery, name));
+            lastSequence = lastSequencesByName.putIfAbsent(name, loaded);
+            if (lastSequence == null) {
+                lastSequence = loaded;
+            }
+        }
+        return lastSequence.incrementAndGet();
+    }
+
+    /**
+     * @param lastSequenceQuery the name of the query reading the last sequence number stored for a name
+     * @param name              the user or group name
+     * @return long         the last sequence number stored for the name, or 0 if there is none
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    private long getLastSequence(String lastSequenceQuery, String name) throws SQLException {
+        final String GET_LAST_SEQ = conversationalMessageProperties.getProperty(lastSequenceQuery);
+        long lastSequence = 0;
+        try (PreparedStatement pstmt = conn.getPreparedStatement(GET_LAST_SEQ)) {
+            utils.setPreparedStatementArgs(pstmt, name);
+            try (ResultSet result = pstmt.executeQuery()) {
+                if (result.next()) {
+                    lastSequence = result.getLong(DB_COL_LAST_SEQ);
+                }
+            }
+        }
+        return lastSequence;
+    }
+
+    /**
+     * Retrieving the messages of a user that come after the given sequence number, in order.
+     *
+     * @param userName      the user name for whom the messages are to be fetched
+     * @param afterSequence the sequence number of the last message the user has
+     * @param limit         the most messages to fetch
+     * @return List         the messages, ordered by their sequence number
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    @Override
+    public List<ConversationalMessage> getMessagesAfterSequence(String userName, long afterSequence, int limit)
+            throws SQLException {
+        final String GET_MESSAGES_AFTER_SEQ = conversationalMessageProperties.getProperty("GET_MESSAGES_AFTER_SEQ");
+        List<ConversationalMessage> msgs = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.getPreparedStatement(GET_MESSAGES_AFTER_SEQ)) {
+            utils.setPreparedStatementArgs(pstmt, userName, afterSequence, limit);
+            try (ResultSet result = pstmt.executeQuery()) {
+                while (result.next()) {
+                    ConversationalMessage msg = new ConversationalMessage(result.getString(DB_COL_MSG_SRC),
+                            result.getString(DB_COL_MSG_DEST), result.getString(DB_COL_MSG_TEXT),
+                            result.getTimestamp(DB_COL_MSG_TIMESTAMP), result.getString(DB_COL_MSG_UNIQUEKEY));
+                    String grpMsgKey = result.getString(GRP_COL_GRP_KEY);
+                    if (grpMsgKey != null) {
+                        msg.setGroupUniqueKey(grpMsgKey);
+                    }
+                    msg.setSequence(result.getLong(DB_COL_MSG_SEQ));
+                    msg.setGroupSequence(result.getLong(GRP_COL_GRP_SEQ));
+                    msgs.add(msg);
+                }
+            }
+        }
+        return msgs;
+    }
+
+    /**
+     * Retrieving the messages of a group that were delivered to a user, with a group sequence number
+     * in the given range, in order.
+     *
+     * @param userName     the user name for whom the messages are to be fetched
+     * @param groupName    the name of the group the messages were sent to
+     * @param fromSequence the first group sequence number of the range
+     * @param toSequence   the last group sequence number of the range
+     * @return List         the messages, ordered by their group sequence number
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    @Override
+    public List<ConversationalMessage> getGroupMessagesInRange(String userName, String groupName, long fromSequence,
+                                                               long toSequence) throws SQLException {
+        final String GET_GROUP_MESSAGES_IN_RANGE = conversationalMessageProperties
+                .getProperty("GET_GROUP_MESSAGES_IN_RANGE");
+        List<ConversationalMessage> msgs = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.getPreparedStatement(GET_GROUP_MESSAGES_IN_RANGE)) {
+            utils.setPreparedStatementArgs(pstmt, userName, groupName, fromSequence, toSequence);
+            try (ResultSet result = pstmt.executeQuery()) {
+                while (result.next()) {
+                    ConversationalMessage msg = new ConversationalMessage(result.getString(DB_COL_MSG_SRC),
+                            result.getString(DB_COL_MSG_DEST), result.getString(DB_COL_MSG_TEXT),
+                            result.getTimestamp(DB_COL_MSG_TIMESTAMP), result.getString(DB_COL_MSG_UNIQUEKEY));
+                    msg.setGroupUniqueKey(result.getString(GRP_COL_GRP_KEY));
+                    msg.setSequence(result.getLong(DB_COL_MSG_SEQ));
+                    msg.setGroupSequence(result.getLong(GRP_COL_GRP_SEQ));
+                    msgs.add(msg);
+                }
             }
-            msgs.add(msg);
         }
-        pstmt.close();
         return msgs;
     }
 
@@ -314,11 +630,38 @@ public class ConversationalMessageService implements ConversationalMessageDAO {
     @Override
     public boolean markMessageAsSent(String msgUniqueKey) throws SQLException {
         final String MARK_MSG_AS_SENT = conversationalMessageProperties.getProperty("MARK_MSG_AS_SENT");
-        pstmt = conn.getPreparedStatement(MARK_MSG_AS_SENT);
-        pstmt = utils.setPreparedStatementArgs(pstmt, msgUniqueKey);
-        int res = pstmt.executeUpdate();
-        pstmt.close();
-        return (res > 0);
+        try (PreparedStatement pstmt = conn.getPreparedStatement(MARK_MSG_AS_SENT)) {
+            utils.setPreparedStatementArgs(pstmt, msgUniqueKey);
+            return (pstmt.executeUpdate() > 0);
+        }
+    }
+
+    /**
+     * Marks the messages with the provided uniqueKeys as sent, in a single batch.
+     *
+     * @param msgUniqueKeys the unique keys of the messages to be marked sent
+     * @return int             the number of messages that were marked sent
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    @Override
+    public int markMessagesAsSent(Collection<String> msgUniqueKeys) throws SQLException {
+        if (msgUniqueKeys.isEmpty()) {
+            return 0;
+        }
+        final String MARK_MSG_AS_SENT = conversationalMessageProperties.getProperty("MARK_MSG_AS_SENT");
+        try (PreparedStatement pstmt = conn.getPreparedStatement(MARK_MSG_AS_SENT)) {
+            for (String msgUniqueKey : msgUniqueKeys) {
+                utils.setPreparedStatementArgs(pstmt, msgUniqueKey);
+                pstmt.addBatch();
+            }
+            int marked = 0;
+            for (int updated : pstmt.executeBatch()) {
+                if (updated > 0) {
+                    marked++;
+                }
+            }
+            return marked;
+        }
     }
 
 }
@@ -31,13 +31,12 @@ import edu.northeastern.ccs.im.models.User;
  *
  * @author - Team-201 - Ketan Kale
  */
-public class GroupService implements GroupDao {
+public class GroupService implements AsyncGroupDao {
     private IDBConnection conn;
-    private PreparedStatement pstmt = null;
     private DBUtils utils;
-    private ResultSet result;
     private static GroupService groupServiceInstance;
     private Properties groupProperties;
+    private SingleFlight singleFlight;
 
     private static final String USER_NAME = "username";
     private static final String FIRST_NAME = "first_name";
@@ -59,6 +58,7 @@ public class GroupService implements GroupDao {
         conn = new DBConnection();
         utils = new DBUtils();
         groupProperties = conn.getQueryProperties();
+        singleFlight = new SingleFlight();
     }
 
     /**
@@ -76,7 +76,18 @@ public class GroupService implements GroupDao {
     }
 
     /**
-     * Fetches the group from the database.
+     * Prepares the statements of this service, before the first client needs them.
+     *
+     * @return int          the number of statements prepared
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    public int warmUp() throws SQLException {
+        return conn.warmUp();
+    }
+
+    /**
+     * Fetches the group from the database. Identical concurrent reads share one load, and each caller
+     * gets its own copy of the loaded group, so that no caller sees the changes of another.
      *
      * @param groupName the group name
      * @return Group        the group object to be fetched
@@ -84,28 +95,40 @@ public class GroupService implements GroupDao {
      */
     @Override
     public Group getGroup(String groupName) throws SQLException {
+        Group group = singleFlight.execute(SingleFlight.key("GET_GROUP", groupName), () -> loadGroup(groupName));
+        return (group == null) ? null : group.copy();
+    }
+
+    /**
+     * Loads the group and, recursively, its member groups from the database.
+     *
+     * @param groupName the group name
+     * @return Group        the group object to be fetched
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    private Group loadGroup(String groupName) throws SQLException {
         Group g = null;
         final String GET_GROUP = groupProperties.getProperty("GET_GROUP");
-        pstmt = conn.getPreparedStatement(GET_GROUP);
-        pstmt = utils.setPreparedStatementArgs(pstmt, groupName);
-        result = pstmt.executeQuery();
-        if (result.first()) {
-            g = new Group();
-            String gName = result.getString(GROUP_NAME);
-            String modName = result.getString(MODERATOR_NAME);
-            g.setGroupName(gName);
-            g.setModeratorName(modName);
-            Set<User> users = getMemberUsers(groupName);
-            Set<Group> groups = new HashSet<>();
-            g.setMemberUsers(users);
-            Set<String> memberGroupNames = getMemberGroups(groupName);
-            for (String group : memberGroupNames) {
-                Group temp = getGroup(group);
-                groups.add(temp);
+        try (PreparedStatement pstmt = conn.getPreparedStatement(GET_GROUP)) {
+            utils.setPreparedStatementArgs(pstmt, groupName);
+            try (ResultSet result = pstmt.executeQuery()) {
+                if (!result.first()) {
+                    return null;
+                }
+                g = new Group();
+                g.setGroupName(result.getString(GROUP_NAME));
+                g.setModeratorName(result.getString(MODERATOR_NAME));
             }
-            g.setMemberGroups(groups);
         }
-        pstmt.close();
+        Set<User> users = getMemberUsers(groupName);
+        Set<Group> groups = new HashSet<>();
+        g.setMemberUsers(users);
+        Set<String> memberGroupNames = getMemberGroups(groupName);
+        for (String group : memberGroupNames) {
+            Group temp = loadGroup(group);
+            groups.add(temp);
+        }
+        g.setMemberGroups(groups);
         return g;
     }
 
@@ -120,11 +143,11 @@ public class GroupService implements GroupDao {
     @Override
     public boolean createGroup(String groupName, String modName) throws SQLException {
         final String CREATE_GROUP = groupProperties.getProperty("CREATE_GROUP");
-        pstmt = conn.getPreparedStatement(CREATE_GROUP);
-        pstmt = utils.setPreparedStatementArgs(pstmt, groupName, modName);
-        int qResult = pstmt.executeUpdate();
-        pstmt.close();
-        return (qResult > 0);
+        try (PreparedStatement pstmt = conn.getPreparedStatement(CREATE_GROUP)) {
+            utils.setPreparedStatementArgs(pstmt, groupName, modName);
+            int qResult = pstmt.executeUpdate();
+            return (qResult > 0);
+        }
     }
 
     /**
@@ -137,11 +160,11 @@ public class GroupService implements GroupDao {
     @Override
     public boolean deleteGroup(String groupName) throws SQLException {
         final String DELETE_GROUP = groupProperties.getProperty("DELETE_GROUP");
-        pstmt = conn.getPreparedStatement(DELETE_GROUP);
-        pstmt = utils.setPreparedStatementArgs(pstmt, groupName);
-        int qResult = pstmt.executeUpdate();
-        pstmt.close();
-        return (qResult > 0);
+        try (PreparedStatement pstmt = conn.getPreparedStatement(DELETE_GROUP)) {
+            utils.setPreparedStatementArgs(pstmt, groupName);
+            int qResult = pstmt.executeUpdate();
+            return (qResult > 0);
+        }
     }
 
     /**
@@ -156,19 +179,20 @@ public class GroupService implements GroupDao {
     public Set<User> getMemberUsers(String groupName) throws SQLException {
 
         final String FETCH_MEMBER_USERS = groupProperties.getProperty("FETCH_MEMBER_USERS");
-        pstmt = conn.getPreparedStatement(FETCH_MEMBER_USERS);
-        pstmt = utils.setPreparedStatementArgs(pstmt, groupName);
         Set<User> users = new HashSet<>();
-        result = pstmt.executeQuery();
-        while (result.next()) {
-            String fName = result.getString(FIRST_NAME);
-            String lName = result.getString(LAST_NAME);
-            String uName = result.getString(USER_NAME);
-            boolean stat = result.getBoolean(LOGGED_IN);
-            User user = new User(fName, lName, uName, null, stat);
-            users.add(user);
+        try (PreparedStatement pstmt = conn.getPreparedStatement(FETCH_MEMBER_USERS)) {
+            utils.setPreparedStatementArgs(pstmt, groupName);
+            try (ResultSet result = pstmt.executeQuery()) {
+                while (result.next()) {
+                    String fName = result.getString(FIRST_NAME);
+                    String lName = result.getString(LAST_NAME);
+                    String uName = result.getString(USER_NAME);
+                    boolean stat = result.getBoolean(LOGGED_IN);
+                    User user = new User(fName, lName, uName, null, stat);
+                    users.add(user);
+                }
+            }
         }
-        pstmt.close();
         return users;
     }
 
@@ -183,15 +207,16 @@ public class GroupService implements GroupDao {
     @Override
     public Set<String> getMemberGroups(String groupName) throws SQLException {
         final String FETCH_MEMBER_GROUPS = groupProperties.getProperty("FETCH_MEMBER_GROUPS");
-        pstmt = conn.getPreparedStatement(FETCH_MEMBER_GROUPS);
-        pstmt = utils.setPreparedStatementArgs(pstmt, groupName);
         Set<String> groups = new HashSet<>();
-        result = pstmt.executeQuery();
-        while (result.next()) {
-            String gName = result.getString(GUEST_GROUP_NAME);
-            groups.add(gName);
+        try (PreparedStatement pstmt = conn.getPreparedStatement(FETCH_MEMBER_GROUPS)) {
+            utils.setPreparedStatementArgs(pstmt, groupName);
+            try (ResultSet result = pstmt.executeQuery()) {
+                while (result.next()) {
+                    String gName = result.getString(GUEST_GROUP_NAME);
+                    groups.add(gName);
+                }
+            }
         }
-        pstmt.close();
         return groups;
     }
 
@@ -205,20 +230,22 @@ public class GroupService implements GroupDao {
     @Override
     public Set<Group> getAllGroups() throws SQLException {
         final String GET_ALL_GROUP_NAMES = groupProperties.getProperty("GET_ALL_GROUP_NAMES");
-        pstmt = conn.getPreparedStatement(GET_ALL_GROUP_NAMES);
+        Set<String> groupNames = new HashSet<>();
         Set<Group> groups = new HashSet<>();
         try {
-            result = pstmt.executeQuery();
-            while (result.next()) {
-                String gName = result.getString(GROUP_NAME);
+            try (PreparedStatement pstmt = conn.getPreparedStatement(GET_ALL_GROUP_NAMES);
+                 ResultSet result = pstmt.executeQuery()) {
+                while (result.next()) {
+                    groupNames.add(result.getString(GROUP_NAME));
+                }
+            }
+            for (String gName : groupNames) {
                 groups.add(getGroup(gName));
             }
-
         } catch (Exception e) {
             ChatLogger.error("Exception occurred - GroupService.java - getAllGroups() : " + ChatLogger.getTrace(e));
             throw new SQLException("Exception occurred in getAllGroups");
         }
-        pstmt.close();
 
         return groups;
     }
@@ -236,16 +263,15 @@ public class GroupService implements GroupDao {
     @Override
     public boolean isModerator(String groupName, String userName) throws SQLException {
         final String GET_MODERATOR_NAME = groupProperties.getProperty("GET_MODERATOR_NAME");
-        pstmt = conn.getPreparedStatement(GET_MODERATOR_NAME);
-        pstmt = utils.setPreparedStatementArgs(pstmt, groupName);
-        String modName;
-        result = pstmt.executeQuery();
-        if (!result.first()) {
-            return false;
+        try (PreparedStatement pstmt = conn.getPreparedStatement(GET_MODERATOR_NAME)) {
+            utils.setPreparedStatementArgs(pstmt, groupName);
+            try (ResultSet result = pstmt.executeQuery()) {
+                if (!result.first()) {
+                    return false;
+                }
+                return userName.equals(result.getString(MODERATOR_NAME));
+            }
         }
-        modName = result.getString(MODERATOR_NAME);
-        pstmt.close();
-        return userName.equals(modName);
     }
 
 
@@ -265,11 +291,11 @@ public class GroupService implements GroupDao {
             if (u.getUserName().equals(guestUserName)) return false;
         }
         final String ADD_USER_TO_GROUP = groupProperties.getProperty("ADD_USER_TO_GROUP");
-        pstmt = conn.getPreparedStatement(ADD_USER_TO_GROUP);
-        pstmt = utils.setPreparedStatementArgs(pstmt, hostGroupName, guestUserName);
-        int qResult = pstmt.executeUpdate();
-        pstmt.close();
-        return (qResult > 0);
+        try (PreparedStatement pstmt = conn.getPreparedStatement(ADD_USER_TO_GROUP)) {
+            utils.setPreparedStatementArgs(pstmt, hostGroupName, guestUserName);
+            int qResult = pstmt.executeUpdate();
+            return (qResult > 0);
+        }
     }
 
     /**
@@ -285,11 +311,11 @@ public class GroupService implements GroupDao {
         // Assumption: The group name is valid and the group exists
 
         final String REMOVE_USER_FROM_GROUP = groupProperties.getProperty("REMOVE_USER_FROM_GROUP");
-        pstmt = conn.getPreparedStatement(REMOVE_USER_FROM_GROUP);
-        pstmt = utils.setPreparedStatementArgs(pstmt, hostGroupName, guestUserName);
-        int qResult = pstmt.executeUpdate();
-        pstmt.close();
-        return (qResult > 0);
+        try (PreparedStatement pstmt = conn.getPreparedStatement(REMOVE_USER_FROM_GROUP)) {
+            utils.setPreparedStatementArgs(pstmt, hostGroupName, guestUserName);
+            int qResult = pstmt.executeUpdate();
+            return (qResult > 0);
+        }
     }
 
     /**
@@ -304,14 +330,12 @@ public class GroupService implements GroupDao {
     public boolean checkMembershipInGroup(String hostGroupName, String guestUserName) throws SQLException {
         // Assumption: The group name is valid and the group exists
         final String CHECK_USER_MEMEBERSHIP = groupProperties.getProperty("CHECK_USER_MEMEBERSHIP");
-        pstmt = conn.getPreparedStatement(CHECK_USER_MEMEBERSHIP);
-        pstmt = utils.setPreparedStatementArgs(pstmt, hostGroupName, guestUserName);
-        result = pstmt.executeQuery();
-        if (result.first()) {
-            return !result.getBoolean(IS_REMOVED);
+        try (PreparedStatement pstmt = conn.getPreparedStatement(CHECK_USER_MEMEBERSHIP)) {
+            utils.setPreparedStatementArgs(pstmt, hostGroupName, guestUserName);
+            try (ResultSet result = pstmt.executeQuery()) {
+                return result.first() && !result.getBoolean(IS_REMOVED);
+            }
         }
-        pstmt.close();
-        return false;
     }
 
 
@@ -345,11 +369,11 @@ public class GroupService implements GroupDao {
         descendantGroups = getFlatListOfGroups(grp, descendantGroups);
         if (!descendantGroups.contains(hostGroupName)) {
             final String ADD_GROUP_TO_GROUP = groupProperties.getProperty("ADD_GROUP_TO_GROUP");
-            pstmt = conn.getPreparedStatement(ADD_GROUP_TO_GROUP);
-            pstmt = utils.setPreparedStatementArgs(pstmt, hostGroupName, guestGroupName);
-            int qResult = pstmt.executeUpdate();
-            pstmt.close();
-            return (qResult > 0);
+            try (PreparedStatement pstmt = conn.getPreparedStatement(ADD_GROUP_TO_GROUP)) {
+                utils.setPreparedStatementArgs(pstmt, hostGroupName, guestGroupName);
+                int qResult = pstmt.executeUpdate();
+                return (qResult > 0);
+            }
         }
         return false;
     }
@@ -364,10 +388,21 @@ public class GroupService implements GroupDao {
      * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
      */
     public boolean isUserMemberOfTheGroup(String grpName, String userName) throws SQLException {
-        Group group = getGroup(grpName);
-        Set<String> memberUserNames = new HashSet<>();
-        memberUserNames = getFlatListOfUsers(group, memberUserNames);
-        return memberUserNames.contains(userName);
+        return singleFlight.execute(SingleFlight.key("IS_USER_MEMBER_OF_THE_GROUP", grpName, userName), () -> {
+            Group group = getGroup(grpName);
+            Set<String> memberUserNames = new HashSet<>();
+            memberUserNames = getFlatListOfUsers(group, memberUserNames);
+            return memberUserNames.contains(userName);
+        });
+    }
+
+    /**
+     * Gets the number of identical concurrent reads that shared an in-flight database call, per query.
+     *
+     * @return Map          the number of collapsed calls, keyed by query name
+     */
+    public Map<String, Long> getCollapsedReadCounts() {
+        return singleFlight.getCollapsedCounts();
     }
 
 
@@ -402,11 +437,11 @@ public class GroupService implements GroupDao {
     public boolean updateGroupSettings(String groupName, String attributeName, String attributeValue)
             throws SQLException {
         final String UPDATE_GROUP = groupProperties.getProperty("UPDATE_GROUP");
-        pstmt = conn.getPreparedStatement(MessageFormat.format(UPDATE_GROUP, attributeName));
-        pstmt = utils.setPreparedStatementArgs(pstmt, attributeValue, groupName);
-        int qResult = pstmt.executeUpdate();
-        pstmt.close();
-        return qResult > 0;
+        try (PreparedStatement pstmt = conn.getPreparedStatement(MessageFormat.format(UPDATE_GROUP, attributeName))) {
+            utils.setPreparedStatementArgs(pstmt, attributeValue, groupName);
+            int qResult = pstmt.executeUpdate();
+            return qResult > 0;
+        }
     }
 
     /**
@@ -421,13 +456,15 @@ public class GroupService implements GroupDao {
     public Map<String, String> searchGroup(String searchString) throws SQLException {
         Map<String, String> resultMap = new HashMap<>();
         final String SEARCH_GROUP = groupProperties.getProperty("SEARCH_GROUP");
-        pstmt = conn.getPreparedStatement(SEARCH_GROUP);
-        pstmt = utils.setPreparedStatementArgs(pstmt, searchString);
-        result = pstmt.executeQuery();
-        while (result.next()) {
-            String groupName = result.getString(GROUP_NAME);
-            String modName = result.getString(MODERATOR_NAME);
-            resultMap.put(groupName, modName);
+        try (PreparedStatement pstmt = conn.getPreparedStatement(SEARCH_GROUP)) {
+            utils.setPreparedStatementArgs(pstmt, searchString);
+            try (ResultSet result = pstmt.executeQuery()) {
+                while (result.next()) {
+                    String groupName = result.getString(GROUP_NAME);
+                    String modName = result.getString(MODERATOR_NAME);
+                    resultMap.put(groupName, modName);
+                }
+            }
         }
         return resultMap;
     }
@@ -447,11 +484,11 @@ public class GroupService implements GroupDao {
         descendantGroups = getFlatListOfGroups(grp, descendantGroups);
         if (descendantGroups.contains(guestGroupName)) {
             final String REMOVE_GROUP_FROM_GROUP = groupProperties.getProperty("REMOVE_GROUP_FROM_GROUP");
-            pstmt = conn.getPreparedStatement(REMOVE_GROUP_FROM_GROUP);
-            pstmt = utils.setPreparedStatementArgs(pstmt, hostGroupName, guestGroupName);
-            int qResult = pstmt.executeUpdate();
-            pstmt.close();
-            return (qResult > 0);
+            try (PreparedStatement pstmt = conn.getPreparedStatement(REMOVE_GROUP_FROM_GROUP)) {
+                utils.setPreparedStatementArgs(pstmt, hostGroupName, guestGroupName);
+                int qResult = pstmt.executeUpdate();
+                return (qResult > 0);
+            }
         }
         return false;
     }
@@ -466,12 +503,14 @@ public class GroupService implements GroupDao {
     @Override
     public Set<String> getGroupsByModerator(String moderatorName) throws SQLException {
         final String GROUPS_BY_MODERATOR_QUERY = groupProperties.getProperty("GROUPS_BY_MODERATOR_QUERY");
-        PreparedStatement preparedStatement = conn.getPreparedStatement(GROUPS_BY_MODERATOR_QUERY);
-        preparedStatement = utils.setPreparedStatementArgs(preparedStatement, moderatorName);
-        result = preparedStatement.executeQuery();
         Set<String> groups = new HashSet<>();
-        while (result.next()) {
-            groups.add(result.getString(GROUP_NAME));
+        try (PreparedStatement pstmt = conn.getPreparedStatement(GROUPS_BY_MODERATOR_QUERY)) {
+            utils.setPreparedStatementArgs(pstmt, moderatorName);
+            try (ResultSet result = pstmt.executeQuery()) {
+                while (result.next()) {
+                    groups.add(result.getString(GROUP_NAME));
+                }
+            }
         }
         return groups;
     }
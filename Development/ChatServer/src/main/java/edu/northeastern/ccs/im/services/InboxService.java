@@ -0,0 +1,424 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.services;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import edu.northeastern.ccs.im.ChatLogger;
+import edu.northeastern.ccs.im.db.DBConnection;
+import edu.northeastern.ccs.im.db.DBUtils;
+import edu.northeastern.ccs.im.db.IDBConnection;
+import edu.northeastern.ccs.im.models.InboxEntry;
+
+/**
+ * Class for the services related to the inbox summary of the users. The summary (last message and
+ * unread count of every conversation) is kept in memory and updated incrementally as messages are
+ * stored, delivered and deleted, so that an inbox is served in O(conversations) without scanning
+ * the messages table. The summaries are written back to the database periodically by flush().
+ *
+ * The counters of a user whose persisted summary has not been loaded yet are kept as deltas and
+ * merged with the persisted summary the first time that user's inbox is needed, or added to it in
+ * the database by flush(). The inbox of a user who is not connected is dropped from memory once it
+ * is written, so that only the inboxes of the connected users and the pending deltas are kept. A
+ * deletion of an unread message of a dropped inbox is not counted; the counter is cleared anyway
+ * the next time that user logs in.
+ */
+public class InboxService {
+
+    private IDBConnection conn;
+    private PreparedStatement pstmt = null;
+    private DBUtils utils;
+    private ResultSet result;
+    private Properties inboxProperties;
+
+    private static InboxService inboxService;
+    private static final String DB_COL_CONVERSATION = "conversation";
+    private static final String DB_COL_IS_GROUP = "is_group";
+    private static final String DB_COL_LAST_SENDER = "last_sender";
+    private static final String DB_COL_LAST_MSG_TEXT = "last_msg_text";
+    private static final String DB_COL_LAST_MSG_KEY = "last_msg_key";
+    private static final String DB_COL_LAST_MSG_TIMESTAMP = "last_msg_timestamp";
+    private static final String DB_COL_UNREAD_COUNT = "unread_count";
+
+    /**
+     * Inbox entries of every user, keyed by the owner and then by the conversation.
+     */
+    private final Map<String, Map<String, InboxEntry>> inboxes;
+
+    /**
+     * Owners whose persisted summary has been merged into the in-memory entries.
+     */
+    private final Set<String> loadedOwners;
+
+    /**
+     * Entries counting a message as unread, keyed by the unique key of that message.
+     */
+    private final Map<String, InboxEntry> unreadKeys;
+
+    /**
+     * Unique keys of the messages counted as unread, grouped by the owner of the inbox.
+     */
+    private final Map<String, Set<String>> unreadKeysByOwner;
+
+    /**
+     * Entries showing a message as their last message, keyed by the unique key of that message.
+     */
+    private final Map<String, List<InboxEntry>> lastKeys;
+
+    /**
+     * Instantiates the inbox service. The connection to the database is only established when the
+     * persisted summaries are first needed, so that the counters can be maintained without it.
+     */
+    private InboxService() {
+        inboxes = new ConcurrentHashMap<>();
+        loadedOwners = ConcurrentHashMap.newKeySet();
+        unreadKeys = new ConcurrentHashMap<>();
+        unreadKeysByOwner = new ConcurrentHashMap<>();
+        lastKeys = new ConcurrentHashMap<>();
+        result = null;
+    }
+
+    /**
+     * Getting the singleton instance of the class
+     *
+     * @return the inbox service
+     */
+    public static synchronized InboxService getInstance() {
+        if (inboxService == null)
+            inboxService = new InboxService();
+        return inboxService;
+    }
+
+    /**
+     * Records a message that was stored for the given owner.
+     *
+     * @param owner             the username of the user whose inbox is updated
+     * @param conversation      the username or group name on the other side of the conversation
+     * @param groupConversation true, if the message was sent on a group
+     * @param sender            the username of the sender of the message
+     * @param text              the text of the message
+     * @param uniqueKey         the unique key of the stored message
+     * @param delivered         true, if the message was handed to the owner right away
+     */
+    public void messageStored(String owner, String conversation, boolean groupConversation, String sender,
+                              String text, String uniqueKey, boolean delivered) {
+        if (owner == null || conversation == null) {
+            return;
+        }
+        // updated while the inbox is locked in the map, so that it is not dropped by a concurrent flush
+        inboxes.compute(owner, (o, entries) -> {
+            Map<String, InboxEntry> inbox = entries == null ? new ConcurrentHashMap<>() : entries;
+            InboxEntry entry = inbox.computeIfAbsent(conversation, c -> new InboxEntry(owner, c, groupConversation));
+            String previousKey = entry.getLastMessageKey();
+            entry.recordMessage(sender, text, uniqueKey, new Timestamp(System.currentTimeMillis()), !delivered);
+            if (uniqueKey != null) {
+                if (!delivered) {
+                    unreadKeys.put(uniqueKey, entry);
+                    unreadKeysByOwner.computeIfAbsent(owner, k -> ConcurrentHashMap.newKeySet()).add(uniqueKey);
+                }
+                if (previousKey != null && !previousKey.equals(uniqueKey)) {
+                    lastKeys.computeIfPresent(previousKey, (k, keyEntries) -> without(keyEntries, entry));
+                }
+                lastKeys.merge(uniqueKey, Collections.singletonList(entry), InboxService::with);
+            }
+            return inbox;
+        });
+    }
+
+    /**
+     * Records that all the pending messages of the given owner were delivered, typically after the
+     * owner logged in and the backlog was sent out.
+     *
+     * @param owner the username of the user who received the messages
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     * @throws IOException  the io exception thrown in case the database configuration cannot be read
+     */
+    public void messagesDelivered(String owner) throws SQLException, IOException {
+        if (owner == null) {
+            return;
+        }
+        for (InboxEntry entry : loadInbox(owner).values()) {
+            entry.clearUnread();
+        }
+        Set<String> delivered = unreadKeysByOwner.remove(owner);
+        if (delivered != null) {
+            unreadKeys.keySet().removeAll(delivered);
+        }
+    }
+
+    /**
+     * Records that the message with the given key was deleted.
+     *
+     * @param uniqueKey the unique key of the deleted message
+     */
+    public void messageDeleted(String uniqueKey) {
+        if (uniqueKey == null) {
+            return;
+        }
+        InboxEntry unreadEntry = unreadKeys.remove(uniqueKey);
+        if (unreadEntry != null) {
+            unreadEntry.recordDeletion(uniqueKey, true);
+            Set<String> ownerKeys = unreadKeysByOwner.get(unreadEntry.getOwner());
+            if (ownerKeys != null) {
+                ownerKeys.remove(uniqueKey);
+            }
+        }
+        List<InboxEntry> entries = lastKeys.remove(uniqueKey);
+        if (entries != null) {
+            for (InboxEntry entry : entries) {
+                if (entry != unreadEntry) {
+                    entry.recordDeletion(uniqueKey, false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the inbox summary of the given owner, with the most recent conversation first.
+     *
+     * @param owner the username of the user whose inbox is requested
+     * @return List         a snapshot of every conversation of the owner
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     * @throws IOException  the io exception thrown in case the database configuration cannot be read
+     */
+    public List<InboxEntry> getInbox(String owner) throws SQLException, IOException {
+        List<InboxEntry> inbox = new ArrayList<>();
+        for (InboxEntry entry : loadInbox(owner).values()) {
+            inbox.add(entry.snapshot());
+        }
+        inbox.sort(Comparator.comparing(InboxEntry::getLastMessageTimestamp,
+                Comparator.nullsLast(Comparator.reverseOrder())));
+        return inbox;
+    }
+
+    /**
+     * Writes every entry that changed since the last flush to the database, the entries of the loaded
+     * inboxes in one batch and the deltas of the others in another, then drops from memory the inboxes
+     * of the owners who are not connected.
+     *
+     * @param isOnline tells whether an owner is connected, and so whether their inbox is kept in memory
+     * @return int          the number of entries that were written
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     * @throws IOException  the io exception thrown in case the database configuration cannot be read
+     */
+    public int flush(Predicate<String> isOnline) throws SQLException, IOException {
+        List<InboxEntry> dirtyEntries = new ArrayList<>();
+        List<InboxEntry> snapshots = new ArrayList<>();
+        List<InboxEntry> dirtyDeltas = new ArrayList<>();
+        List<InboxEntry> deltas = new ArrayList<>();
+        for (Map.Entry<String, Map<String, InboxEntry>> inbox : inboxes.entrySet()) {
+            // the counters of owners that were never loaded are deltas, added to the persisted summary
+            boolean loaded = loadedOwners.contains(inbox.getKey());
+            for (InboxEntry entry : inbox.getValue().values()) {
+                if (!entry.isDirty()) {
+                    continue;
+                }
+                if (loaded) {
+                    dirtyEntries.add(entry);
+                    snapshots.add(entry.snapshot());
+                } else {
+                    dirtyDeltas.add(entry);
+                    deltas.add(entry.deltaSnapshot());
+                }
+            }
+        }
+        if (!snapshots.isEmpty()) {
+            writeEntries("UPSERT_INBOX", snapshots);
+            for (int i = 0; i < dirtyEntries.size(); i++) {
+                dirtyEntries.get(i).markPersisted(snapshots.get(i));
+            }
+        }
+        if (!deltas.isEmpty()) {
+            writeEntries("UPSERT_INBOX_DELTA", deltas);
+            for (int i = 0; i < dirtyDeltas.size(); i++) {
+                dirtyDeltas.get(i).markDeltaPersisted(deltas.get(i));
+            }
+        }
+        for (String owner : inboxes.keySet()) {
+            evictIfOffline(owner, isOnline);
+        }
+        return snapshots.size() + deltas.size();
+    }
+
+    /**
+     * Drops the inbox of the given owner from memory if the owner is not connected and every entry
+     * of the inbox was written. The inbox is loaded again from the database when it is next needed.
+     *
+     * @param owner    the username of the user
+     * @param isOnline tells whether an owner is connected
+     */
+    private void evictIfOffline(String owner, Predicate<String> isOnline) {
+        inboxes.computeIfPresent(owner, (o, entries) -> {
+            if (isOnline.test(owner) || entries.values().stream().anyMatch(InboxEntry::isDirty)) {
+                return entries;
+            }
+            loadedOwners.remove(owner);
+            Set<String> ownerKeys = unreadKeysByOwner.remove(owner);
+            if (ownerKeys != null) {
+                unreadKeys.keySet().removeAll(ownerKeys);
+            }
+            for (InboxEntry entry : entries.values()) {
+                String lastKey = entry.getLastMessageKey();
+                if (lastKey != null) {
+                    lastKeys.computeIfPresent(lastKey, (k, keyEntries) -> without(keyEntries, entry));
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Loads the persisted summary of the given owner, if it was not loaded yet, and merges it into
+     * the in-memory entries.
+     *
+     * @param owner the username of the user whose inbox is loaded
+     * @return Map          the in-memory entries of the owner keyed by the conversation
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     * @throws IOException  the io exception thrown in case the database configuration cannot be read
+     */
+    private Map<String, InboxEntry> loadInbox(String owner) throws SQLException, IOException {
+        Map<String, InboxEntry> entries = entriesOf(owner);
+        if (!loadedOwners.contains(owner)) {
+            synchronized (entries) {
+                if (!loadedOwners.contains(owner)) {
+                    for (InboxEntry persisted : fetchEntries(owner)) {
+                        InboxEntry existing = entries.putIfAbsent(persisted.getConversation(), persisted);
+                        if (existing != null) {
+                            existing.mergePersisted(persisted);
+                        }
+                    }
+                    loadedOwners.add(owner);
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Gets the in-memory entries of the given owner, creating an empty inbox if needed.
+     *
+     * @param owner the username of the user
+     * @return Map          the in-memory entries of the owner keyed by the conversation
+     */
+    private Map<String, InboxEntry> entriesOf(String owner) {
+        return inboxes.computeIfAbsent(owner, o -> new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Fetches the persisted summary of the given owner.
+     *
+     * @param owner the username of the user
+     * @return List         the persisted entries of the owner
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     * @throws IOException  the io exception thrown in case the database configuration cannot be read
+     */
+    private synchronized List<InboxEntry> fetchEntries(String owner) throws SQLException, IOException {
+        openConnection();
+        final String GET_INBOX = inboxProperties.getProperty("GET_INBOX");
+        pstmt = conn.getPreparedStatement(GET_INBOX);
+        pstmt = utils.setPreparedStatementArgs(pstmt, owner);
+        List<InboxEntry> entries = new ArrayList<>();
+        result = pstmt.executeQuery();
+        while (result.next()) {
+            InboxEntry entry = new InboxEntry(owner, result.getString(DB_COL_CONVERSATION),
+                    result.getBoolean(DB_COL_IS_GROUP));
+            entry.setLastMessage(
+                    result.getString(DB_COL_LAST_SENDER),
+                    result.getString(DB_COL_LAST_MSG_TEXT),
+                    result.getString(DB_COL_LAST_MSG_KEY),
+                    result.getTimestamp(DB_COL_LAST_MSG_TIMESTAMP)
+            );
+            entry.setUnreadCount(result.getInt(DB_COL_UNREAD_COUNT));
+            entries.add(entry);
+        }
+        pstmt.close();
+        return entries;
+    }
+
+    /**
+     * Writes the given entries to the database as one batch.
+     *
+     * @param queryName the name of the upsert query, replacing or adding to the persisted summary
+     * @param entries   the snapshots of the entries to be written
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     * @throws IOException  the io exception thrown in case the database configuration cannot be read
+     */
+    private synchronized void writeEntries(String queryName, List<InboxEntry> entries)
+            throws SQLException, IOException {
+        openConnection();
+        pstmt = conn.getPreparedStatement(inboxProperties.getProperty(queryName));
+        try {
+            for (InboxEntry entry : entries) {
+                pstmt = utils.setPreparedStatementArgs(
+                        pstmt,
+                        entry.getOwner(),
+                        entry.getConversation(),
+                        entry.isGroupConversation(),
+                        entry.getLastSender(),
+                        entry.getLastMessageText(),
+                        entry.getLastMessageKey(),
+                        entry.getLastMessageTimestamp(),
+                        entry.getUnreadCount()
+                );
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        } catch (SQLException e) {
+            ChatLogger.error("Exception occurred - InboxService.java - writeEntries() : " + ChatLogger.getTrace(e));
+            throw e;
+        } finally {
+            pstmt.close();
+        }
+    }
+
+    /**
+     * Establishes the connection to the database if it was not established yet.
+     *
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     * @throws IOException  the io exception thrown in case the database configuration cannot be read
+     */
+    private void openConnection() throws SQLException, IOException {
+        if (conn == null)
+            conn = new DBConnection();
+        if (utils == null)
+            utils = new DBUtils();
+        if (inboxProperties == null)
+            inboxProperties = conn.getQueryProperties();
+    }
+
+    /**
+     * Returns a copy of the given list with the given entry added.
+     */
+    private static List<InboxEntry> with(List<InboxEntry> entries, List<InboxEntry> added) {
+        List<InboxEntry> merged = new ArrayList<>(entries);
+        merged.addAll(added);
+        return merged;
+    }
+
+    /**
+     * Returns a copy of the given list without the given entry, or null if nothing is left.
+     */
+    private static List<InboxEntry> without(List<InboxEntry> entries, InboxEntry removed) {
+        List<InboxEntry> remaining = new ArrayList<>(entries);
+        remaining.remove(removed);
+        return remaining.isEmpty() ? null : remaining;
+    }
+}
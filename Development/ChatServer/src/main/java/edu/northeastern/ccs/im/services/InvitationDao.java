@@ -10,6 +10,7 @@ package edu.northeastern.ccs.im.services;
 import edu.northeastern.ccs.im.Message;
 
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.Set;
 
 /**
@@ -127,4 +128,55 @@ public interface InvitationDao {
      */
     boolean setInvitationIsSentToModerator(String invitee, String groupName) throws SQLException;
 
+
+    /**
+     * The method gets the invitations that need to be sent to an invitee from the in-memory index
+     *
+     * @param invitee the person who is receiving the invitation
+     * @return Set          the set of messages which have to be delivered to the user
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    Set<Message> getPendingInvitationsForInvitee(String invitee) throws SQLException;
+
+    /**
+     * The method gets the invitations that need to be sent to a moderator for all the groups they moderate
+     *
+     * @param moderator the moderator of the groups
+     * @return Set          the set of messages which have to be delivered to the moderator
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    Set<Message> getPendingInvitationsForModerator(String moderator) throws SQLException;
+
+    /**
+     * Sets the is sent flag for all the given invitations in a single batch, once sent to their invitees
+     *
+     * @param invitations the invitations that were delivered
+     * @return boolean      true if all the invitations were updated, false otherwise
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    boolean setInvitationsAreSentToInvitee(Collection<Message> invitations) throws SQLException;
+
+    /**
+     * Sets the is sent flag for all the given invitations in a single batch, once sent to the moderators
+     *
+     * @param invitations the invitations that were delivered
+     * @return boolean      true if all the invitations were updated, false otherwise
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    boolean setInvitationsAreSentToModerator(Collection<Message> invitations) throws SQLException;
+
+    /**
+     * Records the moderator of a group, when a group is created or its moderator changes
+     *
+     * @param groupName the name of the group
+     * @param moderator the username of the moderator
+     */
+    void updateGroupModerator(String groupName, String moderator);
+
+    /**
+     * Removes a deleted group and its pending invitations
+     *
+     * @param groupName the name of the group
+     */
+    void removeGroup(String groupName);
 }
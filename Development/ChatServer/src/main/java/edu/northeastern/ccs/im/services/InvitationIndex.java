@@ -0,0 +1,171 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.services;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.northeastern.ccs.im.Message;
+
+/**
+ * In-memory index of the invitations that are yet to be delivered, by invitee and by the group
+ * whose moderator has to be notified, along with the groups moderated by every user. It lets the
+ * pending invitations of a user be found with a single lookup instead of one query per group.
+ */
+public class InvitationIndex {
+
+    /**
+     * Invitations not yet delivered to the invitee, keyed by invitee and then by group name.
+     */
+    private final Map<String, Map<String, Message>> pendingForInvitee = new ConcurrentHashMap<>();
+
+    /**
+     * Invitations not yet delivered to the moderator, keyed by group name and then by invitee.
+     */
+    private final Map<String, Map<String, Message>> pendingForGroup = new ConcurrentHashMap<>();
+
+    /**
+     * The moderator of every group, and the groups moderated by every user.
+     */
+    private final Map<String, String> moderatorOfGroup = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> groupsOfModerator = new ConcurrentHashMap<>();
+
+    /**
+     * Adds an invitation to the index.
+     *
+     * @param invitation      the invitation message (inviter, invitee, group name)
+     * @param sentToInvitee   true, if the invitation was already delivered to the invitee
+     * @param sentToModerator true, if the invitation was already delivered to the moderator
+     */
+    public void addInvitation(Message invitation, boolean sentToInvitee, boolean sentToModerator) {
+        String invitee = invitation.getTextOrPassword();
+        String groupName = invitation.getReceiverOrPassword();
+        if (!sentToInvitee) {
+            pendingForInvitee.computeIfAbsent(invitee, k -> new ConcurrentHashMap<>()).put(groupName, invitation);
+        }
+        if (!sentToModerator) {
+            pendingForGroup.computeIfAbsent(groupName, k -> new ConcurrentHashMap<>()).put(invitee, invitation);
+        }
+    }
+
+    /**
+     * Removes an invitation from the index, e.g. when it is deleted by the inviter.
+     *
+     * @param invitee   the person who is receiving the invitation
+     * @param groupName the group for which the invite was sent
+     */
+    public void removeInvitation(String invitee, String groupName) {
+        markSentToInvitee(invitee, groupName);
+        markSentToModerator(invitee, groupName);
+    }
+
+    /**
+     * Marks an invitation as delivered to the invitee.
+     *
+     * @param invitee   the person who is receiving the invitation
+     * @param groupName the group for which the invite was sent
+     */
+    public void markSentToInvitee(String invitee, String groupName) {
+        Map<String, Message> invitations = pendingForInvitee.get(invitee);
+        if (invitations != null) {
+            invitations.remove(groupName);
+        }
+    }
+
+    /**
+     * Marks an invitation as delivered to the moderator of the group.
+     *
+     * @param invitee   the person who is receiving the invitation
+     * @param groupName the group for which the invite was sent
+     */
+    public void markSentToModerator(String invitee, String groupName) {
+        Map<String, Message> invitations = pendingForGroup.get(groupName);
+        if (invitations != null) {
+            invitations.remove(invitee);
+        }
+    }
+
+    /**
+     * Records the moderator of a group, replacing the previous one.
+     *
+     * @param groupName the name of the group
+     * @param moderator the username of the moderator
+     */
+    public synchronized void setModerator(String groupName, String moderator) {
+        String previous = moderatorOfGroup.put(groupName, moderator);
+        if (previous != null && !previous.equals(moderator)) {
+            Set<String> groups = groupsOfModerator.get(previous);
+            if (groups != null) {
+                groups.remove(groupName);
+            }
+        }
+        groupsOfModerator.computeIfAbsent(moderator, k -> ConcurrentHashMap.newKeySet()).add(groupName);
+    }
+
+    /**
+     * Removes a group and its pending invitations from the index.
+     *
+     * @param groupName the name of the group
+     */
+    public synchronized void removeGroup(String groupName) {
+        String moderator = moderatorOfGroup.remove(groupName);
+        if (moderator != null) {
+            Set<String> groups = groupsOfModerator.get(moderator);
+            if (groups != null) {
+                groups.remove(groupName);
+            }
+        }
+        pendingForGroup.remove(groupName);
+        for (Map<String, Message> invitations : pendingForInvitee.values()) {
+            invitations.remove(groupName);
+        }
+    }
+
+    /**
+     * Gets the moderator of a group.
+     *
+     * @param groupName the name of the group
+     * @return String       the username of the moderator, or null if the group is not indexed
+     */
+    public String getModerator(String groupName) {
+        return moderatorOfGroup.get(groupName);
+    }
+
+    /**
+     * Gets the invitations that are yet to be delivered to the invitee.
+     *
+     * @param invitee the person who is receiving the invitations
+     * @return Set          the pending invitations of the invitee
+     */
+    public Set<Message> getPendingForInvitee(String invitee) {
+        Map<String, Message> invitations = pendingForInvitee.get(invitee);
+        return invitations == null ? new HashSet<>() : new HashSet<>(invitations.values());
+    }
+
+    /**
+     * Gets the invitations that are yet to be delivered to the moderator, for all of their groups.
+     *
+     * @param moderator the username of the moderator
+     * @return Set          the pending invitations of all the groups moderated by the user
+     */
+    public Set<Message> getPendingForModerator(String moderator) {
+        Set<Message> result = new HashSet<>();
+        Set<String> groups = groupsOfModerator.get(moderator);
+        if (groups != null) {
+            for (String groupName : groups) {
+                Map<String, Message> invitations = pendingForGroup.get(groupName);
+                if (invitations != null) {
+                    result.addAll(invitations.values());
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -15,6 +15,7 @@ import java.io.IOException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Properties;
 import java.util.Set;
@@ -26,17 +27,17 @@ import java.util.Set;
  * @author Sachin
  * @version 1.0
  */
-public class InvitationService implements InvitationDao {
+public class InvitationService implements AsyncInvitationDao {
 
     /**
      * data members of the class used in multiple methods of the service
      */
     private DBConnection connection;
     private DBUtils utils;
-    private PreparedStatement preparedStatement;
-    private ResultSet result;
     private static InvitationService invitationServiceInstance;
     private Properties invitationProperties;
+    private InvitationIndex invitationIndex;
+    private boolean indexLoaded;
 
     /**
      * Constants used in multiple methods of the service
@@ -49,6 +50,9 @@ public class InvitationService implements InvitationDao {
     private static final String IS_ACCEPTED = "is_accepted";
     private static final String IS_DENIED = "is_denied";
     private static final String IS_DELETED = "is_deleted";
+    private static final String IS_SENT_INVITEE = "is_sent_invitee";
+    private static final String IS_SENT_MODERATOR = "is_sent_moderator";
+    private static final String MODERATOR_NAME = "moderator_name";
 
     /**
      * Instantiates a new invitation service.
@@ -60,6 +64,8 @@ public class InvitationService implements InvitationDao {
         connection = new DBConnection();
         utils = new DBUtils();
         invitationProperties = connection.getQueryProperties();
+        invitationIndex = new InvitationIndex();
+        indexLoaded = false;
     }
 
     /**
@@ -76,6 +82,19 @@ public class InvitationService implements InvitationDao {
         return invitationServiceInstance;
     }
 
+    /**
+     * Prepares the statements of this service and loads the index of the pending invitations,
+     * before the first client needs them.
+     *
+     * @return int          the number of statements prepared
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    public int warmUp() throws SQLException {
+        int prepared = connection.warmUp();
+        loadIndex();
+        return prepared;
+    }
+
     /**
      * The method to get an invitation based on the three inputs provided
      *
@@ -89,24 +108,25 @@ public class InvitationService implements InvitationDao {
     @Override
     public Message getInvitation(String inviter, String invitee, String groupName) throws SQLException {
         final String QUERY = invitationProperties.getProperty("GET_INVITATION_BOTH");
-        preparedStatement = connection.getPreparedStatement(QUERY);
-        preparedStatement = utils.setPreparedStatementArgs(preparedStatement, inviter, invitee, groupName);
-        result = preparedStatement.executeQuery();
         Message message = null;
-        if (result.first()) {
-            boolean isAccepted = result.getBoolean(IS_ACCEPTED);
-            boolean isDenied = result.getBoolean(IS_DENIED);
-            boolean isApproved = result.getBoolean(IS_APPROVED);
-            boolean isRejected = result.getBoolean(IS_REJECTED);
-            boolean isDeleted = result.getBoolean(IS_DELETED);
-            message = Message.makeCreateInvitationMessage(inviter, invitee, groupName);
-            message.setInvitationAccepted(isAccepted);
-            message.setInvitationDenied(isDenied);
-            message.setInvitationApproved(isApproved);
-            message.setInvitationRejected(isRejected);
-            message.setInvitationDeleted(isDeleted);
+        try (PreparedStatement preparedStatement = connection.getPreparedStatement(QUERY)) {
+            utils.setPreparedStatementArgs(preparedStatement, inviter, invitee, groupName);
+            try (ResultSet result = preparedStatement.executeQuery()) {
+                if (result.first()) {
+                    boolean isAccepted = result.getBoolean(IS_ACCEPTED);
+                    boolean isDenied = result.getBoolean(IS_DENIED);
+                    boolean isApproved = result.getBoolean(IS_APPROVED);
+                    boolean isRejected = result.getBoolean(IS_REJECTED);
+                    boolean isDeleted = result.getBoolean(IS_DELETED);
+                    message = Message.makeCreateInvitationMessage(inviter, invitee, groupName);
+                    message.setInvitationAccepted(isAccepted);
+                    message.setInvitationDenied(isDenied);
+                    message.setInvitationApproved(isApproved);
+                    message.setInvitationRejected(isRejected);
+                    message.setInvitationDeleted(isDeleted);
+                }
+            }
         }
-        preparedStatement.close();
         return message;
     }
 
@@ -122,25 +142,26 @@ public class InvitationService implements InvitationDao {
     @Override
     public Message getInvitation(String invitee, String groupName) throws SQLException {
         final String QUERY = invitationProperties.getProperty("GET_INVITATION");
-        preparedStatement = connection.getPreparedStatement(QUERY);
-        preparedStatement = utils.setPreparedStatementArgs(preparedStatement, invitee, groupName);
-        result = preparedStatement.executeQuery();
         Message message = null;
-        if (result.first()) {
-            boolean isAccepted = result.getBoolean(IS_ACCEPTED);
-            boolean isDenied = result.getBoolean(IS_DENIED);
-            boolean isApproved = result.getBoolean(IS_APPROVED);
-            boolean isRejected = result.getBoolean(IS_REJECTED);
-            boolean isDeleted = result.getBoolean(IS_DELETED);
-            String inviter = result.getString(INVITER);
-            message = Message.makeCreateInvitationMessage(inviter, invitee, groupName);
-            message.setInvitationAccepted(isAccepted);
-            message.setInvitationDenied(isDenied);
-            message.setInvitationApproved(isApproved);
-            message.setInvitationRejected(isRejected);
-            message.setInvitationDeleted(isDeleted);
+        try (PreparedStatement preparedStatement = connection.getPreparedStatement(QUERY)) {
+            utils.setPreparedStatementArgs(preparedStatement, invitee, groupName);
+            try (ResultSet result = preparedStatement.executeQuery()) {
+                if (result.first()) {
+                    boolean isAccepted = result.getBoolean(IS_ACCEPTED);
+                    boolean isDenied = result.getBoolean(IS_DENIED);
+                    boolean isApproved = result.getBoolean(IS_APPROVED);
+                    boolean isRejected = result.getBoolean(IS_REJECTED);
+                    boolean isDeleted = result.getBoolean(IS_DELETED);
+                    String inviter = result.getString(INVITER);
+                    message = Message.makeCreateInvitationMessage(inviter, invitee, groupName);
+                    message.setInvitationAccepted(isAccepted);
+                    message.setInvitationDenied(isDenied);
+                    message.setInvitationApproved(isApproved);
+                    message.setInvitationRejected(isRejected);
+                    message.setInvitationDeleted(isDeleted);
+                }
+            }
         }
-        preparedStatement.close();
         return message;
     }
 
@@ -157,10 +178,11 @@ public class InvitationService implements InvitationDao {
     @Override
     public boolean approveRejectInvitation(String invitee, String groupName, boolean approved) throws SQLException {
         final String QUERY = invitationProperties.getProperty("APPROVE_REJECT_INVITATION");
-        preparedStatement = connection.getPreparedStatement(QUERY);
-        preparedStatement = utils.setPreparedStatementArgs(preparedStatement, approved, !approved, invitee, groupName);
-        int qResult = preparedStatement.executeUpdate();
-        preparedStatement.close();
+        int qResult;
+        try (PreparedStatement preparedStatement = connection.getPreparedStatement(QUERY)) {
+            utils.setPreparedStatementArgs(preparedStatement, approved, !approved, invitee, groupName);
+            qResult = preparedStatement.executeUpdate();
+        }
         return qResult > 0;
     }
 
@@ -177,10 +199,11 @@ public class InvitationService implements InvitationDao {
     @Override
     public boolean acceptDenyInvitation(String invitee, String groupName, boolean accepted) throws SQLException {
         final String QUERY = invitationProperties.getProperty("ACCEPT_DENY_INVITATION");
-        preparedStatement = connection.getPreparedStatement(QUERY);
-        preparedStatement = utils.setPreparedStatementArgs(preparedStatement, accepted, !accepted, invitee, groupName);
-        int qResult = preparedStatement.executeUpdate();
-        preparedStatement.close();
+        int qResult;
+        try (PreparedStatement preparedStatement = connection.getPreparedStatement(QUERY)) {
+            utils.setPreparedStatementArgs(preparedStatement, accepted, !accepted, invitee, groupName);
+            qResult = preparedStatement.executeUpdate();
+        }
         return qResult > 0;
     }
 
@@ -196,10 +219,15 @@ public class InvitationService implements InvitationDao {
     @Override
     public boolean createInvitation(String inviter, String invitee, String groupName) throws SQLException {
         final String QUERY = invitationProperties.getProperty("CREATE_INVITATION");
-        preparedStatement = connection.getPreparedStatement(QUERY);
-        preparedStatement = utils.setPreparedStatementArgs(preparedStatement, inviter, invitee, groupName);
-        int qResult = preparedStatement.executeUpdate();
-        preparedStatement.close();
+        int qResult;
+        try (PreparedStatement preparedStatement = connection.getPreparedStatement(QUERY)) {
+            utils.setPreparedStatementArgs(preparedStatement, inviter, invitee, groupName);
+            qResult = preparedStatement.executeUpdate();
+        }
+        if (qResult > 0) {
+            invitationIndex.addInvitation(Message.makeCreateInvitationMessage(inviter, invitee, groupName),
+                    false, false);
+        }
         return qResult > 0;
     }
 
@@ -215,10 +243,14 @@ public class InvitationService implements InvitationDao {
     @Override
     public boolean deleteInvitation(String inviter, String invitee, String groupName) throws SQLException {
         final String QUERY = invitationProperties.getProperty("DELETE_INVITATION");
-        preparedStatement = connection.getPreparedStatement(QUERY);
-        preparedStatement = utils.setPreparedStatementArgs(preparedStatement, true, inviter, invitee, groupName);
-        int qResult = preparedStatement.executeUpdate();
-        preparedStatement.close();
+        int qResult;
+        try (PreparedStatement preparedStatement = connection.getPreparedStatement(QUERY)) {
+            utils.setPreparedStatementArgs(preparedStatement, true, inviter, invitee, groupName);
+            qResult = preparedStatement.executeUpdate();
+        }
+        if (qResult > 0) {
+            invitationIndex.removeInvitation(invitee, groupName);
+        }
         return qResult > 0;
     }
 
@@ -232,12 +264,12 @@ public class InvitationService implements InvitationDao {
     @Override
     public Set<Message> getInvitationsForInvitee(String invitee) throws SQLException {
         final String QUERY = invitationProperties.getProperty("GET_INVITATION_FOR_INVITEE");
-        preparedStatement = connection.getPreparedStatement(QUERY);
-        preparedStatement = utils.setPreparedStatementArgs(preparedStatement, invitee);
-        result = preparedStatement.executeQuery();
-        Set<Message> messages = extractInvitations();
-        preparedStatement.close();
-        return messages;
+        try (PreparedStatement preparedStatement = connection.getPreparedStatement(QUERY)) {
+            utils.setPreparedStatementArgs(preparedStatement, invitee);
+            try (ResultSet result = preparedStatement.executeQuery()) {
+                return extractInvitations(result);
+            }
+        }
     }
 
     /**
@@ -250,12 +282,12 @@ public class InvitationService implements InvitationDao {
     @Override
     public Set<Message> getInvitationsForGroup(String groupName) throws SQLException {
         final String QUERY = invitationProperties.getProperty("GET_INVITATION_FOR_GROUP");
-        preparedStatement = connection.getPreparedStatement(QUERY);
-        preparedStatement = utils.setPreparedStatementArgs(preparedStatement, groupName);
-        result = preparedStatement.executeQuery();
-        Set<Message> messages = extractInvitations();
-        preparedStatement.close();
-        return messages;
+        try (PreparedStatement preparedStatement = connection.getPreparedStatement(QUERY)) {
+            utils.setPreparedStatementArgs(preparedStatement, groupName);
+            try (ResultSet result = preparedStatement.executeQuery()) {
+                return extractInvitations(result);
+            }
+        }
     }
 
 
@@ -270,10 +302,12 @@ public class InvitationService implements InvitationDao {
     @Override
     public boolean setInvitationIsSentToInvitee(String invitee, String groupName) throws SQLException {
         final String QUERY = invitationProperties.getProperty("INVITATION_SENT_TO_INVITEE");
-        preparedStatement = connection.getPreparedStatement(QUERY);
-        preparedStatement = utils.setPreparedStatementArgs(preparedStatement, invitee, groupName);
-        int qResult = preparedStatement.executeUpdate();
-        preparedStatement.close();
+        int qResult;
+        try (PreparedStatement preparedStatement = connection.getPreparedStatement(QUERY)) {
+            utils.setPreparedStatementArgs(preparedStatement, invitee, groupName);
+            qResult = preparedStatement.executeUpdate();
+        }
+        invitationIndex.markSentToInvitee(invitee, groupName);
         return qResult > 0;
     }
 
@@ -288,20 +322,168 @@ public class InvitationService implements InvitationDao {
     @Override
     public boolean setInvitationIsSentToModerator(String invitee, String groupName) throws SQLException {
         final String QUERY = invitationProperties.getProperty("INVITATION_SENT_TO_MODERATOR");
-        preparedStatement = connection.getPreparedStatement(QUERY);
-        preparedStatement = utils.setPreparedStatementArgs(preparedStatement, invitee, groupName);
-        int qResult = preparedStatement.executeUpdate();
-        preparedStatement.close();
+        int qResult;
+        try (PreparedStatement preparedStatement = connection.getPreparedStatement(QUERY)) {
+            utils.setPreparedStatementArgs(preparedStatement, invitee, groupName);
+            qResult = preparedStatement.executeUpdate();
+        }
+        invitationIndex.markSentToModerator(invitee, groupName);
         return qResult > 0;
     }
 
+    /**
+     * The method gets the invitations that need to be sent to an invitee from the in-memory index
+     *
+     * @param invitee the person who is receiving the invitation
+     * @return Set          the set of messages which have to be delivered to the user
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    @Override
+    public Set<Message> getPendingInvitationsForInvitee(String invitee) throws SQLException {
+        loadIndex();
+        return invitationIndex.getPendingForInvitee(invitee);
+    }
+
+    /**
+     * The method gets the invitations that need to be sent to a moderator for all the groups they
+     * moderate, from the in-memory index
+     *
+     * @param moderator the moderator of the groups
+     * @return Set          the set of messages which have to be delivered to the moderator
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    @Override
+    public Set<Message> getPendingInvitationsForModerator(String moderator) throws SQLException {
+        loadIndex();
+        return invitationIndex.getPendingForModerator(moderator);
+    }
+
+    /**
+     * Sets the is sent flag for all the given invitations in a single batch, once they are sent to
+     * their invitees
+     *
+     * @param invitations the invitations that were delivered
+     * @return boolean      true if all the invitations were updated, false otherwise
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    @Override
+    public boolean setInvitationsAreSentToInvitee(Collection<Message> invitations) throws SQLException {
+        boolean updated = executeSentBatch("INVITATION_SENT_TO_INVITEE", invitations);
+        for (Message invitation : invitations) {
+            invitationIndex.markSentToInvitee(invitation.getTextOrPassword(), invitation.getReceiverOrPassword());
+        }
+        return updated;
+    }
+
+    /**
+     * Sets the is sent flag for all the given invitations in a single batch, once they are sent to
+     * the moderators of their groups
+     *
+     * @param invitations the invitations that were delivered
+     * @return boolean      true if all the invitations were updated, false otherwise
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    @Override
+    public boolean setInvitationsAreSentToModerator(Collection<Message> invitations) throws SQLException {
+        boolean updated = executeSentBatch("INVITATION_SENT_TO_MODERATOR", invitations);
+        for (Message invitation : invitations) {
+            invitationIndex.markSentToModerator(invitation.getTextOrPassword(), invitation.getReceiverOrPassword());
+        }
+        return updated;
+    }
+
+    /**
+     * Records the moderator of a group in the index, when a group is created or its moderator changes
+     *
+     * @param groupName the name of the group
+     * @param moderator the username of the moderator
+     */
+    @Override
+    public void updateGroupModerator(String groupName, String moderator) {
+        invitationIndex.setModerator(groupName, moderator);
+    }
+
+    /**
+     * Removes a deleted group and its pending invitations from the index
+     *
+     * @param groupName the name of the group
+     */
+    @Override
+    public void removeGroup(String groupName) {
+        invitationIndex.removeGroup(groupName);
+    }
+
+    /**
+     * Executes the given update once per invitation (invitee, group name) as a single batch.
+     *
+     * @param queryName   the name of the update query
+     * @param invitations the invitations to be updated
+     * @return boolean      true if every invitation was updated, false otherwise
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    private boolean executeSentBatch(String queryName, Collection<Message> invitations) throws SQLException {
+        if (invitations.isEmpty()) {
+            return true;
+        }
+        final String QUERY = invitationProperties.getProperty(queryName);
+        int[] qResults;
+        try (PreparedStatement preparedStatement = connection.getPreparedStatement(QUERY)) {
+            for (Message invitation : invitations) {
+                utils.setPreparedStatementArgs(preparedStatement,
+                        invitation.getTextOrPassword(), invitation.getReceiverOrPassword());
+                preparedStatement.addBatch();
+            }
+            qResults = preparedStatement.executeBatch();
+        }
+        boolean result = true;
+        for (int qResult : qResults) {
+            result &= qResult != 0;
+        }
+        return result;
+    }
+
+    /**
+     * Warms the in-memory index with the invitations that are yet to be delivered and the moderators
+     * of all the groups. This is done once, on first use.
+     *
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    private synchronized void loadIndex() throws SQLException {
+        if (indexLoaded) {
+            return;
+        }
+        final String MODERATORS_QUERY = invitationProperties.getProperty("GET_GROUP_MODERATORS");
+        try (PreparedStatement preparedStatement = connection.getPreparedStatement(MODERATORS_QUERY);
+             ResultSet result = preparedStatement.executeQuery()) {
+            while (result.next()) {
+                invitationIndex.setModerator(result.getString(GROUP_NAME), result.getString(MODERATOR_NAME));
+            }
+        }
+
+        final String PENDING_QUERY = invitationProperties.getProperty("GET_PENDING_INVITATIONS");
+        try (PreparedStatement preparedStatement = connection.getPreparedStatement(PENDING_QUERY);
+             ResultSet result = preparedStatement.executeQuery()) {
+            while (result.next()) {
+                Message invitation = Message.makeCreateInvitationMessage(
+                        result.getString(INVITER),
+                        result.getString(INVITEE),
+                        result.getString(GROUP_NAME)
+                );
+                invitationIndex.addInvitation(invitation, result.getBoolean(IS_SENT_INVITEE),
+                        result.getBoolean(IS_SENT_MODERATOR));
+            }
+        }
+        indexLoaded = true;
+    }
+
     /**
      * Method to extract invitations from a result set
      *
+     * @param result the result set of a query on the invitations
      * @return Set         the set of Message objects extracted from the database query results
      * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
      */
-    private Set<Message> extractInvitations() throws SQLException {
+    private Set<Message> extractInvitations(ResultSet result) throws SQLException {
         Set<Message> messages = new HashSet<>();
         while (result.next()) {
             boolean isAccepted = result.getBoolean(IS_ACCEPTED);
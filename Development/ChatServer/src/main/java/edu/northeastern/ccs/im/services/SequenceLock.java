@@ -0,0 +1,169 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.services;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serializes the numbering and the storing of the messages of the same users, or of the same
+ * group, so that the messages of a user or group are stored in the order of their sequence
+ * numbers, and a client catching up after the last number it has can never miss a message stored
+ * later with a smaller number.
+ *
+ * A sender takes the lock of the destinations of its message, takes their sequence numbers, stores
+ * the message and commits. The numbers taken by a sender that closes the lock without committing,
+ * because storing the message failed, are handed out again, so that a gap in the numbers of a user
+ * always means a message was deleted and never that one was lost.
+ *
+ * The users, and the groups, are spread over a fixed number of locks, which are always taken in the
+ * same order, so that senders locking several users at once cannot deadlock. A sender holding the
+ * lock of a group may take the lock of its members, but never the other way round.
+ */
+public final class SequenceLock implements AutoCloseable {
+
+    /**
+     * Number of locks the users, and the groups, are each spread over.
+     */
+    private static final int STRIPES = 64;
+
+    private static final ReentrantLock[] USER_STRIPES = newStripes();
+    private static final ReentrantLock[] GROUP_STRIPES = newStripes();
+
+    private final ConversationalMessageDAO dao;
+    private final boolean groups;
+    private final Set<String> names;
+    private final Deque<ReentrantLock> held = new ArrayDeque<>();
+    private final Deque<TakenSequence> taken = new ArrayDeque<>();
+    private boolean committed;
+
+    /**
+     * A sequence number taken under the lock, handed out again if the lock is not committed.
+     */
+    private static final class TakenSequence {
+        private final String name;
+        private final long sequence;
+
+        private TakenSequence(String name, long sequence) {
+            this.name = name;
+            this.sequence = sequence;
+        }
+    }
+
+    private SequenceLock(ConversationalMessageDAO dao, boolean groups, Collection<String> names) {
+        this.dao = dao;
+        this.groups = groups;
+        this.names = new HashSet<>(names);
+        ReentrantLock[] locks = groups ? GROUP_STRIPES : USER_STRIPES;
+        Set<Integer> stripes = new TreeSet<>();
+        for (String name : this.names) {
+            stripes.add(stripeOf(name));
+        }
+        for (int stripe : stripes) {
+            locks[stripe].lock();
+            held.push(locks[stripe]);
+        }
+    }
+
+    /**
+     * Takes the lock of the given users, waiting while other senders hold it.
+     *
+     * @param dao       the service handing out the sequence numbers
+     * @param userNames the user names of the destinations of the message
+     * @return SequenceLock the lock, to be closed once the message is stored
+     */
+    public static SequenceLock forUsers(ConversationalMessageDAO dao, Collection<String> userNames) {
+        return new SequenceLock(dao, false, userNames);
+    }
+
+    /**
+     * Takes the lock of a group, waiting while other senders hold it.
+     *
+     * @param dao       the service handing out the sequence numbers
+     * @param groupName the name of the group the message is sent to
+     * @return SequenceLock the lock, to be closed once the message is stored for all the members
+     */
+    public static SequenceLock forGroup(ConversationalMessageDAO dao, String groupName) {
+        return new SequenceLock(dao, true, Collections.singleton(groupName));
+    }
+
+    /**
+     * Tells which of the locks of the users, or of the groups, a name is spread over. Senders locking
+     * many users at once may lock them a few locks at a time, in the ascending order of their locks,
+     * instead of holding the locks of all of them.
+     *
+     * @param name the user name, or the name of the group
+     * @return int          the index of the lock of the name
+     */
+    public static int stripeOf(String name) {
+        return Math.floorMod(name.hashCode(), STRIPES);
+    }
+
+    /**
+     * Takes the next sequence number of the messages of a user, or group, locked by this lock.
+     *
+     * @param name the user name of the destination of the message, or the name of its group
+     * @return long         the sequence number
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    public long next(String name) throws SQLException {
+        if (!names.contains(name)) {
+            throw new IllegalArgumentException("The sequence of " + name + " is not locked");
+        }
+        long sequence = groups ? dao.nextGroupSequence(name) : dao.nextSequence(name);
+        taken.push(new TakenSequence(name, sequence));
+        return sequence;
+    }
+
+    /**
+     * Keeps the sequence numbers taken, once the message they number is stored.
+     */
+    public void commit() {
+        committed = true;
+    }
+
+    /**
+     * Hands the sequence numbers taken out again, unless the lock was committed, and releases the
+     * lock of the users or group.
+     */
+    @Override
+    public void close() {
+        if (!committed) {
+            // The last number taken is handed out again first, so that every one of them is.
+            for (TakenSequence sequence : taken) {
+                if (groups) {
+                    dao.releaseGroupSequence(sequence.name, sequence.sequence);
+                } else {
+                    dao.releaseSequence(sequence.name, sequence.sequence);
+                }
+            }
+        }
+        taken.clear();
+        Iterator<ReentrantLock> locks = held.iterator();
+        while (locks.hasNext()) {
+            locks.next().unlock();
+            locks.remove();
+        }
+    }
+
+    private static ReentrantLock[] newStripes() {
+        ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        return stripes;
+    }
+}
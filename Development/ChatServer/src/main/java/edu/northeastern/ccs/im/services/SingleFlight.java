@@ -0,0 +1,165 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.services;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces identical concurrent reads. The first caller of a key runs the database call, and the
+ * callers that ask for the same key while it is in flight wait for that call and share its result
+ * (or its exception) instead of running the call again. Once the call completes, the next caller
+ * of the key runs a fresh call.
+ *
+ * The number of calls that were run and of the calls that were collapsed into them is kept per
+ * query name rather than per key, so that the counters stay as few as the queries whatever the
+ * arguments they are read with.
+ */
+public class SingleFlight {
+
+    /**
+     * A database call whose result can be shared.
+     *
+     * @param <T> the type of the result of the call
+     */
+    @FunctionalInterface
+    public interface Call<T> {
+        /**
+         * Runs the call.
+         *
+         * @return T            the result of the call
+         * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+         */
+        T call() throws SQLException;
+    }
+
+    private static final String SEPARATOR = "::";
+
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> executedCalls = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> collapsedCalls = new ConcurrentHashMap<>();
+
+    /**
+     * Builds the key of a read from the name of its query and its arguments.
+     *
+     * @param queryName the name of the query
+     * @param args      the arguments of the query
+     * @return String       the key of the read
+     */
+    public static String key(String queryName, Object... args) {
+        StringBuilder key = new StringBuilder(queryName);
+        for (Object arg : args) {
+            key.append(SEPARATOR).append(arg);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Gets the name of the query of a read from its key.
+     *
+     * @param key the key of the read
+     * @return String       the name of the query
+     */
+    static String queryName(String key) {
+        int end = key.indexOf(SEPARATOR);
+        return end < 0 ? key : key.substring(0, end);
+    }
+
+    /**
+     * Runs the call, or waits for the identical call that is already in flight.
+     *
+     * @param key  the key of the read
+     * @param call the database call
+     * @param <T>  the type of the result of the call
+     * @return T            the result of the call
+     * @throws SQLException the sql exception thrown by the call that ran
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Call<T> call) throws SQLException {
+        CompletableFuture<Object> own = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, own);
+        if (existing != null) {
+            counter(collapsedCalls, queryName(key)).incrementAndGet();
+            return (T) await(existing);
+        }
+        counter(executedCalls, queryName(key)).incrementAndGet();
+        try {
+            T value = call.call();
+            own.complete(value);
+            return value;
+        } catch (SQLException | RuntimeException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    /**
+     * Waits for a call in flight and unwraps its exception.
+     *
+     * @param future the pending result of the call
+     * @return Object       the result of the call
+     * @throws SQLException the sql exception thrown by the call
+     */
+    private Object await(CompletableFuture<Object> future) throws SQLException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SQLException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(e);
+        }
+    }
+
+    private static AtomicLong counter(Map<String, AtomicLong> counters, String queryName) {
+        return counters.computeIfAbsent(queryName, k -> new AtomicLong());
+    }
+
+    /**
+     * @param queryName the name of the query
+     * @return the number of calls that were run for the query, whatever their arguments
+     */
+    public long getExecutedCount(String queryName) {
+        AtomicLong count = executedCalls.get(queryName);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @param queryName the name of the query
+     * @return the number of calls for the query that shared the result of a call in flight
+     */
+    public long getCollapsedCount(String queryName) {
+        AtomicLong count = collapsedCalls.get(queryName);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return a copy of the number of collapsed calls of every query name
+     */
+    public Map<String, Long> getCollapsedCounts() {
+        Map<String, Long> counts = new HashMap<>();
+        for (Map.Entry<String, AtomicLong> entry : collapsedCalls.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+        return counts;
+    }
+}
@@ -15,6 +15,7 @@ import edu.northeastern.ccs.im.models.User;
 
 import java.io.IOException;
 import java.sql.*;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -27,16 +28,14 @@ import java.util.Set;
  *
  * @author Kunal
  */
-public class UserService implements UserDao {
+public class UserService implements AsyncUserDao {
 
     /**
      * data members of the class used in multiple methods of the service
      */
     private Set<User> userSet = new HashSet<>();
     private IDBConnection conn;
-    private PreparedStatement pstmt = null;
     private DBUtils utils;
-    private ResultSet result;
     private static UserService userServiceInstance;
     private Properties userProperties;
 
@@ -60,7 +59,6 @@ public class UserService implements UserDao {
     private UserService() throws SQLException, IOException {
         conn = new DBConnection();
         utils = new DBUtils();
-        result = null;
         userProperties = conn.getQueryProperties();
     }
 
@@ -77,6 +75,43 @@ public class UserService implements UserDao {
         return userServiceInstance;
     }
 
+    /**
+     * Prepares the statements of this service, before the first client needs them.
+     *
+     * @return int          the number of statements prepared
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    public int warmUp() throws SQLException {
+        return conn.warmUp();
+    }
+
+    /**
+     * Marks the given users as logged out, in a single batch.
+     *
+     * @param userNames the usernames of the users to log out
+     * @return int          the number of users that were logged in and are now logged out
+     * @throws SQLException the sql exception thrown in case of an error with jdbc's interaction with the data source
+     */
+    public int logOutUsers(Collection<String> userNames) throws SQLException {
+        if (userNames.isEmpty()) {
+            return 0;
+        }
+        final String LOG_OUT_USER = userProperties.getProperty("LOG_OUT_USER");
+        try (PreparedStatement pstmt = conn.getPreparedStatement(LOG_OUT_USER)) {
+            for (String userName : userNames) {
+                utils.setPreparedStatementArgs(pstmt, userName);
+                pstmt.addBatch();
+            }
+            int loggedOut = 0;
+            for (int updated : pstmt.executeBatch()) {
+                if (updated > 0) {
+                    loggedOut++;
+                }
+            }
+            return loggedOut;
+        }
+    }
+
     /**
      * This functions adds all the available users in the database to a HashSet.
      *
@@ -86,17 +121,17 @@ public class UserService implements UserDao {
     @Override
     public Set<User> getAllUsers() throws SQLException {
         final String GET_ALL_USERS = userProperties.getProperty("GET_ALL_USERS");
-        pstmt = conn.getPreparedStatement(GET_ALL_USERS);
-        result = pstmt.executeQuery();
-        while (result.next()) {
-            String fName = result.getString(FIRST_NAME);
-            String lName = result.getString(LAST_NAME);
-            String uName = result.getString(USER_NAME);
-            String uPwd = result.getString(USER_PSWD);
-            boolean loggedInStatus = result.getBoolean(LOGGED_IN);
-            userSet.add(new User(fName, lName, uName, uPwd, loggedInStatus));
+        try (PreparedStatement pstmt = conn.getPreparedStatement(GET_ALL_USERS);
+             ResultSet result = pstmt.executeQuery()) {
+            while (result.next()) {
+                String fName = result.getString(FIRST_NAME);
+                String lName = result.getString(LAST_NAME);
+                String uName = result.getString(USER_NAME);
+                String uPwd = result.getString(USER_PSWD);
+                boolean loggedInStatus = result.getBoolean(LOGGED_IN);
+                userSet.add(new User(fName, lName, uName, uPwd, loggedInStatus));
+            }
         }
-        pstmt.close();
         return userSet;
     }
 
@@ -115,18 +150,19 @@ public class UserService implements UserDao {
         User user = null;
         final String GET_USER_USERNAME_PSWD =
                 userProperties.getProperty("GET_USER_USERNAME_PSWD");
-        pstmt = conn.getPreparedStatement(GET_USER_USERNAME_PSWD);
-        pstmt = utils.setPreparedStatementArgs(pstmt, username, password);
-        result = pstmt.executeQuery();
-        if (result.first()) {
-            String fName = result.getString(FIRST_NAME);
-            String lName = result.getString(LAST_NAME);
-            boolean loggedIn = result.getBoolean(LOGGED_IN);
-            boolean isTapped = result.getBoolean(IS_TAPPED);
-            user = new User(fName, lName, username, password, loggedIn);
-            user.setTapped(isTapped);
+        try (PreparedStatement pstmt = conn.getPreparedStatement(GET_USER_USERNAME_PSWD)) {
+            utils.setPreparedStatementArgs(pstmt, username, password);
+            try (ResultSet result = pstmt.executeQuery()) {
+                if (result.first()) {
+                    String fName = result.getString(FIRST_NAME);
+                    String lName = result.getString(LAST_NAME);
+                    boolean loggedIn = result.getBoolean(LOGGED_IN);
+                    boolean isTapped = result.getBoolean(IS_TAPPED);
+                    user = new User(fName, lName, username, password, loggedIn);
+                    user.setTapped(isTapped);
+                }
+            }
         }
-        pstmt.close();
         return user;
     }
 
@@ -141,17 +177,18 @@ public class UserService implements UserDao {
     public User getUserByUserName(String username) throws SQLException {
         User user = null;
         final String GET_USER_BY_USER_NAME = userProperties.getProperty("GET_USER_BY_USER_NAME");
-        pstmt = conn.getPreparedStatement(GET_USER_BY_USER_NAME);
-        pstmt = utils.setPreparedStatementArgs(pstmt, username);
-        result = pstmt.executeQuery();
-        if (result.first()) {
-            String fName = result.getString(FIRST_NAME);
-            String lName = result.getString(LAST_NAME);
-            String uPwd = result.getString(USER_PSWD);
-            boolean loggedIn = result.getBoolean(LOGGED_IN);
-            user = new User(fName, lName, username, uPwd, loggedIn);
+        try (PreparedStatement pstmt = conn.getPreparedStatement(GET_USER_BY_USER_NAME)) {
+            utils.setPreparedStatementArgs(pstmt, username);
+            try (ResultSet result = pstmt.executeQuery()) {
+                if (result.first()) {
+                    String fName = result.getString(FIRST_NAME);
+                    String lName = result.getString(LAST_NAME);
+                    String uPwd = result.getString(USER_PSWD);
+                    boolean loggedIn = result.getBoolean(LOGGED_IN);
+                    user = new User(fName, lName, username, uPwd, loggedIn);
+                }
+            }
         }
-        pstmt.close();
         return user;
     }
 
@@ -165,12 +202,12 @@ public class UserService implements UserDao {
     @Override
     public boolean createUser(User u) throws SQLException {
         final String CREATE_USER = userProperties.getProperty("CREATE_USER");
-        pstmt = conn.getPreparedStatement(CREATE_USER);
-        pstmt = utils.setPreparedStatementArgs(pstmt, u.getFirstName(), u.getLastName(),
-                u.getUserName(), u.getUserPassword(), u.isLoggedIn());
-        int qResult = pstmt.executeUpdate();
-        pstmt.close();
-        return (qResult > 0);
+        try (PreparedStatement pstmt = conn.getPreparedStatement(CREATE_USER)) {
+            utils.setPreparedStatementArgs(pstmt, u.getFirstName(), u.getLastName(),
+                    u.getUserName(), u.getUserPassword(), u.isLoggedIn());
+            int qResult = pstmt.executeUpdate();
+            return (qResult > 0);
+        }
     }
 
     /**
@@ -189,20 +226,20 @@ public class UserService implements UserDao {
     @Override
     public boolean updateUserAttributes(String uname, String attributeName, String attributeValue) throws SQLException {
         final String UPDATE_USER = "UPDATE user_profile SET " + attributeName + "  = ? WHERE username = ?";
-        pstmt = conn.getPreparedStatement(UPDATE_USER);
-        if (attributeName.equals("user_searchable")) {
-            if (attributeValue.equals(Integer.toString(0)) || attributeValue.equalsIgnoreCase("false"))
-                pstmt = utils.setPreparedStatementArgs(pstmt, "0", uname);
-            else if (attributeValue.equals(Integer.toString(1)) || attributeValue.equalsIgnoreCase("true"))
-                pstmt = utils.setPreparedStatementArgs(pstmt, "1", uname);
-            else
-                ChatLogger.error("Searchable values should be boolean (1/0 True/False)");
-        } else {
-            pstmt = utils.setPreparedStatementArgs(pstmt, attributeValue, uname);
+        try (PreparedStatement pstmt = conn.getPreparedStatement(UPDATE_USER)) {
+            if (attributeName.equals("user_searchable")) {
+                if (attributeValue.equals(Integer.toString(0)) || attributeValue.equalsIgnoreCase("false"))
+                    utils.setPreparedStatementArgs(pstmt, "0", uname);
+                else if (attributeValue.equals(Integer.toString(1)) || attributeValue.equalsIgnoreCase("true"))
+                    utils.setPreparedStatementArgs(pstmt, "1", uname);
+                else
+                    ChatLogger.error("Searchable values should be boolean (1/0 True/False)");
+            } else {
+                utils.setPreparedStatementArgs(pstmt, attributeValue, uname);
+            }
+            int qResult = pstmt.executeUpdate();
+            return qResult > 0;
         }
-        int qResult = pstmt.executeUpdate();
-        pstmt.close();
-        return qResult > 0;
     }
 
 
@@ -218,11 +255,11 @@ public class UserService implements UserDao {
     @Override
     public boolean deleteUser(User u) throws SQLException {
         final String DELETE_USER = userProperties.getProperty("DELETE_USER");
-        pstmt = conn.getPreparedStatement(DELETE_USER);
-        pstmt = utils.setPreparedStatementArgs(pstmt, u.getUserName());
-        int qResult = pstmt.executeUpdate();
-        pstmt.close();
-        return qResult > 0;
+        try (PreparedStatement pstmt = conn.getPreparedStatement(DELETE_USER)) {
+            utils.setPreparedStatementArgs(pstmt, u.getUserName());
+            int qResult = pstmt.executeUpdate();
+            return qResult > 0;
+        }
     }
 
 
@@ -237,11 +274,11 @@ public class UserService implements UserDao {
     @Override
     public boolean followUser(User followee, User follower) throws SQLException {
         final String FOLLOW_USER = userProperties.getProperty("FOLLOW_USER");
-        pstmt = conn.getPreparedStatement(FOLLOW_USER);
-        pstmt = utils.setPreparedStatementArgs(pstmt, followee.getUserName(), follower.getUserName());
-        int qResult = pstmt.executeUpdate();
-        pstmt.close();
-        return (qResult > 0);
+        try (PreparedStatement pstmt = conn.getPreparedStatement(FOLLOW_USER)) {
+            utils.setPreparedStatementArgs(pstmt, followee.getUserName(), follower.getUserName());
+            int qResult = pstmt.executeUpdate();
+            return (qResult > 0);
+        }
     }
 
     /**
@@ -255,11 +292,11 @@ public class UserService implements UserDao {
     @Override
     public boolean unfollowUser(User followee, User follower) throws SQLException {
         final String UNFOLLOW_USER = userProperties.getProperty("UNFOLLOW_USER");
-        pstmt = conn.getPreparedStatement(UNFOLLOW_USER);
-        pstmt = utils.setPreparedStatementArgs(pstmt, followee.getUserName(), follower.getUserName());
-        int qResult = pstmt.executeUpdate();
-        pstmt.close();
-        return (qResult > 0);
+        try (PreparedStatement pstmt = conn.getPreparedStatement(UNFOLLOW_USER)) {
+            utils.setPreparedStatementArgs(pstmt, followee.getUserName(), follower.getUserName());
+            int qResult = pstmt.executeUpdate();
+            return (qResult > 0);
+        }
     }
 
     /**
@@ -274,12 +311,12 @@ public class UserService implements UserDao {
     @Override
     public Map<String, String> searchUser(String searchString) throws SQLException {
         final String SEARCH_USER = userProperties.getProperty("SEARCH_USER");
-        pstmt = conn.getPreparedStatement(SEARCH_USER);
-        pstmt = utils.setPreparedStatementArgs(pstmt, searchString, searchString);
-        result = pstmt.executeQuery();
-        Map<String, String> resultNames = populateMapWithNames(result);
-        pstmt.close();
-        return resultNames;
+        try (PreparedStatement pstmt = conn.getPreparedStatement(SEARCH_USER)) {
+            utils.setPreparedStatementArgs(pstmt, searchString, searchString);
+            try (ResultSet result = pstmt.executeQuery()) {
+                return populateMapWithNames(result);
+            }
+        }
     }
 
     /**
@@ -292,12 +329,12 @@ public class UserService implements UserDao {
     @Override
     public Map<String, String> getFollowers(User followee) throws SQLException {
         final String GET_FOLLOWERS = userProperties.getProperty("GET_FOLLOWERS");
-        pstmt = conn.getPreparedStatement(GET_FOLLOWERS);
-        pstmt = utils.setPreparedStatementArgs(pstmt, followee.getUserName());
-        result = pstmt.executeQuery();
-        Map<String, String> resultNames = populateMapWithNames(result);
-        pstmt.close();
-        return resultNames;
+        try (PreparedStatement pstmt = conn.getPreparedStatement(GET_FOLLOWERS)) {
+            utils.setPreparedStatementArgs(pstmt, followee.getUserName());
+            try (ResultSet result = pstmt.executeQuery()) {
+                return populateMapWithNames(result);
+            }
+        }
     }
 
     /**
@@ -310,12 +347,12 @@ public class UserService implements UserDao {
     @Override
     public Map<String, String> getFollowees(User follower) throws SQLException {
         final String GET_FOLLOWEES = userProperties.getProperty("GET_FOLLOWEES");
-        pstmt = conn.getPreparedStatement(GET_FOLLOWEES);
-        pstmt = utils.setPreparedStatementArgs(pstmt, follower.getUserName());
-        result = pstmt.executeQuery();
-        Map<String, String> resultNames = populateMapWithNames(result);
-        pstmt.close();
-        return resultNames;
+        try (PreparedStatement pstmt = conn.getPreparedStatement(GET_FOLLOWEES)) {
+            utils.setPreparedStatementArgs(pstmt, follower.getUserName());
+            try (ResultSet result = pstmt.executeQuery()) {
+                return populateMapWithNames(result);
+            }
+        }
     }
 
 
@@ -331,12 +368,12 @@ public class UserService implements UserDao {
     @Override
     public Map<String, String> getOnlineUsers(User follower) throws SQLException {
         final String GET_ONLINE_USER = userProperties.getProperty("GET_ONLINE_USER");
-        pstmt = conn.getPreparedStatement(GET_ONLINE_USER);
-        pstmt = utils.setPreparedStatementArgs(pstmt, follower.getUserName());
-        result = pstmt.executeQuery();
-        Map<String, String> resultNames = populateMapWithNames(result);
-        pstmt.close();
-        return resultNames;
+        try (PreparedStatement pstmt = conn.getPreparedStatement(GET_ONLINE_USER)) {
+            utils.setPreparedStatementArgs(pstmt, follower.getUserName());
+            try (ResultSet result = pstmt.executeQuery()) {
+                return populateMapWithNames(result);
+            }
+        }
     }
 
     /**
@@ -349,9 +386,11 @@ public class UserService implements UserDao {
     @Override
     public boolean tapUser(String userOfInterest) throws SQLException {
         final String TAP_USER = userProperties.getProperty("TAP_USER");
-        pstmt = utils.setPreparedStatementArgs(conn.getPreparedStatement(TAP_USER), userOfInterest);
-        int qResult = pstmt.executeUpdate();
-        return qResult > 0;
+        try (PreparedStatement pstmt = conn.getPreparedStatement(TAP_USER)) {
+            utils.setPreparedStatementArgs(pstmt, userOfInterest);
+            int qResult = pstmt.executeUpdate();
+            return qResult > 0;
+        }
     }
 
     /**
@@ -366,7 +405,7 @@ public class UserService implements UserDao {
         Map<String, String> resultUsers = new HashMap<>();
         while (resultSet.next()) {
             String username = resultSet.getString(USER_NAME);
-            String fullName = resultSet.getString(FIRST_NAME) + " " + result.getString(LAST_NAME);
+            String fullName = resultSet.getString(FIRST_NAME) + " " + resultSet.getString(LAST_NAME);
             resultUsers.put(username, fullName);
         }
         return resultUsers;
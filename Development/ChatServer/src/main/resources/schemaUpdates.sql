@@ -0,0 +1,35 @@
+-- Schema changes applied on top of the prattle database, in the order they were introduced.
+
+-- Inbox summary: last message and unread count of every conversation of a user.
+CREATE TABLE IF NOT EXISTS prattle.inbox_summary (
+    owner              VARCHAR(45)  NOT NULL,
+    conversation       VARCHAR(45)  NOT NULL,
+    is_group           TINYINT(1)   NOT NULL DEFAULT 0,
+    last_sender        VARCHAR(45),
+    last_msg_text      TEXT,
+    last_msg_key       VARCHAR(255),
+    last_msg_timestamp TIMESTAMP(3) NULL,
+    unread_count       INT          NOT NULL DEFAULT 0,
+    PRIMARY KEY (owner, conversation)
+);
+
+-- Per-user sequence numbers: every message stored for a user gets the next number of that user, so
+-- that a client catches up from the last number it saw with a range scan of the index.
+ALTER TABLE prattle.messages ADD COLUMN msg_seq BIGINT NOT NULL DEFAULT 0;
+UPDATE prattle.messages m
+    JOIN (SELECT msg_uniquekey, ROW_NUMBER() OVER (PARTITION BY msg_dest ORDER BY msg_timestamp) AS seq
+          FROM prattle.messages) numbered ON m.msg_uniquekey = numbered.msg_uniquekey
+SET m.msg_seq = numbered.seq;
+CREATE INDEX messages_dest_seq ON prattle.messages (msg_dest, msg_seq);
+
+-- Per-group sequence numbers: every message sent to a group gets the next number of that group, carried
+-- on the copy of every member, so that members see the same order and ask for the range they missed.
+ALTER TABLE prattle.group_messages ADD COLUMN group_name VARCHAR(45), ADD COLUMN group_seq BIGINT NOT NULL DEFAULT 0;
+UPDATE prattle.group_messages SET group_name = SUBSTRING_INDEX(SUBSTRING_INDEX(group_unique_key, '::', 2), '::', -1);
+UPDATE prattle.group_messages gm
+    JOIN (SELECT group_unique_key, ROW_NUMBER() OVER (PARTITION BY group_name
+                 ORDER BY SUBSTRING_INDEX(group_unique_key, '::', -1), group_unique_key) AS seq
+          FROM (SELECT DISTINCT group_unique_key, group_name FROM prattle.group_messages) sent) numbered
+        ON gm.group_unique_key = numbered.group_unique_key
+SET gm.group_seq = numbered.seq;
+CREATE INDEX group_messages_group_seq ON prattle.group_messages (group_name, group_seq);
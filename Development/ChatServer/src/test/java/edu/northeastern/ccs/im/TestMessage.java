@@ -1083,6 +1083,171 @@ public class TestMessage {
         Assertions.assertFalse(message.isGetConversationHistory());
     }
 
+    /**
+     * Test make message for get inbox messages.
+     */
+    @Test
+    public void testMakeMessageForGetInbox() {
+        Message message = Message.makeMessage(INB, SENDER_NAME, NULL_OUTPUT, NULL_OUTPUT);
+        Assertions.assertTrue(message.isGetInboxMessage());
+        Assertions.assertEquals(SENDER_NAME, message.getName());
+    }
+
+    /**
+     * Test is get inbox for false condition.
+     */
+    @Test
+    public void testIsGetInboxMessageForFalse() {
+        Message message = Message.makeQuitMessage(SENDER_NAME);
+        Assertions.assertFalse(message.isGetInboxMessage());
+    }
+
+    /**
+     * Test make message for the heartbeats.
+     */
+    @Test
+    public void testMakeMessageForPingAndPong() {
+        Message ping = Message.makeMessage(PNG, SENDER_NAME, NULL_OUTPUT, NULL_OUTPUT);
+        Message pong = Message.makeMessage(PON, SENDER_NAME, NULL_OUTPUT, NULL_OUTPUT);
+        Assertions.assertTrue(ping.isPingMessage());
+        Assertions.assertFalse(ping.isPongMessage());
+        Assertions.assertTrue(pong.isPongMessage());
+        Assertions.assertEquals(Message.makePingMessage(SENDER_NAME).toString(), ping.toString());
+        Assertions.assertEquals(Message.makePongMessage(SENDER_NAME).toString(), pong.toString());
+    }
+
+    /**
+     * Test make message for telling a client to slow down.
+     */
+    @Test
+    public void testMakeMessageForSlowDown() {
+        Message message = Message.makeMessage(SLW, PRATTLE, "500", NULL_OUTPUT);
+        Assertions.assertTrue(message.isSlowDownMessage());
+        Assertions.assertEquals(MessageType.SLOW_DOWN, message.getType());
+        Assertions.assertEquals("500", message.getTextOrPassword());
+        Assertions.assertFalse(Message.makePingMessage(SENDER_NAME).isSlowDownMessage());
+    }
+
+    /**
+     * Test that the message refusing a connection is parsed with its reason and retry time.
+     */
+    @Test
+    public void testMakeMessageForServerBusy() {
+        Message message = Message.makeMessage(BSY, PRATTLE, "Too many connections", "5000");
+        Assertions.assertTrue(message.isServerBusyMessage());
+        Assertions.assertEquals("Too many connections", message.getTextOrPassword());
+        Assertions.assertEquals("5000", message.getReceiverOrPassword());
+        Assertions.assertEquals("BSY 7 Prattle 20 Too many connections 4 5000", message.toString());
+        Assertions.assertFalse(Message.makePingMessage(SENDER_NAME).isServerBusyMessage());
+    }
+
+    /**
+     * Test that the message resuming a session is parsed with its token.
+     */
+    @Test
+    public void testMakeMessageForResume() {
+        Message message = Message.makeMessage(RSM, SENDER_NAME, "c2Vzc2lvbg", NULL_OUTPUT);
+        Assertions.assertTrue(message.isResumeMessage());
+        Assertions.assertEquals(SENDER_NAME, message.getName());
+        Assertions.assertEquals("c2Vzc2lvbg", message.getTextOrPassword());
+        Assertions.assertTrue(message.toString().startsWith("RSM "));
+        Assertions.assertFalse(Message.makeLoginMessage(SENDER_NAME, "c2Vzc2lvbg").isResumeMessage());
+    }
+
+    /**
+     * Test that the acknowledgement of a stored message is parsed with its key, and that the key of
+     * the stored message a keyed message delivers is kept off the wire.
+     */
+    @Test
+    public void testMakeMessageForAcknowledge() {
+        Message message = Message.makeMessage(ACK, SENDER_NAME, MESSAGE_KEY, NULL_OUTPUT);
+        Assertions.assertTrue(message.isAcknowledgeMessage());
+        Assertions.assertEquals(MESSAGE_KEY, message.getTextOrPassword());
+        Assertions.assertTrue(message.toString().startsWith("ACK "));
+        Message keyed = Message.addUniqueKeyToMsg(Message.makeBroadcastMessage(SENDER_NAME, "hello"), "hello",
+                MESSAGE_KEY);
+        Assertions.assertEquals(MESSAGE_KEY, keyed.getUniqueKey());
+        Assertions.assertFalse(keyed.toString().contains(MESSAGE_KEY));
+        Assertions.assertNull(Message.makeBroadcastMessage(SENDER_NAME, "hello").getUniqueKey());
+    }
+
+    /**
+     * Test that the message asking for the messages after a sequence number is parsed with it, and
+     * that the message ending a page tells whether more messages come after it.
+     */
+    @Test
+    public void testMakeMessageForSync() {
+        Message message = Message.makeMessage(SYN, SENDER_NAME, "41", NULL_OUTPUT);
+        Assertions.assertTrue(message.isSyncMessage());
+        Assertions.assertEquals("41", message.getTextOrPassword());
+        Assertions.assertEquals("SYN 5 Alice 2 41 2 --", message.toString());
+        Message page = Message.makeSyncMessage(PRATTLE, "141", "true");
+        Assertions.assertEquals("SYN 7 Prattle 3 141 4 true", page.toString());
+        Assertions.assertFalse(Message.makeAcknowledgeMessage(SENDER_NAME, "41").isSyncMessage());
+    }
+
+    /**
+     * Test that the message giving an ID to the next message a client sends is parsed with the ID.
+     */
+    @Test
+    public void testMakeMessageForMessageId() {
+        Message message = Message.makeMessage(MID, SENDER_NAME, "send-1", NULL_OUTPUT);
+        Assertions.assertTrue(message.isMessageIdMessage());
+        Assertions.assertEquals("send-1", message.getTextOrPassword());
+        Assertions.assertEquals("MID 5 Alice 6 send-1 2 --", message.toString());
+        Assertions.assertFalse(Message.makeSyncMessage(SENDER_NAME, "1").isMessageIdMessage());
+    }
+
+    /**
+     * Test that the message asking for a range of the messages of a group is parsed with the range
+     * and the group name, and that the group sequence number is not sent over the network.
+     */
+    @Test
+    public void testMakeMessageForGetGroupRange() {
+        Message message = Message.makeMessage(GRG, SENDER_NAME, "41-57", GROUP_NAME);
+        Assertions.assertTrue(message.isGetGroupRangeMessage());
+        Assertions.assertEquals("41-57", message.getTextOrPassword());
+        Assertions.assertEquals(GROUP_NAME, message.getReceiverOrPassword());
+        Assertions.assertEquals("GRG 5 Alice 5 41-57 5 group", message.toString());
+        Message groupMessage = Message.makeGroupMessage(SENDER_NAME, MESSAGE_TEXT, GROUP_NAME);
+        groupMessage.setGroupSequence(41);
+        Assertions.assertEquals(41, groupMessage.getGroupSequence());
+        Assertions.assertEquals(Message.makeGroupMessage(SENDER_NAME, MESSAGE_TEXT, GROUP_NAME).toString(),
+                groupMessage.toString());
+        Assertions.assertFalse(Message.makeSyncMessage(SENDER_NAME, "41").isGetGroupRangeMessage());
+    }
+
+    /**
+     * Test that the messages subscribing to, unsubscribing from and publishing on a channel are
+     * parsed with the channel name.
+     */
+    @Test
+    public void testMakeMessageForChannels() {
+        Message subscribe = Message.makeMessage(SUB, SENDER_NAME, "news", NULL_OUTPUT);
+        Assertions.assertTrue(subscribe.isSubscribeMessage());
+        Assertions.assertEquals("news", subscribe.getTextOrPassword());
+        Message unsubscribe = Message.makeMessage(UNS, SENDER_NAME, "news", NULL_OUTPUT);
+        Assertions.assertTrue(unsubscribe.isUnsubscribeMessage());
+        Assertions.assertEquals("news", unsubscribe.getTextOrPassword());
+        Message publish = Message.makeMessage(PUB, SENDER_NAME, MESSAGE_TEXT, "news");
+        Assertions.assertTrue(publish.isPublishMessage());
+        Assertions.assertEquals(MESSAGE_TEXT, publish.getTextOrPassword());
+        Assertions.assertEquals("news", publish.getReceiverOrPassword());
+        Assertions.assertEquals("PUB 5 Alice 17 Hello, I am Alice 4 news", publish.toString());
+        Assertions.assertFalse(subscribe.isPublishMessage());
+    }
+
+    /**
+     * Test that a message is encoded once, and the same bytes are used for every connection.
+     */
+    @Test
+    public void testToFrame() {
+        Message message = Message.makeBroadcastMessage(SENDER_NAME, "hello");
+        byte[] frame = message.toFrame();
+        Assertions.assertEquals(message.toString(), new String(frame));
+        Assertions.assertSame(frame, message.toFrame());
+    }
+
     /**
      * CONSTANTS to be used as expected values or method arguments
      **/
@@ -1123,6 +1288,20 @@ public class TestMessage {
     private static final String LGP = "LGP";
     private static final String GCH = "GCH";
     private static final String TPU = "TPU";
+    private static final String INB = "INB";
+    private static final String PNG = "PNG";
+    private static final String PON = "PON";
+    private static final String SLW = "SLW";
+    private static final String BSY = "BSY";
+    private static final String RSM = "RSM";
+    private static final String ACK = "ACK";
+    private static final String SYN = "SYN";
+    private static final String MID = "MID";
+    private static final String GRG = "GRG";
+    private static final String SUB = "SUB";
+    private static final String UNS = "UNS";
+    private static final String PUB = "PUB";
+    private static final String MESSAGE_KEY = "a1b2c3";
     private static final String NULL_OUTPUT = "--";
     private static final String SENDER_NAME = "Alice";
     private static final String PRATTLE = "Prattle";
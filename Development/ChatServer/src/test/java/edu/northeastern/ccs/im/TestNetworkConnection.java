@@ -402,4 +402,76 @@ public class TestNetworkConnection {
         assertThrows(AssertionError.class, () -> itr.hasNext());
     }
 
+
+    /**
+     * Test that a blocking connection waits for a message sent over a real socket, and reports the
+     * end of the stream once the other end closes.
+     *
+     * @throws IOException the io exception that can be encountered when opening the sockets
+     */
+    @Test
+    public void testBlockingIterator() throws IOException {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new java.net.InetSocketAddress("localhost", 0));
+            SocketChannel client = SocketChannel.open(server.getLocalAddress());
+            NetworkConnection serverSide = new NetworkConnection(server.accept(), true);
+            NetworkConnection clientSide = new NetworkConnection(client, true);
+            assertTrue(clientSide.sendMessage(Message.makeBroadcastMessage("Alice", "Hey there")));
+            Iterator<Message> itr = serverSide.iterator();
+            assertTrue(itr.hasNext());
+            Message received = itr.next();
+            assertEquals("Alice", received.getName());
+            assertEquals("Hey there", received.getTextOrPassword());
+            clientSide.close();
+            assertFalse(itr.hasNext());
+            assertFalse(serverSide.isOpen());
+            serverSide.close();
+        }
+    }
+
+    /**
+     * Test that a blocking connection is open until it is closed.
+     *
+     * @throws IOException the io exception that can be encountered when opening a SocketChannel
+     */
+    @Test
+    public void testBlockingIsOpen() throws IOException {
+        NetworkConnection conn = new NetworkConnection(SocketChannel.open(), true);
+        assertTrue(conn.isOpen());
+        conn.close();
+        assertFalse(conn.isOpen());
+    }
+
+    /**
+     * Test that a hibernating connection releases its buffer and selector, and gets them back to
+     * read the next message.
+     *
+     * @throws IOException the io exception that can be encountered when opening the sockets
+     * @throws InterruptedException if interrupted while waiting for the message
+     */
+    @Test
+    public void testHibernateAndRehydrate() throws IOException, InterruptedException {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new java.net.InetSocketAddress("localhost", 0));
+            SocketChannel client = SocketChannel.open(server.getLocalAddress());
+            NetworkConnection serverSide = new NetworkConnection(server.accept());
+            NetworkConnection clientSide = new NetworkConnection(client, true);
+            assertTrue(serverSide.hibernate());
+            assertTrue(serverSide.isHibernating());
+            assertFalse(serverSide.hibernate());
+            assertTrue(clientSide.sendMessage(Message.makeBroadcastMessage("Alice", "Hey there")));
+            Iterator<Message> itr = serverSide.iterator();
+            for (int i = 0; i < 100 && !itr.hasNext(); i++) {
+                Thread.sleep(10);
+            }
+            assertFalse(serverSide.isHibernating());
+            assertFalse(serverSide.hibernate());
+            assertEquals("Hey there", itr.next().getTextOrPassword());
+            assertTrue(serverSide.hibernate());
+            assertFalse(clientSide.hibernate());
+            clientSide.close();
+            serverSide.close();
+        }
+    }
+
 }
@@ -0,0 +1,126 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test suite for the DBExecutor class.
+ */
+public class TestDBExecutor {
+
+    /**
+     * Test that an asynchronous call completes with its result.
+     */
+    @Test
+    public void testSupplyAsync() throws Exception {
+        CompletableFuture<String> result = DBExecutor.getInstance().supplyAsync(() -> "done");
+        assertEquals("done", result.get());
+    }
+
+    /**
+     * Test that the exception of an asynchronous call completes its future.
+     */
+    @Test
+    public void testSupplyAsyncFailure() {
+        SQLException failure = new SQLException("failed");
+        CompletableFuture<String> result = DBExecutor.getInstance().supplyAsync(() -> {
+            throw failure;
+        });
+        ExecutionException thrown = assertThrows(ExecutionException.class, result::get);
+        assertSame(failure, thrown.getCause());
+    }
+
+    /**
+     * Test that an asynchronous call that exceeds its timeout is failed with a TimeoutException.
+     */
+    @Test
+    public void testSupplyAsyncTimeout() {
+        CompletableFuture<String> result = DBExecutor.getInstance().supplyAsync(() -> {
+            Thread.sleep(5000);
+            return "late";
+        }, 50);
+        ExecutionException thrown = assertThrows(ExecutionException.class, result::get);
+        assertTrue(thrown.getCause() instanceof TimeoutException);
+    }
+
+    /**
+     * Test that the time taken by the calls is averaged, and that no call is left waiting.
+     */
+    @Test
+    public void testLatency() throws SQLException {
+        for (int i = 0; i < 8; i++) {
+            DBExecutor.await(DBExecutor.getInstance().submit(() -> {
+                Thread.sleep(20);
+                return null;
+            }));
+        }
+        assertTrue(DBExecutor.getInstance().getAverageLatencyInMs() > 0);
+        assertEquals(0, DBExecutor.getInstance().getQueueDepth());
+    }
+
+    /**
+     * Test that await rethrows the exception of the call as an SQLException.
+     */
+    @Test
+    public void testAwait() throws SQLException {
+        assertEquals(1, (int) DBExecutor.await(DBExecutor.getInstance().submit(() -> 1)));
+        SQLException failure = new SQLException("failed");
+        assertSame(failure, assertThrows(SQLException.class,
+                () -> DBExecutor.await(DBExecutor.getInstance().submit(() -> {
+                    throw failure;
+                }))));
+    }
+
+    /**
+     * Test that calls submitted from the threads of the pool run on those threads, so that calls
+     * waiting for nested calls do not wait for ever when they occupy every thread of the pool.
+     */
+    @Test
+    public void testNestedSubmitRunsInline() throws SQLException {
+        DBExecutor executor = DBExecutor.getInstance();
+        List<Future<Thread>> outer = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            outer.add(executor.submit(() -> {
+                Thread.sleep(20);
+                Thread caller = Thread.currentThread();
+                assertSame(caller, DBExecutor.await(executor.submit(Thread::currentThread)));
+                return caller;
+            }));
+        }
+        for (Future<Thread> future : outer) {
+            assertTrue(DBExecutor.await(future).getName().startsWith("db-executor-"));
+        }
+    }
+
+    /**
+     * Test that a call waited for runs on the pool and rethrows the exception of the call.
+     */
+    @Test
+    public void testCall() throws SQLException {
+        assertTrue(DBExecutor.getInstance().call(() -> Thread.currentThread().getName())
+                .startsWith("db-executor-"));
+        SQLException failure = new SQLException("failed");
+        assertSame(failure, assertThrows(SQLException.class, () -> DBExecutor.getInstance().call(() -> {
+            throw failure;
+        })));
+    }
+}
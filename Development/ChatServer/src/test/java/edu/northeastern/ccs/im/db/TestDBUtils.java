@@ -19,6 +19,7 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.verify;
 
 /**
  * The type Test db utils.
@@ -123,4 +124,19 @@ public class TestDBUtils {
         PreparedStatement ps = db.setPreparedStatementArgs(mockedPreparedStatement, false, true);
         Assertions.assertNotNull(ps);
     }
+
+    /**
+     * Test set prepared statement args to cover conditions for condition coverage
+     * with setLong.
+     *
+     * @throws SQLException the sql exception
+     */
+    @Test
+    public void testSetPreparedStatementArgsForLong() throws SQLException {
+        DBUtils db = new DBUtils();
+        PreparedStatement ps = db.setPreparedStatementArgs(mockedPreparedStatement, "AB", 42L, 7);
+        Assertions.assertNotNull(ps);
+        verify(mockedPreparedStatement).setLong(2, 42L);
+        verify(mockedPreparedStatement).setInt(3, 7);
+    }
 }
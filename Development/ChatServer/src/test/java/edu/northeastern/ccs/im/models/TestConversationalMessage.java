@@ -64,6 +64,28 @@ public class TestConversationalMessage {
     }
 
 
+    /**
+     * Test for getSequence() and setSequence()
+     */
+    @Test
+    public void testSequence() {
+        ConversationalMessage message = new ConversationalMessage("AB", "ABC", "hello", null, "ABABC2018:05:05");
+        assertEquals(0, message.getSequence());
+        message.setSequence(42);
+        assertEquals(42, message.getSequence());
+    }
+
+    /**
+     * Test for getGroupSequence() and setGroupSequence()
+     */
+    @Test
+    public void testGroupSequence() {
+        ConversationalMessage message = new ConversationalMessage("AB", "ABC", "hello", null, "ABABC2018:05:05");
+        assertEquals(0, message.getGroupSequence());
+        message.setGroupSequence(7);
+        assertEquals(7, message.getGroupSequence());
+    }
+
     /**
      * Test for toString()
      */
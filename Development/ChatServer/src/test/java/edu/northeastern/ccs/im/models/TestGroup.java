@@ -115,8 +115,11 @@ public class TestGroup {
         Message msg = Message.makeLoginMessage(TEST_LOGIN, "");
         Mockito.when(DAN.userSendMessage(msg)).thenReturn(DUMMY_MSG_UNIQUE_KEY);
         Mockito.when(CAROL.userSendMessage(msg)).thenReturn(DUMMY_MSG_UNIQUE_KEY);
+        Mockito.when(mockedCMS.nextGroupSequence(TEST_GROUP_NAME)).thenReturn(7L);
         testGroup.groupSendMessage(msg, DUMMY_MSG_UNIQUE_KEY);
-        Mockito.verify(mockedCMS, Mockito.atLeastOnce()).insertGroupConversationalMessage(DUMMY_MSG_UNIQUE_KEY, DUMMY_MSG_UNIQUE_KEY);
+        Assertions.assertEquals(7, msg.getGroupSequence());
+        Mockito.verify(mockedCMS, Mockito.times(2)).insertGroupConversationalMessage(DUMMY_MSG_UNIQUE_KEY,
+                DUMMY_MSG_UNIQUE_KEY, msg.getReceiverOrPassword(), 7L);
 
 
     }
@@ -152,8 +155,12 @@ public class TestGroup {
         Mockito.when(DAN.userSendMessage(msg)).thenReturn(DUMMY_MSG_UNIQUE_KEY);
         Mockito.when(CAROL.userSendMessage(msg)).thenReturn(DUMMY_MSG_UNIQUE_KEY);
         Mockito.when(GARY.userSendMessage(msg)).thenReturn(DUMMY_MSG_UNIQUE_KEY);
+        Mockito.when(mockedCMS.nextGroupSequence(TEST_GROUP_NAME)).thenReturn(7L);
         testGroup.groupSendMessage(msg, DUMMY_MSG_UNIQUE_KEY);
-        Mockito.verify(mockedCMS, Mockito.atLeastOnce()).insertGroupConversationalMessage(DUMMY_MSG_UNIQUE_KEY, DUMMY_MSG_UNIQUE_KEY);
+        // the member group delivers with the sequence number of the group the message was sent to
+        Mockito.verify(mockedCMS, Mockito.times(1)).nextGroupSequence(Mockito.anyString());
+        Mockito.verify(mockedCMS, Mockito.atLeastOnce()).insertGroupConversationalMessage(DUMMY_MSG_UNIQUE_KEY,
+                DUMMY_MSG_UNIQUE_KEY, msg.getReceiverOrPassword(), 7L);
 
     }
 
@@ -212,6 +219,35 @@ public class TestGroup {
         assertTrue(testGroup.getMemberGroups().isEmpty());
     }
 
+    /**
+     * Test that the copy of a group does not share its member sets with the group.
+     */
+    @Test
+    public void testCopyIsIndependentOfTheGroup() {
+        Group subGroup = new Group();
+        subGroup.setGroupName(TEST_GROUP_NAME_1);
+        subGroup.getMemberUsers().add(new User("Bob", "B", "bob", null, true));
+        Group testGroup = new Group();
+        testGroup.setGroupName(TEST_GROUP_NAME);
+        testGroup.setModeratorName(TEST_MODERATOR_NAME);
+        testGroup.getMemberUsers().add(new User("Carol", "C", "carol", null, false));
+        testGroup.getMemberGroups().add(subGroup);
+
+        Group copy = testGroup.copy();
+        Assertions.assertEquals(TEST_GROUP_NAME, copy.getGroupName());
+        Assertions.assertEquals(TEST_MODERATOR_NAME, copy.getModeratorName());
+        Assertions.assertEquals(testGroup.getMemberUsers(), copy.getMemberUsers());
+        Group subCopy = copy.getMemberGroups().iterator().next();
+        Assertions.assertEquals(subGroup.getMemberUsers(), subCopy.getMemberUsers());
+
+        copy.getMemberUsers().clear();
+        subCopy.getMemberUsers().clear();
+        copy.getMemberGroups().clear();
+        Assertions.assertEquals(1, testGroup.getMemberUsers().size());
+        Assertions.assertEquals(1, subGroup.getMemberUsers().size());
+        Assertions.assertEquals(1, testGroup.getMemberGroups().size());
+    }
+
 
     private static final User CAROL = Mockito.mock(User.class);
     private static final User DAN = Mockito.mock(User.class);
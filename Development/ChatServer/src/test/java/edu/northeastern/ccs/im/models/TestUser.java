@@ -12,6 +12,7 @@ import static org.mockito.Mockito.*;
 
 import edu.northeastern.ccs.im.Message;
 import edu.northeastern.ccs.im.server.ClientRunnable;
+import edu.northeastern.ccs.im.server.SessionRegistry;
 import edu.northeastern.ccs.im.services.ConversationalMessageService;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -19,8 +20,6 @@ import org.mockito.Mockito;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.sql.SQLException;
-import java.util.HashMap;
-import java.util.Map;
 
 public class TestUser {
 
@@ -125,7 +124,7 @@ public class TestUser {
         fieldCR.set(ALICE, mockedClientRunnable);
         ALICE.userSendMessage(BROADCAST_FROM_ALICERUBY);
         verify(mockedCMS, times(1)).insertConversationalMessage(ALICERUBY, ALICE.getUserName(),
-                "Hello, Alice", false);
+                "Hello, Alice", false, 0L);
     }
 
     /**
@@ -147,9 +146,11 @@ public class TestUser {
         Field fieldCR = User.class.getDeclaredField("clientRunnable");
         fieldCR.setAccessible(true);
         fieldCR.set(ALICE, mockedClientRunnable);
+        SessionRegistry.getInstance().claim(ALICE.getUserName(), mockedClientRunnable);
         ALICE.userSendMessage(BROADCAST_FROM_ALICERUBY);
         verify(mockedCMS, times(1)).insertConversationalMessage(ALICERUBY, ALICE.getUserName(),
-                "Hello, Alice", true);
+                "Hello, Alice", false, 0L);
+        SessionRegistry.getInstance().release(ALICE.getUserName(), mockedClientRunnable);
     }
 
 
@@ -172,15 +173,12 @@ public class TestUser {
         Field fieldCR = User.class.getDeclaredField("clientRunnable");
         fieldCR.setAccessible(true);
         fieldCR.set(ALICE, mockedClientRunnable);
-        //Set the mockedMap in ClientRunnable so the static instance will retrieve it
-        Map<String, ClientRunnable> userClients = new HashMap<>();
-        userClients.put(ALICE.getUserName(), mockedClientRunnable);
-        Field mapField = ClientRunnable.class.getDeclaredField("userClients");
-        mapField.setAccessible(true);
-        mapField.set(mockedClientRunnable, userClients);
+        //Register the mocked client in the session registry so the static lookup will retrieve it
+        SessionRegistry.getInstance().claim(ALICE.getUserName(), mockedClientRunnable);
         ALICE.userSendMessage(BROADCAST_FROM_ALICERUBY);
         verify(mockedCMS, times(1)).insertConversationalMessage(ALICERUBY, ALICE.getUserName(),
-                "Hello, Alice", true);
+                "Hello, Alice", false, 0L);
+        SessionRegistry.getInstance().release(ALICE.getUserName(), mockedClientRunnable);
     }
 
     /**
@@ -202,15 +200,12 @@ public class TestUser {
         Field fieldCR = User.class.getDeclaredField("clientRunnable");
         fieldCR.setAccessible(true);
         fieldCR.set(ALICE, mockedClientRunnable);
-        //Set the mockedMap in ClientRunnable so the static instance will retrieve it
-        Map<String, ClientRunnable> userClients = new HashMap<>();
-        userClients.put(ALICE.getUserName(), mockedClientRunnable);
-        Field mapField = ClientRunnable.class.getDeclaredField("userClients");
-        mapField.setAccessible(true);
-        mapField.set(mockedClientRunnable, userClients);
+        //Register the mocked client in the session registry so the static lookup will retrieve it
+        SessionRegistry.getInstance().claim(ALICE.getUserName(), mockedClientRunnable);
         ALICE.userSendMessage(BROADCAST_FROM_ALICERUBY);
         verify(mockedCMS, times(1)).insertConversationalMessage(ALICERUBY, ALICE.getUserName(),
-                "Hello, Alice", false);
+                "Hello, Alice", false, 0L);
+        SessionRegistry.getInstance().release(ALICE.getUserName(), mockedClientRunnable);
     }
 
     /**
@@ -243,15 +238,12 @@ public class TestUser {
         Field fieldCR = User.class.getDeclaredField("clientRunnable");
         fieldCR.setAccessible(true);
         fieldCR.set(ALICE, mockedClientRunnable);
-        //Set the mockedMap in ClientRunnable so the static instance will retrieve it
-        Map<String, ClientRunnable> userClients = new HashMap<>();
-        userClients.put(ALICE.getUserName(), mockedClientRunnable);
-        Field mapField = ClientRunnable.class.getDeclaredField("userClients");
-        mapField.setAccessible(true);
-        mapField.set(mockedClientRunnable, userClients);
+        //Register the mocked client in the session registry so the static lookup will retrieve it
+        SessionRegistry.getInstance().claim(ALICE.getUserName(), mockedClientRunnable);
         ALICE.userSendMessage(GROUP_MESSAGE_FROM_ALICE);
         verify(mockedCMS, times(1)).insertConversationalMessage(ALICERUBY, ALICE.getUserName(),
-                "Hello, Alice", true);
+                "Hello, Alice", false, 0L);
+        SessionRegistry.getInstance().release(ALICE.getUserName(), mockedClientRunnable);
     }
 
 
@@ -0,0 +1,204 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import edu.northeastern.ccs.im.Message;
+import edu.northeastern.ccs.im.NetworkConnection;
+
+/**
+ * Heap measurement of the idle clients of the server. Run this class with the number of clients to
+ * connect as its only argument, for instance {@code 50000}, with a heap large enough to hold them
+ * awake; {@link TestHibernator} runs it with a few hundred clients. The connections are accepted on
+ * a local port and every one is handed to a client as the server does; the clients log in, and the
+ * heap they use per connection, on top of the sockets themselves, is printed once all of them are
+ * awake, and once more after all of them hibernated. It covers everything the server keeps for a
+ * client: the connection, the client and its queue, timer and session.
+ *
+ * Both ends of every connection live in this process, so the open file limit has to be above twice
+ * the number of connections.
+ *
+ * @author Team 201
+ */
+public class HibernationFootprint {
+
+    private static final int DEFAULT_CONNECTIONS = 50000;
+    private static final int MAX_RUNS = 100;
+
+    private final int connections;
+    private final int hibernated;
+    private final long awakeBytes;
+    private final long hibernatingBytes;
+
+    private HibernationFootprint(int connections, int hibernated, long awakeBytes, long hibernatingBytes) {
+        this.connections = connections;
+        this.hibernated = hibernated;
+        this.awakeBytes = awakeBytes;
+        this.hibernatingBytes = hibernatingBytes;
+    }
+
+    /**
+     * Runs the measurement.
+     *
+     * @param args the number of connections to open
+     * @throws IOException if the connections cannot be opened
+     */
+    public static void main(String[] args) throws IOException {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CONNECTIONS;
+        System.out.println(measure(connections));
+    }
+
+    /**
+     * Connects clients, has them log in and then hibernate, and measures the heap they use.
+     *
+     * @param connections the number of clients to connect
+     * @return HibernationFootprint the heap used per client, awake and hibernating
+     * @throws IOException if the connections cannot be opened
+     */
+    static HibernationFootprint measure(int connections) throws IOException {
+        ScheduledThreadPoolExecutor threadPool = new ScheduledThreadPoolExecutor(1);
+        threadPool.setRemoveOnCancelPolicy(true);
+        // Hibernating cancels the scheduled run of a client; one future serves them all.
+        ScheduledFuture<?> future = threadPool.schedule(() -> { }, 1, TimeUnit.DAYS);
+        Hibernator hibernator = new Hibernator(threadPool, 0);
+        hibernator.start();
+        List<NetworkConnection> peers = new ArrayList<>(connections + 1);
+        List<NetworkConnection> accepted = new ArrayList<>(connections + 1);
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress("localhost", 0), connections + 1);
+            List<SocketChannel> sockets = new ArrayList<>(connections + 1);
+            for (int i = 0; i <= connections; i++) {
+                NetworkConnection peer = new NetworkConnection(SocketChannel.open(server.getLocalAddress()), true);
+                peers.add(peer);
+                sockets.add(server.accept());
+                peer.sendMessage(Message.makeSimpleLoginMessage("fp" + i));
+            }
+            // A first client sets up the services shared by all the clients, which are not measured.
+            List<ClientRunnable> clients = new ArrayList<>(connections);
+            clients.add(connect(sockets.remove(0), accepted, future));
+            runUntil(clients, ClientRunnable::isInitialized);
+            clients.clear();
+            // Only what the server keeps on top of the sockets themselves is measured.
+            long baseline = usedHeap();
+            for (SocketChannel socket : sockets) {
+                clients.add(connect(socket, accepted, future));
+            }
+            runUntil(clients, ClientRunnable::isInitialized);
+            long awake = usedHeap();
+            for (ClientRunnable client : clients) {
+                client.setHibernator(hibernator);
+            }
+            runUntil(clients, ClientRunnable::isHibernating);
+            long idle = usedHeap();
+            int hibernated = 0;
+            for (ClientRunnable client : clients) {
+                if (client.isHibernating()) {
+                    hibernated++;
+                }
+            }
+            return new HibernationFootprint(connections, hibernated, (awake - baseline) / connections,
+                    (idle - baseline) / connections);
+        } finally {
+            hibernator.stop();
+            threadPool.shutdownNow();
+            for (NetworkConnection connection : accepted) {
+                connection.close();
+            }
+            for (NetworkConnection peer : peers) {
+                peer.close();
+            }
+        }
+    }
+
+    private static ClientRunnable connect(SocketChannel socket, List<NetworkConnection> accepted,
+                                          ScheduledFuture<?> future) {
+        NetworkConnection connection = new NetworkConnection(socket);
+        accepted.add(connection);
+        ClientRunnable client = new ClientRunnable(connection);
+        client.setFuture(future);
+        return client;
+    }
+
+    /**
+     * Runs the clients in turn, as the thread pool would, until all of them reach a state.
+     *
+     * @param clients the clients
+     * @param reached whether a client has reached the state
+     */
+    private static void runUntil(List<ClientRunnable> clients, Predicate<ClientRunnable> reached) {
+        for (int i = 0; i < MAX_RUNS; i++) {
+            boolean all = true;
+            for (ClientRunnable client : clients) {
+                if (!reached.test(client)) {
+                    client.run();
+                    all = false;
+                }
+            }
+            if (all) {
+                return;
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        // Give the released selectors and buffers a few collections to be reclaimed.
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * @return the number of clients that hibernated
+     */
+    int getHibernated() {
+        return hibernated;
+    }
+
+    /**
+     * @return the heap used per client once all of them are awake, in bytes
+     */
+    long getAwakeBytes() {
+        return awakeBytes;
+    }
+
+    /**
+     * @return the heap used per client once all of them hibernated, in bytes
+     */
+    long getHibernatingBytes() {
+        return hibernatingBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("connections=%d hibernated=%d awake=%d B/conn hibernating=%d B/conn",
+                connections, hibernated, awakeBytes, hibernatingBytes);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import edu.northeastern.ccs.im.Message;
+import edu.northeastern.ccs.im.NetworkConnection;
+
+/**
+ * Load generator comparing the two modes of the server. It is not a unit test: start the server in
+ * the mode to measure, then run this class (on Java 21 or later, as every simulated client runs on a
+ * virtual thread) with the arguments
+ * <pre>
+ *   mode host port connections requestsPerConnection password
+ * </pre>
+ * for instance {@code nio localhost 4545 10000 20 secret}, and once more against a server started
+ * with --mode=virtual. Every client registers and logs in as bench-i, then sends private messages
+ * to itself one at a time, measuring the time until the message comes back. The throughput and the
+ * latency percentiles of all the round trips are printed on one line, labelled with the mode.
+ *
+ * The connections are opened all at once, so the open file limit of both processes has to be above
+ * the number of connections.
+ *
+ * @author Team 201
+ */
+public class PrattleLoadBenchmark {
+
+    private static final String USER_PREFIX = "bench-";
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the mode label, host, port, number of connections, requests per connection and
+     *             password of the simulated users
+     * @throws Exception if the clients cannot be run
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 6) {
+            System.err.println("Usage: PrattleLoadBenchmark mode host port connections requestsPerConnection password");
+            return;
+        }
+        String mode = args[0];
+        InetSocketAddress address = new InetSocketAddress(args[1], Integer.parseInt(args[2]));
+        int connections = Integer.parseInt(args[3]);
+        int requests = Integer.parseInt(args[4]);
+        String password = args[5];
+
+        ExecutorService clients = VirtualThreadServer.newVirtualThreadExecutor();
+        List<Future<long[]>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            String userName = USER_PREFIX + i;
+            results.add(clients.submit(() -> runClient(address, userName, password, requests)));
+        }
+        long[] latencies = new long[connections * requests];
+        int count = 0;
+        int failedClients = 0;
+        for (Future<long[]> result : results) {
+            try {
+                long[] clientLatencies = result.get();
+                System.arraycopy(clientLatencies, 0, latencies, count, clientLatencies.length);
+                count += clientLatencies.length;
+            } catch (Exception e) {
+                failedClients++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        clients.shutdown();
+
+        long[] measured = Arrays.copyOf(latencies, count);
+        Arrays.sort(measured);
+        System.out.printf("mode=%s connections=%d requests=%d failedClients=%d throughput=%.1f/s "
+                        + "p50=%.2fms p99=%.2fms max=%.2fms%n",
+                mode, connections, count, failedClients, count / (elapsed / 1e9),
+                percentile(measured, 0.50), percentile(measured, 0.99), percentile(measured, 1.0));
+    }
+
+    /**
+     * Runs one simulated client.
+     *
+     * @param address  the address of the server
+     * @param userName the name of the simulated user
+     * @param password the password of the simulated user
+     * @param requests the number of round trips to measure
+     * @return long[]       the latency of every round trip, in nanoseconds
+     * @throws IOException if the client cannot connect
+     */
+    private static long[] runClient(InetSocketAddress address, String userName, String password, int requests)
+            throws IOException {
+        NetworkConnection connection = new NetworkConnection(SocketChannel.open(address), true);
+        try {
+            Iterator<Message> incoming = connection.iterator();
+            connection.sendMessage(Message.makeSimpleLoginMessage(userName));
+            connection.sendMessage(Message.makeRegisterMessage(userName, password, password));
+            connection.sendMessage(Message.makeLoginMessage(userName, password));
+            long[] latencies = new long[requests];
+            for (int n = 0; n < requests; n++) {
+                String marker = userName + "-" + n;
+                long sent = System.nanoTime();
+                connection.sendMessage(Message.makePrivateUserMessage(userName, marker, userName));
+                awaitMarker(incoming, marker);
+                latencies[n] = System.nanoTime() - sent;
+            }
+            connection.sendMessage(Message.makeQuitMessage(userName));
+            return latencies;
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Skips the incoming messages until the one carrying the marker arrives.
+     *
+     * @param incoming the messages sent by the server
+     * @param marker   the text sent by the client
+     * @throws IOException if the connection was closed first
+     */
+    private static void awaitMarker(Iterator<Message> incoming, String marker) throws IOException {
+        while (incoming.hasNext()) {
+            String text = incoming.next().getTextOrPassword();
+            if (text != null && text.contains(marker)) {
+                return;
+            }
+        }
+        throw new IOException("Connection closed before " + marker + " came back");
+    }
+
+    /**
+     * @param sorted   the sorted latencies, in nanoseconds
+     * @param fraction the percentile, between 0 and 1
+     * @return double       the latency at the percentile, in milliseconds
+     */
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import edu.northeastern.ccs.im.Message;
+import edu.northeastern.ccs.im.NetworkConnection;
+
+/**
+ * Measures the time a client takes to be back in its session after reconnecting, with a full login
+ * and with its resumption token. It is not a unit test: start the server, then run this class (on
+ * Java 21 or later, as every simulated client runs on a virtual thread) with the arguments
+ * <pre>
+ *   host port clients reconnectsPerClient password
+ * </pre>
+ * for instance {@code localhost 4545 500 10 secret}. Every client registers and logs in as
+ * reconnect-i, then reconnects in turns: once quitting and logging in again, and once dropping its
+ * connection without a word and resuming with its token, which is what a client whose network went
+ * away does. A reconnect is timed from the new connection until the server sends the next token,
+ * which it does once the session is ready. The latency percentiles of both kinds of reconnect are
+ * printed on one line each.
+ *
+ * @author Team 201
+ */
+public class ReconnectBenchmark {
+
+    private static final String USER_PREFIX = "reconnect-";
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the host, port, number of clients, reconnects per client and password of the
+     *             simulated users
+     * @throws Exception if the clients cannot be run
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 5) {
+            System.err.println("Usage: ReconnectBenchmark host port clients reconnectsPerClient password");
+            return;
+        }
+        InetSocketAddress address = new InetSocketAddress(args[0], Integer.parseInt(args[1]));
+        int clients = Integer.parseInt(args[2]);
+        int reconnects = Integer.parseInt(args[3]);
+        String password = args[4];
+
+        ExecutorService executor = VirtualThreadServer.newVirtualThreadExecutor();
+        List<Future<long[][]>> results = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            String userName = USER_PREFIX + i;
+            results.add(executor.submit(() -> runClient(address, userName, password, reconnects)));
+        }
+        long[] logins = new long[clients * reconnects];
+        long[] resumes = new long[clients * reconnects];
+        int count = 0;
+        int failedClients = 0;
+        for (Future<long[][]> result : results) {
+            try {
+                long[][] latencies = result.get();
+                System.arraycopy(latencies[0], 0, logins, count, reconnects);
+                System.arraycopy(latencies[1], 0, resumes, count, reconnects);
+                count += reconnects;
+            } catch (Exception e) {
+                failedClients++;
+            }
+        }
+        executor.shutdown();
+
+        print("login", Arrays.copyOf(logins, count), failedClients);
+        print("resume", Arrays.copyOf(resumes, count), failedClients);
+    }
+
+    /**
+     * Runs one simulated client.
+     *
+     * @param address    the address of the server
+     * @param userName   the name of the simulated user
+     * @param password   the password of the simulated user
+     * @param reconnects the number of reconnects of each kind to measure
+     * @return long[][]     the latency of every login, then of every resume, in nanoseconds
+     * @throws IOException if the client cannot connect or its session cannot be resumed
+     */
+    private static long[][] runClient(InetSocketAddress address, String userName, String password, int reconnects)
+            throws IOException {
+        long[][] latencies = new long[2][reconnects];
+        NetworkConnection connection = new NetworkConnection(SocketChannel.open(address), true);
+        connection.sendMessage(Message.makeSimpleLoginMessage(userName));
+        connection.sendMessage(Message.makeRegisterMessage(userName, password, password));
+        connection.sendMessage(Message.makeLoginMessage(userName, password));
+        String token = awaitToken(connection.iterator());
+        try {
+            for (int n = 0; n < reconnects; n++) {
+                // Quit, wait for the server to close the connection, and log in again.
+                connection.sendMessage(Message.makeQuitMessage(userName));
+                drain(connection.iterator());
+                connection.close();
+                long start = System.nanoTime();
+                do {
+                    connection.close();
+                    connection = new NetworkConnection(SocketChannel.open(address), true);
+                    connection.sendMessage(Message.makeSimpleLoginMessage(userName));
+                    connection.sendMessage(Message.makeLoginMessage(userName, password));
+                    token = awaitToken(connection.iterator());
+                } while (token == null);
+                latencies[0][n] = System.nanoTime() - start;
+
+                // Drop the connection, and resume.
+                connection.close();
+                start = System.nanoTime();
+                connection = new NetworkConnection(SocketChannel.open(address), true);
+                connection.sendMessage(Message.makeResumeMessage(userName, token));
+                token = awaitToken(connection.iterator());
+                if (token == null) {
+                    throw new IOException("Session of " + userName + " could not be resumed");
+                }
+                latencies[1][n] = System.nanoTime() - start;
+            }
+            connection.sendMessage(Message.makeQuitMessage(userName));
+            return latencies;
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Skips the incoming messages until the server sends a token.
+     *
+     * @param incoming the messages sent by the server
+     * @return String       the token, or null if the server refused the login or the resume
+     * @throws IOException if the connection was closed first
+     */
+    private static String awaitToken(Iterator<Message> incoming) throws IOException {
+        while (incoming.hasNext()) {
+            Message message = incoming.next();
+            String text = message.getTextOrPassword();
+            if (message.isResumeMessage()) {
+                return text;
+            }
+            if (text != null && (text.contains("already a user connected") || text.contains("could not be resumed"))) {
+                return null;
+            }
+        }
+        throw new IOException("Connection closed before a token came");
+    }
+
+    /**
+     * Skips the incoming messages until the server closes the connection.
+     *
+     * @param incoming the messages sent by the server
+     */
+    private static void drain(Iterator<Message> incoming) {
+        while (incoming.hasNext()) {
+            incoming.next();
+        }
+    }
+
+    /**
+     * Prints the percentiles of one kind of reconnect.
+     *
+     * @param kind          the kind of reconnect
+     * @param latencies     the latencies, in nanoseconds
+     * @param failedClients the number of clients that failed
+     */
+    private static void print(String kind, long[] latencies, int failedClients) {
+        Arrays.sort(latencies);
+        System.out.printf("reconnect=%s count=%d failedClients=%d p50=%.2fms p99=%.2fms max=%.2fms%n",
+                kind, latencies.length, failedClients, percentile(latencies, 0.50), percentile(latencies, 0.99),
+                percentile(latencies, 1.0));
+    }
+
+    /**
+     * @param sorted   the sorted latencies, in nanoseconds
+     * @param fraction the percentile, between 0 and 1
+     * @return double       the latency at the percentile, in milliseconds
+     */
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test suite for the ActorExecutor class, checking the ordering of the tasks of every key while many
+ * threads submit to the same keys.
+ */
+public class TestActorExecutor {
+
+    private ActorExecutor executor;
+
+    /**
+     * Creates an executor with more workers than keys, so that keys compete for the workers.
+     */
+    @BeforeEach
+    public void setup() {
+        executor = new ActorExecutor("test", 8);
+    }
+
+    /**
+     * Stops the workers of the executor.
+     */
+    @AfterEach
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Test that, with many producers submitting to the same keys, the tasks of every producer run in
+     * order within each key and never two tasks of the same key at once.
+     */
+    @Test
+    public void testOrderingUnderContention() throws InterruptedException {
+        Map<String, List<int[]>> runs = new ConcurrentHashMap<>();
+        Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+        AtomicInteger overlaps = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(PRODUCERS * KEYS * TASKS);
+        for (int k = 0; k < KEYS; k++) {
+            runs.put("user" + k, new ArrayList<>());
+            running.put("user" + k, new AtomicInteger());
+        }
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            int producer = p;
+            producers.add(new Thread(() -> {
+                for (int i = 0; i < TASKS; i++) {
+                    for (int k = 0; k < KEYS; k++) {
+                        String key = "user" + k;
+                        int sequence = i;
+                        executor.submit(key, () -> {
+                            if (running.get(key).incrementAndGet() != 1) {
+                                overlaps.incrementAndGet();
+                            }
+                            // not synchronized: only one task of the key may run at a time
+                            runs.get(key).add(new int[]{producer, sequence});
+                            running.get(key).decrementAndGet();
+                            done.countDown();
+                        });
+                    }
+                }
+            }));
+        }
+        for (Thread producer : producers) {
+            producer.start();
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(0, overlaps.get());
+        for (List<int[]> keyRuns : runs.values()) {
+            assertEquals(PRODUCERS * TASKS, keyRuns.size());
+            int[] lastSequence = new int[PRODUCERS];
+            Arrays.fill(lastSequence, -1);
+            for (int[] run : keyRuns) {
+                assertEquals(lastSequence[run[0]] + 1, run[1]);
+                lastSequence[run[0]] = run[1];
+            }
+        }
+        assertEquals(PRODUCERS * KEYS * TASKS, executor.getProcessedCount());
+        assertEquals(0, executor.getPendingCount());
+        awaitNoMailbox();
+    }
+
+    /**
+     * Test that the mailboxes of different keys run in parallel: two tasks of different keys wait
+     * for each other, which only completes if they run at the same time.
+     */
+    @Test
+    public void testDifferentKeysRunInParallel() throws InterruptedException {
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        CountDownLatch done = new CountDownLatch(2);
+        executor.submit("alice", () -> {
+            barrier.await(5, TimeUnit.SECONDS);
+            done.countDown();
+        });
+        executor.submit("bob", () -> {
+            barrier.await(5, TimeUnit.SECONDS);
+            done.countDown();
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Test that a failing task is counted and does not stop the tasks after it.
+     */
+    @Test
+    public void testFailureDoesNotBlockMailbox() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        executor.submit("alice", () -> {
+            throw new IllegalStateException("failed");
+        });
+        executor.submit("alice", done::countDown);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, executor.getFailedCount());
+    }
+
+    /**
+     * Test that the mailbox of a key is dropped once it is emptied, and made again by the next task
+     * of the key.
+     */
+    @Test
+    public void testEmptyMailboxIsDropped() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        executor.submit("alice", () -> {
+            blocked.await();
+            done.countDown();
+        });
+        assertEquals(1, executor.getMailboxCount());
+        blocked.countDown();
+        executor.submit("alice", done::countDown);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        awaitNoMailbox();
+        CountDownLatch again = new CountDownLatch(1);
+        executor.submit("alice", again::countDown);
+        assertTrue(again.await(5, TimeUnit.SECONDS));
+        awaitNoMailbox();
+    }
+
+    /**
+     * Waits for the workers to drop the mailboxes they emptied, and checks that none is left.
+     */
+    private void awaitNoMailbox() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (executor.getMailboxCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(0, executor.getMailboxCount());
+    }
+
+    private static final int PRODUCERS = 6;
+    private static final int KEYS = 4;
+    private static final int TASKS = 500;
+}
@@ -0,0 +1,122 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import edu.northeastern.ccs.im.Message;
+import edu.northeastern.ccs.im.NetworkConnection;
+
+/**
+ * Test suite for the AdmissionController class, run on a manual clock.
+ */
+public class TestAdmissionController {
+
+    private AtomicLong now;
+    private AtomicInteger connections;
+    private List<NetworkConnection> started;
+    private AdmissionController admission;
+
+    /**
+     * Starts every test with a controller taking on two connections per second, with room for two
+     * waiting connections and at most ten connections in all.
+     */
+    @BeforeEach
+    public void setup() {
+        now = new AtomicLong(1000000);
+        connections = new AtomicInteger();
+        started = new ArrayList<>();
+        admission = new AdmissionController(10, 2, 2, 1000, connections::get, now::get);
+    }
+
+    /**
+     * Test that the connections over the rate wait, are taken on as the rate allows, and are
+     * refused once the queue is full or they waited too long.
+     */
+    @Test
+    public void testRateAndQueue() {
+        NetworkConnection[] accepted = new NetworkConnection[5];
+        for (int i = 0; i < accepted.length; i++) {
+            accepted[i] = Mockito.mock(NetworkConnection.class);
+        }
+        assertTrue(admission.offer(accepted[0]));
+        assertTrue(admission.offer(accepted[1]));
+        assertFalse(admission.offer(accepted[2]));
+        assertFalse(admission.offer(accepted[3]));
+        assertFalse(admission.offer(accepted[4]));
+        assertRejected(accepted[4], "Too many connections waiting");
+        assertEquals(2, admission.getWaitingCount());
+
+        now.addAndGet(500);
+        admission.drain(started::add);
+        assertEquals(Arrays.asList(accepted[2]), started);
+
+        now.addAndGet(1000);
+        admission.drain(started::add);
+        assertRejected(accepted[3], "Timed out waiting");
+        assertEquals(1, started.size());
+        assertEquals(3, admission.getAcceptedCount());
+        assertEquals(2, admission.getQueuedCount());
+        assertEquals(2, admission.getRejectedCount());
+        assertEquals(0, admission.getWaitingCount());
+    }
+
+    /**
+     * Test that no connection is taken on over the maximum number of connections.
+     */
+    @Test
+    public void testMaxConnections() {
+        connections.set(10);
+        NetworkConnection connection = Mockito.mock(NetworkConnection.class);
+        assertFalse(admission.offer(connection));
+        assertRejected(connection, "Too many connections");
+    }
+
+    /**
+     * Test that the connections are refused while a load signal is over its threshold, and taken on
+     * again once it is back under it.
+     */
+    @Test
+    public void testOverload() {
+        AtomicLong latency = new AtomicLong(800);
+        admission.watch("Database latency in ms", latency::get, 500);
+        admission.drain(started::add);
+        NetworkConnection connection = Mockito.mock(NetworkConnection.class);
+        assertFalse(admission.offer(connection));
+        assertRejected(connection, "Database latency in ms 800 over 500");
+        assertTrue(admission.toString().contains("overload="));
+
+        latency.set(100);
+        admission.drain(started::add);
+        assertTrue(admission.offer(Mockito.mock(NetworkConnection.class)));
+        assertEquals("AdmissionController[accepted=1, rejected=1, queued=0, waiting=0]", admission.toString());
+    }
+
+    private static void assertRejected(NetworkConnection connection, String reason) {
+        ArgumentCaptor<Message> captor = ArgumentCaptor.forClass(Message.class);
+        Mockito.verify(connection).sendMessage(captor.capture());
+        Mockito.verify(connection).close();
+        assertTrue(captor.getValue().isServerBusyMessage());
+        assertEquals(reason, captor.getValue().getTextOrPassword());
+        assertEquals(Integer.toString(ServerConstants.ADMISSION_RETRY_AFTER_IN_MS),
+                captor.getValue().getReceiverOrPassword());
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import edu.northeastern.ccs.im.Message;
+
+/**
+ * Test suite for the ChannelRegistry class, with channels replaying their last two messages.
+ */
+public class TestChannelRegistry {
+
+    private static final String CHANNEL = "news";
+
+    private ChannelRegistry channelRegistry;
+    private ClientRunnable first;
+    private ClientRunnable second;
+
+    /**
+     * Starts every test with only the global channel, and two logged in clients.
+     */
+    @BeforeEach
+    public void setup() {
+        channelRegistry = new ChannelRegistry(2);
+        first = Mockito.mock(ClientRunnable.class);
+        second = Mockito.mock(ClientRunnable.class);
+        Mockito.when(first.isInitialized()).thenReturn(true);
+        Mockito.when(second.isInitialized()).thenReturn(true);
+    }
+
+    /**
+     * Test that a message is published to the subscribers of its channel only, once each, and
+     * that a channel without subscribers is dropped.
+     */
+    @Test
+    public void testPublishToSubscribers() {
+        channelRegistry.subscribe(CHANNEL, first);
+        channelRegistry.subscribe(CHANNEL, first);
+        channelRegistry.subscribe(ServerConstants.GLOBAL_CHANNEL, second);
+        Message news = Message.makePublishMessage("alice", "hello", CHANNEL);
+        assertEquals(1, channelRegistry.publish(CHANNEL, news));
+        Mockito.verify(first, Mockito.times(1)).enqueueMessage(news);
+        Mockito.verify(second, Mockito.never()).enqueueMessage(news);
+
+        assertTrue(channelRegistry.unsubscribe(CHANNEL, first));
+        assertFalse(channelRegistry.unsubscribe(CHANNEL, first));
+        assertEquals(0, channelRegistry.publish(CHANNEL, news));
+        assertEquals(0, channelRegistry.publish(null, news));
+        assertEquals("ChannelRegistry[channels=1, published=1, delivered=1]", channelRegistry.toString());
+    }
+
+    /**
+     * Test that a client subscribing late is given the last messages of the channel, oldest first,
+     * and that the global channel replays nothing.
+     */
+    @Test
+    public void testReplay() {
+        channelRegistry.subscribe(CHANNEL, first);
+        Message one = Message.makePublishMessage("alice", "one", CHANNEL);
+        Message two = Message.makePublishMessage("alice", "two", CHANNEL);
+        Message three = Message.makePublishMessage("alice", "three", CHANNEL);
+        channelRegistry.publish(CHANNEL, one);
+        channelRegistry.publish(CHANNEL, two);
+        channelRegistry.publish(CHANNEL, three);
+        assertEquals(Arrays.asList(two, three), channelRegistry.subscribe(CHANNEL, second));
+
+        channelRegistry.subscribe(ServerConstants.GLOBAL_CHANNEL, first);
+        channelRegistry.publish(ServerConstants.GLOBAL_CHANNEL, Message.makeBroadcastMessage("alice", "hey"));
+        assertEquals(Collections.emptyList(), channelRegistry.subscribe(ServerConstants.GLOBAL_CHANNEL, second));
+    }
+
+    /**
+     * Test that a client that quit is unsubscribed from all its channels, and that the global
+     * channel is kept even with no subscribers.
+     */
+    @Test
+    public void testUnsubscribeAll() {
+        channelRegistry.subscribe(ServerConstants.GLOBAL_CHANNEL, first);
+        channelRegistry.subscribe(CHANNEL, first);
+        channelRegistry.subscribe("sports", first);
+        channelRegistry.unsubscribeAll(first);
+        assertEquals(0, channelRegistry.getSubscriberCount(ServerConstants.GLOBAL_CHANNEL));
+        assertEquals(0, channelRegistry.getSubscriberCount(CHANNEL));
+        assertEquals("ChannelRegistry[channels=1, published=0, delivered=0]", channelRegistry.toString());
+    }
+
+    /**
+     * Test that the subscriptions of a resumed session are handed to its new connection, without
+     * subscribing it twice to a channel it already had.
+     */
+    @Test
+    public void testTransfer() {
+        channelRegistry.subscribe(ServerConstants.GLOBAL_CHANNEL, first);
+        channelRegistry.subscribe(ServerConstants.GLOBAL_CHANNEL, second);
+        channelRegistry.subscribe(CHANNEL, first);
+        channelRegistry.transfer(first, second);
+        assertEquals(1, channelRegistry.getSubscriberCount(ServerConstants.GLOBAL_CHANNEL));
+        Message news = Message.makePublishMessage("alice", "hello", CHANNEL);
+        assertEquals(1, channelRegistry.publish(CHANNEL, news));
+        Mockito.verify(second).enqueueMessage(news);
+        Mockito.verify(first, Mockito.never()).enqueueMessage(news);
+    }
+}
@@ -9,15 +9,19 @@ package edu.northeastern.ccs.im.server;
 
 import edu.northeastern.ccs.im.Message;
 import edu.northeastern.ccs.im.NetworkConnection;
+import edu.northeastern.ccs.im.db.DBExecutor;
 import edu.northeastern.ccs.im.models.ConversationalMessage;
 import edu.northeastern.ccs.im.models.Group;
 import edu.northeastern.ccs.im.models.User;
+import edu.northeastern.ccs.im.services.ConversationalMessageDAO;
 import edu.northeastern.ccs.im.services.ConversationalMessageService;
 import edu.northeastern.ccs.im.services.GroupService;
+import edu.northeastern.ccs.im.services.InboxService;
 import edu.northeastern.ccs.im.services.InvitationService;
 import edu.northeastern.ccs.im.services.UserService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
@@ -29,6 +33,7 @@ import java.lang.reflect.Method;
 import java.nio.channels.SocketChannel;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -141,6 +146,22 @@ public class TestClientRunnable {
         when(mockedUserService.deleteUser(Mockito.any())).thenReturn(true);
         when(mockedUserService.updateUserAttributes(Mockito.anyString(), Mockito.anyString(), Mockito.anyString())).thenReturn(true);
         when(mockedUserService.tapUser(Mockito.anyString())).thenReturn(true);
+        // the asynchronous variants delegate to the stubbed synchronous methods
+        when(mockedUserService.getUserByUserNameAsync(Mockito.anyString())).thenAnswer(invocation ->
+                DBExecutor.getInstance().supplyAsync(() ->
+                        mockedUserService.getUserByUserName((String) invocation.getArguments()[0])));
+        when(mockedUserService.getFollowersAsync(Mockito.any())).thenAnswer(invocation ->
+                DBExecutor.getInstance().supplyAsync(() ->
+                        mockedUserService.getFollowers((User) invocation.getArguments()[0])));
+        when(mockedUserService.getFolloweesAsync(Mockito.any())).thenAnswer(invocation ->
+                DBExecutor.getInstance().supplyAsync(() ->
+                        mockedUserService.getFollowees((User) invocation.getArguments()[0])));
+        when(mockedUserService.getOnlineUsersAsync(Mockito.any())).thenAnswer(invocation ->
+                DBExecutor.getInstance().supplyAsync(() ->
+                        mockedUserService.getOnlineUsers((User) invocation.getArguments()[0])));
+        when(mockedUserService.searchUserAsync(Mockito.anyString())).thenAnswer(invocation ->
+                DBExecutor.getInstance().supplyAsync(() ->
+                        mockedUserService.searchUser((String) invocation.getArguments()[0])));
 
         //Define behavior for mocked Conversational Message Service
         when(mockedcms.getSender(Mockito.anyString())).thenReturn(SENDER_NAME);
@@ -162,6 +183,9 @@ public class TestClientRunnable {
         when(mockedGroupService.addUserToGroup(Mockito.anyString(), Mockito.anyString())).thenReturn(true);
         when(mockedGroupService.isUserMemberOfTheGroup(Mockito.anyString(), Mockito.anyString())).thenReturn(true);
         when(mockedGroupService.updateGroupSettings(Mockito.anyString(), Mockito.anyString(), Mockito.anyString())).thenReturn(true);
+        when(mockedGroupService.searchGroupAsync(Mockito.anyString())).thenAnswer(invocation ->
+                DBExecutor.getInstance().supplyAsync(() ->
+                        mockedGroupService.searchGroup((String) invocation.getArguments()[0])));
 
         //Set fields in clientRunnable
         Field ncField = ClientRunnable.class.getDeclaredField("connection");
@@ -177,15 +201,17 @@ public class TestClientRunnable {
         groupService.setAccessible(true);
         groupService.set(clientRunnableObject, mockedGroupService);
 
-        //Set fields for userClients and invalidCounter
-        Field hm = ClientRunnable.class.getDeclaredField("userClients");
-        hm.setAccessible(true);
-        Map<String, ClientRunnable> userClientsEmpty = new HashMap<>();
-        userClientsEmpty.clear();
-        hm.set(null, userClientsEmpty);
-        Field ic = ClientRunnable.class.getDeclaredField("invalidCounter");
-        ic.setAccessible(true);
-        ic.set(null, 0);
+        //Start every test with an empty session registry
+        Field registry = SessionRegistry.class.getDeclaredField("sessionRegistry");
+        registry.setAccessible(true);
+        registry.set(null, null);
+        //and with the message budgets of every user untouched
+        Field limiter = RateLimiter.class.getDeclaredField("rateLimiter");
+        limiter.setAccessible(true);
+        limiter.set(null, null);
+        Field clientLimiter = ClientRunnable.class.getDeclaredField("rateLimiter");
+        clientLimiter.setAccessible(true);
+        clientLimiter.set(clientRunnableObject, RateLimiter.getInstance());
 
         Field invitationService = ClientRunnable.class.getDeclaredField("invitationService");
         invitationService.setAccessible(true);
@@ -244,6 +270,383 @@ public class TestClientRunnable {
         assertTrue(clientRunnableObject.isInitialized());
     }
 
+    /**
+     * Test that a heartbeat from the client is answered with the pre-encoded answer, without going
+     * through the database, and that a heartbeat requested by the server is sent.
+     */
+    @Test
+    public void testHandleHeartbeats() {
+        clientRunnableObject.run();
+        Mockito.reset(mockedUserService);
+        when(networkConnectionMock.sendFrame(Mockito.any())).thenReturn(true);
+        when(networkConnectionMock.iterator()).thenReturn(resetAndAddMessages(messageList,
+                Message.makePingMessage(SENDER_NAME), Message.makePongMessage(SENDER_NAME)));
+        long before = clientRunnableObject.getLastHeardAt();
+        clientRunnableObject.requestPing();
+        clientRunnableObject.run();
+        clientRunnableObject.run();
+        Mockito.verify(networkConnectionMock).sendFrame(Heartbeat.PONG_FRAME);
+        Mockito.verify(networkConnectionMock).sendFrame(Heartbeat.PING_FRAME);
+        Mockito.verifyZeroInteractions(mockedUserService);
+        assertTrue(clientRunnableObject.getLastHeardAt() >= before);
+        assertTrue(clientRunnableObject.evict());
+    }
+
+    /**
+     * Test that a client sending more broadcasts than its budget is told to slow down, and that the
+     * extra broadcasts are not handled.
+     */
+    @Test
+    public void testHandleIncomingMessageOverRateLimit() {
+        clientRunnableObject.run();
+        Message[] broadcasts = new Message[4];
+        Arrays.fill(broadcasts, Message.makeBroadcastMessage(SENDER_NAME, MESSAGE_TEXT));
+        when(networkConnectionMock.iterator()).thenReturn(resetAndAddMessages(messageList, broadcasts));
+        for (int i = 0; i < broadcasts.length; i++) {
+            clientRunnableObject.run();
+        }
+        ArgumentCaptor<Message> sent = ArgumentCaptor.forClass(Message.class);
+        Mockito.verify(networkConnectionMock, Mockito.atLeastOnce()).sendMessage(sent.capture());
+        assertTrue(sent.getAllValues().stream().anyMatch(Message::isSlowDownMessage));
+        assertEquals(1, RateLimiter.getInstance().getLimitedCount());
+    }
+
+    /**
+     * Test that a drained client is sent the time to reconnect and closed, and that its user is left
+     * for the server to log out.
+     *
+     * @throws SQLException the sql exception that is thrown when a query doesn't work correctly
+     */
+    @Test
+    public void testDrain() throws SQLException {
+        clientRunnableObject.run();
+        clientRunnableObject.drain(5000);
+        clientRunnableObject.run();
+        ArgumentCaptor<Message> sent = ArgumentCaptor.forClass(Message.class);
+        Mockito.verify(networkConnectionMock, Mockito.atLeastOnce()).sendMessage(sent.capture());
+        Message last = sent.getAllValues().get(sent.getAllValues().size() - 1);
+        assertTrue(last.isServerBusyMessage());
+        assertEquals("5000", last.getReceiverOrPassword());
+        Mockito.verify(networkConnectionMock).close();
+        Mockito.verify(mockedUserService, Mockito.never()).updateUserAttributes(SENDER_NAME, "logged_in", "0");
+    }
+
+    /**
+     * Test that a client whose connection was lost is suspended instead of logged out, keeps queuing
+     * its messages, and that a new connection presenting its token takes the session over with them.
+     *
+     * @throws Exception if the token cannot be issued through reflection
+     */
+    @Test
+    public void testResume() throws Exception {
+        clientRunnableObject.run();
+        Method issue = ClientRunnable.class.getDeclaredMethod("issueResumeToken");
+        issue.setAccessible(true);
+        issue.invoke(clientRunnableObject);
+        Field tokenField = ClientRunnable.class.getDeclaredField("resumeToken");
+        tokenField.setAccessible(true);
+        String token = (String) tokenField.get(clientRunnableObject);
+        clientRunnableObject.run();
+        clientRunnableObject.evict();
+        clientRunnableObject.run();
+        assertTrue(clientRunnableObject.isSuspended());
+        Mockito.verify(networkConnectionMock).close();
+        Mockito.verify(mockedUserService, Mockito.never()).updateUserAttributes(SENDER_NAME, "logged_in", "0");
+        clientRunnableObject.enqueueMessage(Message.makePrivateUserMessage(INVITER, MESSAGE_TEXT, SENDER_NAME));
+
+        NetworkConnection newConnection = mock(NetworkConnection.class);
+        when(newConnection.sendMessage(Mockito.any())).thenReturn(true);
+        when(newConnection.iterator()).thenReturn(resetAndAddMessages(new ArrayList<>(),
+                Message.makeResumeMessage(SENDER_NAME, token)));
+        ClientRunnable resumed = new ClientRunnable(newConnection);
+        resumed.run();
+        assertTrue(resumed.isInitialized());
+        assertEquals(SENDER_NAME, resumed.getName());
+        assertSame(resumed, ClientRunnable.getClientByUsername(SENDER_NAME));
+        when(newConnection.iterator()).thenReturn(Collections.emptyIterator());
+        resumed.run();
+        ArgumentCaptor<Message> sent = ArgumentCaptor.forClass(Message.class);
+        Mockito.verify(newConnection, Mockito.times(2)).sendMessage(sent.capture());
+        assertTrue(sent.getAllValues().get(0).isResumeMessage());
+        assertNotEquals(token, sent.getAllValues().get(0).getTextOrPassword());
+        assertEquals(MESSAGE_TEXT, sent.getAllValues().get(1).getTextOrPassword());
+
+        // The token cannot be used twice.
+        NetworkConnection replay = mock(NetworkConnection.class);
+        when(replay.iterator()).thenReturn(resetAndAddMessages(new ArrayList<>(),
+                Message.makeResumeMessage(SENDER_NAME, token)));
+        ClientRunnable rejected = new ClientRunnable(replay);
+        rejected.run();
+        assertFalse(rejected.isInitialized());
+    }
+
+    /**
+     * Test that a second device of a connected user joins the devices of the user once it logs in,
+     * that a message to the user goes to both devices as one shared message, and that the user stays
+     * logged in while one of the devices is connected.
+     *
+     * @throws Exception if the services cannot be set through reflection
+     */
+    @Test
+    public void testSecondDevice() throws Exception {
+        clientRunnableObject.run();
+        NetworkConnection secondConnection = mock(NetworkConnection.class);
+        when(secondConnection.sendMessage(Mockito.any())).thenReturn(true);
+        when(secondConnection.iterator()).thenReturn(resetAndAddMessages(new ArrayList<>(),
+                Message.makeSimpleLoginMessage(SENDER_NAME)));
+        ClientRunnable secondDevice = new ClientRunnable(secondConnection);
+        for (String service : new String[]{"userService", "conversationalMessagesService", "groupService",
+                "invitationService"}) {
+            Field field = ClientRunnable.class.getDeclaredField(service);
+            field.setAccessible(true);
+            field.set(secondDevice, field.get(clientRunnableObject));
+        }
+        secondDevice.run();
+        assertNotEquals(SENDER_NAME, secondDevice.getName());
+
+        when(secondConnection.iterator()).thenReturn(resetAndAddMessages(new ArrayList<>(), LOGIN));
+        secondDevice.run();
+        assertEquals(SENDER_NAME, secondDevice.getName());
+        assertEquals(2, ClientRunnable.getDevicesByUsername(SENDER_NAME).length);
+
+        new User(null, null, SENDER_NAME, PASS, true)
+                .enqueueMessageToUser(Message.makePrivateUserMessage(INVITER, MESSAGE_TEXT, SENDER_NAME), MESSAGE_KEY);
+        when(secondConnection.iterator()).thenReturn(Collections.emptyIterator());
+        clientRunnableObject.run();
+        secondDevice.run();
+        assertSame(findSent(networkConnectionMock, MESSAGE_TEXT), findSent(secondConnection, MESSAGE_TEXT));
+
+        clientRunnableObject.evict();
+        clientRunnableObject.run();
+        Mockito.verify(mockedUserService, Mockito.never()).updateUserAttributes(SENDER_NAME, "logged_in", "0");
+        assertSame(secondDevice, ClientRunnable.getClientByUsername(SENDER_NAME));
+    }
+
+    /**
+     * Test that a stored message sent to a client that does not acknowledge is delivered once
+     * written, and that once a client acknowledges, the messages it is sent are only delivered when
+     * acknowledged, together with the ones sent before them, without going through the database.
+     *
+     * @throws Exception if the tracker cannot be set through reflection
+     */
+    @Test
+    public void testAcknowledgeDeliveries() throws Exception {
+        DeliveryTracker deliveryTracker = new DeliveryTracker();
+        Field trackerField = ClientRunnable.class.getDeclaredField("deliveryTracker");
+        trackerField.setAccessible(true);
+        trackerField.set(clientRunnableObject, deliveryTracker);
+        clientRunnableObject.run();
+        Message stored = Message.makePrivateUserMessage(INVITER, MESSAGE_TEXT, SENDER_NAME);
+        clientRunnableObject.enqueueMessage(Message.addUniqueKeyToMsg(stored, MESSAGE_TEXT, MESSAGE_KEY));
+        clientRunnableObject.run();
+        assertEquals(1, deliveryTracker.getPendingCount());
+
+        deliveryTracker = new DeliveryTracker();
+        trackerField.set(clientRunnableObject, deliveryTracker);
+        when(networkConnectionMock.iterator()).thenReturn(resetAndAddMessages(messageList,
+                Message.makeAcknowledgeMessage(SENDER_NAME, null)));
+        clientRunnableObject.run();
+        clientRunnableObject.enqueueMessage(Message.addUniqueKeyToMsg(stored, MESSAGE_TEXT, MESSAGE_KEY));
+        clientRunnableObject.enqueueMessage(Message.addUniqueKeyToMsg(stored, MESSAGE_TEXT, ANOTHER_MESSAGE_KEY));
+        clientRunnableObject.run();
+        assertEquals(0, deliveryTracker.getPendingCount());
+        when(networkConnectionMock.iterator()).thenReturn(resetAndAddMessages(messageList,
+                Message.makeAcknowledgeMessage(SENDER_NAME, ANOTHER_MESSAGE_KEY)));
+        clientRunnableObject.run();
+        assertEquals(2, deliveryTracker.getPendingCount());
+        Mockito.verify(mockedcms, Mockito.never()).markMessageAsSent(Mockito.anyString());
+    }
+
+    /**
+     * Test that a stored message which overflowed to the spill file is delivered once written, like
+     * one held in memory.
+     *
+     * @throws Exception if the tracker or queue cannot be set through reflection
+     */
+    @Test
+    public void testSpilledMessageIsDelivered() throws Exception {
+        DeliveryTracker deliveryTracker = new DeliveryTracker();
+        Field trackerField = ClientRunnable.class.getDeclaredField("deliveryTracker");
+        trackerField.setAccessible(true);
+        trackerField.set(clientRunnableObject, deliveryTracker);
+        Field queueField = ClientRunnable.class.getDeclaredField("waitingList");
+        queueField.setAccessible(true);
+        queueField.set(clientRunnableObject, new OutboundQueue(0, 0, OutboundQueue.OverflowPolicy.SPILL, 4096));
+        when(networkConnectionMock.sendFrame(Mockito.any())).thenReturn(true);
+        clientRunnableObject.run();
+        Message stored = Message.makePrivateUserMessage(INVITER, MESSAGE_TEXT, SENDER_NAME);
+        clientRunnableObject.enqueueMessage(Message.addUniqueKeyToMsg(stored, MESSAGE_TEXT, MESSAGE_KEY));
+        clientRunnableObject.run();
+        assertEquals(1, deliveryTracker.getPendingCount());
+    }
+
+    /**
+     * Test that a client catching up is sent the page of messages after its last sequence number,
+     * with their sequence numbers, ended by a SYN message telling where the page ends.
+     *
+     * @throws SQLException the sql exception
+     */
+    @Test
+    public void testSync() throws SQLException {
+        clientRunnableObject.run();
+        ConversationalMessage first = new ConversationalMessage(INVITER, SENDER_NAME, MESSAGE_TEXT, null, MESSAGE_KEY);
+        first.setSequence(42);
+        ConversationalMessage second = new ConversationalMessage(INVITER, SENDER_NAME, HELLO, null, ANOTHER_MESSAGE_KEY);
+        second.setSequence(43);
+        when(mockedcms.getMessagesAfterSequence(SENDER_NAME, 41, ServerConstants.SYNC_PAGE_SIZE + 1))
+                .thenReturn(Arrays.asList(first, second));
+        when(networkConnectionMock.iterator()).thenReturn(resetAndAddMessages(messageList,
+                Message.makeSyncMessage(SENDER_NAME, "41")));
+        clientRunnableObject.run();
+        Message synced = findSent(networkConnectionMock, HELLO);
+        assertNotNull(synced);
+        assertTrue(synced.getTextOrPassword().contains("Sequence of above message is : 43"));
+        Message end = findSent(networkConnectionMock, "43");
+        assertTrue(end.isSyncMessage());
+        assertEquals("false", end.getReceiverOrPassword());
+
+        when(networkConnectionMock.iterator()).thenReturn(resetAndAddMessages(messageList,
+                Message.makeSyncMessage(SENDER_NAME, "last")));
+        clientRunnableObject.run();
+        assertNotNull(findSent(networkConnectionMock, "Please send the last sequence number"));
+    }
+
+    /**
+     * Test that a client that missed messages of a group is sent those in the range it asked for,
+     * with their group sequence numbers, at most a page of them, ended by a GRG message telling the
+     * range that was sent.
+     *
+     * @throws SQLException the sql exception
+     */
+    @Test
+    public void testGetGroupRange() throws SQLException {
+        clientRunnableObject.run();
+        ConversationalMessage missed = new ConversationalMessage(INVITER, SENDER_NAME, HELLO, null, MESSAGE_KEY);
+        missed.setGroupUniqueKey(INVITER + "::" + GROUP_NAME + "::1");
+        missed.setSequence(12);
+        missed.setGroupSequence(42);
+        long last = 41 + ServerConstants.SYNC_PAGE_SIZE - 1;
+        when(mockedcms.getGroupMessagesInRange(SENDER_NAME, GROUP_NAME, 41, last))
+                .thenReturn(Collections.singletonList(missed));
+        when(networkConnectionMock.iterator()).thenReturn(resetAndAddMessages(messageList,
+                Message.makeGetGroupRangeMessage(SENDER_NAME, "41-100000", GROUP_NAME)));
+        clientRunnableObject.run();
+        Message sent = findSent(networkConnectionMock, "Sent on group: " + GROUP_NAME);
+        assertNotNull(sent);
+        assertTrue(sent.getTextOrPassword().contains("Group sequence of above message is : 42"));
+        Message end = findSent(networkConnectionMock, "41-" + last);
+        assertTrue(end.isGetGroupRangeMessage());
+        assertEquals(GROUP_NAME, end.getReceiverOrPassword());
+
+        when(networkConnectionMock.iterator()).thenReturn(resetAndAddMessages(messageList,
+                Message.makeGetGroupRangeMessage(SENDER_NAME, "57-41", GROUP_NAME)));
+        clientRunnableObject.run();
+        assertNotNull(findSent(networkConnectionMock, "Please send the range of group sequence numbers"));
+    }
+
+    /**
+     * Test that a client subscribed to a channel is sent the messages published on it, and is
+     * no longer sent them once it unsubscribed.
+     *
+     * @throws Exception if the channel registry cannot be set through reflection
+     */
+    @Test
+    public void testSubscribeAndPublish() throws Exception {
+        ChannelRegistry channelRegistry = new ChannelRegistry(2);
+        Field registryField = ClientRunnable.class.getDeclaredField("channelRegistry");
+        registryField.setAccessible(true);
+        registryField.set(clientRunnableObject, channelRegistry);
+        clientRunnableObject.run();
+        when(networkConnectionMock.iterator()).thenReturn(resetAndAddMessages(messageList,
+                Message.makeSubscribeMessage(SENDER_NAME, "news")));
+        clientRunnableObject.run();
+        assertNotNull(findSent(networkConnectionMock, "You are subscribed to channel news"));
+        assertEquals(1, channelRegistry.getSubscriberCount("news"));
+
+        when(networkConnectionMock.iterator()).thenReturn(resetAndAddMessages(messageList,
+                Message.makePublishMessage(SENDER_NAME, HELLO, "news")));
+        clientRunnableObject.run();
+        Message published = findSent(networkConnectionMock, HELLO);
+        assertNotNull(published);
+        assertTrue(published.isPublishMessage());
+
+        when(networkConnectionMock.iterator()).thenReturn(resetAndAddMessages(messageList,
+                Message.makeUnsubscribeMessage(SENDER_NAME, "news")));
+        clientRunnableObject.run();
+        assertNotNull(findSent(networkConnectionMock, "You are unsubscribed from channel news"));
+        when(networkConnectionMock.iterator()).thenReturn(resetAndAddMessages(messageList,
+                Message.makePublishMessage(SENDER_NAME, HELLO, "news")));
+        clientRunnableObject.run();
+        assertNotNull(findSent(networkConnectionMock, "Channel news has no subscribers"));
+    }
+
+    /**
+     * Test that a private message sent again with the same ID is answered with the unique key of
+     * the message sent the first time, without being stored again, and that a message without an
+     * ID is always sent.
+     *
+     * @throws Exception if the deduplicator cannot be set through reflection
+     */
+    @Test
+    public void testIdempotentSend() throws Exception {
+        SendDeduplicator sendDeduplicator = new SendDeduplicator(60000, 4, 16);
+        Field deduplicatorField = ClientRunnable.class.getDeclaredField("sendDeduplicator");
+        deduplicatorField.setAccessible(true);
+        deduplicatorField.set(clientRunnableObject, sendDeduplicator);
+        clientRunnableObject.run();
+        when(mockedUserService.getUserByUserName(Mockito.anyString())).thenReturn(mockedUser);
+        when(mockedUser.isLoggedIn()).thenReturn(true);
+        Message messageId = Message.makeMessageIdMessage(SENDER_NAME, "send-1");
+        for (Message msg : new Message[]{messageId, PRIVATE_MESSAGE, messageId, PRIVATE_MESSAGE, PRIVATE_MESSAGE}) {
+            when(networkConnectionMock.iterator()).thenReturn(resetAndAddMessages(messageList, msg));
+            clientRunnableObject.run();
+        }
+        Mockito.verify(mockedUser, Mockito.times(2)).userSendMessage(PRIVATE_MESSAGE);
+        assertEquals(1, sendDeduplicator.getHitCount());
+        assertEquals(DUMMY_MSG_UNIQUE_KEY, sendDeduplicator.find(SENDER_NAME, "send-1"));
+    }
+
+    /**
+     * Test that the ID of a group message is only recorded once the message is stored, so that a
+     * group message whose store failed is stored when it is sent again with the same ID.
+     *
+     * @throws Exception if the deduplicator cannot be set through reflection
+     */
+    @Test
+    public void testGroupSendFailureReleasesId() throws Exception {
+        SendDeduplicator sendDeduplicator = new SendDeduplicator(60000, 4, 16);
+        Field deduplicatorField = ClientRunnable.class.getDeclaredField("sendDeduplicator");
+        deduplicatorField.setAccessible(true);
+        deduplicatorField.set(clientRunnableObject, sendDeduplicator);
+        when(mockedGroup.getGroupName()).thenReturn(DUMMY_GROUP_NAME);
+        Mockito.doThrow(new SQLException("store failed")).doNothing().when(mockedGroup)
+                .groupSendMessage(Mockito.any(Message.class), Mockito.anyString());
+        clientRunnableObject.run();
+        Message messageId = Message.makeMessageIdMessage(SENDER_NAME, "send-1");
+        for (Message msg : new Message[]{messageId, GROUP_MESSAGE}) {
+            when(networkConnectionMock.iterator()).thenReturn(resetAndAddMessages(messageList, msg));
+            clientRunnableObject.run();
+        }
+        assertNull(sendDeduplicator.find(SENDER_NAME, "send-1"));
+        for (Message msg : new Message[]{messageId, GROUP_MESSAGE}) {
+            when(networkConnectionMock.iterator()).thenReturn(resetAndAddMessages(messageList, msg));
+            clientRunnableObject.run();
+        }
+        Mockito.verify(mockedGroup, Mockito.times(2)).groupSendMessage(Mockito.any(Message.class), Mockito.anyString());
+        assertNotNull(sendDeduplicator.find(SENDER_NAME, "send-1"));
+    }
+
+    private static Message findSent(NetworkConnection connection, String text) {
+        ArgumentCaptor<Message> sent = ArgumentCaptor.forClass(Message.class);
+        Mockito.verify(connection, Mockito.atLeastOnce()).sendMessage(sent.capture());
+        for (Message message : sent.getAllValues()) {
+            if (message.getTextOrPassword() != null && message.getTextOrPassword().startsWith(text)) {
+                return message;
+            }
+        }
+        return null;
+    }
+
     /**
      * Testing handleIncomingMessage() where the Message iterator does
      * not have broadcast message
@@ -302,8 +705,8 @@ public class TestClientRunnable {
         when(mockedUserService.getUserByUserNameAndPassword(Mockito.anyString(), Mockito.anyString())).thenReturn(mockedUser);
         when(mockedUserService.updateUserAttributes(Mockito.anyString(), Mockito.anyString(), Mockito.anyString())).thenReturn(true);
         clientRunnableObject.run();
-        Mockito.verify(mockedUser, Mockito.atLeastOnce()).enqueueMessageToUser(Mockito.any(), Mockito.anyString());
-        Mockito.verify(mockedcms, Mockito.atLeastOnce()).markMessageAsSent(Mockito.anyString());
+        Mockito.verify(mockedUser, Mockito.atLeastOnce()).enqueueMessageToUser(Mockito.any(), Mockito.anyString(), Mockito.anyLong());
+        Mockito.verify(mockedcms, Mockito.never()).markMessageAsSent(Mockito.anyString());
 
     }
 
@@ -332,7 +735,7 @@ public class TestClientRunnable {
         Field f = User.class.getDeclaredField("cms");
         f.setAccessible(true);
         f.set(USER_LOGGED_ON, mockedcms);
-        when(mockedcms.insertConversationalMessage(SENDER_NAME, SENDER_NAME, HELLO, true)).thenReturn(UNIQUE_MESSAGE_KEY);
+        when(mockedcms.insertConversationalMessage(SENDER_NAME, SENDER_NAME, HELLO, false, 0L)).thenReturn(UNIQUE_MESSAGE_KEY);
         clientRunnableObject.run();
         assertTrue(clientRunnableObject.isInitialized());
     }
@@ -523,10 +926,14 @@ public class TestClientRunnable {
     public void testHandleIncomingMessageWithIteratorWithLoginMessageForValidUserSuccessfulLoginSendUnsentInvitationsToInvitee() throws SQLException {
         clientRunnableObject.run();
         when(mockedUserService.updateUserAttributes(Mockito.anyString(), Mockito.anyString(), Mockito.anyString())).thenReturn(true);
-        when(mockedInvitationService.getInvitationsForInvitee(SENDER_NAME)).thenReturn(new HashSet(Arrays.asList(CREATE_INVITATION_MESSAGE)));
-        when(mockedInvitationService.setInvitationIsSentToInvitee(SENDER_NAME, GROUP_NAME)).thenReturn(true);
+        Set<Message> invitations = new HashSet<>(Arrays.asList(CREATE_INVITATION_MESSAGE));
+        when(mockedInvitationService.getPendingInvitationsForInvitee(SENDER_NAME)).thenReturn(invitations);
+        when(mockedInvitationService.setInvitationsAreSentToInvitee(invitations)).thenReturn(true);
         when(networkConnectionMock.iterator()).thenReturn(resetAndAddMessages(messageList, LOGIN));
         clientRunnableObject.run();
+        Mockito.verify(mockedInvitationService).setInvitationsAreSentToInvitee(invitations);
+        Mockito.verify(mockedInvitationService, Mockito.never())
+                .setInvitationIsSentToInvitee(Mockito.anyString(), Mockito.anyString());
     }
 
     /**
@@ -536,11 +943,14 @@ public class TestClientRunnable {
     public void testHandleIncomingMessageWithIteratorWithLoginMessageForValidUserSuccessfulLoginSendUnsentInvitationsToModerator() throws SQLException {
         clientRunnableObject.run();
         when(mockedUserService.updateUserAttributes(Mockito.anyString(), Mockito.anyString(), Mockito.anyString())).thenReturn(true);
-        when(mockedGroupService.getGroupsByModerator(SENDER_NAME)).thenReturn(new HashSet<>(Arrays.asList(GROUP_NAME)));
-        when(mockedInvitationService.getInvitationsForGroup(GROUP_NAME)).thenReturn(new HashSet(Arrays.asList(CREATE_INVITATION_MESSAGE)));
-        when(mockedInvitationService.setInvitationIsSentToModerator(SENDER_NAME, GROUP_NAME)).thenReturn(true);
+        Set<Message> invitations = new HashSet<>(Arrays.asList(CREATE_INVITATION_MESSAGE));
+        when(mockedInvitationService.getPendingInvitationsForModerator(SENDER_NAME)).thenReturn(invitations);
+        when(mockedInvitationService.setInvitationsAreSentToModerator(invitations)).thenReturn(true);
         when(networkConnectionMock.iterator()).thenReturn(resetAndAddMessages(messageList, LOGIN));
         clientRunnableObject.run();
+        Mockito.verify(mockedInvitationService).setInvitationsAreSentToModerator(invitations);
+        Mockito.verify(mockedGroupService, Mockito.never()).getGroupsByModerator(Mockito.anyString());
+        Mockito.verify(mockedInvitationService, Mockito.never()).getInvitationsForGroup(Mockito.anyString());
     }
 
     /**
@@ -1358,6 +1768,149 @@ public class TestClientRunnable {
         assertTrue(clientRunnableObject.isInitialized());
     }
 
+    /**
+     * Test that a group message read by the client goes through the stages of the pipeline and is
+     * delivered to the group by the fan-out planner, after which the sender is told how long the
+     * fan-out took.
+     *
+     * @throws SQLException the SQL exception
+     */
+    @Test
+    public void testGroupMessageThroughPipeline() throws SQLException, NoSuchFieldException, IllegalAccessException {
+        ConversationalMessageDAO plannerService = Mockito.mock(ConversationalMessageDAO.class);
+        Field plannerField = FanoutPlanner.class.getDeclaredField("fanoutPlanner");
+        plannerField.setAccessible(true);
+        plannerField.set(null, new FanoutPlanner(1, 1, 1, plannerService, Mockito.mock(InboxService.class)));
+        RequestPipeline pipeline = new RequestPipeline(1, 1, 1, 16);
+        try {
+            pipeline.start();
+            Field pipelineField = ClientRunnable.class.getDeclaredField("pipeline");
+            pipelineField.setAccessible(true);
+            pipelineField.set(clientRunnableObject, pipeline);
+            when(mockedGroup.getGroupName()).thenReturn(DUMMY_GROUP_NAME);
+            clientRunnableObject.run();
+            when(networkConnectionMock.iterator()).thenReturn(resetAndAddMessages(messageList, GROUP_MESSAGE));
+            clientRunnableObject.run();
+            Mockito.verify(plannerService, Mockito.timeout(5000)).nextGroupSequence(DUMMY_GROUP_NAME);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (pipeline.getFanOutActors().getProcessedCount() < 1 && System.currentTimeMillis() < deadline) {
+                Thread.yield();
+            }
+            assertEquals(1, pipeline.getSessionStage().getProcessedCount());
+            assertEquals(1, pipeline.getDispatchActors().getProcessedCount());
+            assertEquals(1, pipeline.getFanOutActors().getProcessedCount());
+            Mockito.verify(mockedGroup, Mockito.never()).groupSendMessage(Mockito.any(Message.class), Mockito.anyString());
+            when(networkConnectionMock.iterator()).thenReturn(resetAndAddMessages(messageList));
+            clientRunnableObject.run();
+            assertNotNull(findSent(networkConnectionMock, "The group message " + SENDER_NAME + "::" + DUMMY_GROUP_NAME));
+        } finally {
+            pipeline.stop();
+            plannerField.set(null, null);
+        }
+    }
+
+    /**
+     * Test that the sender of a group message whose fan-out fails is told so, and that the ID of the
+     * message is released, so that the message can be sent again.
+     *
+     * @throws Exception if the planner cannot be set through reflection
+     */
+    @Test
+    public void testGroupMessageThroughPipelineFailure() throws Exception {
+        ConversationalMessageDAO plannerService = Mockito.mock(ConversationalMessageDAO.class);
+        when(plannerService.nextGroupSequence(DUMMY_GROUP_NAME)).thenThrow(new SQLException("store failed"));
+        Field plannerField = FanoutPlanner.class.getDeclaredField("fanoutPlanner");
+        plannerField.setAccessible(true);
+        plannerField.set(null, new FanoutPlanner(1, 1, 1, plannerService, Mockito.mock(InboxService.class)));
+        RequestPipeline pipeline = new RequestPipeline(1, 1, 1, 16);
+        try {
+            pipeline.start();
+            Field pipelineField = ClientRunnable.class.getDeclaredField("pipeline");
+            pipelineField.setAccessible(true);
+            pipelineField.set(clientRunnableObject, pipeline);
+            when(mockedGroup.getGroupName()).thenReturn(DUMMY_GROUP_NAME);
+            clientRunnableObject.run();
+            for (Message msg : new Message[]{Message.makeMessageIdMessage(SENDER_NAME, "send-1"), GROUP_MESSAGE}) {
+                when(networkConnectionMock.iterator()).thenReturn(resetAndAddMessages(messageList, msg));
+                clientRunnableObject.run();
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (pipeline.getFanOutActors().getFailedCount() < 1 && System.currentTimeMillis() < deadline) {
+                Thread.yield();
+            }
+            assertEquals(1, pipeline.getFanOutActors().getFailedCount());
+            assertNull(SendDeduplicator.getInstance().reserve(SENDER_NAME, "send-1"));
+            SendDeduplicator.getInstance().release(SENDER_NAME, "send-1");
+            when(networkConnectionMock.iterator()).thenReturn(resetAndAddMessages(messageList));
+            clientRunnableObject.run();
+            Message failure = findSent(networkConnectionMock, "The group message " + SENDER_NAME + "::"
+                    + DUMMY_GROUP_NAME);
+            assertNotNull(failure);
+            assertTrue(failure.getTextOrPassword().contains("could not be delivered"));
+        } finally {
+            pipeline.stop();
+            plannerField.set(null, null);
+        }
+    }
+
+    /**
+     * Test that the session of a client is checked in its mailbox, so that a quit message sent after a
+     * request does not end the session before the request is handled.
+     *
+     * @throws Exception if the mailbox of the client is interrupted
+     */
+    @Test
+    public void testSessionCheckedInOrderWithDispatch() throws Exception {
+        RequestPipeline pipeline = new RequestPipeline(1, 1, 1, 16);
+        CountDownLatch blocked = new CountDownLatch(1);
+        try {
+            pipeline.start();
+            clientRunnableObject.run();
+            pipeline.getDispatchActors().submit(clientRunnableObject, blocked::await);
+            pipeline.submit(clientRunnableObject, Message.makeSearchMessage(SENDER_NAME, "nothing", "x"));
+            pipeline.submit(clientRunnableObject, QUIT_MESSAGE);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (pipeline.getSessionStage().getProcessedCount() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.yield();
+            }
+            assertEquals(2, pipeline.getSessionStage().getProcessedCount());
+            Field terminate = ClientRunnable.class.getDeclaredField("terminate");
+            terminate.setAccessible(true);
+            assertFalse((boolean) terminate.get(clientRunnableObject));
+            blocked.countDown();
+            deadline = System.currentTimeMillis() + 5000;
+            while (!(boolean) terminate.get(clientRunnableObject) && System.currentTimeMillis() < deadline) {
+                Thread.yield();
+            }
+            assertTrue((boolean) terminate.get(clientRunnableObject));
+            assertEquals(3, pipeline.getDispatchActors().getProcessedCount());
+        } finally {
+            blocked.countDown();
+            pipeline.stop();
+        }
+    }
+
+    /**
+     * Test that in the virtual-thread mode the requests read are handled on the database pool until the
+     * connection closes, and the writing thread then sends the responses and terminates the client.
+     */
+    @Test
+    public void testBlockingReadAndWrite() throws SQLException {
+        Message search = Message.makeSearchMessage(SENDER_NAME, "nothing", "x");
+        List<Message> requests = new ArrayList<>();
+        requests.add(search);
+        when(networkConnectionMock.iterator()).thenReturn(messageIter, requests.iterator());
+        when(networkConnectionMock.isOpen()).thenReturn(true, true, false);
+        clientRunnableObject.readBlocking();
+        assertTrue(clientRunnableObject.isInitialized());
+        Mockito.verify(networkConnectionMock, Mockito.never()).sendMessage(Mockito.any());
+        clientRunnableObject.writeBlocking();
+        ArgumentCaptor<Message> sent = ArgumentCaptor.forClass(Message.class);
+        Mockito.verify(networkConnectionMock).sendMessage(sent.capture());
+        assertTrue(sent.getValue().getTextOrPassword().startsWith("We support searching"));
+        Mockito.verify(networkConnectionMock).close();
+    }
+
     /**
      * Test Get Followers
      */
@@ -1579,6 +2132,32 @@ public class TestClientRunnable {
         assertTrue(clientRunnableObject.isInitialized());
     }
 
+    /**
+     * Test that the result of a search is sent once the asynchronous fetch completes.
+     *
+     * @throws SQLException the sql exception
+     */
+    @Test
+    public void testSearchMessageForUserIsSentOnCompletion() throws SQLException, InterruptedException {
+        clientRunnableObject.run();
+        HashMap<String, String> testSet = new HashMap<>();
+        testSet.put("kp", "some name");
+        when(mockedUserService.searchUser("kp")).thenReturn(testSet);
+        when(networkConnectionMock.iterator()).thenReturn(resetAndAddMessages(messageList, SEARCH_USER_MESSAGE));
+        clientRunnableObject.run();
+        boolean sent = false;
+        for (int i = 0; i < 50 && !sent; i++) {
+            Thread.sleep(20);
+            when(networkConnectionMock.iterator()).thenReturn(resetAndAddMessages(messageList));
+            clientRunnableObject.run();
+            ArgumentCaptor<Message> sentMessages = ArgumentCaptor.forClass(Message.class);
+            Mockito.verify(networkConnectionMock, Mockito.atLeastOnce()).sendMessage(sentMessages.capture());
+            sent = sentMessages.getAllValues().stream()
+                    .anyMatch(m -> m.getTextOrPassword().contains("Number of results : 1"));
+        }
+        assertTrue(sent);
+    }
+
     /**
      * Test search message for user when no such user is found.
      *
@@ -1926,11 +2505,6 @@ public class TestClientRunnable {
         when(mockedInvitationService.getInvitation(INVITEE, GROUP_NAME)).thenReturn(null);
         when(mockedInvitationService.createInvitation(SENDER_NAME, INVITEE, GROUP_NAME)).thenReturn(true);
         when(mockedInvitationService.setInvitationIsSentToInvitee(INVITEE, GROUP_NAME)).thenReturn(true);
-        Field hm = ClientRunnable.class.getDeclaredField("userClients");
-        hm.setAccessible(true);
-        Map<String, ClientRunnable> userClientsEmpty = new HashMap<>();
-        userClientsEmpty.clear();
-        hm.set(null, userClientsEmpty);
         clientRunnableObject.run();
         assertTrue(clientRunnableObject.isInitialized());
     }
@@ -1950,12 +2524,8 @@ public class TestClientRunnable {
         when(mockedInvitationService.getInvitation(INVITEE, GROUP_NAME)).thenReturn(null);
         when(mockedInvitationService.createInvitation(SENDER_NAME, INVITEE, GROUP_NAME)).thenReturn(true);
         when(mockedInvitationService.setInvitationIsSentToInvitee(INVITEE, GROUP_NAME)).thenReturn(true);
-        Field hm = ClientRunnable.class.getDeclaredField("userClients");
-        hm.setAccessible(true);
         ClientRunnable mockedClient = mock(ClientRunnable.class);
-        Map<String, ClientRunnable> userClients = new HashMap();
-        userClients.put(INVITEE, mockedClient);
-        hm.set(null, userClients);
+        SessionRegistry.getInstance().claim(INVITEE, mockedClient);
         clientRunnableObject.run();
         assertTrue(clientRunnableObject.isInitialized());
     }
@@ -1975,12 +2545,8 @@ public class TestClientRunnable {
         when(mockedInvitationService.getInvitation(INVITEE, GROUP_NAME)).thenReturn(null);
         when(mockedInvitationService.createInvitation(SENDER_NAME, INVITEE, GROUP_NAME)).thenReturn(true);
         when(mockedInvitationService.setInvitationIsSentToInvitee(INVITEE, GROUP_NAME)).thenReturn(true);
-        Field hm = ClientRunnable.class.getDeclaredField("userClients");
-        hm.setAccessible(true);
         ClientRunnable mockedClient = mock(ClientRunnable.class);
-        Map<String, ClientRunnable> userClients = new HashMap();
-        userClients.put(MODERATOR, mockedClient);
-        hm.set(null, userClients);
+        SessionRegistry.getInstance().claim(MODERATOR, mockedClient);
         when(mockedGroupService.getGroup(GROUP_NAME).getModeratorName()).thenReturn(MODERATOR);
         when(mockedInvitationService.setInvitationIsSentToModerator(INVITEE, GROUP_NAME)).thenReturn(true);
         clientRunnableObject.run();
@@ -3091,8 +3657,8 @@ public class TestClientRunnable {
         when(mockedUserService.updateUserAttributes(Mockito.anyString(), Mockito.anyString(), Mockito.anyString())).thenReturn(true);
         when(mockedUserService.getUserByUserName(Mockito.anyString())).thenReturn(mockedGovtUser);
         clientRunnableObject.run();
-        Mockito.verify(mockedUser, Mockito.atLeastOnce()).enqueueMessageToUser(Mockito.any(), Mockito.anyString());
-        Mockito.verify(mockedcms, Mockito.atLeastOnce()).markMessageAsSent(Mockito.anyString());
+        Mockito.verify(mockedUser, Mockito.atLeastOnce()).enqueueMessageToUser(Mockito.any(), Mockito.anyString(), Mockito.anyLong());
+        Mockito.verify(mockedcms, Mockito.never()).markMessageAsSent(Mockito.anyString());
         Mockito.verify(mockedUserService, Mockito.atLeastOnce()).getUserByUserName(Mockito.anyString());
         Mockito.verify(mockedGovtUser, Mockito.atLeastOnce()).userSendMessage(Mockito.any());
 
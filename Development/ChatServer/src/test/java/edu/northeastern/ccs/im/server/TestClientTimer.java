@@ -8,10 +8,10 @@
 package edu.northeastern.ccs.im.server;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
-import java.lang.reflect.Field;
-import java.util.GregorianCalendar;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.jupiter.api.Test;
 
@@ -24,74 +24,81 @@ import org.junit.jupiter.api.Test;
  */
 public class TestClientTimer {
 
+    private static final long INITIAL_TIMEOUT = 600000;
+    private static final long LOGGED_IN_TIMEOUT = 18000000;
+
+    private final AtomicLong now = new AtomicLong(1000000);
+    private final TimerWheel wheel = new TimerWheel(1000, 64, now::get);
+
     /**
      * Test for the constructor of Class ClientTimer
      */
     @Test
     public void testClientTimerConstructor() {
-
         ClientTimer ct = new ClientTimer();
         assertTrue(ClientTimer.class.isInstance(ct));
+        ct.cancel();
     }
 
     /**
      * Test to check the time update after initialization function
-     *
-     * @throws NoSuchFieldException
-     * @throws SecurityException
-     * @throws IllegalArgumentException
-     * @throws IllegalAccessException
      */
     @Test
-    public void testUpdateAfterInitialization() throws NoSuchFieldException, SecurityException, IllegalArgumentException, IllegalAccessException {
-        ClientTimer ct = new ClientTimer();
-        Field privateStringField = ClientTimer.class.
-                getDeclaredField("calendar");
-        privateStringField.setAccessible(true);
-        GregorianCalendar calendar = (GregorianCalendar) privateStringField.get(ct);
-        long timeAfterActivity = calendar.getTimeInMillis();
+    public void testUpdateAfterInitialization() {
+        ClientTimer ct = new ClientTimer(wheel);
+        assertEquals(now.get() + INITIAL_TIMEOUT, ct.getDeadline());
+        now.addAndGet(5000);
         ct.updateAfterInitialization();
-
-        assertTrue(Math.abs(calendar.getTimeInMillis() - timeAfterActivity) < 100);
-        assertTrue(ClientTimer.class.isInstance(ct));
-
+        assertEquals(now.get() + INITIAL_TIMEOUT, ct.getDeadline());
+        assertEquals(1, wheel.getPendingCount());
     }
 
-
     /**
      * Test to check the time update after activity
-     *
-     * @throws NoSuchFieldException
-     * @throws SecurityException
-     * @throws IllegalArgumentException
-     * @throws IllegalAccessException
      */
     @Test
-    public void testupdateAfterActivity() throws NoSuchFieldException, SecurityException, IllegalArgumentException, IllegalAccessException {
-        ClientTimer ct = new ClientTimer();
-
-        Field privateStringField = ClientTimer.class.
-                getDeclaredField("calendar");
-
-        privateStringField.setAccessible(true);
-        GregorianCalendar calendar = (GregorianCalendar) privateStringField.get(ct);
-        long timeAfterActivity = calendar.getTimeInMillis() + 17400000;
+    public void testupdateAfterActivity() {
+        ClientTimer ct = new ClientTimer(wheel);
         ct.updateAfterActivity();
-        assertTrue(Math.abs(calendar.getTimeInMillis() - timeAfterActivity) < 20);
-        assertTrue(ClientTimer.class.isInstance(ct));
-
+        assertEquals(now.get() + LOGGED_IN_TIMEOUT, ct.getDeadline());
     }
 
     /**
-     * Test whether the calendar represents a time before the current time.
+     * Test whether the deadline is found behind the current time only once it has passed.
      */
     @Test
     public void testBehind() {
-        ClientTimer ct = new ClientTimer();
+        ClientTimer ct = new ClientTimer(wheel);
         ct.updateAfterInitialization();
-        assertTrue(ClientTimer.class.isInstance(ct));
-        assertEquals(ct.isBehind(), false);
+        wheel.advance(now.addAndGet(INITIAL_TIMEOUT - 1000));
+        assertFalse(ct.isBehind());
+        wheel.advance(now.addAndGet(1000));
+        assertTrue(ct.isBehind());
+        assertEquals(0, wheel.getPendingCount());
+    }
 
+    /**
+     * Test that activity after login gives the client the longer timeout.
+     */
+    @Test
+    public void testActivityKeepsClientAlive() {
+        ClientTimer ct = new ClientTimer(wheel);
+        ct.updateAfterActivity();
+        wheel.advance(now.addAndGet(INITIAL_TIMEOUT));
+        assertFalse(ct.isBehind());
+        wheel.advance(now.addAndGet(LOGGED_IN_TIMEOUT - INITIAL_TIMEOUT));
+        assertTrue(ct.isBehind());
+    }
 
+    /**
+     * Test that a cancelled timer leaves the wheel without expiring.
+     */
+    @Test
+    public void testCancel() {
+        ClientTimer ct = new ClientTimer(wheel);
+        ct.cancel();
+        wheel.advance(now.addAndGet(INITIAL_TIMEOUT));
+        assertFalse(ct.isBehind());
+        assertEquals(0, wheel.getPendingCount());
     }
 }
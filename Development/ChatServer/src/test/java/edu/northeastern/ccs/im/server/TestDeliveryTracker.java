@@ -0,0 +1,81 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import edu.northeastern.ccs.im.services.ConversationalMessageDAO;
+
+/**
+ * Test suite for the DeliveryTracker class.
+ */
+public class TestDeliveryTracker {
+
+    private DeliveryTracker deliveryTracker;
+    private ConversationalMessageDAO conversationalMessageService;
+
+    /**
+     * Starts every test with no delivered messages.
+     */
+    @BeforeEach
+    public void setup() {
+        deliveryTracker = new DeliveryTracker();
+        conversationalMessageService = Mockito.mock(ConversationalMessageDAO.class);
+    }
+
+    /**
+     * Test that the messages delivered to several devices are marked sent once, in a single batch.
+     *
+     * @throws SQLException the sql exception
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFlushCoalescesDeliveries() throws SQLException {
+        Mockito.when(conversationalMessageService.markMessagesAsSent(Mockito.anyCollection())).thenReturn(2);
+        deliveryTracker.delivered("key1");
+        deliveryTracker.delivered(Arrays.asList("key1", "key2"));
+        assertEquals(2, deliveryTracker.getPendingCount());
+        assertEquals(2, deliveryTracker.flush(conversationalMessageService));
+        ArgumentCaptor<Collection> batch = ArgumentCaptor.forClass(Collection.class);
+        Mockito.verify(conversationalMessageService).markMessagesAsSent(batch.capture());
+        assertEquals(new HashSet<>(Arrays.asList("key1", "key2")), new HashSet<>(batch.getValue()));
+        assertEquals(0, deliveryTracker.getPendingCount());
+
+        // Nothing delivered since, nothing to write.
+        assertEquals(0, deliveryTracker.flush(conversationalMessageService));
+        Mockito.verify(conversationalMessageService, Mockito.times(1)).markMessagesAsSent(Mockito.anyCollection());
+        assertEquals("DeliveryTracker[delivered=3, persisted=2, batches=1, pending=0]", deliveryTracker.toString());
+    }
+
+    /**
+     * Test that the messages of a failed batch are kept for the next flush.
+     *
+     * @throws SQLException the sql exception
+     */
+    @Test
+    public void testFlushKeepsMessagesOnFailure() throws SQLException {
+        Mockito.when(conversationalMessageService.markMessagesAsSent(Mockito.anyCollection()))
+                .thenThrow(new SQLException("unavailable")).thenReturn(1);
+        deliveryTracker.delivered("key1");
+        assertThrows(SQLException.class, () -> deliveryTracker.flush(conversationalMessageService));
+        assertEquals(1, deliveryTracker.getPendingCount());
+        assertEquals(1, deliveryTracker.flush(conversationalMessageService));
+        assertEquals(0, deliveryTracker.getPendingCount());
+    }
+}
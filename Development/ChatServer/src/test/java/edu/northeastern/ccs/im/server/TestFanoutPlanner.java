@@ -0,0 +1,242 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import edu.northeastern.ccs.im.Message;
+import edu.northeastern.ccs.im.models.Group;
+import edu.northeastern.ccs.im.models.User;
+import edu.northeastern.ccs.im.services.ConversationalMessageDAO;
+import edu.northeastern.ccs.im.services.InboxService;
+import edu.northeastern.ccs.im.services.SequenceLock;
+
+/**
+ * Test suite for the FanoutPlanner class, with chunks of one member so that the online members are
+ * delivered to by several tasks, and with the sequence locks of all the members held at once unless
+ * a test says otherwise.
+ */
+public class TestFanoutPlanner {
+
+    private static final String GROUP_NAME = "family";
+    private static final String SUB_GROUP_NAME = "cousins";
+    private static final String GROUP_KEY = "alice::family::2019-04-01 10:00:00.0";
+
+    private static final User ALICE = new User("Alice", "A", "alice", "pass", true);
+    private static final User BOB = new User("Bob", "B", "bob", "pass", true);
+    private static final User CAROL = new User("Carol", "C", "carol", "pass", false);
+
+    private FanoutPlanner fanoutPlanner;
+    private ConversationalMessageDAO conversationalMessageService;
+    private InboxService inboxService;
+
+    /**
+     * Starts every test with no connected device.
+     */
+    @BeforeEach
+    public void setup() throws NoSuchFieldException, IllegalAccessException {
+        resetRegistry();
+        conversationalMessageService = Mockito.mock(ConversationalMessageDAO.class);
+        inboxService = Mockito.mock(InboxService.class);
+        fanoutPlanner = new FanoutPlanner(2, 1, Integer.MAX_VALUE, conversationalMessageService, inboxService);
+    }
+
+    /**
+     * Leaves an empty registry to the other tests.
+     */
+    @AfterEach
+    public void tearDown() throws NoSuchFieldException, IllegalAccessException {
+        resetRegistry();
+    }
+
+    /**
+     * Test that every member is collected once, and every group walked once, when the groups are
+     * reached through several member groups and even when they contain each other.
+     */
+    @Test
+    public void testCollectRecipients() {
+        Group family = makeGroup(GROUP_NAME, ALICE, BOB);
+        Group cousins = makeGroup(SUB_GROUP_NAME, BOB, CAROL);
+        Group friends = makeGroup("friends", CAROL);
+        family.setMemberGroups(new HashSet<>(Arrays.asList(cousins, friends)));
+        cousins.setMemberGroups(new HashSet<>(Arrays.asList(friends, family)));
+        assertEquals(new HashSet<>(Arrays.asList(ALICE, BOB, CAROL)), FanoutPlanner.collectRecipients(family));
+        assertEquals(3, FanoutPlanner.collectRecipients(family).size());
+    }
+
+    /**
+     * Test that the copies of all the members are stored in one batch with the group sequence
+     * number, that the online members are handed their copy and the others are not, and that the
+     * inbox summaries are updated accordingly.
+     *
+     * @throws SQLException the sql exception
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFanOut() throws SQLException {
+        ClientRunnable aliceDevice = connect(ALICE);
+        ClientRunnable bobDevice = connect(BOB);
+        Group family = makeGroup(GROUP_NAME, ALICE, BOB);
+        family.setMemberGroups(new HashSet<>(Arrays.asList(makeGroup(SUB_GROUP_NAME, BOB, CAROL))));
+        Map<String, String> uniqueKeys = new HashMap<>();
+        uniqueKeys.put("alice", "key-alice");
+        uniqueKeys.put("bob", "key-bob");
+        uniqueKeys.put("carol", "key-carol");
+        Mockito.when(conversationalMessageService.nextGroupSequence(GROUP_NAME)).thenReturn(5L);
+        Mockito.when(conversationalMessageService.nextSequence(Mockito.anyString())).thenReturn(9L);
+        Mockito.when(conversationalMessageService.insertConversationalMessages(Mockito.anyString(),
+                Mockito.anyString(), Mockito.anyMap())).thenReturn(uniqueKeys);
+        Message msg = Message.makeGroupMessage("alice", "hello", GROUP_NAME);
+
+        FanoutPlanner.Result result = fanoutPlanner.fanOut(family, msg, GROUP_KEY);
+        assertEquals(3, result.getRecipientCount());
+        assertEquals(2, result.getOnlineCount());
+        assertEquals(5, msg.getGroupSequence());
+
+        ArgumentCaptor<Map> sequences = ArgumentCaptor.forClass(Map.class);
+        Mockito.verify(conversationalMessageService, Mockito.times(1)).insertConversationalMessages(
+                Mockito.eq("alice"), Mockito.eq("hello"), sequences.capture());
+        assertEquals(new HashSet<>(Arrays.asList("alice", "bob", "carol")), sequences.getValue().keySet());
+        ArgumentCaptor<Collection> keys = ArgumentCaptor.forClass(Collection.class);
+        Mockito.verify(conversationalMessageService, Mockito.times(1)).insertGroupConversationalMessages(
+                Mockito.eq(GROUP_KEY), keys.capture(), Mockito.eq(GROUP_NAME), Mockito.eq(5L));
+        assertEquals(new HashSet<>(uniqueKeys.values()), new HashSet<>(keys.getValue()));
+
+        ArgumentCaptor<Message> delivered = ArgumentCaptor.forClass(Message.class);
+        Mockito.verify(bobDevice).enqueueMessage(delivered.capture());
+        assertTrue(delivered.getValue().getTextOrPassword().contains("Group sequence of above message is : 5"));
+        assertEquals("key-bob", delivered.getValue().getUniqueKey());
+        Mockito.verify(aliceDevice).enqueueMessage(Mockito.any(Message.class));
+        Mockito.verify(inboxService).messageStored("carol", GROUP_NAME, true, "alice", "hello", "key-carol", false);
+        Mockito.verify(inboxService).messageStored("bob", GROUP_NAME, true, "alice", "hello", "key-bob", true);
+        assertEquals("FanoutPlanner[fanOuts=1, recipients=3, online=2, maxFanOutInMs=" + result.getElapsedInMs()
+                + "]", fanoutPlanner.toString());
+    }
+
+    /**
+     * Test that the copies are numbered and stored in batches, each covering the members of one
+     * sequence lock of the users, in the ascending order of the locks, and that every batch stores
+     * the mappings of its copies to the group message.
+     *
+     * @throws SQLException the sql exception
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFanOutInStripeBatches() throws SQLException {
+        FanoutPlanner planner = new FanoutPlanner(2, 1, 1, conversationalMessageService, inboxService);
+        stubStore();
+        Message msg = Message.makeGroupMessage("alice", "hello", GROUP_NAME);
+
+        FanoutPlanner.Result result = planner.fanOut(makeGroup(GROUP_NAME, ALICE, BOB, CAROL), msg, GROUP_KEY);
+        assertEquals(3, result.getRecipientCount());
+        ArgumentCaptor<Map> sequences = ArgumentCaptor.forClass(Map.class);
+        Mockito.verify(conversationalMessageService, Mockito.times(3)).insertConversationalMessages(
+                Mockito.eq("alice"), Mockito.eq("hello"), sequences.capture());
+        int previousStripe = -1;
+        for (Map batch : sequences.getAllValues()) {
+            assertEquals(1, batch.size());
+            int stripe = SequenceLock.stripeOf((String) batch.keySet().iterator().next());
+            assertTrue(stripe > previousStripe);
+            previousStripe = stripe;
+        }
+        Mockito.verify(conversationalMessageService, Mockito.times(3)).insertGroupConversationalMessages(
+                Mockito.eq(GROUP_KEY), Mockito.anyCollection(), Mockito.eq(GROUP_NAME), Mockito.eq(5L));
+    }
+
+    /**
+     * Test that a batch that cannot be stored hands the sequence numbers of its members out again,
+     * while the group keeps its number, which the copies already stored carry.
+     *
+     * @throws SQLException the sql exception
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFanOutBatchFailure() throws SQLException {
+        FanoutPlanner planner = new FanoutPlanner(2, 1, 2, conversationalMessageService, inboxService);
+        stubStore();
+        // alice and carol share the first batch, and bob, on a higher lock, is alone in the second one
+        assertTrue(SequenceLock.stripeOf("bob") > Math.max(SequenceLock.stripeOf("alice"), SequenceLock.stripeOf("carol")));
+        Mockito.when(conversationalMessageService.insertConversationalMessages(Mockito.anyString(),
+                Mockito.anyString(), Mockito.anyMap())).thenAnswer(invocation -> {
+            Map<String, Long> batch = (Map<String, Long>) invocation.getArguments()[2];
+            if (batch.containsKey("bob")) {
+                throw new SQLException("store failed");
+            }
+            Map<String, String> keys = new HashMap<>();
+            for (String memberName : batch.keySet()) {
+                keys.put(memberName, "key-" + memberName);
+            }
+            return keys;
+        });
+        Message msg = Message.makeGroupMessage("alice", "hello", GROUP_NAME);
+
+        assertThrows(SQLException.class, () -> planner.fanOut(makeGroup(GROUP_NAME, ALICE, BOB, CAROL), msg,
+                GROUP_KEY));
+        Mockito.verify(conversationalMessageService).releaseSequence("bob", 9L);
+        Mockito.verify(conversationalMessageService, Mockito.never()).releaseSequence("alice", 9L);
+        Mockito.verify(conversationalMessageService, Mockito.never()).releaseGroupSequence(GROUP_NAME, 5L);
+        Mockito.verify(conversationalMessageService, Mockito.times(1)).insertGroupConversationalMessages(
+                Mockito.eq(GROUP_KEY), Mockito.anyCollection(), Mockito.eq(GROUP_NAME), Mockito.eq(5L));
+    }
+
+    /**
+     * Numbers the group message 5 and every copy 9, and stores every copy with the key "key-" followed
+     * by the user name of its member.
+     */
+    @SuppressWarnings("unchecked")
+    private void stubStore() throws SQLException {
+        Mockito.when(conversationalMessageService.nextGroupSequence(GROUP_NAME)).thenReturn(5L);
+        Mockito.when(conversationalMessageService.nextSequence(Mockito.anyString())).thenReturn(9L);
+        Mockito.when(conversationalMessageService.insertConversationalMessages(Mockito.anyString(),
+                Mockito.anyString(), Mockito.anyMap())).thenAnswer(invocation -> {
+            Map<String, String> keys = new HashMap<>();
+            for (Object memberName : ((Map<String, Long>) invocation.getArguments()[2]).keySet()) {
+                keys.put((String) memberName, "key-" + memberName);
+            }
+            return keys;
+        });
+    }
+
+    private static Group makeGroup(String groupName, User... members) {
+        Group group = new Group();
+        group.setGroupName(groupName);
+        group.setMemberUsers(new HashSet<>(Arrays.asList(members)));
+        return group;
+    }
+
+    private static ClientRunnable connect(User user) {
+        ClientRunnable device = Mockito.mock(ClientRunnable.class);
+        Mockito.when(device.getName()).thenReturn(user.getUserName());
+        Mockito.when(device.isInitialized()).thenReturn(true);
+        SessionRegistry.getInstance().open(device);
+        SessionRegistry.getInstance().claim(user.getUserName(), device);
+        return device;
+    }
+
+    private static void resetRegistry() throws NoSuchFieldException, IllegalAccessException {
+        Field registryField = SessionRegistry.class.getDeclaredField("sessionRegistry");
+        registryField.setAccessible(true);
+        registryField.set(null, null);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import edu.northeastern.ccs.im.Message;
+
+/**
+ * Test suite for the Heartbeat class, checking which of the registered clients are sent a heartbeat
+ * and which are evicted.
+ */
+public class TestHeartbeat {
+
+    private static final long INTERVAL = 1000;
+    private static final long NOW = 100000;
+
+    private Heartbeat heartbeat;
+
+    /**
+     * Starts every test with an empty registry.
+     */
+    @BeforeEach
+    public void setup() throws NoSuchFieldException, IllegalAccessException {
+        reset();
+        heartbeat = new Heartbeat(INTERVAL, 3);
+    }
+
+    /**
+     * Leaves an empty registry to the other tests.
+     */
+    @AfterEach
+    public void tearDown() throws NoSuchFieldException, IllegalAccessException {
+        reset();
+    }
+
+    /**
+     * Test that only the logged in clients silent for an interval are sent a heartbeat, and only the
+     * ones silent for too many intervals are evicted, once.
+     */
+    @Test
+    public void testSweep() {
+        ClientRunnable active = register(true, NOW - INTERVAL / 2);
+        ClientRunnable silent = register(true, NOW - INTERVAL);
+        ClientRunnable dead = register(true, NOW - 3 * INTERVAL);
+        ClientRunnable connecting = register(false, 0);
+        Mockito.when(dead.evict()).thenReturn(true, false);
+        heartbeat.sweep(NOW);
+        heartbeat.sweep(NOW);
+        Mockito.verify(active, Mockito.never()).requestPing();
+        Mockito.verify(silent, Mockito.times(2)).requestPing();
+        Mockito.verify(dead, Mockito.never()).requestPing();
+        Mockito.verify(dead, Mockito.times(2)).evict();
+        Mockito.verify(connecting, Mockito.never()).evict();
+        assertEquals(2, heartbeat.getPingsSent());
+        assertEquals(1, heartbeat.getEvictions());
+        assertEquals("Heartbeat[pings=2, evictions=1]", heartbeat.toString());
+    }
+
+    /**
+     * Test that the heartbeat frames are the encoded heartbeat messages of the server.
+     */
+    @Test
+    public void testFrames() {
+        String ping = new String(Heartbeat.PING_FRAME);
+        String pong = new String(Heartbeat.PONG_FRAME);
+        assertEquals(Message.makePingMessage(ServerConstants.SERVER_NAME).toString(), ping);
+        assertEquals(Message.makePongMessage(ServerConstants.SERVER_NAME).toString(), pong);
+        assertTrue(ping.startsWith("PNG"));
+        assertTrue(pong.startsWith("PON"));
+    }
+
+    private static ClientRunnable register(boolean initialized, long lastHeardAt) {
+        ClientRunnable client = Mockito.mock(ClientRunnable.class);
+        Mockito.when(client.isInitialized()).thenReturn(initialized);
+        Mockito.when(client.getLastHeardAt()).thenReturn(lastHeardAt);
+        SessionRegistry.getInstance().open(client);
+        return client;
+    }
+
+    private static void reset() throws NoSuchFieldException, IllegalAccessException {
+        Field registryField = SessionRegistry.class.getDeclaredField("sessionRegistry");
+        registryField.setAccessible(true);
+        registryField.set(null, null);
+    }
+}
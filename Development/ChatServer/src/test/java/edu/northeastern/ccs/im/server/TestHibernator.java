@@ -0,0 +1,143 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import edu.northeastern.ccs.im.Message;
+import edu.northeastern.ccs.im.NetworkConnection;
+
+/**
+ * Test suite for the Hibernator class, checking that an idle client is taken off the thread pool
+ * and scheduled again once it has something to read or to send.
+ */
+public class TestHibernator {
+
+    private static final int FOOTPRINT_CONNECTIONS = 200;
+    private static final long MAX_HIBERNATING_BYTES = 4096;
+
+    private ServerSocketChannel server;
+    private NetworkConnection peer;
+    private ScheduledExecutorService threadPool;
+    private ScheduledFuture<?> future;
+    private Hibernator hibernator;
+    private ClientRunnable client;
+
+    /**
+     * Connects a client, has it log in and hibernate.
+     *
+     * @throws IOException            if the sockets cannot be opened
+     * @throws NoSuchFieldException   the no such field exception
+     * @throws IllegalAccessException the illegal access exception
+     */
+    @BeforeEach
+    public void setup() throws IOException, NoSuchFieldException, IllegalAccessException {
+        Field registryField = SessionRegistry.class.getDeclaredField("sessionRegistry");
+        registryField.setAccessible(true);
+        registryField.set(null, null);
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("localhost", 0));
+        peer = new NetworkConnection(SocketChannel.open(server.getLocalAddress()), true);
+        threadPool = Mockito.mock(ScheduledExecutorService.class);
+        future = Mockito.mock(ScheduledFuture.class);
+        hibernator = new Hibernator(threadPool, 0);
+        hibernator.start();
+        client = new ClientRunnable(new NetworkConnection(server.accept()));
+        client.setHibernator(hibernator);
+        client.setFuture(future);
+        assertTrue(peer.sendMessage(Message.makeSimpleLoginMessage("alice")));
+        // The client is idle as soon as it is initialized and has nothing left to send.
+        for (int i = 0; i < 100 && !client.isHibernating(); i++) {
+            client.run();
+            sleep();
+        }
+        assertTrue(client.isInitialized());
+        assertTrue(client.isHibernating());
+        Mockito.verify(future).cancel(false);
+    }
+
+    /**
+     * Closes the sockets and stops the hibernator.
+     *
+     * @throws IOException if the sockets cannot be closed
+     */
+    @AfterEach
+    public void tearDown() throws IOException {
+        hibernator.stop();
+        peer.close();
+        server.close();
+    }
+
+    /**
+     * Test that a hibernating client is scheduled again once its connection has something to read.
+     */
+    @Test
+    public void testWakeOnRead() {
+        assertEquals(1, hibernator.getHibernatingCount());
+        assertTrue(peer.sendMessage(Message.makeBroadcastMessage("alice", "Hey there")));
+        Mockito.verify(threadPool, Mockito.timeout(2000)).scheduleAtFixedRate(client, 0,
+                ServerConstants.CLIENT_CHECK_DELAY, TimeUnit.MILLISECONDS);
+        assertFalse(client.isHibernating());
+        assertEquals(0, hibernator.getHibernatingCount());
+        assertEquals(1, hibernator.getWakeUps());
+    }
+
+    /**
+     * Test that a hibernating client is scheduled again as soon as a message is queued for it, and
+     * only once.
+     */
+    @Test
+    public void testWakeOnMessage() {
+        client.enqueueMessage(Message.makeBroadcastMessage("bob", "Hey there"));
+        client.wake();
+        Mockito.verify(threadPool).scheduleAtFixedRate(client, 0,
+                ServerConstants.CLIENT_CHECK_DELAY, TimeUnit.MILLISECONDS);
+        assertFalse(client.isHibernating());
+        assertEquals(1, hibernator.getHibernations());
+        assertEquals("Hibernator[hibernating=0, hibernations=1, wakeUps=1]", hibernator.toString());
+    }
+
+    /**
+     * Test that a hibernating client, with its connection, queue and session, stays within a few
+     * kilobytes of heap, a small part of what it holds awake. {@link HibernationFootprint} gives the
+     * same measurement for tens of thousands of clients.
+     *
+     * @throws IOException if the sockets cannot be opened
+     */
+    @Test
+    public void testHibernatingFootprint() throws IOException {
+        HibernationFootprint footprint = HibernationFootprint.measure(FOOTPRINT_CONNECTIONS);
+        assertEquals(FOOTPRINT_CONNECTIONS, footprint.getHibernated());
+        assertTrue(footprint.getHibernatingBytes() < MAX_HIBERNATING_BYTES, footprint.toString());
+        assertTrue(footprint.getHibernatingBytes() < footprint.getAwakeBytes(), footprint.toString());
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(10);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import edu.northeastern.ccs.im.Message;
+import edu.northeastern.ccs.im.models.ConversationalMessage;
+import edu.northeastern.ccs.im.models.User;
+import edu.northeastern.ccs.im.services.ConversationalMessageService;
+import edu.northeastern.ccs.im.services.InvitationService;
+import edu.northeastern.ccs.im.services.UserService;
+
+/**
+ * Test suite for the LoginPipeline class.
+ */
+public class TestLoginPipeline {
+
+    private UserService mockedUserService;
+    private ConversationalMessageService mockedcms;
+    private InvitationService mockedInvitationService;
+    private User mockedUser;
+    private LoginPipeline loginPipeline;
+
+    /**
+     * Creates a pipeline over mocked services.
+     */
+    @BeforeEach
+    public void setup() {
+        mockedUserService = Mockito.mock(UserService.class);
+        mockedcms = Mockito.mock(ConversationalMessageService.class);
+        mockedInvitationService = Mockito.mock(InvitationService.class);
+        mockedUser = Mockito.mock(User.class);
+        when(mockedUser.getUserName()).thenReturn(USERNAME);
+        loginPipeline = new LoginPipeline(mockedUserService, mockedcms, mockedInvitationService);
+    }
+
+    /**
+     * Test that the database fetches run concurrently, so that the login waits only for the slowest
+     * of them, and that the invitations are read on the calling thread meanwhile.
+     */
+    @Test
+    public void testFetchRunsConcurrently() throws SQLException {
+        List<ConversationalMessage> messages = new ArrayList<>();
+        User government = Mockito.mock(User.class);
+        Set<Message> invitations = new HashSet<>(Arrays.asList(
+                Message.makeCreateInvitationMessage("inviter", USERNAME, "group")));
+        Thread caller = Thread.currentThread();
+        when(mockedUser.isTapped()).thenReturn(true);
+        when(mockedcms.getMessagesForUser(USERNAME, true)).thenAnswer(invocation -> {
+            Thread.sleep(DELAY_IN_MS);
+            return messages;
+        });
+        when(mockedUserService.getUserByUserName("government")).thenAnswer(invocation -> {
+            Thread.sleep(DELAY_IN_MS);
+            return government;
+        });
+        when(mockedInvitationService.getPendingInvitationsForInvitee(USERNAME)).thenAnswer(invocation -> {
+            assertSame(caller, Thread.currentThread());
+            return invitations;
+        });
+        when(mockedInvitationService.getPendingInvitationsForModerator(USERNAME)).thenReturn(new HashSet<>());
+        long start = System.currentTimeMillis();
+        LoginPipeline.LoginBundle bundle = loginPipeline.fetch(mockedUser);
+        assertTrue(System.currentTimeMillis() - start < 2 * DELAY_IN_MS);
+        assertSame(messages, bundle.getUnsentMessages());
+        assertSame(invitations, bundle.getInviteeInvitations());
+        assertTrue(bundle.getModeratorInvitations().isEmpty());
+        assertSame(government, bundle.getGovernment());
+        assertTrue(loginPipeline.getPhaseTimes().get("messages") >= DELAY_IN_MS);
+        assertTrue(loginPipeline.getPhaseTimes().containsKey("invitations"));
+        assertTrue(loginPipeline.getPhaseTimes().containsKey("fetch"));
+    }
+
+    /**
+     * Test that the government user is fetched only when the user is tapped.
+     */
+    @Test
+    public void testFetchGovernmentForTappedUser() throws SQLException {
+        User government = Mockito.mock(User.class);
+        when(mockedUser.isTapped()).thenReturn(true);
+        when(mockedUserService.getUserByUserName("government")).thenReturn(government);
+        assertSame(government, loginPipeline.fetch(mockedUser).getGovernment());
+    }
+
+    /**
+     * Test that a failed fetch fails the login with the original exception.
+     */
+    @Test
+    public void testFetchFailure() throws SQLException {
+        SQLException failure = new SQLException("failed");
+        when(mockedcms.getMessagesForUser(USERNAME, true)).thenThrow(failure);
+        SQLException thrown = assertThrows(SQLException.class, () -> loginPipeline.fetch(mockedUser));
+        assertSame(failure, thrown);
+    }
+
+    /**
+     * Test the authentication phases.
+     */
+    @Test
+    public void testAuthenticateAndMarkLoggedIn() throws SQLException {
+        when(mockedUserService.getUserByUserNameAndPassword(USERNAME, "pass")).thenReturn(mockedUser);
+        when(mockedUserService.updateUserAttributes(USERNAME, "logged_in", "1")).thenReturn(true);
+        assertSame(mockedUser, loginPipeline.authenticate(USERNAME, "pass"));
+        assertTrue(loginPipeline.markLoggedIn(mockedUser));
+        assertEquals(2, loginPipeline.getPhaseTimes().size());
+    }
+
+    private static final String USERNAME = "user";
+    private static final long DELAY_IN_MS = 300;
+}
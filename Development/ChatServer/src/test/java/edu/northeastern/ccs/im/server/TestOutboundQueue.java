@@ -0,0 +1,205 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+
+import org.junit.jupiter.api.Test;
+
+import edu.northeastern.ccs.im.Message;
+
+/**
+ * Test suite for the OutboundQueue class, checking the bounds of the queue and every overflow
+ * policy.
+ */
+public class TestOutboundQueue {
+
+    private static final Message PRIVATE = Message.makePrivateUserMessage("alice", "Hey there", "bob");
+    private static final Message BROADCAST = Message.makeBroadcastMessage("alice", "Hey there");
+    private static final Message RESPONSE = Message.makePrattleMessage("Done");
+
+    /**
+     * Test that the queue is bounded in messages and terminates the client with the disconnect
+     * policy.
+     */
+    @Test
+    public void testDisconnect() {
+        OutboundQueue queue = new OutboundQueue(2, 1024, OutboundQueue.OverflowPolicy.DISCONNECT, 0);
+        assertTrue(queue.offer(PRIVATE, OutboundQueue.Lane.INTERACTIVE));
+        assertTrue(queue.offer(RESPONSE, OutboundQueue.Lane.INTERACTIVE));
+        assertFalse(queue.offer(BROADCAST, OutboundQueue.Lane.INTERACTIVE));
+        assertEquals(2, queue.size());
+        assertEquals(PRIVATE.toString().length() + RESPONSE.toString().length(), queue.getBytes());
+        assertSame(PRIVATE, queue.poll());
+        assertSame(RESPONSE, queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.getBytes());
+    }
+
+    /**
+     * Test that the queue is bounded in bytes and drops the oldest broadcast and group messages
+     * with the drop-oldest policy, but never the other messages.
+     */
+    @Test
+    public void testDropOldest() {
+        long bound = 2L * (BROADCAST.toString().length() + PRIVATE.toString().length()) - 1;
+        OutboundQueue queue = new OutboundQueue(100, bound, OutboundQueue.OverflowPolicy.DROP_OLDEST, 0);
+        Message first = Message.makeBroadcastMessage("alice", "Hey there");
+        assertTrue(queue.offer(first, OutboundQueue.Lane.INTERACTIVE));
+        assertTrue(queue.offer(PRIVATE, OutboundQueue.Lane.INTERACTIVE));
+        assertTrue(queue.offer(BROADCAST, OutboundQueue.Lane.INTERACTIVE));
+        // The first broadcast makes room for the new private message.
+        assertTrue(queue.offer(PRIVATE, OutboundQueue.Lane.INTERACTIVE));
+        assertSame(PRIVATE, queue.poll());
+        assertSame(BROADCAST, queue.poll());
+        assertSame(PRIVATE, queue.poll());
+        OutboundQueue critical = new OutboundQueue(1, 1024, OutboundQueue.OverflowPolicy.DROP_OLDEST, 0);
+        assertTrue(critical.offer(PRIVATE, OutboundQueue.Lane.INTERACTIVE));
+        assertTrue(critical.offer(BROADCAST, OutboundQueue.Lane.INTERACTIVE));
+        assertFalse(critical.offer(RESPONSE, OutboundQueue.Lane.INTERACTIVE));
+        assertEquals(1, critical.size());
+    }
+
+    /**
+     * Test that control messages are taken first, and that interactive and bulk messages are taken
+     * in turn with their weights, each lane in order.
+     */
+    @Test
+    public void testLanes() {
+        OutboundQueue queue = new OutboundQueue(100, 1024 * 1024, OutboundQueue.OverflowPolicy.DISCONNECT, 0);
+        Message[] bulk = new Message[2];
+        Message[] chats = new Message[6];
+        for (int i = 0; i < bulk.length; i++) {
+            bulk[i] = Message.makePrattleMessage("dump " + i);
+            assertTrue(queue.offer(bulk[i], OutboundQueue.Lane.BULK));
+        }
+        for (int i = 0; i < chats.length; i++) {
+            chats[i] = Message.makePrivateUserMessage("alice", "chat " + i, "bob");
+            assertTrue(queue.offer(chats[i], OutboundQueue.Lane.INTERACTIVE));
+        }
+        assertTrue(queue.offer(RESPONSE, OutboundQueue.Lane.CONTROL));
+        assertSame(RESPONSE, queue.poll());
+        for (int i = 0; i < 4; i++) {
+            assertSame(chats[i], queue.poll());
+        }
+        assertSame(bulk[0], queue.poll());
+        assertSame(chats[4], queue.poll());
+        assertSame(chats[5], queue.poll());
+        assertSame(bulk[1], queue.poll());
+        assertNull(queue.poll());
+        assertTrue(OutboundQueue.metrics().contains("CONTROL:n="));
+    }
+
+    /**
+     * Test that the messages that do not fit are spilled to the overflow file and come back in
+     * order, after the ones held in memory, until the file is full.
+     */
+    @Test
+    public void testSpill() {
+        int frameSize = 2 * Integer.BYTES + RESPONSE.toString().length();
+        OutboundQueue queue = new OutboundQueue(1, 1024, OutboundQueue.OverflowPolicy.SPILL, 2 * frameSize);
+        assertTrue(queue.offer(PRIVATE, OutboundQueue.Lane.INTERACTIVE));
+        assertTrue(queue.offer(RESPONSE, OutboundQueue.Lane.INTERACTIVE));
+        assertTrue(queue.offer(RESPONSE, OutboundQueue.Lane.INTERACTIVE));
+        assertFalse(queue.offer(RESPONSE, OutboundQueue.Lane.INTERACTIVE));
+        assertEquals(3, queue.size());
+        assertNull(queue.pollSpilled());
+        assertSame(PRIVATE, queue.poll());
+        // A message queued while others are spilled is spilled too, to keep the order.
+        assertNull(queue.poll());
+        assertEquals(RESPONSE.toString(), new String(queue.pollSpilled().getFrame()));
+        assertEquals(RESPONSE.toString(), new String(queue.pollSpilled().getFrame()));
+        assertNull(queue.pollSpilled());
+        assertTrue(queue.isEmpty());
+        // The emptied file is written from its start again.
+        assertTrue(queue.offer(PRIVATE, OutboundQueue.Lane.INTERACTIVE));
+        assertTrue(queue.offer(RESPONSE, OutboundQueue.Lane.INTERACTIVE));
+        assertTrue(queue.offer(RESPONSE, OutboundQueue.Lane.INTERACTIVE));
+        queue.close();
+        assertTrue(queue.isEmpty());
+        assertTrue(OutboundQueue.metrics().startsWith("OutboundQueue[depths={<1:"));
+    }
+
+    /**
+     * Test that the overflow file is unmapped once the last message spilled in it is taken, and when
+     * the queue is closed.
+     *
+     * @throws Exception if the mapping cannot be read through reflection
+     */
+    @Test
+    public void testSpillFileReleased() throws Exception {
+        Field spillField = OutboundQueue.class.getDeclaredField("spill");
+        spillField.setAccessible(true);
+        OutboundQueue queue = new OutboundQueue(0, 0, OutboundQueue.OverflowPolicy.SPILL, 1024);
+        assertTrue(queue.offer(RESPONSE, OutboundQueue.Lane.INTERACTIVE));
+        assertNotNull(spillField.get(queue));
+        assertNotNull(queue.pollSpilled());
+        assertNull(spillField.get(queue));
+        assertTrue(queue.offer(RESPONSE, OutboundQueue.Lane.INTERACTIVE));
+        assertNotNull(spillField.get(queue));
+        queue.close();
+        assertNull(spillField.get(queue));
+        assertTrue(queue.isEmpty());
+    }
+
+    /**
+     * Test that a spilled message comes back with the unique key of the stored message it carries,
+     * and that a message with no key comes back without one, spilled control messages first.
+     */
+    @Test
+    public void testSpillKeepsUniqueKey() {
+        Message stored = Message.addUniqueKeyToMsg(PRIVATE, PRIVATE.getTextOrPassword(), "alice::bob::1");
+        OutboundQueue queue = new OutboundQueue(0, 0, OutboundQueue.OverflowPolicy.SPILL, 1024);
+        assertTrue(queue.offer(stored, OutboundQueue.Lane.INTERACTIVE));
+        assertTrue(queue.offer(RESPONSE, OutboundQueue.Lane.CONTROL));
+        OutboundQueue.SpilledFrame spilled = queue.pollSpilled();
+        assertEquals(RESPONSE.toString(), new String(spilled.getFrame()));
+        assertNull(spilled.getUniqueKey());
+        spilled = queue.pollSpilled();
+        assertEquals(stored.toString(), new String(spilled.getFrame()));
+        assertEquals("alice::bob::1", spilled.getUniqueKey());
+        assertTrue(queue.isEmpty());
+        queue.close();
+    }
+
+    /**
+     * Test that the lanes spill on their own: a control message is kept in memory while bulk
+     * messages are spilled, and is taken before them, and the lanes are taken by priority whether
+     * their next message is held in memory or spilled.
+     */
+    @Test
+    public void testLanesSpillOnTheirOwn() {
+        Message[] bulk = new Message[3];
+        OutboundQueue queue = new OutboundQueue(2, 1024, OutboundQueue.OverflowPolicy.SPILL, 4096);
+        for (int i = 0; i < bulk.length; i++) {
+            bulk[i] = Message.makePrattleMessage("dump " + i);
+            assertTrue(queue.offer(bulk[i], OutboundQueue.Lane.BULK));
+        }
+        assertSame(bulk[0], queue.poll());
+        // The control lane has nothing spilled, so a control message that fits is kept in memory.
+        assertTrue(queue.offer(RESPONSE, OutboundQueue.Lane.CONTROL));
+        assertTrue(queue.offer(PRIVATE, OutboundQueue.Lane.INTERACTIVE));
+        assertNull(queue.pollSpilled());
+        assertSame(RESPONSE, queue.poll());
+        // The spilled chat comes before the bulk messages, the one in memory included.
+        assertNull(queue.poll());
+        assertEquals(PRIVATE.toString(), new String(queue.pollSpilled().getFrame()));
+        assertSame(bulk[1], queue.poll());
+        assertEquals(bulk[2].toString(), new String(queue.pollSpilled().getFrame()));
+        assertTrue(queue.isEmpty());
+        queue.close();
+    }
+}
@@ -20,8 +20,6 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.Arrays;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.logging.Handler;
 import java.util.logging.Logger;
@@ -29,6 +27,7 @@ import java.util.logging.SimpleFormatter;
 import java.util.logging.StreamHandler;
 
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import edu.northeastern.ccs.im.ChatLogger;
 import edu.northeastern.ccs.im.Message;
@@ -53,19 +52,21 @@ public class TestPrattle {
     @Test
     public void testBroadcastMessage() throws NoSuchFieldException, SecurityException, IllegalArgumentException, IllegalAccessException {
 
-        Field activeField = Prattle.class.getDeclaredField("active");
-        activeField.setAccessible(true);
+        resetSessions();
         ClientRunnable testDead1 = Mockito.mock(ClientRunnable.class);
         ClientRunnable testDead2 = Mockito.mock(ClientRunnable.class);
-        activeField.set(Prattle.class, new ConcurrentLinkedQueue<>(Arrays.asList(testDead1, testDead2)));
-        activeField.setAccessible(false);
+        Prattle.addClient(testDead1);
+        Prattle.addClient(testDead2);
         Message m = Message.makeBroadcastMessage("Alice", "Hey there");
         Mockito.when(testDead1.isInitialized()).thenReturn(true);
         Prattle.broadcastMessage(m);
         Mockito.verify(testDead1).enqueueMessage(m);
-        activeField.setAccessible(true);
-        activeField.set(Prattle.class, new ConcurrentLinkedQueue<>());
-        activeField.setAccessible(false);
+        Mockito.verify(testDead2, Mockito.never()).enqueueMessage(m);
+        // a client that quit is no longer subscribed to the global channel
+        Prattle.removeClient(testDead1);
+        Prattle.broadcastMessage(m);
+        Mockito.verify(testDead1, Mockito.times(1)).enqueueMessage(m);
+        resetSessions();
     }
 
     /**
@@ -106,13 +107,10 @@ public class TestPrattle {
         ScheduledExecutorService ses = Mockito.mock(ScheduledExecutorService.class);
         SocketChannel actChannel = SocketChannel.open();
         Mockito.when(ssc.accept()).thenReturn(actChannel);
+        resetSessions();
         method.invoke(Prattle.class, ssc, ses);
-        Field activeField = Prattle.class.getDeclaredField("active");
-        activeField.setAccessible(true);
-        ConcurrentLinkedQueue activeList = (ConcurrentLinkedQueue) activeField.get(Prattle.class.getName());
-        assertEquals(activeList.size(), 1);
-        activeField.set(Prattle.class, new ConcurrentLinkedQueue<>());
-        activeField.setAccessible(false);
+        assertEquals(1, SessionRegistry.getInstance().getSessionCount());
+        resetSessions();
 
     }
 
@@ -135,13 +133,10 @@ public class TestPrattle {
         ServerSocketChannel ssc = Mockito.mock(ServerSocketChannel.class);
         ScheduledExecutorService ses = Mockito.mock(ScheduledExecutorService.class);
         Mockito.when(ssc.accept()).thenReturn(null);
+        resetSessions();
         method.invoke(Prattle.class, ssc, ses);
-        Field activeField = Prattle.class.getDeclaredField("active");
-        activeField.setAccessible(true);
-        ConcurrentLinkedQueue activeList = (ConcurrentLinkedQueue) activeField.get(Prattle.class.getName());
-        assertEquals(0, activeList.size());
-        activeField.set(Prattle.class, new ConcurrentLinkedQueue<>());
-        activeField.setAccessible(false);
+        assertEquals(0, SessionRegistry.getInstance().getSessionCount());
+        resetSessions();
 
     }
 
@@ -228,12 +223,10 @@ public class TestPrattle {
         SimpleFormatter formatter = new SimpleFormatter();
         Handler handler = new StreamHandler(out, formatter);
         logger.addHandler(handler);
-        Field activeField = Prattle.class.getDeclaredField("active");
-        activeField.setAccessible(true);
+        resetSessions();
         ClientRunnable testDead1 = Mockito.mock(ClientRunnable.class);
         ClientRunnable testDead2 = Mockito.mock(ClientRunnable.class);
-        activeField.set(Prattle.class, new ConcurrentLinkedQueue<>(Arrays.asList(testDead1)));
-        activeField.setAccessible(false);
+        Prattle.addClient(testDead1);
         Prattle.removeClient(testDead1);
         try {
             Prattle.removeClient(testDead2);
@@ -242,13 +235,42 @@ public class TestPrattle {
             assertTrue(message.contains("Could not find a thread that I tried to remove!"));
         } finally {
             logger.removeHandler(handler);
-            activeField.setAccessible(true);
-            activeField.set(Prattle.class, new ConcurrentLinkedQueue<>());
-            activeField.setAccessible(false);
+            resetSessions();
         }
 
     }
 
+    /**
+     * Test drainServer() stops the server and tells every client when to connect again, at times
+     * spread over the jitter.
+     *
+     * @throws NoSuchFieldException     the no such field exception
+     * @throws IllegalAccessException   the illegal access exception
+     */
+    @Test
+    public void testDrainServer() throws NoSuchFieldException, IllegalAccessException {
+        resetSessions();
+        ClientRunnable initialized = Mockito.mock(ClientRunnable.class);
+        ClientRunnable connecting = Mockito.mock(ClientRunnable.class);
+        Mockito.when(initialized.isInitialized()).thenReturn(true);
+        Mockito.when(initialized.getName()).thenReturn("Alice");
+        Prattle.addClient(initialized);
+        Prattle.addClient(connecting);
+        Field isReadyField = Prattle.class.getDeclaredField("isReady");
+        isReadyField.setAccessible(true);
+        isReadyField.set(null, true);
+        Prattle.drainServer(0);
+        assertFalse((boolean) isReadyField.get(null));
+        for (ClientRunnable client : new ClientRunnable[]{initialized, connecting}) {
+            ArgumentCaptor<Long> retryAfter = ArgumentCaptor.forClass(Long.class);
+            Mockito.verify(client).drain(retryAfter.capture());
+            assertTrue(retryAfter.getValue() >= ServerConstants.DRAIN_RECONNECT_MIN_IN_MS);
+            assertTrue(retryAfter.getValue() < ServerConstants.DRAIN_RECONNECT_MIN_IN_MS
+                    + ServerConstants.DRAIN_RECONNECT_JITTER_IN_MS);
+        }
+        resetSessions();
+    }
+
     // create a private class to be used in testMain() as a thread
     private static class PrattleThread implements Runnable {
         @Override
@@ -265,9 +287,10 @@ public class TestPrattle {
      * @throws SecurityException        the security exception
      * @throws IllegalArgumentException the illegal argument exception
      * @throws IllegalAccessException   the illegal access exception
+     * @throws InterruptedException     if interrupted while waiting for the server to stop
      */
     @Test
-    public void testMain() throws NoSuchFieldException, SecurityException, IllegalArgumentException, IllegalAccessException {
+    public void testMain() throws NoSuchFieldException, SecurityException, IllegalArgumentException, IllegalAccessException, InterruptedException {
         Thread testPrattleThread = new Thread(new PrattleThread());
         testPrattleThread.start();
         System.setIn(new ByteArrayInputStream("".getBytes()));
@@ -276,10 +299,23 @@ public class TestPrattle {
         IMConnection connection = new IMConnection("localhost", 4545, "Alice");
         connection.connect();
         Prattle.stopServer();
-        Field activeField = Prattle.class.getDeclaredField("active");
-        activeField.setAccessible(true);
-        ConcurrentLinkedQueue activeList = (ConcurrentLinkedQueue) activeField.get(Prattle.class.getName());
-        activeField.set(Prattle.class, new ConcurrentLinkedQueue<>());
-        activeField.setAccessible(false);
+        // Let the server accept the pending connection and stop before the clients are cleared.
+        testPrattleThread.join(5000);
+        resetSessions();
+    }
+
+    /**
+     * Replaces the session and channel registries with empty ones.
+     *
+     * @throws NoSuchFieldException   the no such field exception
+     * @throws IllegalAccessException the illegal access exception
+     */
+    private static void resetSessions() throws NoSuchFieldException, IllegalAccessException {
+        Field registryField = SessionRegistry.class.getDeclaredField("sessionRegistry");
+        registryField.setAccessible(true);
+        registryField.set(null, null);
+        Field channelsField = ChannelRegistry.class.getDeclaredField("channelRegistry");
+        channelsField.setAccessible(true);
+        channelsField.set(null, null);
     }
 }
@@ -0,0 +1,100 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.northeastern.ccs.im.MessageType;
+
+/**
+ * Test suite for the RateLimiter class, run on a manual clock.
+ */
+public class TestRateLimiter {
+
+    private static final InetAddress ADDRESS = InetAddress.getLoopbackAddress();
+
+    private AtomicLong now;
+    private RateLimiter limiter;
+
+    /**
+     * Starts every test with a fresh limiter whose addresses get twice the budget of a user.
+     */
+    @BeforeEach
+    public void setup() {
+        now = new AtomicLong(1000000);
+        limiter = new RateLimiter(2, now::get);
+    }
+
+    /**
+     * Test that a user gets its burst of broadcasts, then has to wait for the refill, and that the
+     * other classes of messages have budgets of their own.
+     */
+    @Test
+    public void testBurstAndRefill() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire("alice", null, MessageType.BROADCAST));
+        }
+        // Broadcasts refill at one every five seconds.
+        assertEquals(5000, limiter.tryAcquire("alice", null, MessageType.BROADCAST));
+        assertEquals(0, limiter.tryAcquire("alice", null, MessageType.MESSAGE_USER));
+        assertEquals(0, limiter.tryAcquire("bob", null, MessageType.BROADCAST));
+        now.addAndGet(4000);
+        assertEquals(1000, limiter.tryAcquire("alice", null, MessageType.BROADCAST));
+        now.addAndGet(1000);
+        assertEquals(0, limiter.tryAcquire("alice", null, MessageType.BROADCAST));
+        assertEquals(2, limiter.getLimitedCount());
+    }
+
+    /**
+     * Test that the users of one address share its budget, and that a user refused by the address
+     * keeps its own token.
+     */
+    @Test
+    public void testAddressBudget() {
+        for (int i = 0; i < 6; i++) {
+            assertEquals(0, limiter.tryAcquire(i < 3 ? "alice" : "bob", ADDRESS, MessageType.BROADCAST));
+        }
+        assertTrue(limiter.tryAcquire("carol", ADDRESS, MessageType.BROADCAST) > 0);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire("carol", null, MessageType.BROADCAST));
+        }
+    }
+
+    /**
+     * Test that the messages are sorted into the expected classes.
+     */
+    @Test
+    public void testClasses() {
+        assertEquals(RateLimiter.RateClass.CHAT, RateLimiter.RateClass.of(MessageType.MESSAGE_GROUP));
+        assertEquals(RateLimiter.RateClass.SEARCH, RateLimiter.RateClass.of(MessageType.SEARCH_MESSAGE));
+        assertEquals(RateLimiter.RateClass.GROUP_ADMIN, RateLimiter.RateClass.of(MessageType.ADD_USER_GROUP));
+        assertEquals(RateLimiter.RateClass.GENERAL, RateLimiter.RateClass.of(MessageType.LOGIN));
+    }
+
+    /**
+     * Test that only the users and addresses whose buckets are full again are forgotten.
+     */
+    @Test
+    public void testEvictIdle() {
+        limiter.tryAcquire("alice", ADDRESS, MessageType.SEARCH_MESSAGE);
+        limiter.tryAcquire("bob", null, MessageType.BROADCAST);
+        now.addAndGet(2000);
+        limiter.evictIdle();
+        assertEquals("RateLimiter[users=1, addresses=0, limited=0]", limiter.toString());
+        now.addAndGet(3000);
+        limiter.evictIdle();
+        assertEquals("RateLimiter[users=0, addresses=0, limited=0]", limiter.toString());
+    }
+}
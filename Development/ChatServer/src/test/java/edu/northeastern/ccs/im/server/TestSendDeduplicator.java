@@ -0,0 +1,123 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test suite for the SendDeduplicator class, with a window of four seconds in four buckets of one
+ * second, holding two IDs each.
+ */
+public class TestSendDeduplicator {
+
+    private static final String USER = "alice";
+
+    private SendDeduplicator sendDeduplicator;
+
+    /**
+     * Starts every test with no IDs.
+     */
+    @BeforeEach
+    public void setup() {
+        sendDeduplicator = new SendDeduplicator(4000, 4, 2);
+    }
+
+    /**
+     * Test that an ID finds the unique key it was recorded with, for its user only, and that a
+     * message without an ID is never found.
+     */
+    @Test
+    public void testFindAndRecord() {
+        assertNull(sendDeduplicator.find(USER, "send-1", 1000));
+        sendDeduplicator.record(USER, "send-1", "key-1", 1000);
+        sendDeduplicator.record(USER, null, "key-2", 1000);
+        assertEquals("key-1", sendDeduplicator.find(USER, "send-1", 1500));
+        assertNull(sendDeduplicator.find("bob", "send-1", 1500));
+        assertNull(sendDeduplicator.find(USER, null, 1500));
+        assertEquals(1, sendDeduplicator.getHitCount());
+        assertEquals("SendDeduplicator[users=1, recorded=1, hits=1]", sendDeduplicator.toString());
+    }
+
+    /**
+     * Test that an ID is forgotten once its bucket falls out of the window, or is reused.
+     */
+    @Test
+    public void testWindow() {
+        sendDeduplicator.record(USER, "send-1", "key-1", 1000);
+        assertEquals("key-1", sendDeduplicator.find(USER, "send-1", 4999));
+        assertNull(sendDeduplicator.find(USER, "send-1", 5000));
+        sendDeduplicator.record(USER, "send-2", "key-2", 5000);
+        assertNull(sendDeduplicator.find(USER, "send-1", 5000));
+        assertEquals("key-2", sendDeduplicator.find(USER, "send-2", 5000));
+    }
+
+    /**
+     * Test that a bucket holds a bounded number of IDs of a user.
+     */
+    @Test
+    public void testBucketCapacity() {
+        sendDeduplicator.record(USER, "send-1", "key-1", 1000);
+        sendDeduplicator.record(USER, "send-2", "key-2", 1100);
+        sendDeduplicator.record(USER, "send-3", "key-3", 1200);
+        assertNull(sendDeduplicator.find(USER, "send-3", 1300));
+        sendDeduplicator.record(USER, "send-3", "key-3", 2000);
+        assertEquals("key-3", sendDeduplicator.find(USER, "send-3", 2000));
+    }
+
+    /**
+     * Test that the users who sent no message with an ID for the whole window are forgotten.
+     */
+    @Test
+    public void testEvictIdle() {
+        sendDeduplicator.record(USER, "send-1", "key-1", 1000);
+        sendDeduplicator.record("bob", "send-1", "key-2", 3000);
+        sendDeduplicator.evictIdle(5000);
+        assertEquals("SendDeduplicator[users=1, recorded=2, hits=0]", sendDeduplicator.toString());
+        assertEquals("key-2", sendDeduplicator.find("bob", "send-1", 5000));
+    }
+
+    /**
+     * Test that a message sent again while its first send is pending is told so without waiting, gets
+     * the unique key once the first send is recorded, and takes over an ID pending for too long.
+     */
+    @Test
+    public void testReserveOfPendingId() {
+        assertNull(sendDeduplicator.reserve(USER, "send-1", 1000));
+        assertEquals(SendDeduplicator.PENDING, sendDeduplicator.reserve(USER, "send-1", 1000));
+        sendDeduplicator.record(USER, "send-1", "key-1", 1000);
+        assertEquals("key-1", sendDeduplicator.reserve(USER, "send-1", 1000));
+        assertEquals(1, sendDeduplicator.getHitCount());
+
+        assertNull(sendDeduplicator.reserve(USER, "send-2", 1000));
+        assertEquals(SendDeduplicator.PENDING, sendDeduplicator.reserve(USER, "send-2", 1500));
+        assertNull(sendDeduplicator.reserve(USER, "send-2", 1000 + ServerConstants.DEDUP_PENDING_TIMEOUT_IN_MS));
+        assertEquals(1, sendDeduplicator.getHitCount());
+    }
+
+    /**
+     * Test that an ID released by a send that failed can be reserved again, and that a user with a
+     * pending send is not forgotten.
+     */
+    @Test
+    public void testReleaseAndPendingIsNotIdle() {
+        assertNull(sendDeduplicator.reserve(USER, null, 1000));
+        assertNull(sendDeduplicator.reserve(USER, "send-1", 1000));
+        sendDeduplicator.evictIdle(10000);
+        assertEquals("SendDeduplicator[users=1, recorded=0, hits=0]", sendDeduplicator.toString());
+        sendDeduplicator.release(USER, "send-1");
+        assertNull(sendDeduplicator.reserve(USER, "send-1", 1000));
+        sendDeduplicator.release(USER, "send-1");
+        sendDeduplicator.evictIdle(10000);
+        assertEquals("SendDeduplicator[users=0, recorded=0, hits=0]", sendDeduplicator.toString());
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+/**
+ * Test suite for the SessionRegistry class, checking that a user name is held by one client at a
+ * time even when many clients claim it at once.
+ */
+public class TestSessionRegistry {
+
+    private static final String USER_NAME = "alice";
+
+    private SessionRegistry registry;
+
+    /**
+     * Starts every test with an empty registry.
+     */
+    @BeforeEach
+    public void setup() throws NoSuchFieldException, IllegalAccessException {
+        reset();
+        registry = SessionRegistry.getInstance();
+    }
+
+    /**
+     * Leaves an empty registry to the other tests.
+     */
+    @AfterEach
+    public void tearDown() throws NoSuchFieldException, IllegalAccessException {
+        reset();
+    }
+
+    /**
+     * Test that every opened client gets its own session ID, and that a closed one is not listed.
+     */
+    @Test
+    public void testOpenAndClose() {
+        ClientRunnable first = Mockito.mock(ClientRunnable.class);
+        ClientRunnable second = Mockito.mock(ClientRunnable.class);
+        long firstId = registry.open(first);
+        long secondId = registry.open(second);
+        assertNotEquals(firstId, secondId);
+        assertEquals(firstId, registry.open(first));
+        assertEquals(2, registry.getSessionCount());
+        assertTrue(registry.getClients().contains(second));
+        assertTrue(registry.close(second));
+        assertFalse(registry.close(second));
+        assertNull(registry.getSessionId(second));
+        assertEquals(Long.valueOf(firstId), registry.getSessionId(first));
+    }
+
+    /**
+     * Test that a user name is only released by the client holding it, and released on close.
+     */
+    @Test
+    public void testClaimAndRelease() {
+        ClientRunnable holder = Mockito.mock(ClientRunnable.class);
+        ClientRunnable other = Mockito.mock(ClientRunnable.class);
+        Mockito.when(holder.getName()).thenReturn(USER_NAME);
+        registry.open(holder);
+        assertTrue(registry.claim(USER_NAME, holder));
+        assertTrue(registry.claim(USER_NAME, holder));
+        assertFalse(registry.claim(USER_NAME, other));
+        assertFalse(registry.release(USER_NAME, other));
+        assertSame(holder, registry.getClient(USER_NAME));
+        assertTrue(registry.close(holder));
+        assertNull(registry.getClient(USER_NAME));
+        assertEquals(0, registry.getClaimedCount());
+        assertFalse(registry.release(null, holder));
+        assertNull(registry.getClient(null));
+    }
+
+    /**
+     * Test that the names given to the clients whose user name is taken are unique.
+     */
+    @Test
+    public void testInvalidNames() {
+        assertEquals("invalid-" + USER_NAME + "-1", registry.invalidName(USER_NAME));
+        assertEquals("invalid-" + USER_NAME + "-2", registry.invalidName(USER_NAME));
+    }
+
+    /**
+     * Test that other devices of a user join the client holding the user name, up to the most
+     * devices a user may connect, and that each leaves and is handed over on its own.
+     */
+    @Test
+    public void testDevices() {
+        ClientRunnable[] devices = new ClientRunnable[ServerConstants.MAX_DEVICES_PER_USER + 1];
+        for (int i = 0; i < devices.length; i++) {
+            devices[i] = Mockito.mock(ClientRunnable.class);
+        }
+        assertEquals(0, registry.getDevices(USER_NAME).length);
+        assertTrue(registry.claim(USER_NAME, devices[0]));
+        for (int i = 1; i < ServerConstants.MAX_DEVICES_PER_USER; i++) {
+            assertFalse(registry.claim(USER_NAME, devices[i]));
+            assertTrue(registry.join(USER_NAME, devices[i]));
+        }
+        assertFalse(registry.join(USER_NAME, devices[ServerConstants.MAX_DEVICES_PER_USER]));
+        assertEquals(ServerConstants.MAX_DEVICES_PER_USER, registry.getDevices(USER_NAME).length);
+
+        assertTrue(registry.release(USER_NAME, devices[0]));
+        assertSame(devices[1], registry.getClient(USER_NAME));
+        assertTrue(registry.transfer(USER_NAME, devices[2], devices[0]));
+        assertFalse(registry.transfer(USER_NAME, devices[2], devices[0]));
+        assertSame(devices[0], registry.getDevices(USER_NAME)[1]);
+        for (ClientRunnable device : registry.getDevices(USER_NAME)) {
+            assertTrue(registry.release(USER_NAME, device));
+        }
+        assertNull(registry.getClient(USER_NAME));
+        assertEquals(0, registry.getClaimedCount());
+    }
+
+    /**
+     * Test that exactly one of many clients claiming a user name at the same time gets it.
+     */
+    @Test
+    public void testConcurrentClaims() throws InterruptedException {
+        int threads = 16;
+        CyclicBarrier start = new CyclicBarrier(threads);
+        AtomicInteger winners = new AtomicInteger();
+        List<Thread> claimers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            ClientRunnable client = Mockito.mock(ClientRunnable.class);
+            Thread claimer = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (Exception e) {
+                    return;
+                }
+                registry.open(client);
+                if (registry.claim(USER_NAME, client)) {
+                    winners.incrementAndGet();
+                }
+            });
+            claimers.add(claimer);
+            claimer.start();
+        }
+        for (Thread claimer : claimers) {
+            claimer.join(5000);
+        }
+        assertEquals(1, winners.get());
+        assertEquals(threads, registry.getSessionCount());
+        assertEquals(1, registry.getClaimedCount());
+    }
+
+    private static void reset() throws NoSuchFieldException, IllegalAccessException {
+        Field registryField = SessionRegistry.class.getDeclaredField("sessionRegistry");
+        registryField.setAccessible(true);
+        registryField.set(null, null);
+    }
+}
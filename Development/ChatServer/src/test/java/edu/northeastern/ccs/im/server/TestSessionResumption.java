@@ -0,0 +1,86 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+/**
+ * Test suite for the SessionResumption class, with a grace period of one second.
+ */
+public class TestSessionResumption {
+
+    private SessionResumption sessionResumption;
+    private ClientRunnable client;
+
+    /**
+     * Starts every test with no tokens and a client that is not suspended.
+     */
+    @BeforeEach
+    public void setup() {
+        sessionResumption = new SessionResumption(1000);
+        client = Mockito.mock(ClientRunnable.class);
+    }
+
+    /**
+     * Test that the tokens are unique, find their client, and can only be taken out once.
+     */
+    @Test
+    public void testIssueAndRevoke() {
+        String token = sessionResumption.issue(client);
+        String other = sessionResumption.issue(client);
+        assertNotEquals(token, other);
+        assertSame(client, sessionResumption.find(token));
+        assertNull(sessionResumption.find(null));
+        assertTrue(sessionResumption.revoke(token, client));
+        assertFalse(sessionResumption.revoke(token, client));
+        assertFalse(sessionResumption.revoke(null, client));
+        assertNull(sessionResumption.find(token));
+    }
+
+    /**
+     * Test that only the sessions suspended for longer than the grace period are expired, once.
+     */
+    @Test
+    public void testSweep() {
+        sessionResumption.issue(client);
+        sessionResumption.sweep(5000);
+        Mockito.verify(client, Mockito.never()).expire();
+
+        Mockito.when(client.isSuspended()).thenReturn(true);
+        Mockito.when(client.getSuspendedAt()).thenReturn(4500L);
+        sessionResumption.sweep(5000);
+        Mockito.verify(client, Mockito.never()).expire();
+
+        sessionResumption.sweep(5500);
+        sessionResumption.sweep(6000);
+        Mockito.verify(client).expire();
+        assertEquals(1, sessionResumption.getExpiredCount());
+    }
+
+    /**
+     * Test that the resumptions are counted and their average time logged.
+     */
+    @Test
+    public void testMetrics() {
+        sessionResumption.issue(client);
+        sessionResumption.resumed(3000);
+        sessionResumption.resumed(5000);
+        assertEquals(2, sessionResumption.getResumedCount());
+        assertEquals("SessionResumption[tokens=1, resumed=2, expired=0, avgResumeUs=4]",
+                sessionResumption.toString());
+    }
+}
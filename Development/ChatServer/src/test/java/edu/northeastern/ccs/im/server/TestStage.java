@@ -0,0 +1,161 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test suite for the stages of the request pipeline and the ring buffers connecting them.
+ */
+public class TestStage {
+
+    /**
+     * Test that the ring buffer is first in first out, and bounded by its capacity.
+     */
+    @Test
+    public void testRingBufferIsBounded() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(3);
+        assertEquals(4, buffer.capacity());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(4));
+        assertEquals(4, buffer.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(Integer.valueOf(i), buffer.poll());
+        }
+        assertNull(buffer.poll());
+        assertTrue(buffer.offer(5));
+        assertEquals(Integer.valueOf(5), buffer.poll());
+    }
+
+    /**
+     * Test that no element is lost or duplicated when several producers and consumers share a buffer.
+     */
+    @Test
+    public void testRingBufferWithConcurrentProducersAndConsumers() throws InterruptedException {
+        RingBuffer<Integer> buffer = new RingBuffer<>(16);
+        Map<Integer, Boolean> received = new ConcurrentHashMap<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < 2; p++) {
+            int offset = p * ELEMENTS;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < ELEMENTS; i++) {
+                    while (!buffer.offer(offset + i)) {
+                        Thread.yield();
+                    }
+                }
+            }));
+        }
+        for (int c = 0; c < 2; c++) {
+            threads.add(new Thread(() -> {
+                while (received.size() < 2 * ELEMENTS) {
+                    Integer element = buffer.poll();
+                    if (element != null) {
+                        assertNull(received.put(element, true));
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+        assertEquals(2 * ELEMENTS, received.size());
+    }
+
+    /**
+     * Test that the elements of one key are handled in order while the keys are spread over the threads.
+     */
+    @Test
+    public void testStagePreservesOrderPerKey() throws InterruptedException {
+        Map<Integer, List<Integer>> handled = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(KEYS * ELEMENTS);
+        Stage<int[]> stage = new Stage<>("test", 4, 8, element -> element[0], element -> {
+            handled.computeIfAbsent(element[0], k -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(element[1]);
+            done.countDown();
+        });
+        stage.start();
+        for (int i = 0; i < ELEMENTS; i++) {
+            for (int key = 0; key < KEYS; key++) {
+                stage.submit(new int[]{key, i});
+            }
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int key = 0; key < KEYS; key++) {
+            List<Integer> values = handled.get(key);
+            for (int i = 0; i < ELEMENTS; i++) {
+                assertEquals(Integer.valueOf(i), values.get(i));
+            }
+        }
+        stage.stop();
+        assertEquals(4, stage.getThreadCount());
+        assertTrue(stage.getMaxQueueDepth() <= 8);
+    }
+
+    /**
+     * Test that a full stage makes the submitter wait, and that failures are counted.
+     */
+    @Test
+    public void testStageBackpressureAndFailures() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch taken = new CountDownLatch(1);
+        Stage<Integer> stage = new Stage<>("test", 1, 2, element -> 0, element -> {
+            taken.countDown();
+            release.await();
+            if (element % 2 == 0) {
+                throw new IllegalStateException("failed " + element);
+            }
+        });
+        stage.start();
+        // The worker holds the first element, so the two next ones fill the buffer.
+        stage.submit(0);
+        assertTrue(taken.await(5, TimeUnit.SECONDS));
+        Thread producer = new Thread(() -> {
+            for (int i = 1; i < 6; i++) {
+                stage.submit(i);
+            }
+        });
+        producer.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (stage.getBlockedSubmitCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, stage.getBlockedSubmitCount());
+        assertTrue(producer.isAlive());
+        release.countDown();
+        producer.join(5000);
+        deadline = System.currentTimeMillis() + 5000;
+        while (stage.getProcessedCount() + stage.getFailedCount() < 6 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(3, stage.getProcessedCount());
+        assertEquals(3, stage.getFailedCount());
+        assertEquals(0, stage.getQueueDepth());
+        stage.stop();
+    }
+
+    private static final int ELEMENTS = 1000;
+    private static final int KEYS = 10;
+}
@@ -0,0 +1,98 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test suite for the TimerWheel class, driving the wheel with a manual clock.
+ */
+public class TestTimerWheel {
+
+    private static final long TICK = 100;
+    private static final int SIZE = 8;
+
+    private final AtomicLong now = new AtomicLong(10000);
+    private final TimerWheel wheel = new TimerWheel(TICK, SIZE, now::get);
+
+    /**
+     * Test that a timeout expires in the tick of its deadline, not before.
+     */
+    @Test
+    public void testExpiry() {
+        TimerWheel.Timeout timeout = wheel.schedule(350);
+        wheel.advance(now.addAndGet(300));
+        assertFalse(timeout.isExpired());
+        wheel.advance(now.addAndGet(100));
+        assertTrue(timeout.isExpired());
+        assertEquals(0, wheel.getPendingCount());
+        assertEquals(1, wheel.getExpiredCount());
+    }
+
+    /**
+     * Test that a timeout longer than a turn of the wheel goes around until its deadline.
+     */
+    @Test
+    public void testTimeoutLongerThanTheWheel() {
+        TimerWheel.Timeout timeout = wheel.schedule(TICK * SIZE * 3 + 50);
+        for (int i = 0; i < SIZE * 3; i++) {
+            wheel.advance(now.addAndGet(TICK));
+            assertFalse(timeout.isExpired());
+        }
+        wheel.advance(now.addAndGet(TICK));
+        assertTrue(timeout.isExpired());
+    }
+
+    /**
+     * Test that rescheduling pushes the deadline back, and that a deadline moved earlier still
+     * expires no later than the old one.
+     */
+    @Test
+    public void testReschedule() {
+        TimerWheel.Timeout later = wheel.schedule(200);
+        TimerWheel.Timeout earlier = wheel.schedule(2000);
+        wheel.advance(now.addAndGet(100));
+        later.reschedule(1000);
+        earlier.reschedule(100);
+        wheel.advance(now.addAndGet(200));
+        assertFalse(later.isExpired());
+        wheel.advance(now.addAndGet(900));
+        assertTrue(later.isExpired());
+        wheel.advance(now.addAndGet(900));
+        assertTrue(earlier.isExpired());
+    }
+
+    /**
+     * Test that a sweep covering many ticks at once expires every due timeout, and that cancelled
+     * timeouts are dropped.
+     */
+    @Test
+    public void testLateSweepAndCancel() {
+        List<TimerWheel.Timeout> timeouts = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            timeouts.add(wheel.schedule(i * 50L));
+        }
+        timeouts.get(0).cancel();
+        assertEquals(20, wheel.getPendingCount());
+        wheel.advance(now.addAndGet(5000));
+        assertFalse(timeouts.get(0).isExpired());
+        for (int i = 1; i < timeouts.size(); i++) {
+            assertTrue(timeouts.get(i).isExpired());
+        }
+        assertEquals(0, wheel.getPendingCount());
+        assertEquals(19, wheel.getExpiredCount());
+    }
+}
@@ -93,12 +93,6 @@ public class TestConversationalMessageService {
         when(mockedRS.getString("msg_uniquekey")).thenReturn("ABCBCD2018:05:05");
         when(mockedRS.getTimestamp("msg_timestamp")).thenReturn(Timestamp.valueOf(LocalDateTime.now()));
         when(mockedRS.next()).thenReturn(true, false);
-        Field rs = ConversationalMessageService.class.getDeclaredField("result");
-        rs.setAccessible(true);
-        rs.set(cs, mockedRS);
-        Field ps = ConversationalMessageService.class.getDeclaredField("pstmt");
-        ps.setAccessible(true);
-        ps.set(cs, mockedPreparedStatement);
         Field db = ConversationalMessageService.class.getDeclaredField("conn");
         db.setAccessible(true);
         db.set(cs, mockedDBConnection);
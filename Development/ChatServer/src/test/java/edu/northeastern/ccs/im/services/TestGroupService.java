@@ -97,12 +97,6 @@ public class TestGroupService {
         when(mockedRS.getString("group_name")).thenReturn("Group201");
         when(mockedRS.getString("moderator_name")).thenReturn("Alice");
         when(mockedRS.next()).thenReturn(true, false);
-        Field rs = GroupService.class.getDeclaredField("result");
-        rs.setAccessible(true);
-        rs.set(testGS, mockedRS);
-        Field ps = GroupService.class.getDeclaredField("pstmt");
-        ps.setAccessible(true);
-        ps.set(testGS, mockedPreparedStatement);
         Field db = GroupService.class.getDeclaredField("conn");
         db.setAccessible(true);
         db.set(testGS, mockedDBConnection);
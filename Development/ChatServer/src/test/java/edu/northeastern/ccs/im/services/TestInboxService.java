@@ -0,0 +1,246 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import edu.northeastern.ccs.im.db.DBConnection;
+import edu.northeastern.ccs.im.db.DBUtils;
+import edu.northeastern.ccs.im.models.InboxEntry;
+
+/**
+ * Test suite for the InboxService class. The database connection is replaced by mocks, so that the
+ * incremental counters and the merge with the persisted summary can be checked in isolation.
+ */
+public class TestInboxService {
+
+    private InboxService inboxService;
+
+    /**
+     * The Mocked db connection.
+     */
+    @Mock
+    DBConnection mockedDBConnection;
+
+    /**
+     * The Mocked db utils.
+     */
+    @Mock
+    DBUtils mockedDBUtils;
+
+    /**
+     * The Mocked prepared statement.
+     */
+    @Mock
+    PreparedStatement mockedPreparedStatement;
+
+    /**
+     * The Mocked ResultSet
+     */
+    @Mock
+    ResultSet mockedRS;
+
+    /**
+     * Creates a fresh inbox service and sets its reflected fields with the mocked objects.
+     * By default the persisted summary of every user is empty.
+     *
+     * @throws SQLException the sql exception
+     */
+    @BeforeEach
+    public void initMocks() throws SQLException, NoSuchFieldException, IllegalAccessException {
+        MockitoAnnotations.initMocks(this);
+        Field instance = InboxService.class.getDeclaredField("inboxService");
+        instance.setAccessible(true);
+        instance.set(null, null);
+        inboxService = InboxService.getInstance();
+
+        Properties properties = new Properties();
+        properties.setProperty("GET_INBOX", "GET_INBOX");
+        properties.setProperty("UPSERT_INBOX", "UPSERT_INBOX");
+        properties.setProperty("UPSERT_INBOX_DELTA", "UPSERT_INBOX_DELTA");
+        when(mockedDBConnection.getQueryProperties()).thenReturn(properties);
+        when(mockedDBConnection.getPreparedStatement(Mockito.anyString())).thenReturn(mockedPreparedStatement);
+        when(mockedDBUtils.setPreparedStatementArgs(Mockito.any(PreparedStatement.class),
+                Mockito.anyVararg()))
+                .thenReturn(mockedPreparedStatement);
+        when(mockedPreparedStatement.executeQuery()).thenReturn(mockedRS);
+        when(mockedRS.next()).thenReturn(false);
+
+        Field conn = InboxService.class.getDeclaredField("conn");
+        conn.setAccessible(true);
+        conn.set(inboxService, mockedDBConnection);
+        Field utils = InboxService.class.getDeclaredField("utils");
+        utils.setAccessible(true);
+        utils.set(inboxService, mockedDBUtils);
+    }
+
+    /**
+     * Test that undelivered messages are counted per conversation and the last message is kept.
+     */
+    @Test
+    public void testMessageStoredCountsUnread() throws SQLException, IOException {
+        inboxService.messageStored(BOB, ALICE, false, ALICE, "hi", "key1", false);
+        inboxService.messageStored(BOB, ALICE, false, ALICE, "there", "key2", false);
+        inboxService.messageStored(BOB, GROUP, true, CAROL, "hello all", "key3", true);
+        List<InboxEntry> inbox = inboxService.getInbox(BOB);
+        assertEquals(2, inbox.size());
+        InboxEntry aliceEntry = findEntry(inbox, ALICE);
+        assertEquals(2, aliceEntry.getUnreadCount());
+        assertEquals("there", aliceEntry.getLastMessageText());
+        assertEquals("key2", aliceEntry.getLastMessageKey());
+        InboxEntry groupEntry = findEntry(inbox, GROUP);
+        assertEquals(0, groupEntry.getUnreadCount());
+        assertTrue(groupEntry.isGroupConversation());
+    }
+
+    /**
+     * Test that all the unread counters of a user are cleared once the backlog is delivered.
+     */
+    @Test
+    public void testMessagesDeliveredClearsUnread() throws SQLException, IOException {
+        inboxService.messageStored(BOB, ALICE, false, ALICE, "hi", "key1", false);
+        inboxService.messageStored(BOB, CAROL, false, CAROL, "yo", "key2", false);
+        inboxService.messagesDelivered(BOB);
+        for (InboxEntry entry : inboxService.getInbox(BOB)) {
+            assertEquals(0, entry.getUnreadCount());
+        }
+        // a delete after the delivery must not make the counter negative
+        inboxService.messageDeleted("key1");
+        assertEquals(0, findEntry(inboxService.getInbox(BOB), ALICE).getUnreadCount());
+    }
+
+    /**
+     * Test that deleting an unread message decrements the counter and hides the deleted text.
+     */
+    @Test
+    public void testMessageDeleted() throws SQLException, IOException {
+        inboxService.messageStored(BOB, ALICE, false, ALICE, "hi", "key1", false);
+        inboxService.messageStored(BOB, ALICE, false, ALICE, "oops", "key2", false);
+        inboxService.messageDeleted("key2");
+        InboxEntry entry = findEntry(inboxService.getInbox(BOB), ALICE);
+        assertEquals(1, entry.getUnreadCount());
+        assertEquals("(message deleted)", entry.getLastMessageText());
+    }
+
+    /**
+     * Test that the persisted summary is merged with the counters collected before it was loaded.
+     */
+    @Test
+    public void testGetInboxMergesPersistedSummary() throws SQLException, IOException {
+        when(mockedRS.next()).thenReturn(true, true, false);
+        when(mockedRS.getString("conversation")).thenReturn(ALICE, GROUP);
+        when(mockedRS.getBoolean("is_group")).thenReturn(false, true);
+        when(mockedRS.getString("last_sender")).thenReturn(ALICE, CAROL);
+        when(mockedRS.getString("last_msg_text")).thenReturn("old", "old group");
+        when(mockedRS.getString("last_msg_key")).thenReturn("old1", "old2");
+        when(mockedRS.getTimestamp("last_msg_timestamp")).thenReturn(new Timestamp(1000L), new Timestamp(2000L));
+        when(mockedRS.getInt("unread_count")).thenReturn(3, 1);
+
+        inboxService.messageStored(BOB, ALICE, false, ALICE, "new", "key1", false);
+        List<InboxEntry> inbox = inboxService.getInbox(BOB);
+        assertEquals(2, inbox.size());
+        assertEquals(ALICE, inbox.get(0).getConversation());
+        assertEquals(4, inbox.get(0).getUnreadCount());
+        assertEquals("new", inbox.get(0).getLastMessageText());
+        assertEquals(1, findEntry(inbox, GROUP).getUnreadCount());
+
+        // the summary is loaded only once
+        inboxService.getInbox(BOB);
+        verify(mockedPreparedStatement, times(1)).executeQuery();
+    }
+
+    /**
+     * Test that flush writes only the entries that changed, as one batch.
+     */
+    @Test
+    public void testFlushWritesDirtyEntriesInOneBatch() throws SQLException, IOException {
+        inboxService.messageStored(BOB, ALICE, false, ALICE, "hi", "key1", false);
+        inboxService.messageStored(ALICE, BOB, false, ALICE, "hi", "key1", true);
+        assertEquals(2, inboxService.flush(ONLINE));
+        verify(mockedPreparedStatement, times(2)).addBatch();
+        verify(mockedPreparedStatement, times(1)).executeBatch();
+        assertEquals(0, inboxService.flush(ONLINE));
+    }
+
+    /**
+     * Test that a failed batch keeps the entries dirty so that they are written by the next flush.
+     */
+    @Test
+    public void testFlushFailureKeepsEntriesDirty() throws SQLException, IOException {
+        when(mockedPreparedStatement.executeBatch()).thenThrow(new SQLException()).thenReturn(new int[]{1});
+        inboxService.messageStored(BOB, ALICE, false, ALICE, "hi", "key1", false);
+        assertThrows(SQLException.class, () -> inboxService.flush(ONLINE));
+        assertEquals(1, inboxService.flush(ONLINE));
+        assertEquals(0, inboxService.flush(ONLINE));
+    }
+
+    /**
+     * Test that the deltas of the inboxes that were never loaded are written without loading them,
+     * and that the inboxes of the offline owners are dropped once written, and loaded again when needed.
+     */
+    @Test
+    public void testFlushWritesDeltasAndEvictsOfflineOwners() throws SQLException, IOException {
+        inboxService.messageStored(BOB, ALICE, false, ALICE, "hi", "key1", false);
+        inboxService.messageStored(ALICE, BOB, false, ALICE, "hi", "key1", true);
+        inboxService.getInbox(ALICE);
+        verify(mockedPreparedStatement, times(1)).executeQuery();
+        assertEquals(2, inboxService.flush(owner -> owner.equals(ALICE)));
+        verify(mockedDBConnection, times(1)).getPreparedStatement("UPSERT_INBOX");
+        verify(mockedDBConnection, times(1)).getPreparedStatement("UPSERT_INBOX_DELTA");
+        verify(mockedPreparedStatement, times(1)).executeQuery();
+
+        // the inbox of bob was dropped, so that the written delta is not counted twice
+        when(mockedRS.next()).thenReturn(true, false);
+        when(mockedRS.getString("conversation")).thenReturn(ALICE);
+        when(mockedRS.getString("last_msg_key")).thenReturn("key1");
+        when(mockedRS.getInt("unread_count")).thenReturn(1);
+        assertEquals(1, findEntry(inboxService.getInbox(BOB), ALICE).getUnreadCount());
+        verify(mockedPreparedStatement, times(2)).executeQuery();
+        inboxService.getInbox(ALICE);
+        verify(mockedPreparedStatement, times(2)).executeQuery();
+    }
+
+    /**
+     * Finds the entry of the given conversation in the inbox.
+     */
+    private InboxEntry findEntry(List<InboxEntry> inbox, String conversation) {
+        for (InboxEntry entry : inbox) {
+            if (entry.getConversation().equals(conversation)) {
+                return entry;
+            }
+        }
+        throw new AssertionError("no entry for " + conversation);
+    }
+
+    private static final Predicate<String> ONLINE = owner -> true;
+    private static final String ALICE = "alice";
+    private static final String BOB = "bob";
+    private static final String CAROL = "carol";
+    private static final String GROUP = "group";
+}
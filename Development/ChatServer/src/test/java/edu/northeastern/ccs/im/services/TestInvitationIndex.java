@@ -0,0 +1,109 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.northeastern.ccs.im.Message;
+
+/**
+ * This class tests the in-memory index of the pending invitations.
+ */
+public class TestInvitationIndex {
+
+    private InvitationIndex index;
+
+    /**
+     * Creates an index with two groups moderated by the same user.
+     */
+    @BeforeEach
+    public void setup() {
+        index = new InvitationIndex();
+        index.setModerator(GROUP_NAME, MODERATOR);
+        index.setModerator(ANOTHER_GROUP_NAME, MODERATOR);
+    }
+
+    /**
+     * Test that a new invitation is pending both for the invitee and for the moderator.
+     */
+    @Test
+    public void testAddInvitationIsPendingForBoth() {
+        index.addInvitation(Message.makeCreateInvitationMessage(INVITER, INVITEE, GROUP_NAME), false, false);
+        Set<Message> forInvitee = index.getPendingForInvitee(INVITEE);
+        assertEquals(1, forInvitee.size());
+        assertEquals(GROUP_NAME, forInvitee.iterator().next().getReceiverOrPassword());
+        assertEquals(1, index.getPendingForModerator(MODERATOR).size());
+    }
+
+    /**
+     * Test that the pending invitations of all the moderated groups are found with one lookup.
+     */
+    @Test
+    public void testPendingForModeratorSpansAllGroups() {
+        index.addInvitation(Message.makeCreateInvitationMessage(INVITER, INVITEE, GROUP_NAME), true, false);
+        index.addInvitation(Message.makeCreateInvitationMessage(INVITER, INVITEE, ANOTHER_GROUP_NAME), true, false);
+        index.addInvitation(Message.makeCreateInvitationMessage(INVITER, INVITER, GROUP_NAME), true, true);
+        assertEquals(2, index.getPendingForModerator(MODERATOR).size());
+        assertTrue(index.getPendingForInvitee(INVITEE).isEmpty());
+        assertTrue(index.getPendingForModerator(INVITER).isEmpty());
+    }
+
+    /**
+     * Test that delivered and deleted invitations are no longer pending.
+     */
+    @Test
+    public void testMarkSentAndRemove() {
+        index.addInvitation(Message.makeCreateInvitationMessage(INVITER, INVITEE, GROUP_NAME), false, false);
+        index.addInvitation(Message.makeCreateInvitationMessage(INVITER, INVITEE, ANOTHER_GROUP_NAME), false, false);
+        index.markSentToInvitee(INVITEE, GROUP_NAME);
+        assertEquals(1, index.getPendingForInvitee(INVITEE).size());
+        assertEquals(2, index.getPendingForModerator(MODERATOR).size());
+        index.markSentToModerator(INVITEE, GROUP_NAME);
+        assertEquals(1, index.getPendingForModerator(MODERATOR).size());
+        index.removeInvitation(INVITEE, ANOTHER_GROUP_NAME);
+        assertTrue(index.getPendingForInvitee(INVITEE).isEmpty());
+        assertTrue(index.getPendingForModerator(MODERATOR).isEmpty());
+    }
+
+    /**
+     * Test that the pending invitations follow the group when its moderator changes.
+     */
+    @Test
+    public void testModeratorChange() {
+        index.addInvitation(Message.makeCreateInvitationMessage(INVITER, INVITEE, GROUP_NAME), false, false);
+        index.setModerator(GROUP_NAME, INVITER);
+        assertTrue(index.getPendingForModerator(MODERATOR).isEmpty());
+        assertEquals(1, index.getPendingForModerator(INVITER).size());
+        assertEquals(INVITER, index.getModerator(GROUP_NAME));
+    }
+
+    /**
+     * Test that removing a group drops its pending invitations.
+     */
+    @Test
+    public void testRemoveGroup() {
+        index.addInvitation(Message.makeCreateInvitationMessage(INVITER, INVITEE, GROUP_NAME), false, false);
+        index.removeGroup(GROUP_NAME);
+        assertNull(index.getModerator(GROUP_NAME));
+        assertTrue(index.getPendingForInvitee(INVITEE).isEmpty());
+        assertTrue(index.getPendingForModerator(MODERATOR).isEmpty());
+    }
+
+    private static final String INVITER = "inviter";
+    private static final String INVITEE = "invitee";
+    private static final String MODERATOR = "moderator";
+    private static final String GROUP_NAME = "group";
+    private static final String ANOTHER_GROUP_NAME = "group2";
+}
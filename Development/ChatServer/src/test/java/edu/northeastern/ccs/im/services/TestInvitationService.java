@@ -20,6 +20,8 @@ import java.lang.reflect.Field;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -55,6 +57,13 @@ public class TestInvitationService {
 
         when(dBConnectionMock.getPreparedStatement(anyString())).thenReturn(preparedStatementMock);
         when(preparedStatementMock.executeQuery()).thenReturn(resultSetMock);
+
+        Field index = InvitationService.class.getDeclaredField("invitationIndex");
+        index.setAccessible(true);
+        index.set(invitationService, new InvitationIndex());
+        Field indexLoaded = InvitationService.class.getDeclaredField("indexLoaded");
+        indexLoaded.setAccessible(true);
+        indexLoaded.set(invitationService, false);
     }
 
     /**
@@ -382,6 +391,56 @@ public class TestInvitationService {
         assertFalse(invitationService.setInvitationIsSentToModerator(INVITEE, GROUP_NAME));
     }
 
+    /**
+     * Test that the sent flags of several invitations are updated in a single batch
+     *
+     * @throws SQLException - the exception thrown when a downstream database error occurs
+     */
+    @Test
+    public void testSetInvitationsAreSentToInviteeInOneBatch() throws SQLException {
+        when(preparedStatementMock.executeBatch()).thenReturn(new int[]{1, 1});
+        Set<Message> invitations = new HashSet<>(Arrays.asList(
+                Message.makeCreateInvitationMessage(INVITER, INVITEE, GROUP_NAME),
+                Message.makeCreateInvitationMessage(INVITER, INVITEE, "anotherGroup")));
+        assertTrue(invitationService.setInvitationsAreSentToInvitee(invitations));
+        verify(preparedStatementMock, times(2)).addBatch();
+        verify(preparedStatementMock, times(1)).executeBatch();
+        verify(preparedStatementMock, never()).executeUpdate();
+    }
+
+    /**
+     * Test that the batch update reports a failure when one of the invitations was not updated
+     *
+     * @throws SQLException - the exception thrown when a downstream database error occurs
+     */
+    @Test
+    public void testSetInvitationsAreSentToModeratorPartialFailure() throws SQLException {
+        when(preparedStatementMock.executeBatch()).thenReturn(new int[]{1, 0});
+        Set<Message> invitations = new HashSet<>(Arrays.asList(
+                Message.makeCreateInvitationMessage(INVITER, INVITEE, GROUP_NAME),
+                Message.makeCreateInvitationMessage(INVITER, "anotherInvitee", GROUP_NAME)));
+        assertFalse(invitationService.setInvitationsAreSentToModerator(invitations));
+    }
+
+    /**
+     * Test that a created invitation is pending for the invitee and for the moderator, and that the
+     * index is loaded from the database only once
+     *
+     * @throws SQLException - the exception thrown when a downstream database error occurs
+     */
+    @Test
+    public void testCreatedInvitationIsPending() throws SQLException {
+        when(preparedStatementMock.executeUpdate()).thenReturn(1);
+        when(resultSetMock.next()).thenReturn(false);
+        invitationService.updateGroupModerator(GROUP_NAME, "moderator");
+        assertTrue(invitationService.createInvitation(INVITER, INVITEE, GROUP_NAME));
+        assertEquals(1, invitationService.getPendingInvitationsForInvitee(INVITEE).size());
+        assertEquals(1, invitationService.getPendingInvitationsForModerator("moderator").size());
+        verify(preparedStatementMock, times(2)).executeQuery();
+        assertTrue(invitationService.setInvitationIsSentToInvitee(INVITEE, GROUP_NAME));
+        assertTrue(invitationService.getPendingInvitationsForInvitee(INVITEE).isEmpty());
+    }
+
     /**
      * Constants used as arguments in the tests.
      */
@@ -0,0 +1,131 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+/**
+ * Test suite for the SequenceLock class.
+ */
+public class TestSequenceLock {
+
+    private static final String ALICE = "alice";
+    private static final String BOB = "bob";
+
+    /**
+     * Test that the numbers taken are kept once the lock is committed.
+     *
+     * @throws SQLException the sql exception
+     */
+    @Test
+    public void testCommitKeepsSequences() throws SQLException {
+        ConversationalMessageDAO dao = mock(ConversationalMessageDAO.class);
+        when(dao.nextSequence(ALICE)).thenReturn(7L);
+        try (SequenceLock lock = SequenceLock.forUsers(dao, Collections.singleton(ALICE))) {
+            assertEquals(7L, lock.next(ALICE));
+            lock.commit();
+        }
+        verify(dao, never()).releaseSequence(Mockito.anyString(), Mockito.anyLong());
+    }
+
+    /**
+     * Test that the numbers taken under a lock that is not committed are handed out again, the last
+     * one first.
+     *
+     * @throws SQLException the sql exception
+     */
+    @Test
+    public void testCloseWithoutCommitReleasesSequences() throws SQLException {
+        ConversationalMessageDAO dao = mock(ConversationalMessageDAO.class);
+        when(dao.nextSequence(ALICE)).thenReturn(3L);
+        when(dao.nextSequence(BOB)).thenReturn(5L);
+        try (SequenceLock lock = SequenceLock.forUsers(dao, Arrays.asList(ALICE, BOB))) {
+            lock.next(ALICE);
+            lock.next(BOB);
+        }
+        InOrder inOrder = Mockito.inOrder(dao);
+        inOrder.verify(dao).releaseSequence(BOB, 5L);
+        inOrder.verify(dao).releaseSequence(ALICE, 3L);
+    }
+
+    /**
+     * Test that the number of a user that is not locked cannot be taken.
+     */
+    @Test
+    public void testNextOfUnlockedUser() {
+        ConversationalMessageDAO dao = mock(ConversationalMessageDAO.class);
+        try (SequenceLock lock = SequenceLock.forUsers(dao, Collections.singleton(ALICE))) {
+            assertThrows(IllegalArgumentException.class, () -> lock.next(BOB));
+        }
+    }
+
+    /**
+     * Test that a sender locking a user waits for the sender holding the lock of that user.
+     *
+     * @throws InterruptedException if the test is interrupted while waiting
+     */
+    @Test
+    public void testSendersOfSameUserAreSerialized() throws InterruptedException {
+        ConversationalMessageDAO dao = mock(ConversationalMessageDAO.class);
+        CountDownLatch locked = new CountDownLatch(1);
+        Thread second = new Thread(() -> {
+            try (SequenceLock lock = SequenceLock.forUsers(dao, Arrays.asList(BOB, ALICE))) {
+                locked.countDown();
+            }
+        });
+        try (SequenceLock lock = SequenceLock.forUsers(dao, Collections.singleton(ALICE))) {
+            second.start();
+            assertFalse(locked.await(100, TimeUnit.MILLISECONDS));
+        }
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+        second.join();
+    }
+
+    /**
+     * Test that the lock of a group numbers the messages of the group, hands its number out again
+     * when it is not committed, and does not hold the lock of a user of the same name.
+     *
+     * @throws Exception if the user lock cannot be taken from another thread
+     */
+    @Test
+    public void testGroupLock() throws Exception {
+        ConversationalMessageDAO dao = mock(ConversationalMessageDAO.class);
+        when(dao.nextGroupSequence(ALICE)).thenReturn(9L);
+        try (SequenceLock lock = SequenceLock.forGroup(dao, ALICE)) {
+            assertEquals(9L, lock.next(ALICE));
+            CountDownLatch locked = new CountDownLatch(1);
+            Thread user = new Thread(() -> {
+                try (SequenceLock userLock = SequenceLock.forUsers(dao, Collections.singleton(ALICE))) {
+                    locked.countDown();
+                }
+            });
+            user.start();
+            assertTrue(locked.await(5, TimeUnit.SECONDS));
+            user.join();
+        }
+        verify(dao).releaseGroupSequence(ALICE, 9L);
+        verify(dao, never()).nextSequence(ALICE);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ ***************************************************************************************
+ * Copyright (c) 2019 Team 201 - Ketan Kale, Kunal Patil, Rahul Bhat, Sachin Haldavanekar.
+ * All rights reserved.
+ ***************************************************************************************
+ */
+
+package edu.northeastern.ccs.im.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * This class tests the coalescing of identical concurrent reads.
+ */
+public class TestSingleFlight {
+
+    private SingleFlight singleFlight;
+
+    /**
+     * Creates a fresh single-flight layer.
+     */
+    @BeforeEach
+    public void setup() {
+        singleFlight = new SingleFlight();
+    }
+
+    /**
+     * Test that concurrent identical reads share one call and its result.
+     */
+    @Test
+    public void testConcurrentIdenticalReadsShareOneCall() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Object shared = new Object();
+        ExecutorService pool = Executors.newFixedThreadPool(CALLERS);
+        List<Future<Object>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(pool.submit(() -> singleFlight.execute(KEY, () -> {
+                calls.incrementAndGet();
+                awaitQuietly(release);
+                return shared;
+            })));
+        }
+        while (singleFlight.getCollapsedCount(QUERY) < CALLERS - 1) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        for (Future<Object> result : results) {
+            assertSame(shared, result.get(5, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+        assertEquals(1, calls.get());
+        assertEquals(1, singleFlight.getExecutedCount(QUERY));
+        assertEquals(Long.valueOf(CALLERS - 1), singleFlight.getCollapsedCounts().get(QUERY));
+    }
+
+    /**
+     * Test that a read that starts after the previous call completed runs a fresh call.
+     */
+    @Test
+    public void testSequentialReadsAreNotCollapsed() throws SQLException {
+        AtomicInteger calls = new AtomicInteger();
+        assertEquals(1, (int) singleFlight.execute(KEY, calls::incrementAndGet));
+        assertEquals(2, (int) singleFlight.execute(KEY, calls::incrementAndGet));
+        assertEquals(0, singleFlight.getCollapsedCount(QUERY));
+        assertEquals(2, singleFlight.getExecutedCount(QUERY));
+    }
+
+    /**
+     * Test that the exception of the call is thrown to the caller, and the key can be retried.
+     */
+    @Test
+    public void testFailureIsPropagated() throws SQLException {
+        SQLException failure = new SQLException("failed");
+        assertSame(failure, assertThrows(SQLException.class, () -> singleFlight.execute(KEY, () -> {
+            throw failure;
+        })));
+        assertEquals("ok", singleFlight.execute(KEY, () -> "ok"));
+    }
+
+    /**
+     * Test that the key is built from the query name and the arguments.
+     */
+    @Test
+    public void testKey() {
+        assertEquals("GET_GROUP::group", SingleFlight.key("GET_GROUP", "group"));
+        assertEquals("IS_MEMBER::group::user", SingleFlight.key("IS_MEMBER", "group", "user"));
+    }
+
+    /**
+     * Test that the calls are counted per query name, whatever their arguments, and that reads of
+     * other arguments are not collapsed.
+     */
+    @Test
+    public void testCountsPerQueryName() throws SQLException {
+        for (int i = 0; i < CALLERS; i++) {
+            assertEquals("ok", singleFlight.execute(SingleFlight.key(QUERY, "group" + i), () -> "ok"));
+        }
+        assertEquals(CALLERS, singleFlight.getExecutedCount(QUERY));
+        assertEquals(0, singleFlight.getCollapsedCount(QUERY));
+        assertEquals(0, singleFlight.getExecutedCount(KEY));
+        assertEquals(QUERY, SingleFlight.queryName(KEY));
+        assertEquals(QUERY, SingleFlight.queryName(QUERY));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final String QUERY = "GET_GROUP";
+    private static final String KEY = "GET_GROUP::group";
+    private static final int CALLERS = 8;
+}
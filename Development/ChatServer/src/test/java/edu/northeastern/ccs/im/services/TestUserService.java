@@ -23,6 +23,8 @@ import java.lang.reflect.Field;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 
 import static org.mockito.Mockito.*;
@@ -90,12 +92,6 @@ public class TestUserService {
         when(mockedRS.getString("followee_user")).thenReturn("ABC");
         when(mockedRS.getBoolean("logged_in")).thenReturn(false);
         when(mockedRS.next()).thenReturn(true, false);
-        Field rs = UserService.class.getDeclaredField("result");
-        rs.setAccessible(true);
-        rs.set(us, mockedRS);
-        Field ps = UserService.class.getDeclaredField("pstmt");
-        ps.setAccessible(true);
-        ps.set(us, mockedPreparedStatement);
         Field db = UserService.class.getDeclaredField("conn");
         db.setAccessible(true);
         db.set(us, mockedDBConnection);
@@ -567,6 +563,22 @@ public class TestUserService {
         Assertions.assertThrows(SQLException.class, () -> us.tapUser(USER));
     }
 
+    /**
+     * Test that the users are logged out in a single batch, counting only the ones that were
+     * logged in.
+     *
+     * @throws SQLException the sql exception
+     */
+    @Test
+    public void testLogOutUsers() throws SQLException {
+        when(mockedPreparedStatement.executeBatch()).thenReturn(new int[]{1, 0});
+        Assertions.assertEquals(1, us.logOutUsers(Arrays.asList(USER, "other")));
+        verify(mockedPreparedStatement, times(2)).addBatch();
+        verify(mockedPreparedStatement).executeBatch();
+        verify(mockedPreparedStatement).close();
+        Assertions.assertEquals(0, us.logOutUsers(Collections.emptyList()));
+    }
+
     private static final String USER = "user";
     private static final String PASS = "pass";
 }